@@ -31,6 +31,7 @@ public class ConfigConstants {
     public static final String FLIGHT_SQL_PORT_KEY = "flight_sql.port";
     public static final String FLIGHT_SQL_DATA_PROCESSOR_LOCATIONS_KEY = "flight_sql.data_processor_locations";
     public static final String FLIGHT_SQL_SERVICE_NAME_KEY = "flight_sql.service_name";
+    public static final String FLIGHT_SQL_VIRTUAL_THREADS_KEY = "flight_sql.virtual_threads";
 
     // Server configuration keys
     public static final String KEYSTORE_KEY = "keystore";
@@ -48,6 +49,23 @@ public class ConfigConstants {
     public static final String CURSOR_TTL_MS_KEY              = "cursor_ttl_ms";
     public static final String MAX_CURSORS_PER_IDENTITY_KEY   = "max_cursors_per_identity";
     public static final String MAX_CURSORS_TOTAL_KEY          = "max_cursors_total";
+    public static final String STREAM_BUFFER_BUDGET_BYTES_KEY = "stream_buffer_budget_bytes";
+    public static final String STREAM_READY_TIMEOUT_MS_KEY    = "stream_ready_timeout_ms";
+    public static final String MAX_CONCURRENT_EXECUTIONS_KEY  = "max_concurrent_executions";
+    public static final String VIRTUAL_STREAM_THREADS_KEY     = "virtual_stream_threads";
+    public static final String PARSE_CACHE_MAX_BYTES_KEY      = "parse_cache_max_bytes";
+    public static final String AUTHORIZATION_PLAN_CACHE_MAX_BYTES_KEY = "authorization_plan_cache_max_bytes";
+    public static final String HIVE_PARTITION_LISTING_TTL_MS_KEY = "hive_partition_listing_ttl_ms";
+
+    // Workload classes / admission control keys
+    public static final String WORKLOAD_KEY                  = "workload";
+    public static final String WORKLOAD_CLAIM_KEY            = "claim";
+    public static final String WORKLOAD_CLASSES_KEY          = "classes";
+    public static final String WORKLOAD_NAME_KEY             = "name";
+    public static final String WORKLOAD_MAX_CONCURRENCY_KEY  = "max_concurrency";
+    public static final String WORKLOAD_QUEUE_TIMEOUT_MS_KEY = "queue_timeout_ms";
+    public static final String WORKLOAD_QUERY_GROUPS_KEY     = "query_groups";
+    public static final String WORKLOAD_SESSION_SETTINGS_KEY = "session_settings";
 
     // Ingestion configuration keys
     public static final String INGESTION_KEY = "ingestion";
@@ -56,8 +74,17 @@ public class ConfigConstants {
     public static final String MAX_BATCHES_KEY = "max_batches";
     public static final String MAX_PENDING_WRITE_KEY = "max_pending_write";
     public static final String MAX_DELAY_MS_KEY = "max_delay_ms";
+    public static final String COMMIT_LANES_KEY = "commit_lanes";
+    public static final String IN_MEMORY_BATCH_MAX_BYTES_KEY = "in_memory_batch_max_bytes";
+    public static final String IN_MEMORY_BUFFER_BYTES_KEY = "in_memory_buffer_bytes";
+    public static final String ADAPTIVE_TARGET_FILE_SIZE_KEY = "adaptive_target_file_size";
+    public static final String ADAPTIVE_LATENCY_SLO_MS_KEY = "adaptive_latency_slo_ms";
+    public static final String ADAPTIVE_MIN_DELAY_MS_KEY = "adaptive_min_delay_ms";
+    public static final String PARTITION_ROUTING_KEY = "partition_routing";
+    public static final String DURABLE_JOURNAL_KEY = "durable_journal";
 
     public static final String QUEUE_CONFIG_REFRESH_DELAY_MS_KEY = "queue_config_refresh_delay_ms";
+    public static final String CATALOG_COMMIT_WINDOW_MS_KEY = "catalog_commit_window_ms";
 
     // JWT Token configuration keys
     public static final String JWT_TOKEN_PREFIX = "jwt_token";
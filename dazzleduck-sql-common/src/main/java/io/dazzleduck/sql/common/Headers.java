@@ -36,11 +36,22 @@ public class Headers {
     public static final String HEADER_ACCESS = "x-dd-access";
     public static final String HEADER_ACCESS_TYPE = "x-dd-access-type";
     public static final String HEADER_SPLIT_SIZE = "x-dd-split-size";
+    // Split planning: "endpoints" (default) returns one endpoint per split, "merge" returns a single
+    // endpoint whose server runs the splits and merges them, re-aggregating partial aggregates.
+    public static final String HEADER_SPLIT_MODE = "x-dd-split-mode";
+    public static final String SPLIT_MODE_ENDPOINTS = "endpoints";
+    public static final String SPLIT_MODE_MERGE = "merge";
     public static final String HEADER_DATA_PARTITION = "x-dd-partition";
+    // Bulk ingest: comma-separated values of the partition columns, declaring that every row of the
+    // batch belongs to that one partition; lets the queue group it with the same partition's batches.
+    public static final String HEADER_DATA_PARTITION_VALUES = "x-dd-partition-values";
     public static final String HEADER_DATA_FORMAT = "x-dd-format";
     public static final String HEADER_PRODUCER_ID = "x-dd-producer-id";
     public static final String HEADER_PRODUCER_BATCH_ID = "x-dd-producer-batch-id";
     public static final String HEADER_SORT_ORDER = "x-dd-sort-order";
+    // Bulk-ingest acknowledgement: "commit" (default) waits for the bucket commit, "spool" acks
+    // once the batch is durably spooled and accepted by the queue.
+    public static final String HEADER_ACK_MODE = "x-dd-ack-mode";
 
     public static final String HEADER_DATA_LIMIT = "x-dd-limit";
     public static final String HEADER_DATA_OFFSET = "x-dd-offset";
@@ -64,10 +75,11 @@ public class Headers {
     // JWT claim carrying the target ingestion queue ID; same wire value as HEADER_INGESTION_QUEUE.
     public static final String CLAIM_INGESTION_QUEUE = "x-dd-ingestion-queue";
 
-    public static final Set<String> SUPPORTED_HEADERS = Set.of(HEADER_FETCH_SIZE, HEADER_DATABASE, HEADER_SCHEMA, HEADER_SPLIT_SIZE,
+    public static final Set<String> SUPPORTED_HEADERS = Set.of(HEADER_FETCH_SIZE, HEADER_DATABASE, HEADER_SCHEMA, HEADER_SPLIT_SIZE, HEADER_SPLIT_MODE,
             HEADER_DATA_PARTITION, HEADER_DATA_FORMAT, HEADER_PRODUCER_ID, HEADER_PRODUCER_BATCH_ID, HEADER_SORT_ORDER,
             HEADER_APP_DATA_TRANSFORMATION, HEADER_PATH, HEADER_TABLE, HEADER_FUNCTION, HEADER_FILTER, HEADER_ACCESS,
             HEADER_ACCESS_TYPE, HEADER_ARROW_COMPRESSION, QUERY_PARAMETER_INGESTION_QUEUE,
-            HEADER_QUERY_TIMEOUT, HEADER_DATA_LIMIT, HEADER_DATA_OFFSET, HEADER_INGESTION_QUEUE);
+            HEADER_QUERY_TIMEOUT, HEADER_DATA_LIMIT, HEADER_DATA_OFFSET, HEADER_INGESTION_QUEUE, HEADER_ACK_MODE,
+            HEADER_DATA_PARTITION_VALUES);
 
 }
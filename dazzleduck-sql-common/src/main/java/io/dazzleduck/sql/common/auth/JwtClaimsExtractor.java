@@ -30,6 +30,14 @@ public class JwtClaimsExtractor {
      * and the raw bearer token.
      */
     public static Map<String, String> extractClaims(Claims payload, List<String> claimHeader, String bearerToken) {
+        return withBearerToken(extractClaims(payload, claimHeader), bearerToken);
+    }
+
+    /**
+     * Extracts the claims of a JWT payload like {@link #extractClaims(Claims, List, String)},
+     * without the raw bearer token, so the map can be cached without holding the token.
+     */
+    public static Map<String, String> extractClaims(Claims payload, List<String> claimHeader) {
         var allClaimsFromJWT = new HashMap<String, String>();
         for (String key : claimHeader) {
             var claimFromJwt = payload.get(key, String.class);
@@ -41,10 +49,16 @@ public class JwtClaimsExtractor {
         if (redirectUrl != null) {
             allClaimsFromJWT.put(Headers.HEADER_REDIRECT_URL, redirectUrl);
         }
-        allClaimsFromJWT.put(Headers.HEADER_BEARER_TOKEN, bearerToken);
         return allClaimsFromJWT;
     }
 
+    /** A copy of the claims with the raw bearer token added. */
+    public static Map<String, String> withBearerToken(Map<String, String> claims, String bearerToken) {
+        var result = new HashMap<>(claims);
+        result.put(Headers.HEADER_BEARER_TOKEN, bearerToken);
+        return result;
+    }
+
     public static String toUnsecuredJwt(String token) {
         int firstDot = token.indexOf('.');
         int secondDot = token.indexOf('.', firstDot + 1);
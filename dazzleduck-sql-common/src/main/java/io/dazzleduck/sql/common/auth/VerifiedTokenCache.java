@@ -0,0 +1,206 @@
+package io.dazzleduck.sql.common.auth;
+
+import io.jsonwebtoken.Claims;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * A bounded cache of verified JWTs, so a client that reuses its token for every call does not
+ * have the token parsed, its signature verified and its claims extracted each time.
+ *
+ * <p>Tokens are keyed by their SHA-256 digest. An entry holds the verified payload and the claims
+ * built from it, which must not include the token itself, and is dropped once the token expires.
+ * Lookups do not lock; once the cache grows beyond its maximum size, the thread that notices
+ * drops the expired entries and the least recently used ones, down to nine tenths of the maximum.
+ * Tokens that fail verification, or that have no expiration, are not cached. The hits and misses
+ * of every cache are also summed for the whole process.
+ */
+public final class VerifiedTokenCache {
+
+    private static final LongAdder TOTAL_HITS = new LongAdder();
+    private static final LongAdder TOTAL_MISSES = new LongAdder();
+
+    /** A verified token: its payload and the claims authorization reads from it. */
+    public static final class VerifiedToken {
+        private final Claims payload;
+        private final Map<String, String> claims;
+
+        public VerifiedToken(Claims payload, Map<String, String> claims) {
+            this.payload = payload;
+            this.claims = Collections.unmodifiableMap(claims);
+        }
+
+        public Claims payload() {
+            return payload;
+        }
+
+        /** The claims of the token, shared by every call with it and so not modifiable. */
+        public Map<String, String> claims() {
+            return claims;
+        }
+    }
+
+    /** Parses and verifies a token, throwing if it is not valid. */
+    @FunctionalInterface
+    public interface Verifier {
+        VerifiedToken verify(String token);
+    }
+
+    private static final class Entry {
+        private final VerifiedToken token;
+        private final long expiresAtMillis;
+        private volatile long lastAccess;
+
+        private Entry(VerifiedToken token, long expiresAtMillis, long lastAccess) {
+            this.token = token;
+            this.expiresAtMillis = expiresAtMillis;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    /** An entry and its last access, fixed for sorting while other threads keep using the entry. */
+    private static final class Candidate {
+        private final String key;
+        private final Entry entry;
+        private final long lastAccess;
+
+        private Candidate(String key, Entry entry, long lastAccess) {
+            this.key = key;
+            this.entry = entry;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private final int maxEntries;
+    private final Verifier verifier;
+    private final LongSupplier clock;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong accesses = new AtomicLong();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public VerifiedTokenCache(int maxEntries, Verifier verifier) {
+        this(maxEntries, verifier, System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock current time in milliseconds
+     */
+    VerifiedTokenCache(int maxEntries, Verifier verifier, LongSupplier clock) {
+        this.maxEntries = maxEntries;
+        this.verifier = verifier;
+        this.clock = clock;
+    }
+
+    /**
+     * The verified token, from the cache or from the verifier.
+     *
+     * @throws RuntimeException whatever the verifier throws for a token that is not valid
+     */
+    public VerifiedToken get(String token) {
+        var key = digest(token);
+        long now = clock.getAsLong();
+        var entry = entries.get(key);
+        if (entry != null) {
+            if (entry.expiresAtMillis > now) {
+                entry.lastAccess = accesses.incrementAndGet();
+                hits.increment();
+                TOTAL_HITS.increment();
+                return entry.token;
+            }
+            entries.remove(key, entry);
+        }
+        misses.increment();
+        TOTAL_MISSES.increment();
+        var verified = verifier.verify(token);
+        var expiration = verified.payload().getExpiration();
+        if (expiration != null && expiration.getTime() > now) {
+            entries.put(key, new Entry(verified, expiration.getTime(), accesses.incrementAndGet()));
+            evict(now);
+        }
+        return verified;
+    }
+
+    /**
+     * Shrinks the cache once it is over its maximum size. Threads that find another one evicting
+     * leave it to that one, which checks the size again when it is done.
+     */
+    private void evict(long now) {
+        while (entries.size() > maxEntries && evicting.compareAndSet(false, true)) {
+            try {
+                entries.values().removeIf(entry -> entry.expiresAtMillis <= now);
+                int excess = entries.size() - (maxEntries - maxEntries / 10);
+                if (excess > 0) {
+                    entries.entrySet().stream()
+                            .map(e -> new Candidate(e.getKey(), e.getValue(), e.getValue().lastAccess))
+                            .sorted(Comparator.comparingLong(candidate -> candidate.lastAccess))
+                            .limit(excess)
+                            .collect(Collectors.toList())
+                            .forEach(candidate -> entries.remove(candidate.key, candidate.entry));
+                }
+            } finally {
+                evicting.set(false);
+            }
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    /** Share of lookups served from this cache, 0 before the first lookup. */
+    public double hitRatio() {
+        return ratio(hits(), misses());
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /** Hits of every verified token cache of the process. */
+    public static long totalHits() {
+        return TOTAL_HITS.sum();
+    }
+
+    /** Misses of every verified token cache of the process. */
+    public static long totalMisses() {
+        return TOTAL_MISSES.sum();
+    }
+
+    /** Share of the lookups of every verified token cache of the process served from a cache. */
+    public static double totalHitRatio() {
+        return ratio(totalHits(), totalMisses());
+    }
+
+    private static double ratio(long hits, long misses) {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    private static String digest(String token) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package io.dazzleduck.sql.common.auth;
+
+import io.dazzleduck.sql.common.Headers;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VerifiedTokenCacheTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+    private final AtomicInteger verifications = new AtomicInteger();
+
+    /** Accepts tokens of the form {@code subject:expiresAtMillis}, and rejects anything else. */
+    private final VerifiedTokenCache.Verifier verifier = token -> {
+        verifications.incrementAndGet();
+        var parts = token.split(":", -1);
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("invalid token");
+        }
+        var expiration = parts[1].isEmpty() ? null : new Date(Long.parseLong(parts[1]));
+        var payload = Jwts.claims().subject(parts[0]).expiration(expiration).build();
+        return new VerifiedTokenCache.VerifiedToken(payload, Map.of("sub", parts[0]));
+    };
+
+    private final VerifiedTokenCache cache = new VerifiedTokenCache(2, verifier, clock::get);
+
+    @Test
+    public void testReusedTokenIsVerifiedOnce() {
+        var first = cache.get("alice:2000000");
+        var second = cache.get("alice:2000000");
+        assertSame(first, second);
+        assertEquals(Map.of("sub", "alice"), second.claims());
+        assertEquals(1, verifications.get());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(0.5, cache.hitRatio());
+        assertThrows(UnsupportedOperationException.class, () -> second.claims().put("sub", "bob"));
+    }
+
+    @Test
+    public void testEvictsTokenAtExpiry() {
+        cache.get("alice:2000000");
+        clock.set(1_999_999);
+        cache.get("alice:2000000");
+        assertEquals(1, verifications.get());
+
+        clock.set(2_000_000);
+        cache.get("alice:2000000");
+        assertEquals(2, verifications.get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testDoesNotCacheInvalidOrNonExpiringTokens() {
+        assertThrows(IllegalArgumentException.class, () -> cache.get("garbage"));
+        assertThrows(IllegalArgumentException.class, () -> cache.get("garbage"));
+        cache.get("alice:");
+        cache.get("alice:");
+        cache.get("alice:500000");
+        assertEquals(5, verifications.get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        cache.get("a:2000000");
+        cache.get("b:2000000");
+        cache.get("a:2000000");
+        cache.get("c:2000000");
+        assertEquals(2, cache.size());
+        cache.get("a:2000000");
+        assertEquals(3, verifications.get());
+        cache.get("b:2000000");
+        assertEquals(4, verifications.get());
+    }
+
+    @Test
+    public void testStaysBoundedUnderConcurrentLookups() throws Exception {
+        var bounded = new VerifiedTokenCache(100, verifier, clock::get);
+        var executor = Executors.newFixedThreadPool(8);
+        try {
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                executor.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        bounded.get("user" + (thread * 1000 + i) % 300 + ":2000000");
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        }
+        assertTrue(bounded.size() <= 100, "size " + bounded.size());
+        assertEquals(8000, bounded.hits() + bounded.misses());
+    }
+
+    @Test
+    public void testCachedClaimsDoNotHoldTheToken() {
+        var payload = Jwts.claims().subject("alice").add("org", "acme").build();
+        var claims = JwtClaimsExtractor.extractClaims(payload, List.of("org"));
+        assertEquals("acme", claims.get("org"));
+        assertFalse(claims.containsKey(Headers.HEADER_BEARER_TOKEN));
+        var withToken = JwtClaimsExtractor.withBearerToken(claims, "token");
+        assertEquals("token", withToken.get(Headers.HEADER_BEARER_TOKEN));
+        assertFalse(claims.containsKey(Headers.HEADER_BEARER_TOKEN));
+    }
+}
@@ -27,6 +27,7 @@ public class ExpressionConstants {
     public static final String LIMIT_MODIFIER_TYPE = "LIMIT_MODIFIER";
     public static final String FUNCTION_CLASS = "FUNCTION";
     public static final String FUNCTION_TYPE = "FUNCTION";
+    public static final String WINDOW_CLASS = "WINDOW";
 
     public static final String TABLE_FUNCTION_TYPE = "TABLE_FUNCTION";
     public static final String BASE_TABLE_TYPE = "BASE_TABLE";
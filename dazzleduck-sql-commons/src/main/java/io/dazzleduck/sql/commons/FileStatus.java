@@ -1,4 +1,23 @@
 package io.dazzleduck.sql.commons;
 
-public record FileStatus(String fileName, Long size, Long lastModified) {
+/**
+ * A data file of a table, or a range of its rows.
+ *
+ * @param rowCount number of rows, {@code null} when the listing does not know it
+ * @param firstRow first row of the range, {@code null} for the whole file; a range covers
+ *                 {@code rowCount} rows from there and {@code size} is the size of its row groups
+ */
+public record FileStatus(String fileName, Long size, Long lastModified, Long rowCount, Long firstRow) {
+
+    public FileStatus(String fileName, Long size, Long lastModified) {
+        this(fileName, size, lastModified, null);
+    }
+
+    public FileStatus(String fileName, Long size, Long lastModified, Long rowCount) {
+        this(fileName, size, lastModified, rowCount, null);
+    }
+
+    public boolean isRowRange() {
+        return firstRow != null;
+    }
 }
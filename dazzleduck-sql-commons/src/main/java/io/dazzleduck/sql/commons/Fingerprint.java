@@ -3,6 +3,7 @@ package io.dazzleduck.sql.commons;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -10,7 +11,12 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.dazzleduck.sql.commons.ExpressionConstants.*;
 
 /**
  * Limitation :
@@ -21,6 +27,21 @@ public class Fingerprint {
 
     private static Logger logger = LoggerFactory.getLogger(Fingerprint.class);
 
+    /**
+     * Prefix of the parameters standing for constants in a template. It holds a random nonce, so
+     * no literal of a query can pass for a parameter.
+     */
+    private static final String PARAMETER_PREFIX = "\u0000param:" + Long.toHexString(new SecureRandom().nextLong()) + ":";
+
+    /**
+     * A query with its constants replaced by numbered parameters.
+     *
+     * @param template    the query, with parameters in place of the constants and without query locations
+     * @param constants   the constants, in the order of their parameters
+     * @param fingerprint SHA-256 of the template; queries differing only in their constants share it
+     */
+    public record Parameterized(JsonNode template, List<JsonNode> constants, String fingerprint) { }
+
     public static void main(String[] args) throws SQLException, IOException, NoSuchAlgorithmException {
         //String sql1 = "select  2.0, 3, 'one', 4.0, 5 , true from t where num > 1 and num >= 1 and str = 'str1' and date in ('2014-01-01') and if(min_a=null, true, min_a <= cast(x as int))";
         String sql1 = "select * from t where num1 > 1 and num2 < 1.0 and str = 'str1'";
@@ -52,6 +73,63 @@ public class Fingerprint {
         return generateSHA256(fingerPrintedNode.toString());
     }
 
+    /**
+     * Replaces the constants of a query with parameters. Constants inside table functions, such as
+     * the paths of {@code read_parquet}, are kept in the template: they decide what the query reads.
+     */
+    public static Parameterized parameterize(JsonNode tree) {
+        var template = tree.deepCopy();
+        var constants = new ArrayList<JsonNode>();
+        parameterize(template, constants, false);
+        return new Parameterized(template, constants, generateSHA256(template.toString()));
+    }
+
+    /** Copies a template, or a tree derived from it, with its parameters bound to constants. */
+    public static JsonNode bind(JsonNode template, List<JsonNode> constants) {
+        var result = template.deepCopy();
+        bind(result, constants, false);
+        return result;
+    }
+
+    private static void parameterize(JsonNode node, List<JsonNode> constants, boolean inTableFunction) {
+        if (node instanceof ObjectNode object) {
+            object.remove(FIELD_QUERY_LOCATION);
+            if (!inTableFunction && Transformations.IS_CONSTANT.apply(object) && object.get(FIELD_VALUE) instanceof ObjectNode value) {
+                constants.add(object.deepCopy());
+                value.put(FIELD_IS_NULL, false);
+                value.put(FIELD_VALUE, PARAMETER_PREFIX + (constants.size() - 1));
+                return;
+            }
+            boolean tableFunction = inTableFunction || isTableFunction(object);
+            object.elements().forEachRemaining(child -> parameterize(child, constants, tableFunction));
+        } else if (node != null && node.isArray()) {
+            node.elements().forEachRemaining(child -> parameterize(child, constants, inTableFunction));
+        }
+    }
+
+    private static void bind(JsonNode node, List<JsonNode> constants, boolean inTableFunction) {
+        if (node instanceof ObjectNode object) {
+            if (!inTableFunction && Transformations.IS_CONSTANT.apply(object) && object.get(FIELD_VALUE) instanceof ObjectNode value) {
+                var parameter = value.get(FIELD_VALUE);
+                if (parameter != null && parameter.isTextual() && parameter.asText().startsWith(PARAMETER_PREFIX)) {
+                    var constant = (ObjectNode) constants.get(Integer.parseInt(parameter.asText().substring(PARAMETER_PREFIX.length())));
+                    object.removeAll();
+                    object.setAll(constant.deepCopy());
+                }
+                return;
+            }
+            boolean tableFunction = inTableFunction || isTableFunction(object);
+            object.elements().forEachRemaining(child -> bind(child, constants, tableFunction));
+        } else if (node != null && node.isArray()) {
+            node.elements().forEachRemaining(child -> bind(child, constants, inTableFunction));
+        }
+    }
+
+    private static boolean isTableFunction(JsonNode node) {
+        var type = node.get(FIELD_TYPE);
+        return type != null && NODE_TYPE_TABLE_FUNCTION.equals(type.asText());
+    }
+
     private static String generateSHA256(String input) {
         try {
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
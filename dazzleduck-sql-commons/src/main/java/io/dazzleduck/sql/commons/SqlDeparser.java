@@ -0,0 +1,483 @@
+package io.dazzleduck.sql.commons;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static io.dazzleduck.sql.commons.ExpressionConstants.*;
+
+/**
+ * Turns a statement tree back into SQL in Java, without the {@code json_deserialize_sql} round
+ * trip through a DuckDB connection.
+ *
+ * <p>Only the trees queries are commonly rewritten into are supported: a single SELECT over a
+ * table, a table function or a subquery, with filters, grouping, ordering and limits, and
+ * expressions made of column references, literals, comparisons, conjunctions, casts and function
+ * calls. The SQL is formatted exactly the way DuckDB formats it, so both produce the same text.
+ * {@link #deparse} returns {@code null} for any other tree, and the caller asks DuckDB instead.
+ */
+public final class SqlDeparser {
+
+    private static final String KEYWORDS_QUERY = "SELECT string_agg(keyword_name, ' ') FROM duckdb_keywords()";
+
+    private static final Map<String, String> COMPARISONS = Map.of(
+            COMPARE_TYPE_EQUAL, "=",
+            "COMPARE_NOTEQUAL", "!=",
+            COMPARE_TYPE_LESSTHAN, "<",
+            COMPARE_TYPE_GREATERTHAN, ">",
+            COMPARE_TYPE_LESSTHANOREQUALTO, "<=",
+            COMPARE_TYPE_GREATERTHANOREQUALTO, ">=",
+            "COMPARE_DISTINCT_FROM", "IS DISTINCT FROM",
+            "COMPARE_NOT_DISTINCT_FROM", "IS NOT DISTINCT FROM");
+
+    /** Types DuckDB names by their id. */
+    private static final Set<String> CAST_TYPES = Set.of(
+            TYPE_BOOLEAN, "TINYINT", "SMALLINT", TYPE_INTEGER, TYPE_BIGINT, "HUGEINT",
+            "UTINYINT", "USMALLINT", "UINTEGER", "UBIGINT", TYPE_FLOAT, TYPE_DOUBLE,
+            "DATE", "TIME", "TIMESTAMP", TYPE_VARCHAR, "BLOB", "INTERVAL", "UUID");
+
+    private static volatile Set<String> keywords;
+
+    private final StringBuilder sql = new StringBuilder();
+    private final Set<String> reserved;
+
+    /** Thrown on a tree outside the supported subset. */
+    private static final class UnsupportedNode extends RuntimeException {
+        UnsupportedNode() {
+            super(null, null, false, false);
+        }
+    }
+
+    private SqlDeparser(Set<String> reserved) {
+        this.reserved = reserved;
+    }
+
+    /**
+     * @param tree a statement tree, as produced by {@link Transformations#parseToTree}
+     * @return the SQL of the statement, {@code null} if the tree is not supported
+     */
+    public static String deparse(JsonNode tree) throws SQLException {
+        var statements = tree.get(FIELD_STATEMENTS);
+        if (statements == null || statements.size() != 1) {
+            return null;
+        }
+        var statement = statements.get(0);
+        var deparser = new SqlDeparser(keywords());
+        try {
+            deparser.require(isEmpty(statement.get(FIELD_NAMED_PARAM_MAP)));
+            deparser.queryNode(statement.get(FIELD_NODE));
+            return deparser.sql.toString();
+        } catch (UnsupportedNode e) {
+            return null;
+        }
+    }
+
+    private static Set<String> keywords() throws SQLException {
+        var result = keywords;
+        if (result == null) {
+            result = Set.of(ConnectionPool.collectFirst(KEYWORDS_QUERY, String.class).split(" "));
+            keywords = result;
+        }
+        return result;
+    }
+
+    private void queryNode(JsonNode node) {
+        require(node != null && NODE_TYPE_SELECT_NODE.equals(text(node, FIELD_TYPE)));
+        var cteMap = node.get(FIELD_CTE_MAP);
+        require(cteMap == null || isEmpty(cteMap.get(FIELD_MAP)));
+        require(isNull(node.get(FIELD_SAMPLE)) && isNull(node.get(FIELD_QUALIFY)));
+        var modifiers = node.get(FIELD_MODIFIERS);
+        sql.append("SELECT ");
+        if (modifiers != null) {
+            for (var modifier : modifiers) {
+                if ("DISTINCT_MODIFIER".equals(text(modifier, FIELD_TYPE))) {
+                    require(isEmpty(modifier.get("distinct_on_targets")));
+                    sql.append("DISTINCT ");
+                }
+            }
+        }
+        var selectList = node.get(FIELD_SELECT_LIST);
+        require(selectList != null && !selectList.isEmpty());
+        for (int i = 0; i < selectList.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            var expression = selectList.get(i);
+            expression(expression);
+            var alias = text(expression, FIELD_ALIAS);
+            if (!alias.isEmpty()) {
+                sql.append(" AS ");
+                identifier(alias);
+            }
+        }
+        var from = node.get(FIELD_FROM_TABLE);
+        if (!isNull(from) && !NODE_TYPE_EMPTY.equals(text(from, FIELD_TYPE))) {
+            sql.append(" FROM ");
+            tableRef(from);
+        }
+        var where = node.get(FIELD_WHERE_CLAUSE);
+        if (!isNull(where)) {
+            sql.append(" WHERE ");
+            expression(where);
+        }
+        groupBy(node);
+        var having = node.get(FIELD_HAVING);
+        if (!isNull(having)) {
+            sql.append(" HAVING ");
+            expression(having);
+        }
+        if (modifiers != null) {
+            for (var modifier : modifiers) {
+                resultModifier(modifier);
+            }
+        }
+    }
+
+    private void groupBy(JsonNode node) {
+        var groups = node.get(FIELD_GROUP_EXPRESSIONS);
+        var sets = node.get(FIELD_GROUP_SETS);
+        var handling = text(node, FIELD_AGGREGATE_HANDLING);
+        if (isEmpty(groups)) {
+            require(isEmpty(sets));
+            if ("FORCE_AGGREGATES".equals(handling)) {
+                sql.append(" GROUP BY ALL");
+            } else {
+                require(handling.isEmpty() || AGGREGATE_HANDLING_STANDARD.equals(handling));
+            }
+            return;
+        }
+        // a single grouping set, printed in the order of its (sorted) indexes
+        require(AGGREGATE_HANDLING_STANDARD.equals(handling) && sets != null && sets.size() == 1
+                && !sets.get(0).isEmpty());
+        var indexes = new TreeSet<Integer>();
+        for (var index : sets.get(0)) {
+            require(index.canConvertToInt() && index.asInt() >= 0 && index.asInt() < groups.size());
+            indexes.add(index.asInt());
+        }
+        sql.append(" GROUP BY ");
+        boolean first = true;
+        for (var index : indexes) {
+            if (!first) {
+                sql.append(", ");
+            }
+            first = false;
+            expression(groups.get(index));
+        }
+    }
+
+    private void resultModifier(JsonNode modifier) {
+        switch (text(modifier, FIELD_TYPE)) {
+            case "DISTINCT_MODIFIER" -> { }
+            case TYPE_ORDER_MODIFIER -> {
+                var orders = modifier.get(FIELD_ORDERS);
+                require(orders != null && !orders.isEmpty());
+                sql.append(" ORDER BY ");
+                orders(orders);
+            }
+            case LIMIT_MODIFIER_TYPE -> {
+                var limit = modifier.get(FIELD_LIMIT);
+                if (!isNull(limit)) {
+                    sql.append(" LIMIT ");
+                    expression(limit);
+                }
+                var offset = modifier.get(FIELD_OFFSET);
+                if (!isNull(offset)) {
+                    sql.append(" OFFSET ");
+                    expression(offset);
+                }
+            }
+            default -> throw new UnsupportedNode();
+        }
+    }
+
+    private void orders(JsonNode orders) {
+        for (int i = 0; i < orders.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            var order = orders.get(i);
+            expression(order.get(FIELD_EXPRESSION));
+            switch (text(order, FIELD_TYPE)) {
+                case "ASCENDING" -> sql.append(" ASC");
+                case "DESCENDING" -> sql.append(" DESC");
+                case "ORDER_DEFAULT" -> { }
+                default -> throw new UnsupportedNode();
+            }
+            switch (text(order, "null_order")) {
+                case "NULLS FIRST" -> sql.append(" NULLS FIRST");
+                case "NULLS LAST" -> sql.append(" NULLS LAST");
+                case "ORDER_DEFAULT" -> { }
+                default -> throw new UnsupportedNode();
+            }
+        }
+    }
+
+    private void tableRef(JsonNode table) {
+        require(isNull(table.get(FIELD_SAMPLE)) && isEmpty(table.get(FIELD_COLUMN_NAME_ALIAS)));
+        switch (text(table, FIELD_TYPE)) {
+            case NODE_TYPE_BASE_TABLE -> {
+                require(isNull(table.get("at_clause")));
+                qualifiedName(text(table, FIELD_CATALOG_NAME), text(table, FIELD_SCHEMA_NAME),
+                        text(table, FIELD_TABLE_NAME));
+            }
+            case NODE_TYPE_TABLE_FUNCTION -> {
+                var function = table.get(FIELD_FUNCTION);
+                require(function != null && FUNCTION_CLASS.equals(text(function, FIELD_CLASS)));
+                expression(function);
+            }
+            case NODE_TYPE_SUBQUERY -> {
+                var subquery = table.get(FIELD_SUBQUERY);
+                require(subquery != null);
+                sql.append('(');
+                queryNode(subquery.get(FIELD_NODE));
+                sql.append(')');
+            }
+            default -> throw new UnsupportedNode();
+        }
+        var alias = text(table, FIELD_ALIAS);
+        if (!alias.isEmpty()) {
+            sql.append(" AS ");
+            identifier(alias);
+        }
+    }
+
+    private void expression(JsonNode expression) {
+        require(expression != null && expression.isObject());
+        var type = text(expression, FIELD_TYPE);
+        switch (text(expression, FIELD_CLASS)) {
+            case COLUMN_REF_CLASS -> {
+                var names = expression.get(FIELD_COLUMN_NAMES);
+                require(names != null && !names.isEmpty());
+                for (int i = 0; i < names.size(); i++) {
+                    if (i > 0) {
+                        sql.append('.');
+                    }
+                    identifier(names.get(i).asText());
+                }
+            }
+            case CONSTANT_CLASS -> constant(expression.get(FIELD_VALUE));
+            case COMPARISON_CLASS -> {
+                var operator = COMPARISONS.get(type);
+                require(operator != null);
+                sql.append('(');
+                expression(expression.get(FIELD_LEFT));
+                sql.append(' ').append(operator).append(' ');
+                expression(expression.get(FIELD_RIGHT));
+                sql.append(')');
+            }
+            case CONJUNCTION_CLASS -> {
+                var children = expression.get(FIELD_CHILDREN);
+                require(children != null && !children.isEmpty());
+                require(CONJUNCTION_TYPE_AND.equals(type) || CONJUNCTION_TYPE_OR.equals(type));
+                sql.append('(');
+                list(children, CONJUNCTION_TYPE_AND.equals(type) ? " AND " : " OR ");
+                sql.append(')');
+            }
+            case OPERATOR_CLASS -> operator(type, expression.get(FIELD_CHILDREN));
+            case "BETWEEN" -> {
+                sql.append('(');
+                expression(expression.get("input"));
+                sql.append(" BETWEEN ");
+                expression(expression.get("lower"));
+                sql.append(" AND ");
+                expression(expression.get("upper"));
+                sql.append(')');
+            }
+            case CAST_CLASS -> {
+                var castType = expression.get(FIELD_CAST_TYPE);
+                require(castType != null && isNull(castType.get(FIELD_TYPE_INFO))
+                        && CAST_TYPES.contains(text(castType, FIELD_ID)));
+                sql.append(expression.path(FIELD_TRY_CAST).asBoolean() ? "TRY_CAST(" : "CAST(");
+                expression(expression.get(FIELD_CHILD));
+                sql.append(" AS ").append(text(castType, FIELD_ID)).append(')');
+            }
+            case FUNCTION_CLASS -> function(expression);
+            case STAR_CLASS -> {
+                require(isEmpty(expression.get("exclude_list")) && isEmpty(expression.get("replace_list"))
+                        && isEmpty(expression.get("qualified_exclude_list")) && isEmpty(expression.get("rename_list"))
+                        && !expression.path("columns").asBoolean() && isNull(expression.get("expr")));
+                var relation = text(expression, FIELD_RELATION_NAME);
+                if (!relation.isEmpty()) {
+                    identifier(relation);
+                    sql.append('.');
+                }
+                sql.append('*');
+            }
+            default -> throw new UnsupportedNode();
+        }
+    }
+
+    private void operator(String type, JsonNode children) {
+        require(children != null && !children.isEmpty());
+        switch (type) {
+            case "OPERATOR_IS_NULL", "OPERATOR_IS_NOT_NULL" -> {
+                require(children.size() == 1);
+                sql.append('(');
+                expression(children.get(0));
+                sql.append("OPERATOR_IS_NULL".equals(type) ? " IS NULL)" : " IS NOT NULL)");
+            }
+            case "OPERATOR_NOT" -> {
+                require(children.size() == 1);
+                sql.append("(NOT ");
+                expression(children.get(0));
+                sql.append(')');
+            }
+            case COMPARE_IN_TYPE, "COMPARE_NOT_IN" -> {
+                require(children.size() > 1);
+                sql.append('(');
+                expression(children.get(0));
+                sql.append(COMPARE_IN_TYPE.equals(type) ? " IN (" : " NOT IN (");
+                for (int i = 1; i < children.size(); i++) {
+                    if (i > 1) {
+                        sql.append(", ");
+                    }
+                    expression(children.get(i));
+                }
+                sql.append("))");
+            }
+            case "OPERATOR_COALESCE" -> {
+                sql.append("COALESCE(");
+                list(children, ", ");
+                sql.append(')');
+            }
+            default -> throw new UnsupportedNode();
+        }
+    }
+
+    private void function(JsonNode function) {
+        var name = text(function, FIELD_FUNCTION_NAME);
+        var children = function.get(FIELD_CHILDREN);
+        var orderBys = function.get(FIELD_ORDER_BYS);
+        require(!name.isEmpty() && children != null && isNull(function.get(FIELD_FILTER))
+                && (orderBys == null || isEmpty(orderBys.get(FIELD_ORDERS)))
+                && !function.path(FIELD_EXPORT_STATE).asBoolean());
+        for (var child : children) {
+            require(text(child, FIELD_ALIAS).isEmpty());
+        }
+        boolean distinct = function.path(FIELD_DISTINCT).asBoolean();
+        if (function.path(FIELD_IS_OPERATOR).asBoolean()) {
+            require(!distinct && !name.contains("__postfix"));
+            if (children.size() == 1) {
+                sql.append(name).append('(');
+                expression(children.get(0));
+                sql.append(')');
+                return;
+            }
+            require(children.size() == 2);
+            sql.append('(');
+            expression(children.get(0));
+            sql.append(' ').append(name).append(' ');
+            expression(children.get(1));
+            sql.append(')');
+            return;
+        }
+        qualifiedName(text(function, "catalog"), text(function, "schema"), name);
+        sql.append('(');
+        if (distinct) {
+            sql.append("DISTINCT ");
+        }
+        list(children, ", ");
+        sql.append(')');
+    }
+
+    private void constant(JsonNode value) {
+        require(value != null);
+        var type = value.get(FIELD_TYPE);
+        require(type != null);
+        var id = text(type, FIELD_ID);
+        require(TYPE_DECIMAL.equals(id) || isNull(type.get(FIELD_TYPE_INFO)));
+        if (value.path(FIELD_IS_NULL).asBoolean()) {
+            require(TYPE_NULL.equals(id));
+            sql.append("NULL");
+            return;
+        }
+        var literal = value.get(FIELD_VALUE);
+        switch (id) {
+            case TYPE_VARCHAR -> {
+                require(literal != null && literal.isTextual());
+                sql.append('\'').append(literal.asText().replace("'", "''")).append('\'');
+            }
+            case TYPE_INTEGER, TYPE_BIGINT -> {
+                require(literal != null && literal.canConvertToLong());
+                sql.append(literal.asLong());
+            }
+            case TYPE_DECIMAL -> {
+                // the unscaled value, as DuckDB keeps decimals that fit a long; DuckDB leaves out
+                // the integer part of a decimal without integer digits, such as .5
+                var width = type.path(FIELD_TYPE_INFO).get("width");
+                var scale = type.path(FIELD_TYPE_INFO).get("scale");
+                require(literal != null && literal.isIntegralNumber() && literal.canConvertToLong()
+                        && width != null && width.canConvertToInt() && scale != null && scale.canConvertToInt());
+                var decimal = BigDecimal.valueOf(literal.asLong(), scale.asInt()).toPlainString();
+                sql.append(width.asInt() > scale.asInt() ? decimal : decimal.replaceFirst("^(-?)0\\.", "$1."));
+            }
+            default -> throw new UnsupportedNode();
+        }
+    }
+
+    private void list(JsonNode expressions, String separator) {
+        for (int i = 0; i < expressions.size(); i++) {
+            if (i > 0) {
+                sql.append(separator);
+            }
+            expression(expressions.get(i));
+        }
+    }
+
+    private void qualifiedName(String catalog, String schema, String name) {
+        if (!catalog.isEmpty()) {
+            identifier(catalog);
+            sql.append('.');
+        }
+        if (!schema.isEmpty()) {
+            identifier(schema);
+            sql.append('.');
+        }
+        identifier(name);
+    }
+
+    /** Writes an identifier, quoted when DuckDB would quote it. */
+    private void identifier(String name) {
+        require(!name.isEmpty());
+        if (requiresQuotes(name)) {
+            sql.append('"').append(name.replace("\"", "\"\"")).append('"');
+        } else {
+            sql.append(name);
+        }
+    }
+
+    private boolean requiresQuotes(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean plain = c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_' || i > 0 && c >= '0' && c <= '9';
+            if (!plain) {
+                return true;
+            }
+        }
+        return reserved.contains(name.toLowerCase(Locale.ROOT));
+    }
+
+    private static String text(JsonNode node, String field) {
+        var value = node.get(field);
+        return value == null || value.isNull() ? "" : value.asText();
+    }
+
+    private static boolean isNull(JsonNode node) {
+        return node == null || node.isNull();
+    }
+
+    private static boolean isEmpty(JsonNode node) {
+        return node == null || node.isNull() || node.isEmpty();
+    }
+
+    private void require(boolean supported) {
+        if (!supported) {
+            throw new UnsupportedNode();
+        }
+    }
+}
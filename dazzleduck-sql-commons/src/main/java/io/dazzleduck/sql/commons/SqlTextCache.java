@@ -0,0 +1,116 @@
+package io.dazzleduck.sql.commons;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * A bounded, least recently used cache for the results of SQL text handling, such as parsing SQL
+ * into a tree or deparsing a tree into SQL, which each take a round trip through DuckDB.
+ *
+ * <p>Entries are weighed when they are added and the least recently used ones are evicted once
+ * the total weight exceeds the bound. Each entry remembers how long it took to load, so hits
+ * can report the time they saved. Values are shared by every caller and must not be changed.
+ */
+public final class SqlTextCache<K, V> {
+
+    private long maxWeight;
+    private final ToLongBiFunction<K, V> weigher;
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder savedNanos = new LongAdder();
+
+    private record Entry<V>(V value, long weight, long loadNanos) { }
+
+    /**
+     * @param maxWeight bound of the total weight of the entries
+     * @param weigher   weight of an entry, in the unit of the bound
+     */
+    public SqlTextCache(long maxWeight, ToLongBiFunction<K, V> weigher) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /** The cached value of a key, {@code null} on a miss. */
+    public V getIfPresent(K key) {
+        synchronized (entries) {
+            var entry = entries.get(key);
+            if (entry != null) {
+                hits.increment();
+                savedNanos.add(entry.loadNanos());
+                return entry.value();
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Adds the value loaded after a miss. Concurrent misses of a key each load it; the loads are
+     * deterministic, so keeping the last one is fine.
+     *
+     * @param loadNanos time it took to load the value
+     */
+    public void put(K key, V value, long loadNanos) {
+        var entry = new Entry<>(value, weigher.applyAsLong(key, value), loadNanos);
+        synchronized (entries) {
+            if (entry.weight() > maxWeight) {
+                return;
+            }
+            var previous = entries.put(key, entry);
+            weight += entry.weight() - (previous == null ? 0 : previous.weight());
+            evict();
+        }
+    }
+
+    /** Changes the bound of the total weight, evicting the least recently used entries over it. */
+    public void setMaxWeight(long maxWeight) {
+        synchronized (entries) {
+            this.maxWeight = maxWeight;
+            evict();
+        }
+    }
+
+    public long maxWeight() {
+        synchronized (entries) {
+            return maxWeight;
+        }
+    }
+
+    private void evict() {
+        var iterator = entries.values().iterator();
+        while (weight > maxWeight && iterator.hasNext()) {
+            weight -= iterator.next().weight();
+            iterator.remove();
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    /** Total time the hits would have taken to load, in nanoseconds. */
+    public long savedNanos() {
+        return savedNanos.sum();
+    }
+
+    public long weight() {
+        synchronized (entries) {
+            return weight;
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            weight = 0;
+        }
+    }
+}
@@ -8,6 +8,9 @@ import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.NullNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.*;
@@ -24,7 +27,7 @@ import static io.dazzleduck.sql.commons.ExpressionConstants.*;
  * <ul>
  *   <li>Parse SQL queries into JSON AST representation using DuckDB's json_serialize_sql</li>
  *   <li>Transform AST nodes (filter pushdown, predicate rewriting, table extraction)</li>
- *   <li>Serialize AST back to SQL using json_deserialize_sql</li>
+ *   <li>Serialize AST back to SQL, using {@link SqlDeparser} or json_deserialize_sql</li>
  * </ul>
  *
  * <p>The JSON AST structure follows DuckDB's logical plan format with nodes containing:
@@ -49,6 +52,17 @@ public class Transformations {
     }
     private static final ObjectMapper objectMapper = new ObjectMapper();
 
+    /** A parsed tree and its estimated heap size, which weighs it in the cache. */
+    private record ParsedSql(JsonNode tree, long heapBytes) { }
+
+    /** Default bound of the parse cache, in estimated heap bytes; see {@link SqlTextCache#setMaxWeight}. */
+    private static final long PARSE_CACHE_MAX_BYTES = 64L * 1024 * 1024;
+    private static final long DEPARSE_CACHE_MAX_CHARS = 8L * 1024 * 1024;
+    private static final SqlTextCache<String, ParsedSql> PARSE_CACHE =
+            new SqlTextCache<>(PARSE_CACHE_MAX_BYTES, (sql, parsed) -> estimatedHeapBytes(sql) + parsed.heapBytes());
+    private static final SqlTextCache<String, String> DEPARSE_CACHE =
+            new SqlTextCache<>(DEPARSE_CACHE_MAX_CHARS, (fingerprint, sql) -> fingerprint.length() + sql.length());
+
     public static final String JSON_SERIALIZE_SQL = "SELECT  cast(json_serialize_sql('%s') as string)";
 
     public static final String JSON_DESERIALIZE_SQL = "SELECT json_deserialize_sql( cast('%s' as json))";
@@ -506,15 +520,124 @@ public class Transformations {
     }
 
     public static JsonNode parseToTree(Connection connection, String sql) throws JsonProcessingException {
-        String escapeSql = escapeSpecialChar(sql);
+        var normalized = normalizeSql(sql);
+        var cached = PARSE_CACHE.getIfPresent(normalized);
+        if (cached != null) {
+            return cached.tree().deepCopy();
+        }
+        long start = System.nanoTime();
+        String escapeSql = escapeSpecialChar(normalized);
         String jsonString = ConnectionPool.collectFirst(connection, String.format(JSON_SERIALIZE_SQL, escapeSql), String.class);
-        return objectMapper.readTree(jsonString);
+        return cacheTree(normalized, jsonString, start);
     }
 
     public static JsonNode parseToTree(String sql) throws SQLException, JsonProcessingException {
-        String escapeSql = escapeSpecialChar(sql);
+        var normalized = normalizeSql(sql);
+        var cached = PARSE_CACHE.getIfPresent(normalized);
+        if (cached != null) {
+            return cached.tree().deepCopy();
+        }
+        long start = System.nanoTime();
+        String escapeSql = escapeSpecialChar(normalized);
         String jsonString = ConnectionPool.collectFirst(String.format(JSON_SERIALIZE_SQL, escapeSql), String.class);
-        return objectMapper.readTree(jsonString);
+        return cacheTree(normalized, jsonString, start);
+    }
+
+    private static JsonNode cacheTree(String normalized, String jsonString, long start) throws JsonProcessingException {
+        var tree = objectMapper.readTree(jsonString);
+        var cached = tree.deepCopy();
+        PARSE_CACHE.put(normalized, new ParsedSql(cached, estimatedHeapBytes(cached)), System.nanoTime() - start);
+        return tree;
+    }
+
+    /**
+     * Rough heap size of a JSON tree, assuming compressed object pointers. Field names are not
+     * counted, as Jackson interns them; booleans and nulls are shared instances.
+     */
+    public static long estimatedHeapBytes(JsonNode node) {
+        if (node.isObject()) {
+            // node, LinkedHashMap and its table, plus one map entry per field
+            long bytes = 88 + 48L * node.size();
+            for (var child : node) {
+                bytes += estimatedHeapBytes(child);
+            }
+            return bytes;
+        }
+        if (node.isArray()) {
+            // node, ArrayList and its backing array
+            long bytes = 56 + 8L * node.size();
+            for (var child : node) {
+                bytes += estimatedHeapBytes(child);
+            }
+            return bytes;
+        }
+        if (node.isTextual()) {
+            return 16 + estimatedHeapBytes(node.textValue());
+        }
+        if (node.isNumber() || node.isBinary() || node.isPojo()) {
+            return 24;
+        }
+        return 0;
+    }
+
+    /** Rough heap size of a string, for weighing cache keys alongside {@link #estimatedHeapBytes(JsonNode)}. */
+    public static long estimatedHeapBytes(String s) {
+        // object and byte array headers plus one byte per char, for the common Latin-1 text
+        return 40 + s.length();
+    }
+
+    /** Cache of parsed trees by normalized SQL text; hits get a copy of the cached tree. */
+    public static SqlTextCache<String, ?> parseCache() {
+        return PARSE_CACHE;
+    }
+
+    /** Cache of SQL deparsed by DuckDB by tree fingerprint. */
+    public static SqlTextCache<String, String> deparseCache() {
+        return DEPARSE_CACHE;
+    }
+
+    /**
+     * Collapses runs of whitespace outside quotes into a single space and trims the SQL, so
+     * queries differing only in layout share a cache entry. SQL with comments, backslashes or
+     * dollar quoting is only trimmed, as collapsing could change where those end.
+     */
+    static String normalizeSql(String sql) {
+        var result = new StringBuilder(sql.length());
+        char quote = 0;
+        boolean space = false;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (quote != 0) {
+                result.append(c);
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (Character.isWhitespace(c)) {
+                space = !result.isEmpty();
+            } else if (c == '\\' || c == '$' || (c == '-' || c == '/') && i + 1 < sql.length()
+                    && sql.charAt(i + 1) == (c == '-' ? '-' : '*')) {
+                return sql.strip();
+            } else {
+                if (space) {
+                    result.append(' ');
+                    space = false;
+                }
+                if (c == '\'' || c == '"') {
+                    quote = c;
+                }
+                result.append(c);
+            }
+        }
+        return quote != 0 ? sql.strip() : result.toString();
+    }
+
+    private static String fingerprint(String json) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(json.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     public static Function<String, JsonNode> start(String sql) {
@@ -557,13 +680,43 @@ public class Transformations {
 
 
     public static String parseToSql(Connection connection, JsonNode node) throws SQLException {
-        String sql = String.format(JSON_DESERIALIZE_SQL, node.toString());
-        return ConnectionPool.collectFirst(connection, sql, String.class);
+        var deparsed = SqlDeparser.deparse(node);
+        if (deparsed != null) {
+            return deparsed;
+        }
+        var json = node.toString();
+        var key = fingerprint(json);
+        var cached = DEPARSE_CACHE.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        long start = System.nanoTime();
+        String sql = String.format(JSON_DESERIALIZE_SQL, json);
+        var result = ConnectionPool.collectFirst(connection, sql, String.class);
+        DEPARSE_CACHE.put(key, result, System.nanoTime() - start);
+        return result;
     }
 
+    /**
+     * Turns a tree back into SQL, in Java for the trees {@link SqlDeparser} supports and with
+     * {@code json_deserialize_sql} for the others.
+     */
     public static String parseToSql(JsonNode node) throws SQLException {
-        String sql = String.format(JSON_DESERIALIZE_SQL, node.toString());
-        return ConnectionPool.collectFirst(sql, String.class);
+        var deparsed = SqlDeparser.deparse(node);
+        if (deparsed != null) {
+            return deparsed;
+        }
+        var json = node.toString();
+        var key = fingerprint(json);
+        var cached = DEPARSE_CACHE.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        long start = System.nanoTime();
+        String sql = String.format(JSON_DESERIALIZE_SQL, json);
+        var result = ConnectionPool.collectFirst(sql, String.class);
+        DEPARSE_CACHE.put(key, result, System.nanoTime() - start);
+        return result;
     }
 
     public static List<JsonNode> collectReferencesWithCast(JsonNode tree)                { return collect(tree, IS_REFERENCE_CAST); }
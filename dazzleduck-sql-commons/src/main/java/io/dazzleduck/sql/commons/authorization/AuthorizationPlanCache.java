@@ -0,0 +1,82 @@
+package io.dazzleduck.sql.commons.authorization;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.dazzleduck.sql.commons.Fingerprint;
+import io.dazzleduck.sql.commons.SqlTextCache;
+import io.dazzleduck.sql.commons.Transformations;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches the authorized, rewritten form of queries, so a query that differs from an earlier one
+ * only in its constants is not walked and rewritten again.
+ *
+ * <p>A query is authorized as a template, with its constants replaced by parameters (see
+ * {@link Fingerprint#parameterize}). The authorized template is cached by the query fingerprint,
+ * the authorizer, the database and schema of the connection and the claims the authorizer reads;
+ * a later query with the same key only binds its own constants into a copy of it. Queries that
+ * are refused are not cached, so they are checked again every time.
+ */
+public final class AuthorizationPlanCache {
+
+    /** Default bound of the cache, in estimated heap bytes; see {@link SqlTextCache#setMaxWeight}. */
+    private static final long MAX_BYTES = 64L * 1024 * 1024;
+    private static final SqlTextCache<String, JsonNode> CACHE = new SqlTextCache<>(MAX_BYTES,
+            (key, plan) -> Transformations.estimatedHeapBytes(key) + Transformations.estimatedHeapBytes(plan));
+
+    @FunctionalInterface
+    interface Authorization {
+        JsonNode authorize(JsonNode template) throws UnauthorizedException;
+    }
+
+    private AuthorizationPlanCache() {
+    }
+
+    /** The cache of authorized templates, for its metrics. */
+    public static SqlTextCache<String, JsonNode> cache() {
+        return CACHE;
+    }
+
+    /**
+     * @param claims        names of the claims the authorizer reads
+     * @param authorization authorizes a template the way the authorizer authorizes queries
+     */
+    static JsonNode authorize(SqlAuthorizer authorizer, String database, String schema, JsonNode query,
+                              Map<String, String> verifiedClaims, List<String> claims,
+                              Authorization authorization) throws UnauthorizedException {
+        var parameterized = Fingerprint.parameterize(query);
+        var key = key(authorizer, database, schema, verifiedClaims, claims, parameterized.fingerprint());
+        var plan = CACHE.getIfPresent(key);
+        if (plan == null) {
+            long start = System.nanoTime();
+            plan = authorization.authorize(parameterized.template());
+            if (plan == null) {
+                return null;
+            }
+            CACHE.put(key, plan, System.nanoTime() - start);
+        }
+        return Fingerprint.bind(plan, parameterized.constants());
+    }
+
+    private static String key(SqlAuthorizer authorizer, String database, String schema,
+                              Map<String, String> verifiedClaims, List<String> claims, String fingerprint) {
+        var key = new StringBuilder(authorizer.getClass().getName());
+        append(key, database);
+        append(key, schema);
+        for (var claim : claims) {
+            append(key, verifiedClaims.get(claim));
+        }
+        return key.append('\n').append(fingerprint).toString();
+    }
+
+    /** Appends a value prefixed by its length, so no value can run into the next one. */
+    private static void append(StringBuilder key, String value) {
+        key.append('\n');
+        if (value == null) {
+            key.append('-');
+        } else {
+            key.append(value.length()).append(':').append(value);
+        }
+    }
+}
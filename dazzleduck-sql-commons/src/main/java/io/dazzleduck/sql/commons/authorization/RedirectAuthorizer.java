@@ -9,16 +9,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.dazzleduck.sql.common.SslUtils;
+import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.Duration;
-import java.time.Instant;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
 
 /**
  * Handles authorization for tokens with {@code token_type=redirect}.
@@ -36,23 +36,19 @@ public class RedirectAuthorizer {
     private static final Logger logger = LoggerFactory.getLogger(RedirectAuthorizer.class);
     private static final ObjectMapper MAPPER = new ObjectMapper();
     private static final HttpClient HTTP_CLIENT = SslUtils.httpClient();
+    private static final int RESOLVE_CACHE_MAX_ENTRIES = 10_000;
+    private static final Duration RESOLVE_RESPONSE_REFRESH_AFTER = Duration.ofMinutes(4);
     private static final Duration RESOLVE_RESPONSE_TTL = Duration.ofMinutes(5);
+    private static final Duration RESOLVE_RESPONSE_MAX_STALE = Duration.ofMinutes(10);
 
     public static final RedirectAuthorizer INSTANCE = new RedirectAuthorizer();
 
-    private record ResolveResponseCacheEntry(ResolveResponse resolveResponse, Instant resolvedAt) {
-        boolean isExpired() {
-            return Instant.now().isAfter(resolvedAt.plus(RESOLVE_RESPONSE_TTL));
-        }
-    }
-
-    // Keyed on user + redirectUrl + bearerToken so that revoking a token or switching
-    // to a different redirect URL always bypasses the cache and triggers a fresh resolve call.
-    private final Map<String, ResolveResponseCacheEntry> resolveResponseCache = new ConcurrentHashMap<>();
-
-    private static String cacheKey(String user, String redirectUrl, String bearerToken) {
-        return user + ":" + redirectUrl + ":" + bearerToken.hashCode();
-    }
+    // Keyed on user + redirectUrl + a digest of the bearer token (see ResolveResponseCache.key) so
+    // that revoking a token or switching to a different redirect URL always bypasses the cache and
+    // triggers a fresh resolve call.
+    private final ResolveResponseCache resolveResponseCache = new ResolveResponseCache(RESOLVE_CACHE_MAX_ENTRIES,
+            RESOLVE_RESPONSE_REFRESH_AFTER, RESOLVE_RESPONSE_TTL, RESOLVE_RESPONSE_MAX_STALE,
+            Executors.newVirtualThreadPerTaskExecutor(), System::nanoTime);
 
     /**
      * Authorizes a query by calling the remote resolve endpoint and matching each
@@ -157,14 +153,22 @@ public class RedirectAuthorizer {
         }
     }
 
+    /** The cache of resolve responses, for its metrics. */
+    public ResolveResponseCache resolveResponseCache() {
+        return resolveResponseCache;
+    }
+
     private ResolveResponse callResolveEndpoint(String user, String bearerToken, String resolveUrl) throws UnauthorizedException {
-        String key = cacheKey(user, resolveUrl, bearerToken);
-        ResolveResponseCacheEntry entry = resolveResponseCache.get(key);
-        if (entry != null && !entry.isExpired()) {
-            logger.debug("RedirectAuthorizer: using cached resolve response for user={}, tables={}", user,
-                    entry.resolveResponse().tables() != null ? entry.resolveResponse().tables().stream().map(r -> r.catalog() + "." + r.schema() + "." + r.tableOrPath()).toList() : "null");
-            return entry.resolveResponse();
-        }
+        return resolveResponseCache.get(ResolveResponseCache.key(user, resolveUrl, bearerToken),
+                () -> resolve(user, bearerToken, resolveUrl));
+    }
+
+    /**
+     * Calls the resolve endpoint. A 401 or 403 response refuses the token; any other failure may
+     * be bridged by serving the previous response.
+     */
+    private ResolveResponse resolve(String user, String bearerToken, String resolveUrl)
+            throws UnauthorizedException, IOException, InterruptedException {
         try {
             logger.debug("RedirectAuthorizer: calling resolve endpoint url={} user={}", resolveUrl, user);
             var request = HttpRequest.newBuilder()
@@ -174,18 +178,17 @@ public class RedirectAuthorizer {
                     .build();
             var response = HTTP_CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
             logger.debug("RedirectAuthorizer: resolve response status={} body={}", response.statusCode(), response.body());
-            if (response.statusCode() != 200) {
+            if (response.statusCode() == 401 || response.statusCode() == 403) {
                 throw new UnauthorizedException(
                         "Resolve endpoint returned status " + response.statusCode());
             }
-            ResolveResponse resolved = MAPPER.readValue(response.body(), ResolveResponse.class);
-            resolveResponseCache.put(key, new ResolveResponseCacheEntry(resolved, Instant.now()));
-            return resolved;
-        } catch (UnauthorizedException e) {
-            throw e;
-        } catch (Exception e) {
+            if (response.statusCode() != 200) {
+                throw new IOException("Resolve endpoint returned status " + response.statusCode());
+            }
+            return MAPPER.readValue(response.body(), ResolveResponse.class);
+        } catch (IOException | RuntimeException e) {
             logger.error("Failed to call resolve endpoint at {}: {}", resolveUrl, e.getMessage(), e);
-            throw new UnauthorizedException("Failed to resolve access: " + e.getMessage());
+            throw e;
         }
     }
 }
@@ -0,0 +1,241 @@
+package io.dazzleduck.sql.commons.authorization;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A bounded cache of the responses of the resolve endpoint, so the queries of a user do not each
+ * wait for the resolve server.
+ *
+ * <p>Concurrent misses of a key share a single call. A response older than the refresh interval
+ * is still served while one background call refreshes it, so a busy user does not stall when it
+ * expires; a response past its time to live is resolved again before it is used. If that call
+ * fails, the old response is served for up to the stale limit, unless the resolve server refused
+ * the token, which drops the response at once. The least recently used responses are evicted
+ * beyond the maximum size.
+ */
+public final class ResolveResponseCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResolveResponseCache.class);
+
+    /** Calls the resolve endpoint; throws {@link UnauthorizedException} if it refuses the token. */
+    @FunctionalInterface
+    interface Resolver {
+        ResolveResponse resolve() throws Exception;
+    }
+
+    private record Entry(ResolveResponse response, long resolvedAt) { }
+
+    private final int maxEntries;
+    private final long refreshAfterNanos;
+    private final long ttlNanos;
+    private final long maxStaleNanos;
+    private final Executor refreshExecutor;
+    private final LongSupplier clock;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<Entry>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder resolves = new LongAdder();
+    private final LongAdder resolveNanos = new LongAdder();
+
+    /**
+     * @param refreshAfter    age after which a served response is refreshed in the background
+     * @param ttl             age after which a response is resolved again before it is served
+     * @param maxStale        how long past its time to live a response is served while resolving fails
+     * @param refreshExecutor runs the background refreshes
+     * @param clock           current time in nanoseconds
+     */
+    ResolveResponseCache(int maxEntries, Duration refreshAfter, Duration ttl, Duration maxStale,
+                         Executor refreshExecutor, LongSupplier clock) {
+        this.maxEntries = maxEntries;
+        this.refreshAfterNanos = refreshAfter.toNanos();
+        this.ttlNanos = ttl.toNanos();
+        this.maxStaleNanos = maxStale.toNanos();
+        this.refreshExecutor = refreshExecutor;
+        this.clock = clock;
+    }
+
+    /**
+     * The key of the response resolved for a user and redirect URL with a bearer token. It holds a
+     * SHA-256 digest of the token rather than the token itself, so a revoked or different token
+     * never shares a response with another one.
+     */
+    static String key(String user, String redirectUrl, String bearerToken) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(bearerToken.getBytes(StandardCharsets.UTF_8));
+            return user + ":" + redirectUrl + ":" + Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    ResolveResponse get(String key, Resolver resolver) throws UnauthorizedException {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        long now = clock.getAsLong();
+        if (entry != null && now - entry.resolvedAt() < ttlNanos) {
+            hits.increment();
+            if (now - entry.resolvedAt() >= refreshAfterNanos) {
+                refresh(key, resolver);
+            }
+            return entry.response();
+        }
+        misses.increment();
+        try {
+            return load(key, resolver).response();
+        } catch (UnauthorizedException e) {
+            throw e;
+        } catch (Exception e) {
+            if (entry != null && now - entry.resolvedAt() < ttlNanos + maxStaleNanos) {
+                staleHits.increment();
+                logger.warn("Serving a stale resolve response after resolving failed: {}", e.getMessage());
+                return entry.response();
+            }
+            throw new UnauthorizedException("Failed to resolve access: " + e.getMessage());
+        }
+    }
+
+    /** Resolves the key in this thread, or waits for the call already resolving it. */
+    private Entry load(String key, Resolver resolver) throws Exception {
+        var future = new CompletableFuture<Entry>();
+        var running = inFlight.putIfAbsent(key, future);
+        if (running == null) {
+            resolve(key, resolver, future);
+            running = future;
+        }
+        try {
+            return running.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UnauthorizedException("Interrupted while resolving access");
+        }
+    }
+
+    /** Starts a background refresh of the key, unless it is already being resolved. */
+    private void refresh(String key, Resolver resolver) {
+        var future = new CompletableFuture<Entry>();
+        if (inFlight.putIfAbsent(key, future) != null) {
+            return;
+        }
+        refreshes.increment();
+        future.whenComplete((entry, e) -> {
+            if (e != null) {
+                logger.warn("Background refresh of a resolve response failed: {}", e.getMessage());
+            }
+        });
+        try {
+            refreshExecutor.execute(() -> resolve(key, resolver, future));
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key, future);
+        }
+    }
+
+    private void resolve(String key, Resolver resolver, CompletableFuture<Entry> future) {
+        long start = System.nanoTime();
+        try {
+            var entry = new Entry(resolver.resolve(), clock.getAsLong());
+            put(key, entry);
+            future.complete(entry);
+        } catch (UnauthorizedException e) {
+            // the resolve server refused the token, so its earlier response must not be served
+            synchronized (entries) {
+                entries.remove(key);
+            }
+            failures.increment();
+            future.completeExceptionally(e);
+        } catch (Exception e) {
+            failures.increment();
+            future.completeExceptionally(e);
+        } finally {
+            resolves.increment();
+            resolveNanos.add(System.nanoTime() - start);
+            inFlight.remove(key, future);
+        }
+    }
+
+    private void put(String key, Entry entry) {
+        synchronized (entries) {
+            entries.put(key, entry);
+            var iterator = entries.values().iterator();
+            while (entries.size() > maxEntries && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    /** Lookups served from the cache, including those that started a background refresh. */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /** Lookups that waited for the resolve endpoint. */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /** Misses served an expired response because resolving failed. */
+    public long staleHits() {
+        return staleHits.sum();
+    }
+
+    /** Background refreshes started before a response expired. */
+    public long refreshes() {
+        return refreshes.sum();
+    }
+
+    /** Calls to the resolve endpoint that failed or were refused. */
+    public long failures() {
+        return failures.sum();
+    }
+
+    /** Calls made to the resolve endpoint. */
+    public long resolves() {
+        return resolves.sum();
+    }
+
+    /** Total time spent calling the resolve endpoint, in nanoseconds. */
+    public long resolveNanos() {
+        return resolveNanos.sum();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+}
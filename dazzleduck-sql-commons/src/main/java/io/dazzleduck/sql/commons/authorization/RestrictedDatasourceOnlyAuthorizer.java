@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import io.dazzleduck.sql.common.Headers;
 import io.dazzleduck.sql.commons.Transformations;
 
+import java.util.List;
 import java.util.Map;
 
 import static io.dazzleduck.sql.common.Headers.HEADER_TOKEN_REDIRECT;
@@ -56,6 +57,10 @@ public class RestrictedDatasourceOnlyAuthorizer implements SqlAuthorizer {
 
     public static SqlAuthorizer INSTANCE = new RestrictedDatasourceOnlyAuthorizer();
 
+    /** Claims read in inline mode, which the authorized plan of a query depends on. */
+    private static final List<String> CLAIMS = List.of(Headers.HEADER_ACCESS, Headers.HEADER_PATH,
+            Headers.HEADER_FUNCTION, Headers.HEADER_TABLE, Headers.HEADER_FILTER);
+
     private RestrictedDatasourceOnlyAuthorizer() {
 
     }
@@ -69,6 +74,12 @@ public class RestrictedDatasourceOnlyAuthorizer implements SqlAuthorizer {
         }
 
         // --- Inline mode ---
+        return AuthorizationPlanCache.authorize(this, database, schema, query, verifiedClaims, CLAIMS,
+                template -> authorizeInline(database, schema, template, verifiedClaims));
+    }
+
+    private JsonNode authorizeInline(String database, String schema, JsonNode query,
+                                     Map<String, String> verifiedClaims) throws UnauthorizedException {
         var catalogSchemaTables =
                 Transformations.collectAllTableReferences(Transformations.getFirstStatementNode(query), database, schema);
 
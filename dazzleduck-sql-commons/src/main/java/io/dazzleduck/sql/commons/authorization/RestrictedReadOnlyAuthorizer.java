@@ -6,6 +6,7 @@ import io.dazzleduck.sql.commons.ExpressionConstants;
 import io.dazzleduck.sql.commons.Transformations;
 
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -28,11 +29,21 @@ public class RestrictedReadOnlyAuthorizer implements SqlAuthorizer {
 
     public static final SqlAuthorizer INSTANCE = new RestrictedReadOnlyAuthorizer();
 
+    /** Claims the filters injected into a query depend on. */
+    private static final List<String> CLAIMS = List.of(Headers.HEADER_ACCESS, Headers.HEADER_FILTER,
+            Headers.HEADER_TABLE, Headers.HEADER_DATABASE, Headers.HEADER_SCHEMA);
+
     private RestrictedReadOnlyAuthorizer() {}
 
     @Override
     public JsonNode authorize(String user, String database, String schema, JsonNode query,
                               Map<String, String> verifiedClaims) throws UnauthorizedException {
+        return AuthorizationPlanCache.authorize(this, database, schema, query, verifiedClaims, CLAIMS,
+                template -> authorizeTemplate(user, database, schema, template, verifiedClaims));
+    }
+
+    private JsonNode authorizeTemplate(String user, String database, String schema, JsonNode query,
+                                       Map<String, String> verifiedClaims) throws UnauthorizedException {
         SelectOnlyAuthorizer.INSTANCE.authorize(user, database, schema, query, verifiedClaims);
 
         // Multi-statement queries are rejected here: the CTE filter injection only
@@ -0,0 +1,164 @@
+package io.dazzleduck.sql.commons.delta;
+
+import io.dazzleduck.sql.commons.FileStatus;
+import io.delta.kernel.Snapshot;
+import io.delta.kernel.Table;
+import io.delta.kernel.engine.Engine;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Caches the latest snapshot of Delta tables, so planning a query does not replay the whole log.
+ *
+ * <p>A cached snapshot is checked against the {@code _delta_log} directory by listing the names
+ * from the next version on: when no newer commit or checkpoint is there, the snapshot and the add
+ * files listed from it are reused (a hit). Otherwise the latest snapshot is loaded again (a miss)
+ * through a {@link LogCachingEngine}, which reads only the commits written since and replays the
+ * rest of the log from the batches it kept.
+ *
+ * <p>Both are bounded: at most {@code maxTables} tables are kept, the least recently used being
+ * dropped with the log batches they kept, and the log batches of all tables share one bound on
+ * their number of rows.
+ */
+final class DeltaSnapshotCache {
+
+    private static final Pattern LOG_VERSION = Pattern.compile("^(\\d{20})\\.");
+    private static final int DEFAULT_MAX_TABLES = 256;
+    private static final long DEFAULT_MAX_LOG_ROWS = 2_000_000;
+
+    private final Engine engine;
+    private final LogCachingEngine.ReadCache reads;
+    private final Map<String, CachedTable> tables;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /** The snapshot of a table with the engine it was loaded with, to scan it. */
+    static final class CachedTable {
+        private final Table table;
+        private final LogCachingEngine engine;
+        private Snapshot snapshot;
+        private long version;
+        private List<FileStatus> files;
+
+        private CachedTable(Table table, LogCachingEngine engine) {
+            this.table = table;
+            this.engine = engine;
+        }
+
+        Engine engine() {
+            return engine;
+        }
+
+        synchronized Snapshot snapshot() {
+            return snapshot;
+        }
+
+        /** Every add file of the snapshot, listed once per snapshot. */
+        synchronized List<FileStatus> files(FileLister lister) throws IOException {
+            if (files == null) {
+                files = List.copyOf(lister.list(engine, snapshot));
+            }
+            return files;
+        }
+    }
+
+    @FunctionalInterface
+    interface FileLister {
+        List<FileStatus> list(Engine engine, Snapshot snapshot) throws IOException;
+    }
+
+    DeltaSnapshotCache(Engine engine) {
+        this(engine, DEFAULT_MAX_TABLES, DEFAULT_MAX_LOG_ROWS);
+    }
+
+    /**
+     * @param maxTables  tables whose snapshot is kept
+     * @param maxLogRows rows of log batches kept for all tables together
+     */
+    DeltaSnapshotCache(Engine engine, int maxTables, long maxLogRows) {
+        this.engine = engine;
+        this.reads = new LogCachingEngine.ReadCache(maxLogRows);
+        this.tables = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedTable> eldest) {
+                if (size() <= maxTables) {
+                    return false;
+                }
+                eldest.getValue().engine.clear();
+                return true;
+            }
+        };
+    }
+
+    /** The table with its latest snapshot. */
+    CachedTable get(String basePath) throws IOException {
+        CachedTable cached;
+        synchronized (tables) {
+            cached = tables.get(basePath);
+        }
+        if (cached == null) {
+            var created = new CachedTable(Table.forPath(engine, basePath), new LogCachingEngine(engine, reads));
+            synchronized (tables) {
+                cached = tables.putIfAbsent(basePath, created);
+            }
+            if (cached == null) {
+                cached = created;
+            }
+        }
+        synchronized (cached) {
+            if (cached.snapshot != null && !hasNewerVersion(cached)) {
+                hits.increment();
+                return cached;
+            }
+            misses.increment();
+            cached.engine.nextGeneration();
+            cached.snapshot = cached.table.getLatestSnapshot(cached.engine);
+            cached.version = cached.snapshot.getVersion(cached.engine);
+            cached.files = null;
+            return cached;
+        }
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    /** Rows of log batches currently kept. */
+    long cachedLogRows() {
+        return reads.rows();
+    }
+
+    /** Drops the snapshot of a table. */
+    void invalidate(String basePath) {
+        CachedTable removed;
+        synchronized (tables) {
+            removed = tables.remove(basePath);
+        }
+        if (removed != null) {
+            removed.engine.clear();
+        }
+    }
+
+    private boolean hasNewerVersion(CachedTable cached) throws IOException {
+        var logPath = cached.table.getPath(engine) + "/_delta_log/";
+        try (var files = engine.getFileSystemClient().listFrom(logPath + "%020d".formatted(cached.version + 1))) {
+            while (files.hasNext()) {
+                var path = files.next().getPath();
+                var matcher = LOG_VERSION.matcher(path.substring(path.lastIndexOf('/') + 1));
+                if (matcher.find() && Long.parseLong(matcher.group(1)) > cached.version) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
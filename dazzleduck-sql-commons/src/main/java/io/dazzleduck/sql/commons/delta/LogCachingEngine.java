@@ -0,0 +1,244 @@
+package io.dazzleduck.sql.commons.delta;
+
+import io.delta.kernel.data.ColumnVector;
+import io.delta.kernel.data.ColumnarBatch;
+import io.delta.kernel.data.FilteredColumnarBatch;
+import io.delta.kernel.data.Row;
+import io.delta.kernel.engine.*;
+import io.delta.kernel.expressions.Column;
+import io.delta.kernel.expressions.Predicate;
+import io.delta.kernel.internal.util.Utils;
+import io.delta.kernel.types.StructType;
+import io.delta.kernel.utils.CloseableIterator;
+import io.delta.kernel.utils.DataFileStatus;
+import io.delta.kernel.utils.FileStatus;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * An {@link Engine} that keeps the batches it read from commit and checkpoint files of a Delta
+ * log. Those files never change once written, so replaying the log again only reads the commits
+ * added since, and the rest of the replay runs from memory.
+ *
+ * <p>The batches are kept in a {@link ReadCache}, which may be shared by the engines of several
+ * tables and evicts the least recently used files beyond its bound. Reads are also tagged with a
+ * generation; {@link #nextGeneration()} starts a new one and drops the files of this engine not
+ * read during the previous one, such as commits folded into a newer checkpoint.
+ */
+final class LogCachingEngine implements Engine {
+
+    private static final Pattern IMMUTABLE_LOG_FILE = Pattern.compile("\\d{20}\\.(json|checkpoint\\..*parquet)$");
+
+    private final Engine delegate;
+    private final ReadCache reads;
+    private volatile long generation;
+
+    private static final class CachedRead {
+        private final LogCachingEngine owner;
+        private final List<ColumnarBatch> batches;
+        private final long rows;
+        private volatile long generation;
+
+        private CachedRead(LogCachingEngine owner, List<ColumnarBatch> batches, long generation) {
+            this.owner = owner;
+            this.batches = batches;
+            this.rows = batches.stream().mapToLong(ColumnarBatch::getSize).sum();
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * The batches read from log files, bounded by their total number of rows: once over the
+     * bound, the least recently used files are dropped and read again when needed.
+     */
+    static final class ReadCache {
+        private final long maxRows;
+        private final LinkedHashMap<String, CachedRead> reads = new LinkedHashMap<>(16, 0.75f, true);
+        private long rows;
+
+        ReadCache(long maxRows) {
+            this.maxRows = maxRows;
+        }
+
+        synchronized long rows() {
+            return rows;
+        }
+
+        private synchronized CachedRead get(String key) {
+            return reads.get(key);
+        }
+
+        private synchronized void put(String key, CachedRead read) {
+            if (read.rows > maxRows) {
+                return;
+            }
+            var previous = reads.put(key, read);
+            rows += read.rows - (previous == null ? 0 : previous.rows);
+            var iterator = reads.values().iterator();
+            while (rows > maxRows && iterator.hasNext()) {
+                rows -= iterator.next().rows;
+                iterator.remove();
+            }
+        }
+
+        /** Drops the files of an engine, all of them or those last read before a generation. */
+        private synchronized void remove(LogCachingEngine owner, long beforeGeneration) {
+            var iterator = reads.values().iterator();
+            while (iterator.hasNext()) {
+                var read = iterator.next();
+                if (read.owner == owner && read.generation < beforeGeneration) {
+                    rows -= read.rows;
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface Reader {
+        CloseableIterator<ColumnarBatch> read(CloseableIterator<FileStatus> files) throws IOException;
+    }
+
+    LogCachingEngine(Engine delegate, ReadCache reads) {
+        this.delegate = delegate;
+        this.reads = reads;
+    }
+
+    /** Starts a new generation, dropping the files not read since the previous one started. */
+    void nextGeneration() {
+        long previous = generation;
+        reads.remove(this, previous);
+        generation = previous + 1;
+    }
+
+    /** Drops every file this engine read, once its table is no longer cached. */
+    void clear() {
+        reads.remove(this, Long.MAX_VALUE);
+    }
+
+    @Override
+    public ExpressionHandler getExpressionHandler() {
+        return delegate.getExpressionHandler();
+    }
+
+    @Override
+    public FileSystemClient getFileSystemClient() {
+        return delegate.getFileSystemClient();
+    }
+
+    @Override
+    public JsonHandler getJsonHandler() {
+        var handler = delegate.getJsonHandler();
+        return new JsonHandler() {
+            @Override
+            public ColumnarBatch parseJson(ColumnVector jsonStringVector, StructType outputSchema,
+                                           Optional<ColumnVector> selectionVector) {
+                return handler.parseJson(jsonStringVector, outputSchema, selectionVector);
+            }
+
+            @Override
+            public CloseableIterator<ColumnarBatch> readJsonFiles(CloseableIterator<FileStatus> fileIter,
+                                                                  StructType physicalSchema,
+                                                                  Optional<Predicate> predicate) {
+                return read(fileIter, physicalSchema, predicate,
+                        files -> handler.readJsonFiles(files, physicalSchema, predicate));
+            }
+
+            @Override
+            public void writeJsonFileAtomically(String filePath, CloseableIterator<Row> data,
+                                                boolean overwrite) throws IOException {
+                handler.writeJsonFileAtomically(filePath, data, overwrite);
+            }
+        };
+    }
+
+    @Override
+    public ParquetHandler getParquetHandler() {
+        var handler = delegate.getParquetHandler();
+        return new ParquetHandler() {
+            @Override
+            public CloseableIterator<ColumnarBatch> readParquetFiles(CloseableIterator<FileStatus> fileIter,
+                                                                     StructType physicalSchema,
+                                                                     Optional<Predicate> predicate) {
+                return read(fileIter, physicalSchema, predicate,
+                        files -> handler.readParquetFiles(files, physicalSchema, predicate));
+            }
+
+            @Override
+            public CloseableIterator<DataFileStatus> writeParquetFiles(String directoryPath,
+                                                                       CloseableIterator<FilteredColumnarBatch> dataIter,
+                                                                       List<Column> statsColumns) throws IOException {
+                return handler.writeParquetFiles(directoryPath, dataIter, statsColumns);
+            }
+
+            @Override
+            public void writeParquetFileAtomically(String filePath,
+                                                   CloseableIterator<FilteredColumnarBatch> data) throws IOException {
+                handler.writeParquetFileAtomically(filePath, data);
+            }
+        };
+    }
+
+    /** Reads the files one by one, from memory when they were read before with the same schema. */
+    private CloseableIterator<ColumnarBatch> read(CloseableIterator<FileStatus> files,
+                                                 StructType schema,
+                                                 Optional<Predicate> predicate,
+                                                 Reader reader) {
+        return new CloseableIterator<>() {
+            private CloseableIterator<ColumnarBatch> current = Utils.toCloseableIterator(Collections.emptyIterator());
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext()) {
+                    if (!files.hasNext()) {
+                        return false;
+                    }
+                    try {
+                        current.close();
+                        current = open(files.next(), schema, predicate, reader);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public ColumnarBatch next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+
+            @Override
+            public void close() throws IOException {
+                Utils.closeCloseables(current, files);
+            }
+        };
+    }
+
+    private CloseableIterator<ColumnarBatch> open(FileStatus file,
+                                                  StructType schema,
+                                                  Optional<Predicate> predicate,
+                                                  Reader reader) throws IOException {
+        if (!IMMUTABLE_LOG_FILE.matcher(file.getPath()).find()) {
+            return reader.read(Utils.singletonCloseableIterator(file));
+        }
+        var key = file.getPath() + '\n' + schema + '\n' + predicate;
+        var cached = reads.get(key);
+        if (cached == null) {
+            var batches = new ArrayList<ColumnarBatch>();
+            try (var read = reader.read(Utils.singletonCloseableIterator(file))) {
+                read.forEachRemaining(batches::add);
+            }
+            cached = new CachedRead(this, batches, generation);
+            reads.put(key, cached);
+        }
+        cached.generation = generation;
+        return Utils.toCloseableIterator(cached.batches.iterator());
+    }
+}
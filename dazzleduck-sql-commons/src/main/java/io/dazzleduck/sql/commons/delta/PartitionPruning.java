@@ -2,8 +2,6 @@ package io.dazzleduck.sql.commons.delta;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import io.delta.kernel.Scan;
-import io.delta.kernel.Snapshot;
-import io.delta.kernel.Table;
 import io.delta.kernel.data.FilteredColumnarBatch;
 import io.delta.kernel.data.Row;
 import io.delta.kernel.defaults.engine.DefaultEngine;
@@ -28,6 +26,8 @@ import java.util.*;
 public class PartitionPruning {
     private static final Logger logger = LoggerFactory.getLogger(PartitionPruning.class);
 
+    private static final DeltaSnapshotCache SNAPSHOTS = new DeltaSnapshotCache(DefaultEngine.create(new Configuration()));
+
     /**
      * Prunes files in a Delta table based on the provided filter and partition data types.
      *
@@ -60,39 +60,33 @@ public class PartitionPruning {
             return getAllFilesFromDeltaTable(basePath);
         }
 
-        // Create a new Engine instance with the provided Configuration
-        Engine engine = DefaultEngine.create(new Configuration());
-
-        // Get the Delta table and its latest snapshot
-        Table deltaTable = Table.forPath(engine, basePath);
-        Snapshot snapshot = deltaTable.getLatestSnapshot(engine);
+        var table = SNAPSHOTS.get(basePath);
+        Engine engine = table.engine();
         // Convert the where clause to a Delta predicate
         Predicate deltaLakePredicate = (Predicate) Transformations.toDeltaPredicate(whereClause);
-        Scan filterScan = snapshot.getScanBuilder(engine)
+        Scan filterScan = table.snapshot().getScanBuilder(engine)
                 .withFilter(engine, deltaLakePredicate)
                 .build();
 
         // Process the scan to collect matching files
-        List<io.dazzleduck.sql.commons.FileStatus> result = new ArrayList<>();
-        try (CloseableIterator<FilteredColumnarBatch> fileIter = filterScan.getScanFiles(engine)) {
-            while (fileIter.hasNext()) {
-                FilteredColumnarBatch batch = fileIter.next();
-                try (CloseableIterator<Row> rowIter = batch.getRows()) {
-                    while (rowIter.hasNext()) {
-                        Row row = rowIter.next();
-                        FileStatus fileStatus = InternalScanFileUtils.getAddFileStatus(row);
-                        // Create a new FileStatus object with the file path, size, and modification time
-                        result.add(new io.dazzleduck.sql.commons.FileStatus(
-                                fileStatus.getPath().replaceFirst("^file:", ""),
-                                fileStatus.getSize(),
-                                fileStatus.getModificationTime())
-                        );
-                    }
-                }
-            }
-            result.sort(Comparator.comparing(io.dazzleduck.sql.commons.FileStatus::lastModified));
-            return result;
-        }
+        List<io.dazzleduck.sql.commons.FileStatus> result = scanFiles(engine, filterScan);
+        result.sort(Comparator.comparing(io.dazzleduck.sql.commons.FileStatus::lastModified));
+        return result;
+    }
+
+    /** Number of queries that reused the cached snapshot of their table. */
+    public static long snapshotCacheHits() {
+        return SNAPSHOTS.hits();
+    }
+
+    /** Number of queries that loaded the snapshot of their table, because it was new or had advanced. */
+    public static long snapshotCacheMisses() {
+        return SNAPSHOTS.misses();
+    }
+
+    /** Drops the cached snapshot of a table. */
+    public static void invalidateSnapshot(String basePath) {
+        SNAPSHOTS.invalidate(basePath);
     }
 
     /**
@@ -100,30 +94,21 @@ public class PartitionPruning {
      *
      * @param basePath the base path of the Delta table
      * @return a list of FileStatus objects representing the pruned files
+     * @throws IOException if the Delta log cannot be read; an unreadable table is not an empty one
      */
-    private static List<io.dazzleduck.sql.commons.FileStatus> getAllFilesFromDeltaTable(String basePath) {
-        // Create a new Engine instance with the provided Configuration
-        Engine engine = DefaultEngine.create(new Configuration());
-
-        // Get the Delta table and its latest snapshot
-        Table deltaTable = Table.forPath(engine, basePath);
-        Snapshot snapshot = deltaTable.getLatestSnapshot(engine);
-
-        // Create a new Scan instance without any filters
-        Scan scan = snapshot.getScanBuilder(engine).build();
+    private static List<io.dazzleduck.sql.commons.FileStatus> getAllFilesFromDeltaTable(String basePath) throws IOException {
+        var table = SNAPSHOTS.get(basePath);
+        return new ArrayList<>(table.files((engine, snapshot) -> scanFiles(engine, snapshot.getScanBuilder(engine).build())));
+    }
 
-        // Initialize an empty list to store the pruned files
+    private static List<io.dazzleduck.sql.commons.FileStatus> scanFiles(Engine engine, Scan scan) throws IOException {
         List<io.dazzleduck.sql.commons.FileStatus> result = new ArrayList<>();
-
         try (CloseableIterator<FilteredColumnarBatch> fileIter = scan.getScanFiles(engine)) {
-            // Iterate over the files in the scan
             while (fileIter.hasNext()) {
                 FilteredColumnarBatch batch = fileIter.next();
                 try (CloseableIterator<Row> rowIter = batch.getRows()) {
-                    // Iterate over the rows in the batch
                     while (rowIter.hasNext()) {
                         Row row = rowIter.next();
-                        // Get the FileStatus object from the row
                         FileStatus fileStatus = InternalScanFileUtils.getAddFileStatus(row);
                         // Create a new FileStatus object with the file path, size, and modification time
                         result.add(new io.dazzleduck.sql.commons.FileStatus(
@@ -134,10 +119,7 @@ public class PartitionPruning {
                     }
                 }
             }
-        } catch (IOException e) {
-            // Log any errors that occur during file pruning
-            logger.error("Error processing scan files: {}", e.getMessage());
         }
         return result;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,132 @@
+package io.dazzleduck.sql.commons.ducklake;
+
+import io.dazzleduck.sql.commons.ConnectionPool;
+import io.dazzleduck.sql.commons.RuntimeSqlException;
+
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the data files of DuckLake tables with their column statistics in local in-memory
+ * tables, so pruning a query scans a local table instead of joining and pivoting the metadata
+ * database, which is often a remote Postgres or SQLite database.
+ *
+ * <p>A local table has one row per live data file: its path, size, record count and mapping,
+ * and the {@code min_<column_id>}, {@code max_<column_id>} and {@code null_count_<column_id>}
+ * of the columns filters have referred to so far, not of every column of a possibly wide table.
+ * It is tagged with the DuckLake snapshot it was built at. When the metadata has a newer
+ * snapshot, only the files added or removed since are read and applied; a filter on a column
+ * not in the table yet, or a dropped column, builds the table again, keeping the columns it had.
+ */
+final class DucklakeFileStatsIndex {
+
+    private static final String LOCAL_DATABASE = "__dazzleduck_ducklake_stats";
+    private static final AtomicLong LOCAL_TABLE_IDS = new AtomicLong();
+
+    private static final String ATTACH_LOCAL_DATABASE = "ATTACH IF NOT EXISTS ':memory:' AS " + LOCAL_DATABASE;
+    private static final String SNAPSHOT_QUERY = "SELECT max(snapshot_id) FROM %s.ducklake_snapshot";
+    private static final String STATS = "{'key' : concat('min_', column_id), 'value' : min_value}," +
+            " {'key' : concat('max_', column_id), 'value' : max_value}," +
+            " {'key' : concat('null_count_', column_id), 'value' : cast(null_count AS varchar)}";
+    private static final String FILES_QUERY =
+            "WITH L AS (SELECT data_file_id, path, path_is_relative, file_size_bytes, record_count, mapping_id FROM %1$s.ducklake_data_file " +
+                    "WHERE table_id = %2$s AND begin_snapshot > %3$s AND begin_snapshot <= %6$s AND (end_snapshot IS NULL OR end_snapshot > %6$s))";
+    private static final String FILES_WITH_STATS_QUERY = FILES_QUERY + ",\n" +
+            "B AS (SELECT data_file_id, unnest([" + STATS + "]) AS nested FROM %1$s.ducklake_file_column_stats " +
+            "WHERE table_id = %2$s AND column_id IN (%4$s) AND data_file_id IN (SELECT data_file_id FROM L)),\n" +
+            "AA AS (SELECT data_file_id, nested.key AS stat, nested.value AS value FROM B),\n" +
+            "P AS (PIVOT AA ON stat IN (%5$s) USING first(value) GROUP BY data_file_id)\n" +
+            "SELECT L.*, P.* EXCLUDE (data_file_id) FROM L LEFT OUTER JOIN P ON L.data_file_id = P.data_file_id";
+    private static final String REMOVED_FILES_QUERY =
+            "DELETE FROM %s WHERE data_file_id IN (SELECT data_file_id FROM %s.ducklake_data_file " +
+                    "WHERE table_id = %s AND end_snapshot > %s AND end_snapshot <= %s)";
+
+    private final String metadataDatabase;
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+
+    /** The local table of a DuckLake table, the snapshot it is up to date with and its indexed columns. */
+    private record Entry(String localTable, long snapshotId, Set<Long> columnIds) { }
+
+    DucklakeFileStatsIndex(String metadataDatabase) {
+        this.metadataDatabase = metadataDatabase;
+    }
+
+    /**
+     * Brings the local table of a DuckLake table up to date with the latest snapshot.
+     *
+     * @param liveColumnIds       ids of the live columns of the table
+     * @param referencedColumnIds ids of the columns the query filters on, whose statistics the
+     *                            local table must have
+     * @return the qualified name of the local table
+     */
+    String get(long tableId, Set<Long> liveColumnIds, Set<Long> referencedColumnIds) throws SQLException {
+        var latestSnapshot = ConnectionPool.collectFirst(SNAPSHOT_QUERY.formatted(metadataDatabase), Long.class);
+        try {
+            return entries.compute(tableId, (key, cached) -> {
+                try {
+                    return refresh(tableId, liveColumnIds, referencedColumnIds, latestSnapshot, cached);
+                } catch (SQLException e) {
+                    throw new RuntimeSqlException(e);
+                }
+            }).localTable();
+        } catch (RuntimeSqlException e) {
+            throw (SQLException) e.getCause();
+        }
+    }
+
+    /** Drops the local table of a DuckLake table. */
+    void invalidate(long tableId) {
+        var removed = entries.remove(tableId);
+        if (removed != null) {
+            ConnectionPool.execute("DROP TABLE IF EXISTS " + removed.localTable());
+        }
+    }
+
+    private Entry refresh(long tableId, Set<Long> liveColumnIds, Set<Long> referencedColumnIds,
+                          long latestSnapshot, Entry cached) throws SQLException {
+        if (cached != null && liveColumnIds.containsAll(cached.columnIds())
+                && cached.columnIds().containsAll(referencedColumnIds)) {
+            if (cached.snapshotId() >= latestSnapshot) {
+                return cached;
+            }
+            ConnectionPool.executeBatchInTxn(new String[]{
+                    REMOVED_FILES_QUERY.formatted(cached.localTable(), metadataDatabase, tableId, cached.snapshotId(), latestSnapshot),
+                    "INSERT INTO %s BY NAME %s".formatted(cached.localTable(),
+                            filesQuery(tableId, cached.columnIds(), cached.snapshotId(), latestSnapshot))
+            });
+            return new Entry(cached.localTable(), latestSnapshot, cached.columnIds());
+        }
+        var columnIds = new HashSet<>(referencedColumnIds);
+        if (cached != null) {
+            cached.columnIds().stream().filter(liveColumnIds::contains).forEach(columnIds::add);
+        }
+        var localTable = cached != null ? cached.localTable()
+                : "%s.main.files_%s".formatted(LOCAL_DATABASE, LOCAL_TABLE_IDS.incrementAndGet());
+        ConnectionPool.executeBatch(new String[]{
+                ATTACH_LOCAL_DATABASE,
+                "CREATE OR REPLACE TABLE %s AS %s".formatted(localTable, filesQuery(tableId, columnIds, -1, latestSnapshot))
+        });
+        return new Entry(localTable, latestSnapshot, Set.copyOf(columnIds));
+    }
+
+    /**
+     * The files live at {@code atSnapshot} that were added after {@code afterSnapshot}, with the
+     * statistics of their columns. Bounding by {@code atSnapshot} keeps a commit landing during a
+     * refresh for the next one.
+     */
+    private String filesQuery(long tableId, Set<Long> columnIds, long afterSnapshot, long atSnapshot) {
+        if (columnIds.isEmpty()) {
+            return FILES_QUERY.formatted(metadataDatabase, tableId, afterSnapshot, "", "", atSnapshot) + "\nSELECT * FROM L";
+        }
+        var ids = columnIds.stream().sorted().map(String::valueOf).collect(Collectors.joining(", "));
+        var stats = columnIds.stream().sorted()
+                .map(id -> "'min_%1$s', 'max_%1$s', 'null_count_%1$s'".formatted(id))
+                .collect(Collectors.joining(", "));
+        return FILES_WITH_STATS_QUERY.formatted(metadataDatabase, tableId, afterSnapshot, ids, stats, atSnapshot);
+    }
+}
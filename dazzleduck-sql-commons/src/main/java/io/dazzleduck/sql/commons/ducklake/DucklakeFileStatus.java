@@ -2,16 +2,17 @@ package io.dazzleduck.sql.commons.ducklake;
 
 import io.dazzleduck.sql.commons.FileStatus;
 
-public record DucklakeFileStatus(String fileName, Long size, Long lastModified, Boolean pathIsRelative, Long tableId, Long mappingId){
+public record DucklakeFileStatus(String fileName, Long size, Long lastModified, Boolean pathIsRelative, Long tableId, Long mappingId,
+                                 Long recordCount){
     public FileStatus toFileStatus(){
-        return new FileStatus(fileName, size, lastModified);
+        return new FileStatus(fileName, size, lastModified, recordCount);
     }
 
     public FileStatus resolvedFileStatus(String basePath){
         if (pathIsRelative != null && pathIsRelative) {
             var resolvedPath = basePath + "/" + fileName;
-            return new FileStatus(resolvedPath, size, lastModified);
+            return new FileStatus(resolvedPath, size, lastModified, recordCount);
         }
-        return new FileStatus(fileName, size, lastModified);
+        return new FileStatus(fileName, size, lastModified, recordCount);
     }
 }
\ No newline at end of file
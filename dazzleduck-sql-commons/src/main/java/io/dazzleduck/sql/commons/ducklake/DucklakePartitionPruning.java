@@ -9,18 +9,16 @@ import io.dazzleduck.sql.commons.Transformations;
 
 import java.sql.SQLException;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 public class DucklakePartitionPruning {
 
-    private static final String NESTED = "{'key' : concat('min_', column_id), 'value' : min_value }," +
-            " {'key' : concat('max_', column_id), 'value' :  max_value}," +
-            " {'key' : concat('null_count_', column_id), 'value' : cast(null_count as varchar)}," +
-            " {'key' : concat('contains_nan_', column_id), 'value' : cast(contains_nan as varchar)}";
+    private static final Map<String, DucklakePartitionPruning> INSTANCES = new ConcurrentHashMap<>();
+
     private static final String COLUMN_INFO_QUERY =
             """
                      WITH s AS (SELECT schema_id FROM %s.ducklake_schema  WHERE end_snapshot IS NULL AND schema_name = '%s'),
@@ -34,36 +32,41 @@ public class DucklakePartitionPruning {
             "where s.schema_name = '%s' and t.table_name = '%s' " +
             "and s.schema_id  = t.schema_id";
     private static final String QUERY =
-            " WITH L AS (SELECT data_file_id, path, path_is_relative, file_format,record_count, file_size_bytes, mapping_id, table_id FROM %s.ducklake_data_file WHERE table_id = %s and end_snapshot is null),\n" +
-                    "M AS (SELECT mapping_id, type FROM %s.ducklake_column_mapping WHERE table_id = %s),\n" +
-                    "B AS (SELECT data_file_id, unnest([" + NESTED + "]) AS  nested, column_id FROM %s.ducklake_file_column_stats WHERE table_id = %s and column_id in (%s)),\n" +
-                    " AA AS (SELECT  data_file_id, nested.key as column_id, nested.value as value, column_id from B),\n" +
-                    " P AS (PIVOT AA ON column_id IN (%s) USING first(value) GROUP BY data_file_id),\n" +
+            "WITH P AS (FROM %s),\n" +
                     " R AS (%s)\n" +
-                    " SELECT L.path, L.file_size_bytes, cast(0  as  bigint), L.path_is_relative, L.table_id, L.mapping_id FROM L INNER JOIN R ON L.data_file_id = R.data_file_id LEFT OUTER JOIN M ON M.mapping_id = L.mapping_id ORDER BY L.data_file_id";
-    private static final String NO_FILTER_QUERY = "SELECT L.path, L.file_size_bytes, cast(0  as  bigint), L.path_is_relative, L.table_id, L.mapping_id FROM %s.ducklake_data_file L WHERE table_id = %s ORDER by L.data_file_id";
+                    " SELECT P.path, P.file_size_bytes, cast(0  as  bigint), P.path_is_relative, cast(%s as bigint), P.mapping_id, P.record_count FROM P INNER JOIN R ON P.data_file_id = R.data_file_id ORDER BY P.data_file_id";
+    private static final String NO_FILTER_QUERY = "SELECT L.path, L.file_size_bytes, cast(0  as  bigint), L.path_is_relative, L.table_id, L.mapping_id, L.record_count FROM %s.ducklake_data_file L WHERE table_id = %s ORDER by L.data_file_id";
     private static final String PIVOT_TABLE_ALIAS = "P";
 
     private final String metadataDatabase;
     private final String schemaQualifier;
     private final Map<String, VersionEntity<Map<String, ColumnInfo>>> columnInfoCache = new ConcurrentHashMap<>();
     private final Map<Long, VersionEntity<String>> relativePathCache = new ConcurrentHashMap<>();
+    private final DucklakeFileStatsIndex fileStatsIndex;
     public DucklakePartitionPruning(String metadataDatabase) {
         this(metadataDatabase, ".");
     }
     public DucklakePartitionPruning(String metadataDatabase, String schemaQualifier) {
         this.metadataDatabase = metadataDatabase;
         this.schemaQualifier = schemaQualifier;
+        this.fileStatsIndex = new DucklakeFileStatsIndex(metadataDatabase);
+    }
+
+    /**
+     * The pruning of a DuckLake metadata database, shared by every query in the process, so its
+     * caches and the local statistics tables of its {@link DucklakeFileStatsIndex} are built once
+     * rather than per query.
+     */
+    public static DucklakePartitionPruning forMetadataDatabase(String metadataDatabase) {
+        return INSTANCES.computeIfAbsent(metadataDatabase, DucklakePartitionPruning::new);
     }
 
     private String getNoFilterQuery(long tableId) {
         return NO_FILTER_QUERY.formatted(metadataDatabase, tableId);
     }
 
-    private String partitionSql(String innerSql, Long tableId, Set<Long> columnId) {
-        var columnString = columnId.stream().map(l -> "min_%s, max_%s".formatted(l, l)).collect(Collectors.joining(","));
-        var columnIdString = columnId.stream().map("%s"::formatted).collect(Collectors.joining(","));
-        return QUERY.formatted(metadataDatabase, tableId, metadataDatabase, tableId, metadataDatabase, tableId, columnIdString, columnString, innerSql);
+    private String partitionSql(String innerSql, Long tableId, String filesTable) {
+        return QUERY.formatted(filesTable, innerSql, tableId);
     }
 
     private String getColumnInfoQuery(String schema, String table) {
@@ -165,27 +168,32 @@ public class DucklakePartitionPruning {
         if (where == null || where instanceof NullNode) {
             toRun = getNoFilterQuery(tableId);
         } else {
-            var columnMap = getColumnIdMap(schema, table);
-            var maxMap = new HashMap<String, String>();
-            var minMap = new HashMap<String, String>();
-            var typeMap = new HashMap<String, String>();
-            for (var e : columnMap.entrySet()) {
-                minMap.put(e.getKey(), "min_" + e.getValue().id());
-                maxMap.put(e.getKey(), "max_" + e.getValue().id());
-                typeMap.put(e.getKey(), e.getValue().type());
-            }
-
-            var partitionQuery = Transformations.replaceEqualMinMaxInQuery(PIVOT_TABLE_ALIAS, minMap, maxMap, typeMap)
-                    .apply(tree);
-
             var references = Transformations.collectReferences(where);
             if (references.isEmpty()) {
                 toRun = getNoFilterQuery(tableId);
             } else {
-                var columnIds = references.stream().map(n -> columnMap.get(Transformations.getReferenceName(n)[0]).id())
-                        .collect(Collectors.toSet());
+                var columnMap = getColumnIdMap(schema, table);
+                // Only the columns the filter refers to need their statistics in the files table.
+                var maxMap = new HashMap<String, String>();
+                var minMap = new HashMap<String, String>();
+                var typeMap = new HashMap<String, String>();
+                var referencedIds = new HashSet<Long>();
+                for (var reference : references) {
+                    var name = Transformations.getReferenceName(reference);
+                    var column = name.length == 1 ? columnMap.get(name[0]) : null;
+                    if (column != null) {
+                        minMap.put(name[0], "min_" + column.id());
+                        maxMap.put(name[0], "max_" + column.id());
+                        typeMap.put(name[0], column.type());
+                        referencedIds.add(column.id());
+                    }
+                }
+                var partitionQuery = Transformations.replaceEqualMinMaxInQuery(PIVOT_TABLE_ALIAS, minMap, maxMap, typeMap)
+                        .apply(tree);
+                var columnIds = columnMap.values().stream().map(ColumnInfo::id).collect(Collectors.toSet());
+                var filesTable = fileStatsIndex.get(tableId, columnIds, referencedIds);
                 var partitionSql = Transformations.parseToSql(partitionQuery);
-                toRun = partitionSql(partitionSql, tableId, columnIds);
+                toRun = partitionSql(partitionSql, tableId, filesTable);
             }
         }
         try (var connection = ConnectionPool.getConnection()) {
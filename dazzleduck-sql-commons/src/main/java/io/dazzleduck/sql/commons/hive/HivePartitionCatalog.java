@@ -0,0 +1,442 @@
+package io.dazzleduck.sql.commons.hive;
+
+import io.dazzleduck.sql.commons.ConnectionPool;
+import io.dazzleduck.sql.commons.FileStatus;
+import io.dazzleduck.sql.commons.RuntimeSqlException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Caches the listing of Hive partitioned directories, so planning a query does not list every
+ * file of the table again.
+ *
+ * <p>A listing holds the partitions of a base path column by column: the unescaped value of every
+ * partition column, and the files of every partition as arrays of names, sizes and modification
+ * times. Listings expire after a TTL. Until then, the listing of a local directory is validated
+ * against the modification times of its partition directories: only new or changed partition
+ * directories are listed again, and partitions whose directory is gone are dropped. Object stores
+ * have no directories to validate against, so their listings are kept until they expire.
+ *
+ * <p>A base path is listed by one caller at a time, outside any lock of the map: others asking
+ * for it meanwhile wait for that listing instead of listing it again.
+ *
+ * <p>The values of the partitions of a base path are also kept in a local in-memory table, with
+ * one row per partition directory, so pruning filters that table instead of sending the values
+ * with every query. Each new listing adds the rows of its new directories and deletes those of the
+ * directories it no longer has; the values of a directory follow from its name, so a kept row
+ * never goes stale. Invalidating a base path drops its table along with its listings.
+ */
+final class HivePartitionCatalog {
+
+    private static final Logger logger = LoggerFactory.getLogger(HivePartitionCatalog.class);
+
+    private static final String READ_BLOB_SQL = "SELECT filename, size, epoch_ms(last_modified) FROM read_blob('%s')";
+    private static final String LOCAL_DATABASE = "__dazzleduck_hive_partitions";
+    private static final AtomicLong LOCAL_TABLE_IDS = new AtomicLong();
+    private static final String ATTACH_LOCAL_DATABASE = "ATTACH IF NOT EXISTS ':memory:' AS " + LOCAL_DATABASE;
+    private static final String CREATE_TABLE_SQL =
+            "CREATE TABLE IF NOT EXISTS %s (partition_directory VARCHAR, unescaped_partitions VARCHAR[])";
+    private static final int INSERT_BATCH_ROWS = 1000;
+
+    private volatile long ttlNanos;
+    private final Map<Key, CompletableFuture<Listing>> listings = new ConcurrentHashMap<>();
+    private final Map<Key, PartitionTable> tables = new ConcurrentHashMap<>();
+
+    private record Key(String basePath, int levels) { }
+
+    private record Partition(String directory, long modified, String[] values, List<FileStatus> files) { }
+
+    /**
+     * The partitions of a base path, sorted by directory. Partition {@code p} holds the files
+     * from {@code fileStart[p]} up to {@code fileStart[p + 1]}.
+     */
+    static final class Listing {
+        private final long createdNanos;
+        private final PartitionTable table;
+        private final String[] directories;
+        private final long[] directoryModified;
+        private final String[][] values;
+        private final int[] fileStart;
+        private final String[] fileNames;
+        private final long[] sizes;
+        private final long[] lastModified;
+
+        private Listing(long createdNanos, PartitionTable table, int levels, List<Partition> partitions) {
+            this.createdNanos = createdNanos;
+            this.table = table;
+            int count = partitions.size();
+            this.directories = new String[count];
+            this.directoryModified = new long[count];
+            this.values = new String[levels][count];
+            this.fileStart = new int[count + 1];
+            int files = partitions.stream().mapToInt(p -> p.files().size()).sum();
+            this.fileNames = new String[files];
+            this.sizes = new long[files];
+            this.lastModified = new long[files];
+            int f = 0;
+            for (int p = 0; p < count; p++) {
+                var partition = partitions.get(p);
+                directories[p] = partition.directory();
+                directoryModified[p] = partition.modified();
+                for (int level = 0; level < levels; level++) {
+                    values[level][p] = partition.values()[level];
+                }
+                fileStart[p] = f;
+                for (var file : partition.files()) {
+                    fileNames[f] = file.fileName();
+                    sizes[f] = file.size();
+                    lastModified[f] = file.lastModified();
+                    f++;
+                }
+            }
+            fileStart[count] = f;
+        }
+
+        /**
+         * Local table with the {@code partition_directory} and {@code unescaped_partitions} of
+         * every partition of the listing; {@code null} without partition columns.
+         */
+        String table() {
+            return table == null ? null : table.name;
+        }
+
+        /** Whether the table was dropped by an invalidation; the listing must then be got again. */
+        boolean tableDropped() {
+            return table != null && table.dropped;
+        }
+
+        int partitionCount() {
+            return directories.length;
+        }
+
+        /** Unescaped value of a partition column, by level, for a partition. */
+        String value(int level, int partition) {
+            return values[level][partition];
+        }
+
+        List<FileStatus> files(int partition) {
+            var result = new ArrayList<FileStatus>(fileStart[partition + 1] - fileStart[partition]);
+            for (int f = fileStart[partition]; f < fileStart[partition + 1]; f++) {
+                result.add(new FileStatus(fileNames[f], sizes[f], lastModified[f]));
+            }
+            return result;
+        }
+
+        List<FileStatus> files() {
+            var result = new ArrayList<FileStatus>(fileNames.length);
+            for (int p = 0; p < partitionCount(); p++) {
+                result.addAll(files(p));
+            }
+            return result;
+        }
+
+        /** The partition of a directory relative to the base path, -1 when there is none. */
+        int indexOf(String directory) {
+            int p = Arrays.binarySearch(directories, directory);
+            return p < 0 ? -1 : p;
+        }
+
+        private Partition partition(int p) {
+            var partitionValues = new String[values.length];
+            for (int level = 0; level < values.length; level++) {
+                partitionValues[level] = values[level][p];
+            }
+            return new Partition(directories[p], directoryModified[p], partitionValues, files(p));
+        }
+    }
+
+    HivePartitionCatalog(Duration ttl) {
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    /**
+     * Changes how long a listing is used before it is listed again in full. Object-store listings
+     * are never validated before then, so files written there by others stay unseen until it ends.
+     */
+    void setTtl(Duration ttl) {
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    /**
+     * @param basePath directory holding the partition directories, or a glob of the files
+     * @param levels   number of partition columns, one directory level each
+     */
+    Listing get(String basePath, int levels) throws SQLException, IOException {
+        var key = new Key(basePath, levels);
+        while (true) {
+            var current = listings.get(key);
+            if (current != null && !current.isDone()) {
+                return await(current);
+            }
+            var cached = current == null || current.isCompletedExceptionally() ? null : current.join();
+            if (cached != null && !needsRefresh(key, cached)) {
+                return cached;
+            }
+            var next = new CompletableFuture<Listing>();
+            var claimed = current == null ? listings.putIfAbsent(key, next) == null : listings.replace(key, current, next);
+            if (claimed) {
+                load(key, cached, next);
+                return await(next);
+            }
+        }
+    }
+
+    /**
+     * Drops the listings that cover files under a path, or that the path is under, and their
+     * local tables. Queries still holding such a listing see {@link Listing#tableDropped()}.
+     */
+    void invalidate(String path) {
+        listings.keySet().removeIf(key -> covers(key, path));
+        for (var entry : tables.entrySet()) {
+            if (covers(entry.getKey(), path) && tables.remove(entry.getKey(), entry.getValue())) {
+                entry.getValue().drop();
+            }
+        }
+    }
+
+    private static boolean covers(Key key, String path) {
+        var basePath = key.basePath().contains("/*")
+                ? key.basePath().substring(0, key.basePath().indexOf("/*")) : key.basePath();
+        return basePath.startsWith(path) || path.startsWith(basePath);
+    }
+
+    private boolean needsRefresh(Key key, Listing cached) {
+        return System.nanoTime() - cached.createdNanos >= ttlNanos || localDirectory(key.basePath()) != null;
+    }
+
+    private void load(Key key, Listing cached, CompletableFuture<Listing> future) {
+        try {
+            var table = key.levels() == 0 ? null : tables.computeIfAbsent(key, k -> new PartitionTable());
+            var listing = refresh(key, cached, table);
+            if (table != null && listing != cached) {
+                table.register(listing);
+            }
+            future.complete(listing);
+        } catch (IOException | SQLException | RuntimeException e) {
+            listings.remove(key, future);
+            future.completeExceptionally(e);
+        }
+    }
+
+    private static Listing await(CompletableFuture<Listing> future) throws SQLException, IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof SQLException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private Listing refresh(Key key, Listing cached, PartitionTable table) throws IOException, SQLException {
+        if (cached != null && cached.table != table) {
+            // The table was dropped and recreated since: the new one must get every partition.
+            cached = null;
+        }
+        long now = System.nanoTime();
+        boolean expired = cached == null || now - cached.createdNanos >= ttlNanos;
+        var directory = localDirectory(key.basePath());
+        if (directory == null) {
+            return expired ? listBlobs(key, table, now) : cached;
+        }
+        return expired ? listDirectories(key, table, directory, null, now)
+                : listDirectories(key, table, directory, cached, cached.createdNanos);
+    }
+
+    private static Path localDirectory(String basePath) {
+        if (basePath.contains("://") || basePath.contains("*")) {
+            return null;
+        }
+        var path = Path.of(basePath);
+        return Files.isDirectory(path) ? path : null;
+    }
+
+    /**
+     * Lists the partition directories under a local base path and their modification times.
+     * Partitions of {@code cached} whose directory is unchanged are reused without listing.
+     */
+    private static Listing listDirectories(Key key, PartitionTable table, Path base, Listing cached, long createdNanos) throws IOException {
+        List<Path> directories;
+        try (Stream<Path> paths = Files.walk(base, key.levels())) {
+            directories = paths.filter(p -> (p.equals(base) ? 0 : base.relativize(p).getNameCount()) == key.levels())
+                    .filter(Files::isDirectory)
+                    .toList();
+        }
+        var relatives = new String[directories.size()];
+        var modified = new long[directories.size()];
+        int[] reused = new int[directories.size()];
+        boolean changed = cached == null || cached.partitionCount() != directories.size();
+        for (int i = 0; i < relatives.length; i++) {
+            relatives[i] = key.levels() == 0 ? "" : base.relativize(directories.get(i)).toString();
+            modified[i] = Files.getLastModifiedTime(directories.get(i)).toMillis();
+            reused[i] = cached == null ? -1 : cached.indexOf(relatives[i]);
+            if (reused[i] >= 0 && cached.directoryModified[reused[i]] != modified[i]) {
+                reused[i] = -1;
+            }
+            changed |= reused[i] < 0;
+        }
+        if (!changed) {
+            return cached;
+        }
+        var partitions = new ArrayList<Partition>(relatives.length);
+        for (int i = 0; i < relatives.length; i++) {
+            partitions.add(reused[i] >= 0 ? cached.partition(reused[i])
+                    : new Partition(relatives[i], modified[i], values(relatives[i], key.levels()),
+                            listFiles(key.basePath(), relatives[i], directories.get(i))));
+        }
+        partitions.sort(Comparator.comparing(Partition::directory));
+        return new Listing(createdNanos, table, key.levels(), partitions);
+    }
+
+    private static List<FileStatus> listFiles(String basePath, String relative, Path directory) throws IOException {
+        var prefix = relative.isEmpty() ? basePath + "/" : basePath + "/" + relative + "/";
+        var result = new ArrayList<FileStatus>();
+        try (var files = Files.newDirectoryStream(directory, "*.parquet")) {
+            for (var file : files) {
+                var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                if (attributes.isRegularFile()) {
+                    result.add(new FileStatus(prefix + file.getFileName(), attributes.size(),
+                            attributes.lastModifiedTime().toMillis()));
+                }
+            }
+        }
+        result.sort(Comparator.comparing(FileStatus::fileName));
+        return result;
+    }
+
+    /** Lists every file with {@code read_blob}, for object stores and globs. */
+    private static Listing listBlobs(Key key, PartitionTable table, long createdNanos) throws SQLException {
+        var basePath = key.basePath();
+        var glob = basePath.contains("/*") ? basePath
+                : basePath + "/*".repeat(key.levels()) + "/*.parquet";
+        var base = basePath.contains("/*") ? basePath.substring(0, basePath.indexOf("/*")) : basePath;
+        var byDirectory = new TreeMap<String, List<FileStatus>>();
+        try (var connection = ConnectionPool.getConnection()) {
+            for (var file : ConnectionPool.collectAll(connection, READ_BLOB_SQL.formatted(glob),
+                    rs -> new FileStatus(rs.getString(1), rs.getLong(2), rs.getLong(3)))) {
+                var name = file.fileName();
+                var relative = name.length() > base.length() + 1 ? name.substring(base.length() + 1) : name;
+                int slash = relative.lastIndexOf('/');
+                byDirectory.computeIfAbsent(slash < 0 ? "" : relative.substring(0, slash), d -> new ArrayList<>()).add(file);
+            }
+        }
+        var partitions = new ArrayList<Partition>(byDirectory.size());
+        for (var entry : byDirectory.entrySet()) {
+            entry.getValue().sort(Comparator.comparing(FileStatus::fileName));
+            partitions.add(new Partition(entry.getKey(), 0, values(entry.getKey(), key.levels()), entry.getValue()));
+        }
+        return new Listing(createdNanos, table, key.levels(), partitions);
+    }
+
+    /** The unescaped partition values of a relative directory such as {@code dt=2024-01-01/p=x}. */
+    private static String[] values(String relative, int levels) {
+        var result = new String[levels];
+        var segments = relative.isEmpty() ? new String[0] : relative.split("/");
+        for (int level = 0; level < levels; level++) {
+            if (level < segments.length) {
+                var segment = segments[level];
+                int equals = segment.indexOf('=');
+                result[level] = HivePartitionPruning.unescapePathName(equals < 0 ? "" : segment.substring(equals + 1));
+            } else {
+                result[level] = "";
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The local table of a base path; adds the partitions of each new listing it has not seen and
+     * deletes those the listing no longer has.
+     */
+    private static final class PartitionTable {
+        private final String name = "%s.main.partitions_%s".formatted(LOCAL_DATABASE, LOCAL_TABLE_IDS.incrementAndGet());
+        private final Set<String> directories = new HashSet<>();
+        private boolean created;
+        private volatile boolean dropped;
+
+        synchronized void register(Listing listing) throws SQLException {
+            if (dropped) {
+                return;
+            }
+            var added = new ArrayList<String>();
+            var statements = new ArrayList<String>();
+            statements.add(CREATE_TABLE_SQL.formatted(name));
+            var rows = new StringBuilder();
+            int batchRows = 0;
+            for (int p = 0; p < listing.partitionCount(); p++) {
+                var directory = listing.directories[p];
+                if (directories.contains(directory)) {
+                    continue;
+                }
+                added.add(directory);
+                rows.append(batchRows == 0 ? "(" : ", (").append(literal(directory)).append(", [");
+                for (int level = 0; level < listing.values.length; level++) {
+                    rows.append(level == 0 ? "" : ", ").append(literal(listing.value(level, p)));
+                }
+                rows.append("])");
+                if (++batchRows == INSERT_BATCH_ROWS) {
+                    statements.add("INSERT INTO %s VALUES %s".formatted(name, rows));
+                    rows.setLength(0);
+                    batchRows = 0;
+                }
+            }
+            if (batchRows > 0) {
+                statements.add("INSERT INTO %s VALUES %s".formatted(name, rows));
+            }
+            var removed = directories.stream().filter(directory -> listing.indexOf(directory) < 0).toList();
+            for (int from = 0; from < removed.size(); from += INSERT_BATCH_ROWS) {
+                var batch = removed.subList(from, Math.min(removed.size(), from + INSERT_BATCH_ROWS));
+                statements.add("DELETE FROM %s WHERE partition_directory IN (%s)".formatted(name,
+                        batch.stream().map(PartitionTable::literal).collect(Collectors.joining(", "))));
+            }
+            if (!created) {
+                ConnectionPool.execute(ATTACH_LOCAL_DATABASE);
+            } else if (added.isEmpty() && removed.isEmpty()) {
+                return;
+            }
+            ConnectionPool.executeBatchInTxn(statements.toArray(String[]::new));
+            created = true;
+            directories.addAll(added);
+            removed.forEach(directories::remove);
+        }
+
+        /** Drops the table; later registrations of listings loaded before the drop are ignored. */
+        synchronized void drop() {
+            dropped = true;
+            if (!created) {
+                return;
+            }
+            try {
+                ConnectionPool.execute("DROP TABLE IF EXISTS " + name);
+            } catch (RuntimeSqlException e) {
+                logger.warn("Failed to drop Hive partition table {}", name, e);
+            }
+            directories.clear();
+        }
+
+        private static String literal(String value) {
+            return "'" + value.replace("'", "''") + "'";
+        }
+    }
+}
@@ -4,26 +4,20 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.dazzleduck.sql.commons.*;
-import org.apache.arrow.memory.BufferAllocator;
-import org.apache.arrow.memory.RootAllocator;
-import org.apache.arrow.vector.BigIntVector;
-import org.apache.arrow.vector.VarCharVector;
-import org.apache.arrow.vector.VectorSchemaRoot;
 import org.apache.arrow.vector.complex.ListVector;
 import org.apache.arrow.vector.complex.impl.UnionListReader;
 import org.apache.arrow.vector.complex.impl.UnionListWriter;
 import org.apache.arrow.vector.complex.reader.VarCharReader;
-import org.apache.arrow.vector.ipc.ArrowReader;
 import org.apache.arrow.vector.types.pojo.ArrowType;
 import org.apache.arrow.vector.types.pojo.Field;
 import org.apache.arrow.vector.types.pojo.FieldType;
 import org.apache.arrow.vector.util.Text;
 import org.duckdb.DuckDBConnection;
 
-import java.io.Closeable;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -34,7 +28,11 @@ public class HivePartitionPruning extends PartitionPruning {
     private static final String PARTITION_SQL = "WITH A AS (SELECT * FROM %s)," +
             " B AS (SELECT filename, size, last_modified, %s FROM A )" +
             " SELECT * FROM B where %s";
-    private static final String READ_BLOB_NO_PARTITION_SQL = "SELECT filename, size, epoch_ms(last_modified) as last_modified FROM read_blob('%s')";
+    private static final String PARTITION_INDEX_SQL = "WITH A AS (SELECT * FROM %s)," +
+            " B AS (SELECT partition_directory%s FROM A) ";
+    /** Default time a partition listing is used before it is listed again in full; see {@link #setListingTtl}. */
+    private static final Duration LISTING_TTL = Duration.ofMinutes(1);
+    private static final HivePartitionCatalog CATALOG = new HivePartitionCatalog(LISTING_TTL);
 
     public static final Field UNSCAPE_PARTITION_FIELD =
             new Field("unescaped_partitions", FieldType.notNullable(new ArrowType.List()),
@@ -105,48 +103,54 @@ public class HivePartitionPruning extends PartitionPruning {
      * @param partitionDataTypes in order to cast the value to specific type
      * @return list of files and size of those files
      * @throws SQLException
-     * @throws IOException  This is slightly complicated because we do not have function in duckdb which unescape hive path and java based udf are still not supported
-     *                      its divided into 3 steps
-     *                      1. Run the query on duckdb to get filename, size, partitions from duckdb.
-     *                      Schema of read data is &lt;filename string, size bigint, partitions array&lt;string&gt;&gt;
-     *                      2. collect the data from step 1 and unescape the partitions in java context using UNESCAPE_FN.
-     *                      Schema at the end &lt;filename string, size bigint, partitions &lt;array&lt;string&gt;, unescape_partitions&lt;array%lt;string&gt;&gt;
-     *                      3. Serialize the data in step 2 as temp table and run the pruning sql
-     *                      Final Sql looks something like `select size, filename, cast(unescape_partitions[1] as date) as dt, ....from temp table where dt = ?
-     *                      4. Remove all the filterExpression which do not have partition columns
+     * @throws IOException  The files and unescaped partition values of the base path come from {@link HivePartitionCatalog},
+     *                      which caches them. The filter is evaluated once per partition rather than once per file:
+     *                      1. Remove all the filterExpression which do not have partition columns
+     *                      2. Run the filter over the local table of the listing's partitions, with every partition value cast to its type
+     *                      Final Sql looks something like `select partition_directory from B where dt = ?` where B has one row per partition
+     *                      3. Return the files the listing has for the matching partition directories
      */
     public static List<FileStatus> pruneFiles(String basePath,
                                               String filterExpression,
                                               String[][] partitionDataTypes) throws SQLException, IOException {
         if (partitionDataTypes == null || partitionDataTypes.length == 0) {
-            return pruneFilesNoPartition(basePath);
+            return CATALOG.get(basePath, 0).files();
         }
-        String firstSql = getQueryString(basePath, partitionDataTypes.length);
-        String tempTableName = "connection_temp_table_" + System.currentTimeMillis();
+        while (true) {
+            var listing = CATALOG.get(basePath, partitionDataTypes.length);
+            try {
+                return pruneFiles(listing, filterExpression, partitionDataTypes);
+            } catch (SQLException | RuntimeException e) {
+                if (!listing.tableDropped()) {
+                    throw e;
+                }
+                // Invalidated while the query ran: its table is gone, so list the path again.
+            }
+        }
+    }
+
+    private static List<FileStatus> pruneFiles(HivePartitionCatalog.Listing listing,
+                                               String filterExpression,
+                                               String[][] partitionDataTypes) throws SQLException, IOException {
         List<FileStatus> result = new ArrayList<>();
-        try (DuckDBConnection readConnection = ConnectionPool.getConnection()) {
-            String partitionSql = HivePartitionPruning.getPartitionSql(partitionDataTypes, tempTableName, filterExpression);
-            String transformed = doQueryTransformation(readConnection, partitionSql,
+        if (listing.partitionCount() == 0) {
+            return result;
+        }
+        try (DuckDBConnection connection = ConnectionPool.getConnection()) {
+            String filterToApply = filterExpression == null || filterExpression.isBlank() ? "true" : filterExpression;
+            String transformed = doQueryTransformation(connection, "SELECT partition_directory FROM B WHERE " + filterToApply,
                     Arrays.stream(partitionDataTypes).map(ss -> ss[0]).collect(Collectors.toSet()));
-            try (DuckDBConnection writeConnection = ConnectionPool.getConnection();
-                 BufferAllocator allocator = new RootAllocator();
-                 ArrowReader reader1 = ConnectionPool.getReader(readConnection, allocator, firstSql, 1000);
-                 Closeable ignored = ConnectionPool.createTempTableWithMap(writeConnection, allocator, reader1,
-                         UNESCAPE_FN, List.of("partitions"), UNSCAPE_PARTITION_FIELD, tempTableName);
-                 ArrowReader reader2 = ConnectionPool.getReader(writeConnection, allocator, transformed, 100)) {
-                while (reader2.loadNextBatch()) {
-                    VectorSchemaRoot root = reader2.getVectorSchemaRoot();
-                    VarCharVector filename = (VarCharVector) root.getVector("filename");
-                    BigIntVector size = (BigIntVector) root.getVector("size");
-                    BigIntVector lastModifier = (BigIntVector) root.getVector("last_modified");
-                    for (int i = 0; i < root.getRowCount(); i++) {
-                        result.add(new FileStatus(new String(filename.get(i)), size.get(i), lastModifier.get(i)));
-                    }
+            String sql = getPartitionIndexSql(listing, partitionDataTypes) + transformed;
+            for (String directory : ConnectionPool.collectFirstColumn(connection, sql, String.class)) {
+                // The table may also hold partitions listed after this listing.
+                int partition = listing.indexOf(directory);
+                if (partition >= 0) {
+                    result.addAll(listing.files(partition));
                 }
             }
-            result.sort(Comparator.comparing(FileStatus::lastModified));
-            return result;
         }
+        result.sort(Comparator.comparing(FileStatus::lastModified));
+        return result;
     }
 
 
@@ -156,31 +160,29 @@ public class HivePartitionPruning extends PartitionPruning {
 
         return pruneFiles(basePath, getFilterSql(tree), partitionDataTypes);
     }
+
+    /** Forgets the cached listings covering a path, so the next query lists them again. */
+    public static void invalidateListing(String path) {
+        CATALOG.invalidate(path);
+    }
+
     /**
-     * Retrieves all files from a specified not partitioned directory path and returns their names and sizes.
-     *
-     * @param basePath The directory path where files are stored, expected to contain .parquet files.
-     * @return A list of FileNameAndSize objects, each containing the name and size of a file.
-     * @throws SQLException If there is an SQL error during the query execution.
-     * @throws IOException If there is an I/O error during the handling of file data.
+     * Changes how long a cached partition listing is used before it is listed again in full. Local
+     * listings are also checked against their directories before each use, but object-store
+     * listings are not, so files written there by other writers stay unseen until the TTL ends.
      */
-    private static List<FileStatus> pruneFilesNoPartition(String basePath) throws SQLException, IOException {
-        String sql = String.format(READ_BLOB_NO_PARTITION_SQL, basePath + "/*.parquet");
-        List<FileStatus> result = new ArrayList<>();
-        try(DuckDBConnection connection = ConnectionPool.getConnection();
-            BufferAllocator allocator = new RootAllocator();
-            ArrowReader reader = ConnectionPool.getReader(connection, allocator, sql, 1000)){
-            while (reader.loadNextBatch()) {
-                VectorSchemaRoot root = reader.getVectorSchemaRoot();
-                VarCharVector filename = (VarCharVector) root.getVector("filename");
-                BigIntVector size = (BigIntVector) root.getVector("size");
-                BigIntVector lastModifier = (BigIntVector) root.getVector("last_modified");
-                for (int i = 0; i < root.getRowCount(); i++) {
-                    result.add(new FileStatus(new String(filename.get(i)), size.get(i), lastModifier.get(i)));
-                }
-            }
+    public static void setListingTtl(Duration ttl) {
+        CATALOG.setTtl(ttl);
+    }
+
+    /** One row per partition in the listing's table: its directory, and its values cast to the partition types. */
+    private static String getPartitionIndexSql(HivePartitionCatalog.Listing listing, String[][] partitionDataTypes) {
+        StringBuilder casts = new StringBuilder();
+        for (int i = 0; i < partitionDataTypes.length; i++) {
+            String[] ss = partitionDataTypes[i];
+            casts.append(String.format(", cast(unescaped_partitions[%s] as %s) as %s", i + 1, ss[1], ss[0]));
         }
-        return result;
+        return String.format(PARTITION_INDEX_SQL, listing.table(), casts);
     }
 
     /**
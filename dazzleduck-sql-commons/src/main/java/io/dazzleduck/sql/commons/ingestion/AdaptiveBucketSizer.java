@@ -0,0 +1,133 @@
+package io.dazzleduck.sql.commons.ingestion;
+
+import java.time.Duration;
+
+/**
+ * Feedback controller that picks a queue's bucket size and flush delay from what the queue
+ * observes, instead of the fixed {@code min_bucket_size} / {@code max_delay_ms}.
+ *
+ * <p>It aims for two goals at once: files close to {@code targetFileSize}, and an end-to-end
+ * latency (first batch received to bucket committed) within {@code latencySlo}. After every
+ * committed bucket {@link BulkIngestQueue} calls {@link #update} with its cumulative write stats,
+ * from which the controller derives the write throughput:
+ * <ul>
+ *   <li>the bucket size is the target file size, reduced when writing that much would take more
+ *       than half the SLO at the observed throughput;</li>
+ *   <li>the delay is whatever remains of the SLO after the expected write time of one bucket and
+ *       the time needed to work off the pending backlog, so quiet queues wait longer and produce
+ *       larger files while busy queues flush sooner;</li>
+ *   <li>a correction factor, driven by the smoothed observed latency, shrinks the delay
+ *       multiplicatively while the SLO is missed and relaxes it slowly once it is met again, which
+ *       covers costs the throughput model does not see (commit time, scheduling).</li>
+ * </ul>
+ * Both outputs stay within the configured bounds. The class is thread safe; commit lanes may
+ * report concurrently.
+ */
+public class AdaptiveBucketSizer {
+
+    private static final double LATENCY_SMOOTHING = 0.3;
+    private static final double MISS_FACTOR = 0.7;
+    private static final double RECOVER_FACTOR = 1.1;
+    private static final double MIN_CORRECTION = 0.05;
+    /** Fraction of the SLO a single bucket's write may take. */
+    private static final double WRITE_BUDGET = 0.5;
+
+    private final long targetFileSize;
+    private final Duration latencySlo;
+    private final long minBucketSize;
+    private final long maxBucketSize;
+    private final Duration minDelay;
+    private final Duration maxDelay;
+
+    private double smoothedLatencyMs = -1;
+    private double correction = 1.0;
+    private volatile long bucketSize;
+    private volatile Duration delay;
+
+    /**
+     * @param targetFileSize desired size of written files, in bytes
+     * @param latencySlo     end-to-end latency to stay within
+     * @param minBucketSize  lower bound of the bucket size
+     * @param maxBucketSize  upper bound of the bucket size
+     * @param minDelay       lower bound of the flush delay
+     * @param maxDelay       upper bound of the flush delay
+     */
+    public AdaptiveBucketSizer(long targetFileSize, Duration latencySlo,
+                               long minBucketSize, long maxBucketSize,
+                               Duration minDelay, Duration maxDelay) {
+        if (targetFileSize <= 0 || latencySlo.isNegative() || latencySlo.isZero()) {
+            throw new IllegalArgumentException("target file size and latency SLO must be positive, got %d and %s"
+                    .formatted(targetFileSize, latencySlo));
+        }
+        if (minBucketSize > maxBucketSize || minDelay.compareTo(maxDelay) > 0) {
+            throw new IllegalArgumentException("adaptive bounds are inverted: bucket size [%d, %d], delay [%s, %s]"
+                    .formatted(minBucketSize, maxBucketSize, minDelay, maxDelay));
+        }
+        this.targetFileSize = targetFileSize;
+        this.latencySlo = latencySlo;
+        this.minBucketSize = minBucketSize;
+        this.maxBucketSize = maxBucketSize;
+        this.minDelay = minDelay;
+        this.maxDelay = maxDelay;
+        this.bucketSize = clamp(targetFileSize, minBucketSize, maxBucketSize);
+        this.delay = clamp(latencySlo, minDelay, maxDelay);
+    }
+
+    /** Current bucket size threshold in bytes. */
+    public long bucketSize() {
+        return bucketSize;
+    }
+
+    /** Current flush delay. */
+    public Duration delay() {
+        return delay;
+    }
+
+    /**
+     * Recomputes the thresholds after a committed bucket.
+     *
+     * @param totalWriteBytes   bytes written by the queue so far
+     * @param timeSpentWritingMs write time accumulated by the queue so far, summed across lanes
+     * @param commitLanes       number of lanes writing concurrently
+     * @param pendingBytes      bytes accepted but not yet written
+     * @param observedLatency   end-to-end latency of the bucket just committed
+     */
+    public synchronized void update(long totalWriteBytes, long timeSpentWritingMs, int commitLanes,
+                                    long pendingBytes, Duration observedLatency) {
+        double sloMs = latencySlo.toMillis();
+        double latencyMs = Math.max(0, observedLatency.toMillis());
+        smoothedLatencyMs = smoothedLatencyMs < 0
+                ? latencyMs
+                : LATENCY_SMOOTHING * latencyMs + (1 - LATENCY_SMOOTHING) * smoothedLatencyMs;
+        if (smoothedLatencyMs > sloMs) {
+            correction = Math.max(MIN_CORRECTION, correction * MISS_FACTOR);
+        } else if (smoothedLatencyMs < 0.8 * sloMs) {
+            correction = Math.min(1.0, correction * RECOVER_FACTOR);
+        }
+
+        // Throughput in bytes/ms; unknown until something has taken measurable time to write,
+        // in which case writes are treated as free.
+        double bytesPerMs = timeSpentWritingMs > 0 && totalWriteBytes > 0
+                ? (double) totalWriteBytes * commitLanes / timeSpentWritingMs
+                : Double.POSITIVE_INFINITY;
+
+        long size = clamp(targetFileSize, minBucketSize, maxBucketSize);
+        if (size / bytesPerMs > sloMs * WRITE_BUDGET) {
+            size = clamp((long) (bytesPerMs * sloMs * WRITE_BUDGET), minBucketSize, maxBucketSize);
+        }
+        double writeMs = size / bytesPerMs;
+        double backlogMs = Math.max(0, pendingBytes) / bytesPerMs;
+        long delayMs = (long) (Math.max(0, sloMs - writeMs - backlogMs) * correction);
+
+        bucketSize = size;
+        delay = clamp(Duration.ofMillis(delayMs), minDelay, maxDelay);
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static Duration clamp(Duration value, Duration min, Duration max) {
+        return value.compareTo(min) < 0 ? min : value.compareTo(max) > 0 ? max : value;
+    }
+}
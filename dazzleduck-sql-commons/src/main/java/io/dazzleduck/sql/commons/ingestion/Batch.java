@@ -4,6 +4,10 @@ import java.io.InputStream;
 import java.nio.file.Path;
 import java.time.Instant;
 
+/**
+ * @param partitionValues values of the partition columns shared by every row of the batch, as
+ *                        declared by the producer; {@code null} when not declared
+ */
 public record Batch<T>(String[] sortOrder,
                        String[] partitionBy,
                        T record,
@@ -11,5 +15,11 @@ public record Batch<T>(String[] sortOrder,
                        long producerBatchId,
                        long totalSize,
                        String format,
-                       Instant receivedTime) {
+                       Instant receivedTime,
+                       String[] partitionValues) {
+
+    public Batch(String[] sortOrder, String[] partitionBy, T record, String producerId, long producerBatchId,
+                 long totalSize, String format, Instant receivedTime) {
+        this(sortOrder, partitionBy, record, producerId, producerBatchId, totalSize, format, receivedTime, null);
+    }
 }
@@ -6,70 +6,128 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * This is not a thread safe class and should only be used by BulkIngestionQueue.
+ * Batches collected for one write, owned by {@link BulkIngestQueue}.
+ *
+ * <p>Producers append concurrently through {@link #tryAdd} without a shared lock. The queue hands
+ * a bucket off by installing its replacement first and then calling {@link #markFinalized()},
+ * which closes the bucket to new appends and waits for the appends already in progress, so a
+ * finalized bucket's contents are complete and stable. An append that loses the race gets
+ * {@code false} and retries on the replacement.
  * @param <T>
  * @param <R>
  */
 public class Bucket<T, R> {
+
+    private record Entry<T, R>(Batch<T> batch, CompletableFuture<R> future) {}
+
+    /** Set in {@link #state} once the bucket is finalized; the low bits count appends in progress. */
+    private static final long FINALIZED = 1L << 62;
+
+    private final Object routingKey;
     private final long minCapacity;
     private final int maxBatches;
-    private final List<Batch<T>> batches = new ArrayList<>();
-    private final List<CompletableFuture<R>> futures = new ArrayList<>();
+    private final ConcurrentLinkedQueue<Entry<T, R>> entries = new ConcurrentLinkedQueue<>();
     private final Duration maxWriteDelay;
-    private long size = 0;
-    private Instant minReceiveInstance = Instant.MAX;
+    private final AtomicLong size = new AtomicLong();
+    private final AtomicInteger batchCount = new AtomicInteger();
+    private final AtomicReference<Instant> minReceiveInstance = new AtomicReference<>(Instant.MAX);
     private boolean scheduleWrite;
-    private final Map<String, Long> producerMaxBatchId = new HashMap<>();
+    private final Map<String, Long> producerMaxBatchId = new ConcurrentHashMap<>();
 
-    private boolean finalized = false;
+    private final AtomicLong state = new AtomicLong();
+    private volatile List<Batch<T>> finalBatches;
+    private volatile List<CompletableFuture<R>> finalFutures;
 
     public Bucket(long minCapacity, int maxBatches, Duration maxWriteDelay) {
+        this(null, minCapacity, maxBatches, maxWriteDelay);
+    }
+
+    /**
+     * @param routingKey key of the sub-bucket this bucket belongs to (see
+     *                   {@link BulkIngestQueue#routingKey}); {@code null} for the queue's main bucket
+     */
+    Bucket(Object routingKey, long minCapacity, int maxBatches, Duration maxWriteDelay) {
+        this.routingKey = routingKey;
         this.minCapacity = minCapacity;
         this.maxBatches = maxBatches;
         this.maxWriteDelay = maxWriteDelay;
     }
+
+    /** An already finalized bucket, installed once the queue stops accepting batches. */
+    static <T, R> Bucket<T, R> closed() {
+        var bucket = new Bucket<T, R>(Long.MAX_VALUE, Integer.MAX_VALUE, Duration.ZERO);
+        bucket.markFinalized();
+        return bucket;
+    }
+
     void add(Batch<T> batch, CompletableFuture<R> future) {
-        if(finalized){
+        if (!tryAdd(batch, future)) {
             throw new IllegalStateException("Bucket is already finalized: No add is allowed");
         }
-        batches.add(batch);
-        futures.add(future);
-        if (batch.producerId() != null) {
-            producerMaxBatchId.put(batch.producerId(), batch.producerBatchId());
-        }
-        size += batch.totalSize();
-        if (batch.receivedTime().isBefore(minReceiveInstance)) {
-            minReceiveInstance = batch.receivedTime();
+    }
+
+    /**
+     * Appends a batch unless the bucket is finalized. Safe to call from many threads; batches of
+     * one producer keep their order as long as that producer's appends do not overlap.
+     *
+     * @return {@code false} if the bucket was finalized and nothing was added
+     */
+    boolean tryAdd(Batch<T> batch, CompletableFuture<R> future) {
+        long s;
+        do {
+            s = state.get();
+            if ((s & FINALIZED) != 0) {
+                return false;
+            }
+        } while (!state.compareAndSet(s, s + 1));
+        try {
+            entries.add(new Entry<>(batch, future));
+            if (batch.producerId() != null) {
+                producerMaxBatchId.put(batch.producerId(), batch.producerBatchId());
+            }
+            minReceiveInstance.accumulateAndGet(batch.receivedTime(), (a, b) -> b.isBefore(a) ? b : a);
+            batchCount.incrementAndGet();
+            size.addAndGet(batch.totalSize());
+        } finally {
+            state.decrementAndGet();
         }
+        return true;
     }
 
     public long size() {
-        return size;
+        return size.get();
     }
 
     public List<Batch<T>> batches() {
-        return batches;
+        var batches = finalBatches;
+        return batches != null ? batches : entries.stream().map(Entry::batch).toList();
     }
 
     public List<CompletableFuture<R>> futures() {
-        return futures;
+        var futures = finalFutures;
+        return futures != null ? futures : entries.stream().map(Entry::future).toList();
     }
 
     boolean isFull() {
-        return size >= minCapacity || batches.size() >= maxBatches;
+        return size.get() >= minCapacity || batchCount.get() >= maxBatches;
     }
 
-    boolean isEmpty() {return size == 0;}
+    boolean isEmpty() {return size.get() == 0 && batchCount.get() == 0;}
 
     public boolean timeExpired(Instant now) {
-        return minReceiveInstance.plus(maxWriteDelay).isBefore(now);
+        return minReceiveInstance.get().plus(maxWriteDelay).isBefore(now);
     }
 
     public boolean readyForWrite(Instant now) {
-        return !batches.isEmpty()
-                && (minReceiveInstance.plus(maxWriteDelay).isBefore(now) || isFull());
+        return batchCount.get() > 0
+                && (minReceiveInstance.get().plus(maxWriteDelay).isBefore(now) || isFull());
     }
 
     public boolean isScheduleWrite(){
@@ -84,11 +142,33 @@ public class Bucket<T, R> {
         return Collections.unmodifiableMap(producerMaxBatchId);
     }
 
+    /**
+     * Closes the bucket to appends and waits for appends already in progress to finish. Idempotent.
+     */
     public void markFinalized(){
-        this.finalized =  true;
+        long s = state.getAndUpdate(current -> current | FINALIZED);
+        if ((s & FINALIZED) != 0 && finalBatches != null) {
+            return;
+        }
+        // Appends hold no locks and finish in a few instructions once they have started.
+        while (state.get() != FINALIZED) {
+            Thread.onSpinWait();
+        }
+        finalFutures = entries.stream().map(Entry::future).toList();
+        finalBatches = entries.stream().map(Entry::batch).toList();
     }
 
     public int batchCount() {
-        return batches.size();
+        return batchCount.get();
+    }
+
+    /** Routing key of the sub-bucket this bucket belongs to; {@code null} for the main bucket. */
+    Object routingKey() {
+        return routingKey;
+    }
+
+    /** Receive time of the oldest batch in the bucket; {@link Instant#MAX} while empty. */
+    Instant firstReceived() {
+        return minReceiveInstance.get();
     }
 }
@@ -15,21 +15,23 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.locks.ReentrantLock;
 
 public abstract class BulkIngestQueue<T, R> implements BulkIngestQueueInterface<T, R> {
 
     private static final Logger logger = LoggerFactory.getLogger(BulkIngestQueue.class);
 
     /**
-     * Upper bound for {@link #close()} to wait on the write thread after cancelling/interrupting it.
+     * Upper bound for {@link #close()} to wait on the write threads after cancelling/interrupting them.
      * cancel() + interrupt should unblock a responsive write almost immediately; this bound keeps a
-     * forceful close from hanging on a write that ignores cancellation. The write thread is a daemon,
+     * forceful close from hanging on a write that ignores cancellation. The write threads are daemons,
      * so a writer still stuck past this bound cannot block JVM exit.
      */
     private static final Duration CLOSE_JOIN_TIMEOUT = Duration.ofSeconds(5);
@@ -42,6 +44,15 @@ public abstract class BulkIngestQueue<T, R> implements BulkIngestQueueInterface<
 
 
     public static Path writeAndValidateTempArrowFile(Path tempDir, ArrowReader reader) throws IOException {
+        return writeAndValidateTempArrowFile(tempDir, reader, false);
+    }
+
+    /**
+     * Streams {@code reader} batch by batch into a new Arrow file under {@code tempDir}; reading
+     * every batch is what validates the payload. With {@code durable} the file is fsynced before
+     * returning, so a caller may acknowledge the data as spooled.
+     */
+    public static Path writeAndValidateTempArrowFile(Path tempDir, ArrowReader reader, boolean durable) throws IOException {
         String uniqueFileName = "ingestion_" + UUID.randomUUID() + ".arrow";
         Path tempFilePath = tempDir.resolve(uniqueFileName);
         try (FileOutputStream fos = new FileOutputStream(String.valueOf(tempFilePath));
@@ -50,6 +61,9 @@ public abstract class BulkIngestQueue<T, R> implements BulkIngestQueueInterface<
                 writer.writeBatch();
             }
             writer.end();
+            if (durable) {
+                fos.getChannel().force(true);
+            }
         } catch (Exception e) {
             Files.deleteIfExists(tempFilePath);
             if (e instanceof IOException ioe) throw ioe;
@@ -65,6 +79,48 @@ public abstract class BulkIngestQueue<T, R> implements BulkIngestQueueInterface<
      */
     protected void onBatchAbandoned(Batch<T> batch) {}
 
+    /**
+     * Data phase of a write. With more than one commit lane this runs concurrently on up to
+     * {@code commitLanes} buckets; the returned commit action then runs on the same lane, one
+     * bucket at a time and in the order the buckets were dequeued, so post-ingestion commits and
+     * producer sequence rollbacks happen exactly as they would with a single writer.
+     *
+     * <p>The default performs the whole {@link #write} in the data phase and commits nothing.
+     * Subclasses whose write has a serial tail (e.g. a catalog commit) override this and return
+     * that tail as the commit action, completing the bucket's futures there.
+     */
+    protected Commit writeData(WriteTask<T, R> writeTask) {
+        write(writeTask);
+        return () -> {};
+    }
+
+    /** The serial tail of a write, returned by {@link #writeData}. */
+    @FunctionalInterface
+    protected interface Commit {
+        void run();
+
+        /**
+         * Called instead of {@link #run} when the queue closes before the bucket's commit turn
+         * comes. Undoes what the data phase left behind (e.g. deletes the files it wrote), so the
+         * client's retry of the failed batches does not duplicate their rows.
+         */
+        default void abandon() {}
+    }
+
+    /**
+     * Sub-bucket a batch is routed to. Batches with the same non-null key collect in their own
+     * bucket, which flushes independently under the same size and delay thresholds as the main
+     * bucket and is never combined with buckets of another key. {@code null} (the default) routes
+     * to the main bucket. Called on the producer's thread before the batch is accepted.
+     *
+     * <p>Routing trades per-producer write order for file layout: batches of one producer that
+     * land in different sub-buckets may be written, and fail, in a different order than they
+     * were accepted.
+     */
+    protected Object routingKey(Batch<T> batch) {
+        return null;
+    }
+
     /**
      * Creates a new combined bucket from multiple buckets.
      * The combined bucket contains all batches and futures from the source buckets.
@@ -76,7 +132,8 @@ public abstract class BulkIngestQueue<T, R> implements BulkIngestQueueInterface<
      * @return a new bucket containing all content from the source buckets
      */
     static <T, R> Bucket<T, R> combineBuckets(List<Bucket<T, R>> buckets, long minBucketSize, int maxBatches, Duration maxDelay) {
-        var combined = new Bucket<T, R>(minBucketSize, maxBatches, maxDelay);
+        var routingKey = buckets.isEmpty() ? null : buckets.get(0).routingKey();
+        var combined = new Bucket<T, R>(routingKey, minBucketSize, maxBatches, maxDelay);
         for (var bucket : buckets) {
             for (int i = 0; i < bucket.batches().size(); i++) {
                 combined.add(bucket.batches().get(i), bucket.futures().get(i));
@@ -87,36 +144,25 @@ public abstract class BulkIngestQueue<T, R> implements BulkIngestQueueInterface<
     }
 
     /**
-     * Checks if a bucket can be added to a combined bucket without exceeding limits.
+     * Checks if a bucket can be added to a combined bucket without exceeding limits. Buckets of
+     * different sub-buckets (routing keys) are never combined.
      */
-    private static <T, R> boolean canCombine(long currentSize, int currentBatchCount,
+    private static <T, R> boolean canCombine(Object routingKey, long currentSize, int currentBatchCount,
                                               Bucket<T, R> candidate, long maxSize, int maxBatchCount) {
-        return (currentSize + candidate.size() <= maxSize) &&
+        return Objects.equals(routingKey, candidate.routingKey()) &&
+               (currentSize + candidate.size() <= maxSize) &&
                (currentBatchCount + candidate.batchCount() <= maxBatchCount);
     }
     /**
-     * Upper bound on tracked producer ids. The tracking map is an access-ordered LRU: when a new
-     * producer pushes the size past this limit, the least-recently-used producer's entry is
-     * evicted and duplicate/ordering protection for that producer silently disappears — its next
-     * batch is accepted with any sequence number. Evictions are logged and counted (see
+     * Upper bound on tracked producer ids. Tracking is least-recently-used: when a new producer
+     * pushes the size past this limit, the least-recently-used producer's entry is evicted and
+     * duplicate/ordering protection for that producer silently disappears — its next batch is
+     * accepted with any sequence number. Evictions are logged and counted (see
      * {@link #getProducerIdEvictions()}) so this is observable; size the limit above the number
      * of concurrently active producers.
      */
     private static final int MAX_PRODUCER_IDS = 10000;
-    private final Map<String, Long> inProgressBatchIds = new LinkedHashMap<>(16, 0.75f, true) {
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
-            if (size() > MAX_PRODUCER_IDS) {
-                producerIdEvictions.accumulate(1);
-                logger.warn("Producer-id cache for queue '{}' exceeded {} entries; evicting " +
-                                "least-recently-used producer '{}' (last batch id {}) — duplicate and " +
-                                "ordering protection no longer applies to it",
-                        identifier, MAX_PRODUCER_IDS, eldest.getKey(), eldest.getValue());
-                return true;
-            }
-            return false;
-        }
-    };
+    private final ProducerSequences inProgressBatchIds = new ProducerSequences(MAX_PRODUCER_IDS, this::onProducerEvicted);
     private final LongAccumulator producerIdEvictions = new LongAccumulator(Long::sum, 0L);
     private final long minBucketSize;
     private final long maxBucketSize;
@@ -125,9 +171,19 @@ public abstract class BulkIngestQueue<T, R> implements BulkIngestQueueInterface<
     private final String identifier;
     private final ScheduledExecutorService executorService;
     private final Duration maxDelay;
+    private final int commitLanes;
     private final Clock clock;
     private Instant lastWrite = Instant.EPOCH;
-    private Bucket<T, R> currentBucket;
+    /**
+     * Bucket producers append to. Replaced only under {@code this} (see {@link #handOffCurrentBucket});
+     * {@link #add} reads it without the lock.
+     */
+    private volatile Bucket<T, R> currentBucket;
+    /**
+     * Open sub-buckets by routing key (see {@link #routingKey}). Entries are created and removed
+     * only under {@code this}; {@link #add} looks them up without the lock.
+     */
+    private final ConcurrentHashMap<Object, Bucket<T, R>> routedBuckets = new ConcurrentHashMap<>();
     private volatile boolean terminating;
     private volatile boolean draining;
     /**
@@ -140,36 +196,69 @@ public abstract class BulkIngestQueue<T, R> implements BulkIngestQueueInterface<
      */
     private boolean triggerScheduled;
 
-    private volatile WriteTask<T, R> runningWrite;
+    private final Set<WriteTask<T, R>> runningWrites = ConcurrentHashMap.newKeySet();
     private long writeTaskId;
 
     private final BlockingQueue<WriteTask<T, R>> writeQueue = new LinkedBlockingQueue<>();
     /**
-     * Sentinel offered to {@link #writeQueue} by {@link #drain()}. Because the queue is FIFO,
-     * the write thread only reaches it after every previously enqueued task has been written,
-     * at which point it stops. Its bucket is {@code null} and must never be dereferenced.
+     * Sentinel offered to {@link #writeQueue} by {@link #drain()}, once per commit lane. Because
+     * the queue is FIFO, a lane only reaches one after every previously enqueued task has been
+     * dequeued, at which point it stops. Its bucket is {@code null} and must never be dereferenced.
      */
     private final WriteTask<T, R> poisonPill = new WriteTask<>(-1L, Instant.EPOCH, null);
-    private final Thread writeThread;
+    private final List<Thread> writeThreads;
+    /**
+     * Serializes dequeue-and-combine across lanes and hands out commit tickets in dequeue order.
+     * Held only while taking tasks off {@link #writeQueue}, never across a write.
+     */
+    private final ReentrantLock dequeueLock = new ReentrantLock();
+    /** Next commit ticket to hand out. Guarded by {@link #dequeueLock}. */
+    private long nextDequeueTicket;
+    /** Ticket whose commit phase may run next. Guarded by {@link #commitTurnLock}. */
+    private long nextCommitTicket;
+    private final Object commitTurnLock = new Object();
+    private final long lanesStartNanos = System.nanoTime();
+    private final LongAccumulator[] laneBusyNanos;
     private final LongAccumulator totalWriteBatches = new LongAccumulator(Long::sum, 0L);
     private final LongAccumulator totalWriteBuckets = new LongAccumulator(Long::sum, 0L);
     private final LongAccumulator acceptedBatches = new LongAccumulator(Long::sum, 0L);
-    private final LongAccumulator acceptedBytes = new LongAccumulator(Long::sum, 0L);
+    /** Bytes reserved by accepted batches; an {@link AtomicLong} so {@link #add} can reserve against {@code maxPendingWrite} with a CAS. */
+    private final AtomicLong acceptedBytes = new AtomicLong();
     private final LongAccumulator bucketsCreated = new LongAccumulator(Long::sum, 0L);
     private final LongAccumulator totalWrite = new LongAccumulator(Long::sum, 0L);
     private final LongAccumulator failedWriteBytes = new LongAccumulator(Long::sum, 0L);
     private final LongAccumulator failedWriteBatches = new LongAccumulator(Long::sum, 0L);
     private final LongAccumulator failedWriteBuckets = new LongAccumulator(Long::sum, 0L);
     private final LongAccumulator timeSpentWriting = new LongAccumulator(Long::sum, 0L);
+    private volatile AdaptiveBucketSizer adaptiveSizer;
+
+    public BulkIngestQueue(String identifier,
+                           long minBucketSize,
+                           long maxBucketSize,
+                           int maxBatches,
+                           long maxPendingWrite,
+                           Duration maxDelay,
+                           ScheduledExecutorService executorService,
+                           Clock clock) {
+        this(identifier, minBucketSize, maxBucketSize, maxBatches, maxPendingWrite, maxDelay, 1, executorService, clock);
+    }
 
+    /**
+     * @param commitLanes number of buckets whose data phase ({@link #writeData}) may run at once;
+     *                    commits stay serialized and ordered regardless. Must be at least 1.
+     */
     public BulkIngestQueue(String identifier,
                            long minBucketSize,
                            long maxBucketSize,
                            int maxBatches,
                            long maxPendingWrite,
                            Duration maxDelay,
+                           int commitLanes,
                            ScheduledExecutorService executorService,
                            Clock clock) {
+        if (commitLanes < 1) {
+            throw new IllegalArgumentException("commitLanes must be at least 1 but was " + commitLanes);
+        }
         this.minBucketSize = minBucketSize;
         this.maxBucketSize = maxBucketSize;
         this.maxBatches = maxBatches;
@@ -178,114 +267,278 @@ public abstract class BulkIngestQueue<T, R> implements BulkIngestQueueInterface<
         this.executorService = executorService;
         this.maxDelay = maxDelay;
         this.clock = clock;
+        this.commitLanes = commitLanes;
+        this.laneBusyNanos = new LongAccumulator[commitLanes];
         createNewBucket();
-        this.writeThread = new Thread(this::processWriteQueue, "BulkIngestQueue-" + identifier + "-writer");
-        this.writeThread.setDaemon(true);
-        this.writeThread.start();
+        var threads = new ArrayList<Thread>(commitLanes);
+        for (int lane = 0; lane < commitLanes; lane++) {
+            final int laneIndex = lane;
+            laneBusyNanos[lane] = new LongAccumulator(Long::sum, 0L);
+            var name = "BulkIngestQueue-" + identifier + "-writer" + (lane == 0 ? "" : "-" + lane);
+            var thread = new Thread(() -> processWriteQueue(laneIndex), name);
+            thread.setDaemon(true);
+            threads.add(thread);
+        }
+        this.writeThreads = List.copyOf(threads);
+        this.writeThreads.forEach(Thread::start);
         scheduleTrigger(maxDelay.toMillis());
     }
 
+    private void onProducerEvicted(String producerId, long lastBatchId) {
+        producerIdEvictions.accumulate(1);
+        logger.warn("Producer-id cache for queue '{}' exceeded {} entries; evicting " +
+                        "least-recently-used producer '{}' (last batch id {}) — duplicate and " +
+                        "ordering protection no longer applies to it",
+                identifier, MAX_PRODUCER_IDS, producerId, lastBatchId);
+    }
+
     private void createNewBucket(){
-        this.currentBucket = new Bucket<>(minBucketSize, maxBatches, maxDelay);
+        this.currentBucket = new Bucket<>(getEffectiveBucketSize(), maxBatches, getEffectiveMaxDelay());
         bucketsCreated.accumulate(1);
     }
 
+    /**
+     * Installs the next bucket — a fresh one, or a closed one once the queue stops accepting — and
+     * returns the previous one finalized. The replacement goes in before the previous bucket is
+     * finalized, so an {@link #add} that finds the previous bucket closed always finds its
+     * successor. Caller holds {@code this}.
+     */
+    private Bucket<T, R> handOffCurrentBucket() {
+        var previous = currentBucket;
+        if (terminating || draining) {
+            currentBucket = Bucket.closed();
+        } else {
+            createNewBucket();
+        }
+        previous.markFinalized();
+        return previous;
+    }
+
+    /**
+     * Hands the bucket size and flush delay over to {@code sizer}, which retunes them after every
+     * committed bucket; the configured {@code minBucketSize} and {@code maxDelay} are then only
+     * used as the sizer's bounds. Takes effect from the next bucket (immediately if the current
+     * one is still empty). {@code null} restores the fixed thresholds.
+     */
+    public synchronized void setAdaptiveSizer(AdaptiveBucketSizer sizer) {
+        this.adaptiveSizer = sizer;
+        if (currentBucket.isEmpty()) {
+            var previous = handOffCurrentBucket();
+            // a batch may have been appended while the bucket was being replaced
+            if (!previous.isEmpty()) {
+                enqueue(previous);
+            }
+        }
+    }
+
+    /** Size at which a bucket is flushed: the adaptive size when enabled, else {@code minBucketSize}. */
+    public long getEffectiveBucketSize() {
+        var sizer = adaptiveSizer;
+        return sizer != null ? sizer.bucketSize() : minBucketSize;
+    }
+
+    /** Delay after which a bucket is flushed: the adaptive delay when enabled, else {@code maxDelay}. */
+    public Duration getEffectiveMaxDelay() {
+        var sizer = adaptiveSizer;
+        return sizer != null ? sizer.delay() : maxDelay;
+    }
+
+    private void adapt(Bucket<T, R> written) {
+        var sizer = adaptiveSizer;
+        if (sizer == null) {
+            return;
+        }
+        var latency = Duration.between(written.firstReceived(), clock.instant());
+        sizer.update(totalWrite.get(), timeSpentWriting.get(), commitLanes, pendingWrite(), latency);
+    }
+
 
-    private void processWriteQueue() {
+    private void processWriteQueue(int lane) {
         while (!terminating) {
+            WriteTask<T, R> task;
+            List<Bucket<T, R>> bucketsToCombine;
+            Bucket<T, R> bucketToWrite;
+            long ticket;
             try {
-                var task = writeQueue.take();
+                dequeueLock.lockInterruptibly();
+                try {
+                    task = writeQueue.take();
 
-                // drain() enqueues the poison pill after the final real task; reaching it means
-                // every accepted batch has been written, so the drain is complete and we stop.
-                if (task == poisonPill) {
-                    break;
-                }
+                    // drain() enqueues one poison pill per lane after the final real task; reaching
+                    // it means every accepted batch has been dequeued, so this lane stops.
+                    if (task == poisonPill) {
+                        break;
+                    }
 
-                // Try to combine with additional buckets from the queue
-                var bucketsToCombine = new ArrayList<Bucket<T, R>>();
-                bucketsToCombine.add(task.bucket());
-                long combinedSize = task.bucket().size();
-                int combinedBatchCount = task.bucket().batchCount();
-
-                // Poll additional tasks while they can be combined. Combine on the task actually
-                // returned by poll() — not the peeked one — so this stays correct even if close()
-                // concurrently drains the queue after a timed-out join: each task is then consumed
-                // by exactly one of {writer, close}, never written and abandoned at once.
-                WriteTask<T, R> nextTask;
-                while ((nextTask = writeQueue.peek()) != null && nextTask != poisonPill) {
-                    if (!canCombine(combinedSize, combinedBatchCount, nextTask.bucket(), maxBucketSize, maxBatches)) {
-                        break; // Can't combine more
+                    // Try to combine with additional buckets from the queue
+                    bucketsToCombine = new ArrayList<>();
+                    bucketsToCombine.add(task.bucket());
+                    long combinedSize = task.bucket().size();
+                    int combinedBatchCount = task.bucket().batchCount();
+
+                    // Poll additional tasks while they can be combined. Combine on the task actually
+                    // returned by poll() — not the peeked one — so this stays correct even if close()
+                    // concurrently drains the queue after a timed-out join: each task is then consumed
+                    // by exactly one of {writer, close}, never written and abandoned at once.
+                    WriteTask<T, R> nextTask;
+                    while ((nextTask = writeQueue.peek()) != null && nextTask != poisonPill) {
+                        if (!canCombine(task.bucket().routingKey(), combinedSize, combinedBatchCount,
+                                nextTask.bucket(), maxBucketSize, maxBatches)) {
+                            break; // Can't combine more
+                        }
+                        var polled = writeQueue.poll();
+                        if (polled == null || polled == poisonPill) {
+                            break; // lost the race to a concurrent consumer, or reached the pill
+                        }
+                        var polledBucket = polled.bucket();
+                        bucketsToCombine.add(polledBucket);
+                        combinedSize += polledBucket.size();
+                        combinedBatchCount += polledBucket.batchCount();
                     }
-                    var polled = writeQueue.poll();
-                    if (polled == null || polled == poisonPill) {
-                        break; // lost the race to a concurrent consumer, or reached the pill
+
+                    // Create combined bucket if we have multiple, otherwise use original
+                    if (bucketsToCombine.size() > 1) {
+                        bucketToWrite = combineBuckets(bucketsToCombine, minBucketSize, maxBatches, maxDelay);
+                    } else {
+                        bucketToWrite = task.bucket();
                     }
-                    var polledBucket = polled.bucket();
-                    bucketsToCombine.add(polledBucket);
-                    combinedSize += polledBucket.size();
-                    combinedBatchCount += polledBucket.batchCount();
+                    ticket = nextDequeueTicket++;
+                } finally {
+                    dequeueLock.unlock();
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
 
-                // Create combined bucket if we have multiple, otherwise use original
-                Bucket<T, R> bucketToWrite;
-                if (bucketsToCombine.size() > 1) {
-                    bucketToWrite = combineBuckets(bucketsToCombine, minBucketSize, maxBatches, maxDelay);
-                } else {
-                    bucketToWrite = task.bucket();
+            var combinedTask = new WriteTask<>(task.taskId(), task.startTime(), bucketToWrite);
+            runningWrites.add(combinedTask);
+            try {
+                Commit commit = null;
+                Exception failure = null;
+                var busyStart = System.nanoTime();
+                var start = clock.instant();
+                try {
+                    commit = writeData(combinedTask);
+                } catch (Exception e) {
+                    failure = e;
                 }
+                var dataTime = Duration.between(start, clock.instant());
+                laneBusyNanos[lane].accumulate(System.nanoTime() - busyStart);
 
-                var combinedTask = new WriteTask<>(task.taskId(), task.startTime(), bucketToWrite);
-                runningWrite = combinedTask;
-
+                // Commits (and failure handling, which rolls producer sequences back) run strictly
+                // in dequeue order, so lanes only overlap data phases and ordering is unchanged.
+                if (!awaitCommitTurn(ticket)) {
+                    abandonInFlight(bucketToWrite, commit);
+                    break;
+                }
                 try {
-                    var start = clock.instant();
-                    write(combinedTask);
-                    var end = clock.instant();
-                    totalWriteBatches.accumulate(bucketToWrite.batches().size());
-                    totalWrite.accumulate(bucketToWrite.size());
-                    totalWriteBuckets.accumulate(bucketsToCombine.size());
-                    timeSpentWriting.accumulate(Duration.between(start, end).toMillis());
-                } catch (Exception e) {
-                    logger.error("Write failed for queue '{}': dropping bucket of {} batches / {} bytes",
-                            identifier, bucketToWrite.batchCount(), bucketToWrite.size(), e);
-                    // A failed bucket is no longer outstanding work: account it separately so
-                    // pendingWrite()/getPendingBatches() (acceptedBytes - written - failed) don't
-                    // count it as pending forever and eventually wedge add() at maxPendingWrite.
-                    // Accumulate before completing the futures so a caller observing the failure
-                    // already sees the corrected pending numbers.
-                    failedWriteBytes.accumulate(bucketToWrite.size());
-                    failedWriteBatches.accumulate(bucketToWrite.batchCount());
-                    failedWriteBuckets.accumulate(1);
-                    rollbackProducerSequences(bucketToWrite);
-                    // Complete futures with exception but continue processing remaining tasks
-                    for (var future : bucketToWrite.futures()) {
-                        if (!future.isDone()) {
-                            future.completeExceptionally(e);
+                    busyStart = System.nanoTime();
+                    start = clock.instant();
+                    if (failure == null) {
+                        try {
+                            commit.run();
+                        } catch (Exception e) {
+                            failure = e;
                         }
                     }
-                    // Don't break - continue processing the next task in the queue
+                    laneBusyNanos[lane].accumulate(System.nanoTime() - busyStart);
+                    var writeTime = dataTime.plus(Duration.between(start, clock.instant()));
+                    if (failure == null) {
+                        totalWriteBatches.accumulate(bucketToWrite.batches().size());
+                        totalWrite.accumulate(bucketToWrite.size());
+                        totalWriteBuckets.accumulate(bucketsToCombine.size());
+                        timeSpentWriting.accumulate(writeTime.toMillis());
+                        adapt(bucketToWrite);
+                    } else {
+                        handleFailedWrite(bucketToWrite, failure);
+                    }
                 } finally {
-                    runningWrite = null;
+                    advanceCommitTurn();
                 }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                break;
+            } finally {
+                runningWrites.remove(combinedTask);
+            }
+        }
+    }
+
+    private void handleFailedWrite(Bucket<T, R> bucketToWrite, Exception e) {
+        logger.error("Write failed for queue '{}': dropping bucket of {} batches / {} bytes",
+                identifier, bucketToWrite.batchCount(), bucketToWrite.size(), e);
+        // A failed bucket is no longer outstanding work: account it separately so
+        // pendingWrite()/getPendingBatches() (acceptedBytes - written - failed) don't
+        // count it as pending forever and eventually wedge add() at maxPendingWrite.
+        // Accumulate before completing the futures so a caller observing the failure
+        // already sees the corrected pending numbers.
+        failedWriteBytes.accumulate(bucketToWrite.size());
+        failedWriteBatches.accumulate(bucketToWrite.batchCount());
+        failedWriteBuckets.accumulate(1);
+        rollbackProducerSequences(bucketToWrite);
+        // Complete futures with exception but continue processing remaining tasks
+        for (var future : bucketToWrite.futures()) {
+            if (!future.isDone()) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Blocks until {@code ticket} is the next bucket allowed to commit. Returns {@code false} if
+     * the queue is closed (or the lane interrupted) first; the caller then abandons its bucket
+     * instead of committing out of order. Once closed, no bucket commits, even one whose turn has
+     * come: close() fails its futures.
+     */
+    private boolean awaitCommitTurn(long ticket) {
+        synchronized (commitTurnLock) {
+            while (terminating || nextCommitTicket != ticket) {
+                if (terminating) {
+                    return false;
+                }
+                try {
+                    commitTurnLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private void advanceCommitTurn() {
+        synchronized (commitTurnLock) {
+            nextCommitTicket++;
+            commitTurnLock.notifyAll();
+        }
+    }
+
+    /**
+     * Fails a bucket whose data phase finished but whose commit turn never came before close(),
+     * after undoing its data phase ({@code commit} is {@code null} if that phase failed).
+     */
+    private void abandonInFlight(Bucket<T, R> bucket, Commit commit) {
+        if (commit != null) {
+            try {
+                commit.abandon();
+            } catch (RuntimeException e) {
+                logger.warn("Queue '{}' failed to undo the data phase of an abandoned bucket", identifier, e);
             }
         }
+        var exception = new IllegalStateException("Server shutting down before batch could be written");
+        bucket.futures().forEach(f -> f.completeExceptionally(exception));
     }
 
     /**
      * Rolls each producer's sequence entry back below the smallest id that failed in this bucket,
      * so the client can resubmit exactly the batches whose futures failed; without this a retry is
      * rejected as {@link OutOfSequenceBatch} and a recoverable write failure becomes data loss.
-     * Runs under the queue lock because {@link #add} reads and writes {@link #inProgressBatchIds}
-     * under the same lock, and before the futures are completed so a client observing the failure
+     * Runs under each producer's stripe lock because {@link #add} reads and writes
+     * {@link #inProgressBatchIds} under the same lock, and before the futures are completed so a client observing the failure
      * can retry immediately. Ids of later batches from the same producer still queued behind the
      * failed bucket become re-submittable too; they either succeed (so dedup is only weakened for
      * batches the client was told failed) or fail and legitimately need the same retry window.
      */
-    private synchronized void rollbackProducerSequences(Bucket<T, R> bucket) {
+    private void rollbackProducerSequences(Bucket<T, R> bucket) {
         var minFailedByProducer = new HashMap<String, Long>();
         for (var batch : bucket.batches()) {
             if (batch.producerId() != null) {
@@ -293,9 +546,8 @@ public abstract class BulkIngestQueue<T, R> implements BulkIngestQueueInterface<
             }
         }
         minFailedByProducer.forEach((producerId, minFailedId) -> {
-            var current = inProgressBatchIds.get(producerId);
-            if (current != null && current >= minFailedId) {
-                inProgressBatchIds.put(producerId, minFailedId - 1);
+            synchronized (inProgressBatchIds.lockFor(producerId)) {
+                inProgressBatchIds.rollBackTo(producerId, minFailedId - 1);
             }
         });
     }
@@ -340,6 +592,21 @@ public abstract class BulkIngestQueue<T, R> implements BulkIngestQueueInterface<
         return producerIdEvictions.get();
     }
 
+    public int getCommitLanes() {
+        return commitLanes;
+    }
+
+    /** Cumulative nanoseconds {@code lane} spent writing (data and commit phases, excluding waits). */
+    public long getLaneBusyNanos(int lane) {
+        return laneBusyNanos[lane].get();
+    }
+
+    /** Fraction of wall time since the queue started that {@code lane} spent writing, in [0, 1]. */
+    public double getLaneUtilization(int lane) {
+        long elapsed = System.nanoTime() - lanesStartNanos;
+        return elapsed <= 0 ? 0.0 : Math.min(1.0, (double) laneBusyNanos[lane].get() / elapsed);
+    }
+
     public long getPendingBatches() {
         return acceptedBatches.get() - totalWriteBatches.get() - failedWriteBatches.get();
     }
@@ -374,8 +641,9 @@ public abstract class BulkIngestQueue<T, R> implements BulkIngestQueueInterface<
             return 5; // Default 5 seconds
         }
 
-        // Calculate write rate in bytes per millisecond
-        double bytesPerMs = (double) writtenBytes / writingTimeMs;
+        // Calculate write rate in bytes per millisecond; writing time is summed across lanes,
+        // which write concurrently
+        double bytesPerMs = (double) writtenBytes * commitLanes / writingTimeMs;
 
         // Calculate estimated time to drain pending bytes (in seconds)
         double estimatedDrainSeconds = currentPending / bytesPerMs / 1000.0;
@@ -385,36 +653,124 @@ public abstract class BulkIngestQueue<T, R> implements BulkIngestQueueInterface<
         return Math.max(1, Math.min(60, retryAfterSeconds));
     }
 
-    public synchronized CompletableFuture<R> add(Batch<T> batch) {
-        if (terminating || draining) {
-            throw new IllegalStateException("The queue is closed");
-        }
-        long currentPending = pendingWrite();
-        if (currentPending + batch.totalSize() > maxPendingWrite) {
-            int retryAfterSeconds = calculateRetryAfterSeconds(currentPending);
-            return CompletableFuture.failedFuture(
-                    new PendingWriteExceededException(currentPending, maxPendingWrite, retryAfterSeconds));
-        }
-        if (batch.producerId() != null) {
-            var progressBatch = inProgressBatchIds.get(batch.producerId());
-            if (progressBatch != null && progressBatch >= batch.producerBatchId()) {
+    /**
+     * Accepts a batch into the current bucket. Does not take the queue lock: the pending-write
+     * limit is a CAS reservation on {@link #acceptedBytes}, sequence checks serialize per producer
+     * on a striped lock, and the bucket append is lock-free (see {@link Bucket#tryAdd}). Only the
+     * producer whose batch fills the bucket takes the queue lock, to hand the bucket off.
+     */
+    public CompletableFuture<R> add(Batch<T> batch) {
+        checkAccepting();
+        Object routingKey = routingKey(batch);
+        long size = batch.totalSize();
+        long reserved;
+        long currentPending;
+        do {
+            reserved = acceptedBytes.get();
+            currentPending = reserved - totalWrite.get() - failedWriteBytes.get();
+            if (currentPending + size > maxPendingWrite) {
+                int retryAfterSeconds = calculateRetryAfterSeconds(currentPending);
                 return CompletableFuture.failedFuture(
-                        new OutOfSequenceBatch(progressBatch, batch.producerBatchId()));
+                        new PendingWriteExceededException(currentPending, maxPendingWrite, retryAfterSeconds));
             }
-        }
+        } while (!acceptedBytes.compareAndSet(reserved, reserved + size));
+
         var result = new CompletableFuture<R>();
-        currentBucket.add(batch, result);
+        Bucket<T, R> bucket;
+        // Counted before the append: once appended the bucket can be written at any time, and the
+        // write must never see more written than accepted batches.
         acceptedBatches.accumulate(1);
-        acceptedBytes.accumulate(batch.totalSize());
-        if (batch.producerId() != null) {
-            inProgressBatchIds.put(batch.producerId(), batch.producerBatchId());
+        try {
+            if (batch.producerId() == null) {
+                bucket = append(batch, result, routingKey);
+            } else {
+                synchronized (inProgressBatchIds.lockFor(batch.producerId())) {
+                    var progressBatch = inProgressBatchIds.get(batch.producerId());
+                    if (progressBatch != null && progressBatch >= batch.producerBatchId()) {
+                        acceptedBatches.accumulate(-1);
+                        acceptedBytes.addAndGet(-size);
+                        return CompletableFuture.failedFuture(
+                                new OutOfSequenceBatch(progressBatch, batch.producerBatchId()));
+                    }
+                    bucket = append(batch, result, routingKey);
+                    inProgressBatchIds.put(batch.producerId(), batch.producerBatchId());
+                }
+            }
+        } catch (RuntimeException e) {
+            acceptedBatches.accumulate(-1);
+            acceptedBytes.addAndGet(-size);
+            throw e;
         }
-        if (currentBucket.isFull()) {
-           submitWriteTask();
+        if (bucket.isFull()) {
+            submitWriteTask(bucket);
         }
         return result;
     }
 
+    /**
+     * The open sub-bucket for {@code routingKey}, created if needed. Creation is under {@code this}
+     * so that drain() and close(), which sweep the sub-buckets under the same lock, never miss one;
+     * once the queue stops accepting, a closed bucket is returned instead. Package-private so
+     * tests can open a sub-bucket ahead of its first batch.
+     */
+    synchronized Bucket<T, R> openRoutedBucket(Object routingKey) {
+        if (terminating || draining) {
+            return Bucket.closed();
+        }
+        return routedBuckets.computeIfAbsent(routingKey, key -> {
+            bucketsCreated.accumulate(1);
+            return new Bucket<>(key, getEffectiveBucketSize(), maxBatches, getEffectiveMaxDelay());
+        });
+    }
+
+    /** Removes and finalizes every open sub-bucket. Caller holds {@code this}. */
+    private List<Bucket<T, R>> handOffRoutedBuckets() {
+        var handedOff = new ArrayList<Bucket<T, R>>();
+        for (var key : routedBuckets.keySet()) {
+            var bucket = routedBuckets.remove(key);
+            if (bucket != null) {
+                bucket.markFinalized();
+                handedOff.add(bucket);
+            }
+        }
+        return handedOff;
+    }
+
+    /** Number of open sub-buckets. */
+    public int getRoutedBucketCount() {
+        return routedBuckets.size();
+    }
+
+    private void checkAccepting() {
+        if (terminating || draining) {
+            throw new IllegalStateException("The queue is closed");
+        }
+    }
+
+    /**
+     * Appends to the current bucket (or the open sub-bucket of {@code routingKey}), following
+     * handoffs, and returns the bucket that took the batch.
+     */
+    private Bucket<T, R> append(Batch<T> batch, CompletableFuture<R> result, Object routingKey) {
+        while (true) {
+            Bucket<T, R> bucket;
+            if (routingKey == null) {
+                bucket = currentBucket;
+            } else {
+                bucket = routedBuckets.get(routingKey);
+                if (bucket == null) {
+                    bucket = openRoutedBucket(routingKey);
+                }
+            }
+            if (bucket.tryAdd(batch, result)) {
+                return bucket;
+            }
+            // Handed off concurrently. The successor is already installed, unless the queue
+            // stopped accepting, in which case it is a closed bucket and the batch is rejected.
+            checkAccepting();
+        }
+    }
+
     private synchronized void triggerWriteIfRequired() {
         // This run consumed the scheduled trigger; whichever path follows schedules the successor.
         triggerScheduled = false;
@@ -423,18 +779,43 @@ public abstract class BulkIngestQueue<T, R> implements BulkIngestQueueInterface<
             // further scheduled trigger is a no-op so the executor stops rescheduling this task.
             return;
         }
+        try {
+            flushDueBuckets();
+        } finally {
+            // add() never schedules a trigger, so if the flush above threw before scheduling the
+            // successor, time-based flushes would stop for good.
+            if (!triggerScheduled && !terminating && !draining) {
+                scheduleTrigger(getEffectiveMaxDelay().toMillis());
+            }
+        }
+    }
+
+    /** Flushes every full or overdue bucket and schedules the next trigger. Caller holds {@code this}. */
+    private void flushDueBuckets() {
         var now = clock.instant();
+        var delay = getEffectiveMaxDelay();
+        for (var bucket : routedBuckets.values()) {
+            // A sub-bucket is installed before its first batch lands, so it may still be empty
+            // here, with no receive time (Instant.MAX) to measure the delay from.
+            var firstReceived = bucket.firstReceived();
+            if (firstReceived.equals(Instant.MAX)) {
+                continue;
+            }
+            if (bucket.isFull() || !firstReceived.plus(delay).isAfter(now)) {
+                submitWriteTask(bucket);
+            }
+        }
         if (currentBucket.isEmpty()) {
             // Nothing to flush — schedule the next check at a full maxDelay interval.
             // Using scheduleNextTrigger here is unsafe: when lastWrite == Instant.EPOCH
             // (initial state), nextTrigger is decades in the past, so timeRemaining is
             // deeply negative and Math.max(0, ...) collapses to 0, creating a tight
             // spin-loop that consumes 100% CPU and starves all other threads.
-            scheduleTrigger(maxDelay.toMillis());
+            scheduleTrigger(getEffectiveMaxDelay().toMillis());
             return;
         }
 
-        var nextWrite = lastWrite.plus(maxDelay);
+        var nextWrite = lastWrite.plus(getEffectiveMaxDelay());
         if (currentBucket.isFull() || !nextWrite.isAfter(now)) {
             submitWriteTask();
         } else {
@@ -443,16 +824,30 @@ public abstract class BulkIngestQueue<T, R> implements BulkIngestQueueInterface<
     }
 
     private void scheduleNextTrigger(Instant now) {
-        var nextTrigger = lastWrite.plus(maxDelay);
+        var nextTrigger = lastWrite.plus(getEffectiveMaxDelay());
         var timeRemaining = Duration.between(now, nextTrigger);
         scheduleTrigger(Math.max(0, timeRemaining.toMillis()));
     }
 
-    /** Schedules the next {@link #triggerWriteIfRequired} run unless one is already pending. */
+    /**
+     * Schedules the next {@link #triggerWriteIfRequired} run unless one is already pending, earlier
+     * than {@code delayMillis} if a sub-bucket is due sooner.
+     */
     private void scheduleTrigger(long delayMillis) {
         if (triggerScheduled) {
             return;
         }
+        if (!routedBuckets.isEmpty()) {
+            var now = clock.instant();
+            var delay = getEffectiveMaxDelay();
+            for (var bucket : routedBuckets.values()) {
+                var firstReceived = bucket.firstReceived();
+                if (!firstReceived.equals(Instant.MAX)) {
+                    long due = Duration.between(now, firstReceived.plus(delay)).toMillis();
+                    delayMillis = Math.min(delayMillis, Math.max(0, due));
+                }
+            }
+        }
         triggerScheduled = true;
         try {
             executorService.schedule(this::triggerWriteIfRequired, delayMillis, TimeUnit.MILLISECONDS);
@@ -466,14 +861,35 @@ public abstract class BulkIngestQueue<T, R> implements BulkIngestQueueInterface<
     }
 
     private synchronized void submitWriteTask() {
-        if (currentBucket.isEmpty()) {
+        submitWriteTask(currentBucket);
+    }
+
+    /**
+     * Hands off and enqueues {@code bucket} if it is still the current (or its sub-bucket's open)
+     * non-empty bucket.
+     */
+    private synchronized void submitWriteTask(Bucket<T, R> bucket) {
+        if (bucket.isEmpty()) {
             return;
         }
-        var toWrite = currentBucket;
-        toWrite.markFinalized();
-        createNewBucket();
+        if (bucket.routingKey() == null) {
+            if (bucket == currentBucket) {
+                enqueue(handOffCurrentBucket());
+            }
+        } else if (routedBuckets.remove(bucket.routingKey(), bucket)) {
+            bucket.markFinalized();
+            enqueue(bucket);
+        }
+    }
+
+    /** Enqueues a finalized bucket for writing. Caller holds {@code this}. */
+    private void enqueue(Bucket<T, R> toWrite) {
         var writeTask = new WriteTask<>(writeTaskId++, clock.instant(), toWrite);
-        lastWrite = clock.instant();
+        // Sub-buckets run on their own clock (their first batch), so only the main bucket's
+        // flush restarts the main delay.
+        if (toWrite.routingKey() == null) {
+            lastWrite = clock.instant();
+        }
         writeQueue.offer(writeTask);
         if (!terminating && !draining) {
             scheduleNextTrigger(clock.instant());
@@ -481,63 +897,97 @@ public abstract class BulkIngestQueue<T, R> implements BulkIngestQueueInterface<
     }
     /**
      * Initiates draining: marks the queue as draining (so {@link #add} is rejected and scheduled
-     * triggers become no-ops), finalizes and enqueues the current bucket, then enqueues the poison
-     * pill. FIFO ordering guarantees the write thread drains that bucket — and every task still
-     * queued ahead of it — before it reaches the pill and stops. Idempotent and a no-op once
+     * triggers become no-ops), finalizes and enqueues the current bucket, then enqueues one poison
+     * pill per lane. FIFO ordering guarantees the lanes drain that bucket — and every task still
+     * queued ahead of it — before they reach the pills and stop. Idempotent and a no-op once
      * {@code terminating} (close already abandoned everything) or already draining.
      */
     private synchronized void initiateDrain() {
         if (!terminating && !draining) {
             draining = true;
-            submitWriteTask();
-            writeQueue.offer(poisonPill);
+            // Always hand off, even an empty-looking bucket: an add() that passed its check just
+            // before draining may still be appending to it.
+            for (var routed : handOffRoutedBuckets()) {
+                if (!routed.isEmpty()) {
+                    enqueue(routed);
+                }
+            }
+            var last = handOffCurrentBucket();
+            if (!last.isEmpty()) {
+                enqueue(last);
+            }
+            for (int i = 0; i < commitLanes; i++) {
+                writeQueue.offer(poisonPill);
+            }
         }
     }
 
     @Override
     public void drain() throws InterruptedException {
         initiateDrain();
-        writeThread.join();
+        for (var thread : writeThreads) {
+            thread.join();
+        }
     }
 
     @Override
     public boolean drain(Duration timeout) throws InterruptedException {
         initiateDrain();
-        long millis = timeout.toMillis();
+        long deadline = System.nanoTime() + timeout.toNanos();
         // join(0) blocks forever, so only wait when the bound is positive; a non-positive
-        // timeout means "don't wait" and we report whether the writer happens to be done.
-        if (millis > 0) {
-            writeThread.join(millis);
+        // timeout means "don't wait" and we report whether the writers happen to be done.
+        for (var thread : writeThreads) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (millis > 0) {
+                thread.join(millis);
+            }
         }
-        return !writeThread.isAlive();
+        return writersTerminated();
+    }
+
+    /** True once every write thread has exited, i.e. no write can still touch a batch. */
+    protected boolean writersTerminated() {
+        return writeThreads.stream().noneMatch(Thread::isAlive);
     }
 
     @Override
     public synchronized void close() throws Exception {
         terminating = true;
-        var c = runningWrite;
-        if (c != null) {
-            c.cancel();
+        // Stop appends first: from here on add() finds only closed buckets.
+        var last = handOffCurrentBucket();
+        var routed = handOffRoutedBuckets();
+        runningWrites.forEach(WriteTask::cancel);
+        synchronized (commitTurnLock) {
+            // Wake lanes waiting for their commit turn so they abandon instead of committing.
+            commitTurnLock.notifyAll();
         }
 
-        // Interrupt and wait (bounded) for the write thread to finish processing. It exits the loop
+        // Interrupt and wait (bounded) for the write threads to finish processing. Each exits the loop
         // when it sees terminating=true, or when interrupted while blocked waiting for a task. The
         // bound guarantees a forceful close cannot hang forever on a write that ignores cancellation;
         // a writer still stuck past it is left running (it is a daemon and cannot block JVM exit) and
         // only owns its own in-flight bucket, which the cleanup below deliberately does not touch.
-        writeThread.interrupt();
+        writeThreads.forEach(Thread::interrupt);
         var joinTimeout = closeJoinTimeout();
-        writeThread.join(joinTimeout.toMillis());
-        if (writeThread.isAlive()) {
-            logger.atWarn().log("Write thread {} did not terminate within {} of close(); abandoning it",
-                    writeThread.getName(), joinTimeout);
+        long deadline = System.nanoTime() + joinTimeout.toNanos();
+        for (var thread : writeThreads) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            thread.join(Math.max(1, millis));
+            if (thread.isAlive()) {
+                logger.atWarn().log("Write thread {} did not terminate within {} of close(); abandoning it",
+                        thread.getName(), joinTimeout);
+            }
         }
 
         // Fail any futures in the current bucket and release their resources
         var exception = new IllegalStateException("Server shutting down before batch could be written");
-        if (!currentBucket.isEmpty()) {
-            currentBucket.batches().forEach(this::onBatchAbandoned);
-            currentBucket.futures().forEach(f -> f.completeExceptionally(exception));
+        for (var bucket : routed) {
+            bucket.batches().forEach(this::onBatchAbandoned);
+            bucket.futures().forEach(f -> f.completeExceptionally(exception));
+        }
+        if (!last.isEmpty()) {
+            last.batches().forEach(this::onBatchAbandoned);
+            last.futures().forEach(f -> f.completeExceptionally(exception));
         }
 
         // Fail any remaining tasks that weren't processed and release their resources. A timed-out
@@ -0,0 +1,216 @@
+package io.dazzleduck.sql.commons.ingestion;
+
+import io.dazzleduck.sql.commons.ConnectionPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Group commit coordinator for one DuckLake catalog.
+ *
+ * <p>Every bucket written by a DuckLake-backed queue ends in a small catalog transaction
+ * ({@code ducklake_add_data_files} per file, plus the optional watermark {@code INSERT}). With many
+ * queues targeting the same catalog those transactions serialize on the metadata database, so the
+ * catalog commit rate — not COPY throughput — bounds ingestion. This coordinator funnels all
+ * registrations for its catalog through a single committer thread, which folds everything pending
+ * into ONE transaction: the registrations that arrived while the previous transaction was running,
+ * plus any arriving within {@code window} of the first one.
+ *
+ * <p>{@link #commit} blocks the calling commit lane until its statements are visible, so each
+ * bucket's futures still complete only after its files are registered. If a grouped transaction
+ * fails, its registrations are retried one transaction each, so a single bad bucket fails alone
+ * instead of taking the rest of the group with it.
+ */
+public class DuckLakeCatalogCommitter implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(DuckLakeCatalogCommitter.class);
+
+    /** Upper bound on registrations folded into one catalog transaction. */
+    static final int MAX_GROUP_SIZE = 256;
+
+    private static final long IDLE_POLL_MS = 100;
+    private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(30);
+
+    private record Registration(String[] statements, CompletableFuture<Void> done) {}
+
+    private final String catalogName;
+    private final Duration window;
+    private final LinkedBlockingQueue<Registration> pending = new LinkedBlockingQueue<>();
+    private final Thread committerThread;
+    private volatile boolean closed;
+
+    private final LongAdder transactions = new LongAdder();
+    private final LongAdder registrations = new LongAdder();
+
+    private static final LongAdder TOTAL_TRANSACTIONS = new LongAdder();
+    private static final LongAdder TOTAL_REGISTRATIONS = new LongAdder();
+
+    /**
+     * @param catalogName DuckLake catalog whose registrations are grouped (used for naming and logs)
+     * @param window      how long to keep collecting after the first pending registration;
+     *                    {@link Duration#ZERO} groups only what is already waiting
+     */
+    public DuckLakeCatalogCommitter(String catalogName, Duration window) {
+        if (window == null || window.isNegative()) {
+            throw new IllegalArgumentException("catalog commit window must be >= 0, got: " + window);
+        }
+        this.catalogName = catalogName;
+        this.window = window;
+        this.committerThread = new Thread(this::run, "DuckLakeCatalogCommitter-" + catalogName);
+        this.committerThread.setDaemon(true);
+        this.committerThread.start();
+    }
+
+    /**
+     * Commits {@code statements} atomically, possibly in the same transaction as registrations from
+     * other queues, and returns once they are committed.
+     *
+     * @throws SQLException if the statements could not be committed
+     */
+    public void commit(List<String> statements) throws SQLException {
+        var registration = new Registration(statements.toArray(String[]::new), new CompletableFuture<>());
+        pending.add(registration);
+        // After close() the committer thread may already have exited; a registration it will never
+        // see is withdrawn and committed on the caller's thread instead.
+        if (closed && pending.remove(registration)) {
+            execute(registration.statements());
+            return;
+        }
+        try {
+            registration.done().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for catalog commit on " + catalogName, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException sqlException) throw sqlException;
+            if (cause instanceof RuntimeException runtimeException) throw runtimeException;
+            throw new SQLException("Catalog commit failed on " + catalogName, cause);
+        }
+    }
+
+    /** Number of catalog transactions committed by the coordinator. */
+    public long getTransactions() {
+        return transactions.sum();
+    }
+
+    /** Number of bucket registrations committed by the coordinator. */
+    public long getRegistrations() {
+        return registrations.sum();
+    }
+
+    /** Catalog transactions committed by every coordinator of the process, closed ones included. */
+    public static long totalTransactions() {
+        return TOTAL_TRANSACTIONS.sum();
+    }
+
+    /** Bucket registrations committed by every coordinator of the process, closed ones included. */
+    public static long totalRegistrations() {
+        return TOTAL_REGISTRATIONS.sum();
+    }
+
+    private void run() {
+        List<Registration> group = new ArrayList<>();
+        try {
+            while (true) {
+                Registration first = pending.poll(IDLE_POLL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (closed) break;
+                    continue;
+                }
+                group.add(first);
+                if (!window.isZero()) {
+                    long deadline = System.nanoTime() + window.toNanos();
+                    while (group.size() < MAX_GROUP_SIZE) {
+                        Registration next = pending.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                        if (next == null) break;
+                        group.add(next);
+                    }
+                }
+                pending.drainTo(group, MAX_GROUP_SIZE - group.size());
+                commitGroup(group);
+                group.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Registrations that raced with close() are still committed rather than stranded.
+        group.forEach(this::commitOne);
+        Registration remaining;
+        while ((remaining = pending.poll()) != null) {
+            commitOne(remaining);
+        }
+    }
+
+    private void commitGroup(List<Registration> group) {
+        if (group.size() == 1) {
+            commitOne(group.get(0));
+            return;
+        }
+        String[] statements = group.stream()
+                .flatMap(r -> Arrays.stream(r.statements()))
+                .toArray(String[]::new);
+        try {
+            execute(statements);
+        } catch (Exception e) {
+            logger.atWarn().setCause(e).log("Group commit of {} registrations failed for catalog {}; retrying individually",
+                    group.size(), catalogName);
+            group.forEach(this::commitOne);
+            return;
+        }
+        recordCommitted(group.size());
+        logger.debug("Committed {} registrations in one transaction for catalog {}", group.size(), catalogName);
+        group.forEach(r -> r.done().complete(null));
+    }
+
+    private void recordCommitted(int groupSize) {
+        transactions.increment();
+        registrations.add(groupSize);
+        TOTAL_TRANSACTIONS.increment();
+        TOTAL_REGISTRATIONS.add(groupSize);
+    }
+
+    private void commitOne(Registration registration) {
+        try {
+            execute(registration.statements());
+            recordCommitted(1);
+            registration.done().complete(null);
+        } catch (Exception e) {
+            registration.done().completeExceptionally(e);
+        }
+    }
+
+    private static void execute(String[] statements) throws SQLException {
+        try (Connection conn = ConnectionPool.getConnection()) {
+            ConnectionPool.executeBatchInTxn(conn, statements);
+        }
+    }
+
+    /**
+     * Stops accepting work on the committer thread once everything pending is committed. Calls to
+     * {@link #commit} after close run on the caller's thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            committerThread.join(CLOSE_TIMEOUT.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (committerThread.isAlive()) {
+            logger.warn("Catalog committer for {} did not finish within {}", catalogName, CLOSE_TIMEOUT);
+        }
+    }
+}
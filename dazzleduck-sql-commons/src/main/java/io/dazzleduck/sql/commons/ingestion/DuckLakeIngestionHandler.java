@@ -33,6 +33,9 @@ import java.util.concurrent.Executors;
  *       exactly once per queue ID (via {@link #getOrCreateQueue}) and is never replaced unless
  *       the target path disappears and the queue is evicted.</li>
  * </ul>
+ *
+ * <p>Catalog registrations are group-committed through one {@link DuckLakeCatalogCommitter} per
+ * DuckLake catalog, shared by every queue this handler serves.
  */
 public class DuckLakeIngestionHandler implements IngestionHandler {
 
@@ -87,6 +90,18 @@ public class DuckLakeIngestionHandler implements IngestionHandler {
 
     private final ConcurrentHashMap<String, ParquetIngestionQueue> queueCache = new ConcurrentHashMap<>();
 
+    // -----------------------------------------------------------------------
+    // Catalog group commit — one coordinator per DuckLake catalog
+    // -----------------------------------------------------------------------
+
+    /** Default extra time a catalog commit waits for more registrations: none, group only what is queued. */
+    public static final Duration DEFAULT_CATALOG_COMMIT_WINDOW = Duration.ZERO;
+
+    private final ConcurrentHashMap<String, DuckLakeCatalogCommitter> catalogCommitters = new ConcurrentHashMap<>();
+    private final Duration catalogCommitWindow;
+    /** Set once the committers are closed: no committer (and committer thread) is created after it. */
+    private volatile boolean catalogCommittersClosed;
+
     private final Duration refreshInterval;
     private final Clock clock;
 
@@ -95,9 +110,19 @@ public class DuckLakeIngestionHandler implements IngestionHandler {
     }
 
     public DuckLakeIngestionHandler(Map<String, QueueIdToTableMapping> mappings, Duration refreshInterval, Clock clock) {
+        this(mappings, refreshInterval, clock, DEFAULT_CATALOG_COMMIT_WINDOW);
+    }
+
+    /**
+     * @param catalogCommitWindow how long a catalog commit keeps collecting registrations from other
+     *                            queues after the first one arrives (see {@link DuckLakeCatalogCommitter})
+     */
+    public DuckLakeIngestionHandler(Map<String, QueueIdToTableMapping> mappings, Duration refreshInterval, Clock clock,
+                                    Duration catalogCommitWindow) {
         this.queueIdsToTableMappings = new ConcurrentHashMap<>(mappings);
         this.refreshInterval = refreshInterval;
         this.clock = clock;
+        this.catalogCommitWindow = catalogCommitWindow;
         mappings.forEach((id, mapping) -> stateCache.put(id, buildState(mapping, clock.instant())));
     }
 
@@ -185,6 +210,15 @@ public class DuckLakeIngestionHandler implements IngestionHandler {
         return mapping == null ? null : WatermarkSpec.fromParameters(queueId, mapping.additionalParameters());
     }
 
+    @Override
+    public ParquetOutputOptions getOutputOptions(String queueId) {
+        QueueIdToTableMapping mapping = queueIdsToTableMappings.get(queueId);
+        if (mapping == null) mapping = queueIdsToTableMappings.get(extractSuffix(queueId));
+        return mapping == null
+                ? ParquetOutputOptions.DEFAULT
+                : ParquetOutputOptions.fromParameters(queueId, mapping.additionalParameters());
+    }
+
     @Override
     public PostIngestionTask createPostIngestionTask(IngestionResult result) {
         QueueIdToTableMapping mapping = queueIdsToTableMappings.get(result.queueName());
@@ -194,8 +228,9 @@ public class DuckLakeIngestionHandler implements IngestionHandler {
             logger.atDebug().log("No DuckLake mapping for queue '{}', skipping catalog registration", result.queueName());
             return PostIngestionTask.NOOP;
         }
+        DuckLakeCatalogCommitter committer = catalogCommitter(mapping.catalog());
         return new DuckLakePostIngestionTask(result, mapping.catalog(), mapping.table(), mapping.schema(),
-                mapping.additionalParameters());
+                mapping.additionalParameters(), committer);
     }
 
     // -----------------------------------------------------------------------
@@ -252,6 +287,7 @@ public class DuckLakeIngestionHandler implements IngestionHandler {
         var queues = new ArrayList<>(queueCache.values());
         queueCache.clear();
         if (queues.isEmpty()) {
+            closeCatalogCommitters();
             return;
         }
         // Drain queues concurrently: total shutdown time is bounded by the slowest queue
@@ -262,6 +298,41 @@ public class DuckLakeIngestionHandler implements IngestionHandler {
                 executor.submit(() -> drainAndClose(queue, drainTimeout));
             }
         }
+        // Only after the drains: their final buckets still commit through the coordinators.
+        closeCatalogCommitters();
+    }
+
+    /**
+     * Returns the committer of {@code catalog}, creating it on first use.
+     *
+     * @throws IllegalStateException once the queues are closed, so a late commit cannot start a
+     *         committer thread nothing would close
+     */
+    private DuckLakeCatalogCommitter catalogCommitter(String catalog) {
+        DuckLakeCatalogCommitter committer = catalogCommitters.computeIfAbsent(catalog, c -> {
+            if (catalogCommittersClosed) {
+                throw new IllegalStateException("Catalog commits are closed; cannot register files in " + c);
+            }
+            return new DuckLakeCatalogCommitter(c, catalogCommitWindow);
+        });
+        // Created while closeCatalogCommitters() was sweeping the map: whichever removes it closes it.
+        if (catalogCommittersClosed) {
+            if (catalogCommitters.remove(catalog, committer)) {
+                committer.close();
+            }
+            throw new IllegalStateException("Catalog commits are closed; cannot register files in " + catalog);
+        }
+        return committer;
+    }
+
+    private void closeCatalogCommitters() {
+        catalogCommittersClosed = true;
+        for (var catalog : new ArrayList<>(catalogCommitters.keySet())) {
+            var committer = catalogCommitters.remove(catalog);
+            if (committer != null) {
+                committer.close();
+            }
+        }
     }
 
     /**
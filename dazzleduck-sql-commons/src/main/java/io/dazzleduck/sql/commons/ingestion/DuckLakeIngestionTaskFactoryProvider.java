@@ -6,6 +6,7 @@ import io.dazzleduck.sql.commons.Transformations;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Clock;
 import java.time.Duration;
 import java.util.List;
 import java.util.Map;
@@ -55,6 +56,9 @@ public class DuckLakeIngestionTaskFactoryProvider extends AbstractIngestionTaskF
         Duration refreshInterval = config != null && config.hasPath(ConfigConstants.QUEUE_CONFIG_REFRESH_DELAY_MS_KEY)
                 ? Duration.ofMillis(config.getLong(ConfigConstants.QUEUE_CONFIG_REFRESH_DELAY_MS_KEY))
                 : Duration.ofMinutes(2);
-        return new DuckLakeIngestionHandler(loadMappings(), refreshInterval);
+        Duration catalogCommitWindow = config != null && config.hasPath(ConfigConstants.CATALOG_COMMIT_WINDOW_MS_KEY)
+                ? Duration.ofMillis(config.getLong(ConfigConstants.CATALOG_COMMIT_WINDOW_MS_KEY))
+                : DuckLakeIngestionHandler.DEFAULT_CATALOG_COMMIT_WINDOW;
+        return new DuckLakeIngestionHandler(loadMappings(), refreshInterval, Clock.systemUTC(), catalogCommitWindow);
     }
 }
\ No newline at end of file
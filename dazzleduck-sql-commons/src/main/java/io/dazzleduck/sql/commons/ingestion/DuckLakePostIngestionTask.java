@@ -21,6 +21,10 @@ import java.util.Map;
  * registration and watermark commit or roll back together. This task never re-reads the written
  * files.
  *
+ * <p>When a {@link DuckLakeCatalogCommitter} is supplied, the statements are handed to it instead of
+ * running in a transaction of their own, so registrations from all queues targeting the catalog are
+ * group-committed. {@link #execute()} still returns only once this bucket's files are committed.
+ *
  * <p>Limitation: queues registered through the dynamic SQLite registry
  * ({@link DynamicQueueRepository}) do not carry {@code additional_parameters}, so watermarks are
  * only available for statically configured queue mappings.
@@ -36,12 +40,27 @@ public class DuckLakePostIngestionTask implements PostIngestionTask {
     private final String tableName;
     private final String schemaName;
     private final WatermarkSpec watermarkSpec;
+    private final DuckLakeCatalogCommitter committer;
 
     public DuckLakePostIngestionTask(IngestionResult ingestionResult,
                                      String catalogName,
                                      String tableName,
                                      String schemaName,
                                      Map<String, String> additionalParameters) {
+        this(ingestionResult, catalogName, tableName, schemaName, additionalParameters, null);
+    }
+
+    /**
+     * @param committer group commit coordinator for {@code catalogName}, or {@code null} to commit
+     *                  this bucket in its own transaction
+     */
+    public DuckLakePostIngestionTask(IngestionResult ingestionResult,
+                                     String catalogName,
+                                     String tableName,
+                                     String schemaName,
+                                     Map<String, String> additionalParameters,
+                                     DuckLakeCatalogCommitter committer) {
+        this.committer = committer;
         this.ingestionResult = ingestionResult;
         this.catalogName = catalogName;
         this.tableName = tableName;
@@ -81,6 +100,10 @@ public class DuckLakePostIngestionTask implements PostIngestionTask {
         if (watermarkSpec != null && watermarkRows != null && !watermarkRows.isEmpty()) {
             queries.add(watermarkSpec.insertSql(catalogName, schemaName, watermarkRows));
         }
+        if (committer != null) {
+            committer.commit(queries);
+            return;
+        }
         try (Connection conn = ConnectionPool.getConnection()) {
             ConnectionPool.executeBatchInTxn(conn, queries.toArray(String[]::new));
         }
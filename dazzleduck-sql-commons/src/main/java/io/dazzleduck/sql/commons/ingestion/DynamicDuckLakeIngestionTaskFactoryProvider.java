@@ -1,4 +1,5 @@
 package io.dazzleduck.sql.commons.ingestion;
+import io.dazzleduck.sql.common.ConfigConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -57,6 +58,9 @@ public class DynamicDuckLakeIngestionTaskFactoryProvider extends AbstractIngesti
                 ? config.getLong(CONFIG_LOAD_INTERVAL_KEY)
                 : DEFAULT_INTERVAL_MS;
         boolean manageTables = config.hasPath(MANAGE_TABLES_KEY) && config.getBoolean(MANAGE_TABLES_KEY);
+        Duration catalogCommitWindow = config.hasPath(ConfigConstants.CATALOG_COMMIT_WINDOW_MS_KEY)
+                ? Duration.ofMillis(config.getLong(ConfigConstants.CATALOG_COMMIT_WINDOW_MS_KEY))
+                : DuckLakeIngestionHandler.DEFAULT_CATALOG_COMMIT_WINDOW;
 
         DynamicQueueRepository repo = new DynamicQueueRepository(dbPath);
         try {
@@ -66,7 +70,7 @@ public class DynamicDuckLakeIngestionTaskFactoryProvider extends AbstractIngesti
             logger.info("DynamicIngestionHandler: {} queue(s) loaded from {} (manage_tables={})",
                     initial.size(), dbPath, manageTables);
             return new DynamicIngestionHandler(dbPath, readConn, initial, Duration.ofMillis(intervalMs),
-                    manageTables);
+                    manageTables, catalogCommitWindow);
         } catch (SQLException e) {
             repo.close();
             throw new RuntimeException("Failed to initialise DynamicIngestionHandler for: " + dbPath, e);
@@ -65,11 +65,20 @@ public class DynamicIngestionHandler extends DuckLakeIngestionHandler {
                                    Map<String, QueueIdToTableMapping> initialMappings,
                                    Duration checkInterval,
                                    boolean manageTables) {
+        this(dbPath, readConn, initialMappings, checkInterval, manageTables, DEFAULT_CATALOG_COMMIT_WINDOW);
+    }
+
+    public DynamicIngestionHandler(String dbPath,
+                                   Connection readConn,
+                                   Map<String, QueueIdToTableMapping> initialMappings,
+                                   Duration checkInterval,
+                                   boolean manageTables,
+                                   Duration catalogCommitWindow) {
         // Start with no mappings so the superclass does no eager DuckLake reads, then feed the
         // initial set via updateMappings (which rebuilds derived state lazily, deferring metadata
         // reads until the tables actually exist). checkInterval doubles as the DuckLake-state
         // refresh interval for already-known queues.
-        super(Map.of(), checkInterval, Clock.systemUTC());
+        super(Map.of(), checkInterval, Clock.systemUTC(), catalogCommitWindow);
         this.dbPath       = dbPath;
         this.readConn     = readConn;
         this.manageTables = manageTables;
@@ -0,0 +1,318 @@
+package io.dazzleduck.sql.commons.ingestion;
+
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.OutOfMemoryException;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.ipc.ArrowReader;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded off-heap arena that keeps small ingested batches in memory instead of temp Arrow files.
+ *
+ * <p>{@link #stage} serializes an incoming Arrow stream exactly like
+ * {@link BulkIngestQueue#writeAndValidateTempArrowFile}, but into memory while it stays below
+ * {@code maxBatchBytes}: the bytes go straight into an {@link ArrowBuf} from this store's
+ * allocator, whose limit is the arena capacity. A batch that grows past the threshold, or that does
+ * not fit in the remaining capacity, spills to a temp file as before, so the arena never blocks or
+ * fails an ingest.
+ *
+ * <p>An in-memory batch is identified by a {@link #RECORD_PREFIX}-prefixed record in place of the
+ * file path; {@link ParquetIngestionQueue} registers it with DuckDB as an Arrow stream at flush time
+ * ({@link #open}) and {@link #release}s it once the COPY has read it. The vectors decoded for a flush
+ * come from a {@link #newReaderAllocator reader allocator} of this store, so staged batches and their
+ * decoded copies together never hold more than twice the arena capacity.
+ */
+public class InMemoryBatchStore implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryBatchStore.class);
+
+    /** Prefix of the batch record of an in-memory batch. */
+    public static final String RECORD_PREFIX = "mem:";
+
+    /** First buffer of a batch being staged; it doubles from there as the batch grows. */
+    private static final long INITIAL_BUFFER_BYTES = 1024;
+
+    /**
+     * A staged batch: {@code record} is either an in-memory record or the absolute path of the
+     * spilled temp file; {@code size} is the serialized size in bytes.
+     */
+    public record StagedBatch(String record, long size) {
+        public boolean inMemory() {
+            return isInMemory(record);
+        }
+    }
+
+    private final BufferAllocator root;
+    private final BufferAllocator allocator;
+    private final long capacityBytes;
+    private final long maxBatchBytes;
+    private final ConcurrentHashMap<String, ArrowBuf> batches = new ConcurrentHashMap<>();
+
+    private final LongAdder inMemoryBatches = new LongAdder();
+    private final LongAdder spilledBatches = new LongAdder();
+
+    /**
+     * @param name          identifies the store in logs (typically the queue id)
+     * @param capacityBytes upper bound of memory held by staged batches
+     * @param maxBatchBytes batches larger than this are always spilled to a file
+     */
+    public InMemoryBatchStore(String name, long capacityBytes, long maxBatchBytes) {
+        if (capacityBytes <= 0 || maxBatchBytes <= 0) {
+            throw new IllegalArgumentException("in-memory batch capacity and threshold must be positive, got %d and %d"
+                    .formatted(capacityBytes, maxBatchBytes));
+        }
+        this.root = new RootAllocator(capacityBytes > Long.MAX_VALUE / 2 ? Long.MAX_VALUE : 2 * capacityBytes);
+        this.allocator = root.newChildAllocator(name + "-arena", 0, capacityBytes);
+        this.capacityBytes = capacityBytes;
+        this.maxBatchBytes = maxBatchBytes;
+        logger.debug("In-memory batch store '{}' created: capacity={} bytes, threshold={} bytes",
+                name, capacityBytes, maxBatchBytes);
+    }
+
+    public static boolean isInMemory(String record) {
+        return record != null && record.startsWith(RECORD_PREFIX);
+    }
+
+    /**
+     * Reads and validates every batch of {@code reader}, keeping the result in memory when it is
+     * small enough and the arena has room, and spilling it to a new Arrow file under
+     * {@code spillDir} otherwise.
+     */
+    public StagedBatch stage(Path spillDir, ArrowReader reader) throws IOException {
+        var output = new SpillingChannel(spillDir);
+        try {
+            try (ArrowStreamWriter writer = new ArrowStreamWriter(reader.getVectorSchemaRoot(), null, output)) {
+                while (reader.loadNextBatch()) {
+                    writer.writeBatch();
+                }
+                writer.end();
+            } catch (Exception e) {
+                output.discard();
+                if (e instanceof IOException ioe) throw ioe;
+                throw new IOException(e);
+            }
+            return output.finish();
+        } finally {
+            output.release();
+        }
+    }
+
+    /**
+     * Opens a reader over an in-memory batch. The batch stays in the store until {@link #release};
+     * the reader allocates from {@code readerAllocator}.
+     */
+    public ArrowReader open(String record, BufferAllocator readerAllocator) {
+        ArrowBuf buf = batches.get(record);
+        if (buf == null) {
+            throw new IllegalStateException("In-memory batch not found: " + record);
+        }
+        return new ArrowStreamReader(new ByteBufferChannel(buf.nioBuffer(0, (int) buf.writerIndex())), readerAllocator);
+    }
+
+    /**
+     * A new allocator for the readers of one flush ({@link #open}), limited to the arena capacity
+     * and sharing a second capacity's worth of memory with the readers of the other flushes. The
+     * caller closes it once the readers are closed.
+     */
+    public BufferAllocator newReaderAllocator(String name) {
+        return root.newChildAllocator(name, 0, capacityBytes);
+    }
+
+    /** Frees an in-memory batch; unknown or already released records are ignored. */
+    public void release(String record) {
+        ArrowBuf buf = batches.remove(record);
+        if (buf != null) {
+            buf.close();
+        }
+    }
+
+    /** Bytes currently held by in-memory batches. */
+    public long getUsedBytes() {
+        return allocator.getAllocatedMemory();
+    }
+
+    /** Number of batches kept in memory since creation. */
+    public long getInMemoryBatches() {
+        return inMemoryBatches.sum();
+    }
+
+    /** Number of batches spilled to a temp file since creation. */
+    public long getSpilledBatches() {
+        return spilledBatches.sum();
+    }
+
+    @Override
+    public void close() {
+        batches.keySet().forEach(this::release);
+        try {
+            allocator.close();
+            root.close();
+        } catch (IllegalStateException e) {
+            logger.warn("In-memory batch store closed with outstanding allocations", e);
+        }
+    }
+
+    /** Read-only channel over a batch's off-heap bytes, so readers never copy them back on heap. */
+    private static final class ByteBufferChannel implements ReadableByteChannel {
+        private final ByteBuffer buffer;
+        private boolean open = true;
+
+        ByteBufferChannel(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(dst.remaining(), buffer.remaining());
+            dst.put(buffer.slice(buffer.position(), n));
+            buffer.position(buffer.position() + n);
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+
+    /**
+     * Writes a batch straight into an arena buffer that doubles as bytes arrive, up to
+     * {@code maxBatchBytes}. Once the batch outgrows the threshold, or the arena has no room for a
+     * larger buffer, the bytes so far move to a temp file and the rest of the batch is appended there.
+     */
+    private final class SpillingChannel implements WritableByteChannel {
+        private final Path spillDir;
+        private ArrowBuf buf;
+        private Path file;
+        private FileChannel fileChannel;
+        private long size;
+        private boolean open = true;
+
+        SpillingChannel(Path spillDir) {
+            this.spillDir = spillDir;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int len = src.remaining();
+            if (file == null && (size + len > maxBatchBytes || !reserve(size + len))) {
+                spill();
+            }
+            if (file != null) {
+                writeFully(src);
+            } else {
+                buf.setBytes(size, src);
+            }
+            size += len;
+            return len;
+        }
+
+        /** Grows the buffer to hold {@code required} bytes; false if the arena has no room for it. */
+        private boolean reserve(long required) {
+            if (buf != null && buf.capacity() >= required) {
+                return true;
+            }
+            long capacity = Math.min(maxBatchBytes,
+                    Math.max(required, buf == null ? INITIAL_BUFFER_BYTES : 2 * buf.capacity()));
+            ArrowBuf grown;
+            try {
+                grown = allocator.buffer(capacity);
+            } catch (OutOfMemoryException e) {
+                return false;
+            }
+            if (buf != null) {
+                grown.setBytes(0, buf, 0, size);
+                buf.close();
+            }
+            buf = grown;
+            return true;
+        }
+
+        private void spill() throws IOException {
+            file = spillDir.resolve("ingestion_" + UUID.randomUUID() + ".arrow");
+            fileChannel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            if (buf != null) {
+                writeFully(buf.nioBuffer(0, (int) size));
+                buf.close();
+                buf = null;
+            }
+        }
+
+        private void writeFully(ByteBuffer src) throws IOException {
+            while (src.hasRemaining()) {
+                fileChannel.write(src);
+            }
+        }
+
+        StagedBatch finish() throws IOException {
+            if (file == null && reserve(size)) {
+                buf.writerIndex(size);
+                String record = RECORD_PREFIX + UUID.randomUUID();
+                batches.put(record, buf);
+                buf = null;
+                inMemoryBatches.increment();
+                return new StagedBatch(record, size);
+            }
+            if (file == null) {
+                spill();
+            }
+            release();
+            spilledBatches.increment();
+            return new StagedBatch(file.toAbsolutePath().toString(), size);
+        }
+
+        void discard() throws IOException {
+            release();
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        /** Only marks the channel closed: the writer closes it before {@link #finish()} runs. */
+        @Override
+        public void close() {
+            open = false;
+        }
+
+        /** Frees whatever {@link #finish()} did not hand over: the arena buffer and the file handle. */
+        void release() throws IOException {
+            if (buf != null) {
+                buf.close();
+                buf = null;
+            }
+            if (fileChannel != null) {
+                fileChannel.close();
+                fileChannel = null;
+            }
+        }
+    }
+}
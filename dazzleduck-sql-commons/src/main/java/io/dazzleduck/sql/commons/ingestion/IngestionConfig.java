@@ -11,31 +11,237 @@ import java.time.Duration;
  * <p>Separates operational concerns (flush thresholds, delays) from domain concerns
  * (output path, transformation, partition columns) which are provided by
  * {@link IngestionHandler}.
+ *
+ * @param commitLanes number of buckets per queue whose COPY may run concurrently; the
+ *                    post-ingestion commit stays serialized (see {@link BulkIngestQueue#writeData})
+ * @param inMemoryBatchMaxBytes batches up to this size are kept in memory instead of a temp file
+ *                    (see {@link InMemoryBatchStore}); {@code 0} disables the in-memory mode
+ * @param inMemoryBufferBytes per-queue capacity of the in-memory arena; batches that do not fit
+ *                    spill to temp files
+ * @param adaptiveTargetFileSize file size the {@link AdaptiveBucketSizer} aims for; {@code 0} keeps
+ *                    the fixed {@code minBucketSize} / {@code maxDelay} thresholds. When enabled,
+ *                    {@code minBucketSize}..{@code maxBucketSize} and
+ *                    {@code adaptiveMinDelay}..{@code maxDelay} bound what the sizer may choose
+ * @param adaptiveLatencySlo end-to-end latency the adaptive sizer keeps buckets within
+ * @param adaptiveMinDelay shortest flush delay the adaptive sizer may choose
+ * @param partitionRouting collect batches that fall into a single output partition in a
+ *                    sub-bucket per partition (see {@link ParquetIngestionQueue#setPartitionRouting})
+ * @param durableJournal journal accepted batches next to their temp files and replay them after a
+ *                    restart (see {@link IngestionJournal}); batches are then always staged as
+ *                    fsynced temp files, never in memory
  */
 public record IngestionConfig(long minBucketSize,
                                long maxBucketSize,
                                int  maxBatches,
                                long maxPendingWrite,
                                Duration maxDelay,
-                               Duration configRefreshDelay) {
+                               Duration configRefreshDelay,
+                               int  commitLanes,
+                               long inMemoryBatchMaxBytes,
+                               long inMemoryBufferBytes,
+                               long adaptiveTargetFileSize,
+                               Duration adaptiveLatencySlo,
+                               Duration adaptiveMinDelay,
+                               boolean partitionRouting,
+                               boolean durableJournal) {
 
     public static final long     DEFAULT_MAX_BUCKET_SIZE   = 100L * 1024 * 1024; // 100 MB
     public static final long     DEFAULT_MAX_PENDING_WRITE = 500L * 1024 * 1024; // 500 MB
     public static final int      DEFAULT_MAX_BATCHES       = Integer.MAX_VALUE;
     public static final Duration DEFAULT_CONFIG_REFRESH    = Duration.ofMinutes(2);
+    public static final int      DEFAULT_COMMIT_LANES      = 1;
+    public static final long     DEFAULT_IN_MEMORY_BATCH_MAX_BYTES = 0;                 // disabled
+    public static final long     DEFAULT_IN_MEMORY_BUFFER_BYTES    = 64L * 1024 * 1024; // 64 MB
+    public static final long     DEFAULT_ADAPTIVE_TARGET_FILE_SIZE = 0;                 // disabled
+    public static final Duration DEFAULT_ADAPTIVE_LATENCY_SLO      = Duration.ofSeconds(30);
+    public static final Duration DEFAULT_ADAPTIVE_MIN_DELAY        = Duration.ofMillis(100);
+    public static final boolean  DEFAULT_PARTITION_ROUTING         = false;
+    public static final boolean  DEFAULT_DURABLE_JOURNAL           = false;
+
+    public IngestionConfig {
+        if (commitLanes < 1) {
+            throw new IllegalArgumentException("commit_lanes must be at least 1 but was " + commitLanes);
+        }
+        if (inMemoryBatchMaxBytes < 0 || inMemoryBufferBytes < 0) {
+            throw new IllegalArgumentException("in_memory_batch_max_bytes and in_memory_buffer_bytes must not be negative");
+        }
+        if (adaptiveTargetFileSize < 0) {
+            throw new IllegalArgumentException("adaptive_target_file_size must not be negative but was " + adaptiveTargetFileSize);
+        }
+        if (adaptiveTargetFileSize > 0 && adaptiveMinDelay.compareTo(maxDelay) > 0) {
+            throw new IllegalArgumentException("adaptive_min_delay_ms %d exceeds max_delay_ms %d"
+                    .formatted(adaptiveMinDelay.toMillis(), maxDelay.toMillis()));
+        }
+    }
+
+    /**
+     * Configuration with the given flush thresholds and every other setting at its default, the
+     * shape this record had before the per-queue tuning options existed. Use {@link #builder} to
+     * set the others.
+     */
+    public IngestionConfig(long minBucketSize, long maxBucketSize, int maxBatches, long maxPendingWrite,
+                           Duration maxDelay, Duration configRefreshDelay) {
+        this(builder(minBucketSize, maxDelay)
+                .maxBucketSize(maxBucketSize)
+                .maxBatches(maxBatches)
+                .maxPendingWrite(maxPendingWrite)
+                .configRefreshDelay(configRefreshDelay));
+    }
+
+    private IngestionConfig(Builder b) {
+        this(b.minBucketSize, b.maxBucketSize, b.maxBatches, b.maxPendingWrite, b.maxDelay, b.configRefreshDelay,
+                b.commitLanes, b.inMemoryBatchMaxBytes, b.inMemoryBufferBytes,
+                b.adaptiveTargetFileSize, b.adaptiveLatencySlo, b.adaptiveMinDelay,
+                b.partitionRouting, b.durableJournal);
+    }
+
+    /** A builder with the two thresholds that have no default; everything else starts at its default. */
+    public static Builder builder(long minBucketSize, Duration maxDelay) {
+        return new Builder(minBucketSize, maxDelay);
+    }
 
     public static IngestionConfig fromConfig(Config config) {
-        return new IngestionConfig(
-                config.getLong(ConfigConstants.MIN_BUCKET_SIZE_KEY),
-                config.hasPath(ConfigConstants.MAX_BUCKET_SIZE_KEY)
-                        ? config.getLong(ConfigConstants.MAX_BUCKET_SIZE_KEY) : DEFAULT_MAX_BUCKET_SIZE,
-                config.hasPath(ConfigConstants.MAX_BATCHES_KEY)
-                        ? config.getInt(ConfigConstants.MAX_BATCHES_KEY)      : DEFAULT_MAX_BATCHES,
-                config.hasPath(ConfigConstants.MAX_PENDING_WRITE_KEY)
-                        ? config.getLong(ConfigConstants.MAX_PENDING_WRITE_KEY) : DEFAULT_MAX_PENDING_WRITE,
-                Duration.ofMillis(config.getLong(ConfigConstants.MAX_DELAY_MS_KEY)),
-                config.hasPath(ConfigConstants.QUEUE_CONFIG_REFRESH_DELAY_MS_KEY)
-                        ? Duration.ofMillis(config.getLong(ConfigConstants.QUEUE_CONFIG_REFRESH_DELAY_MS_KEY))
-                        : DEFAULT_CONFIG_REFRESH);
+        var builder = builder(config.getLong(ConfigConstants.MIN_BUCKET_SIZE_KEY),
+                Duration.ofMillis(config.getLong(ConfigConstants.MAX_DELAY_MS_KEY)));
+        if (config.hasPath(ConfigConstants.MAX_BUCKET_SIZE_KEY)) {
+            builder.maxBucketSize(config.getLong(ConfigConstants.MAX_BUCKET_SIZE_KEY));
+        }
+        if (config.hasPath(ConfigConstants.MAX_BATCHES_KEY)) {
+            builder.maxBatches(config.getInt(ConfigConstants.MAX_BATCHES_KEY));
+        }
+        if (config.hasPath(ConfigConstants.MAX_PENDING_WRITE_KEY)) {
+            builder.maxPendingWrite(config.getLong(ConfigConstants.MAX_PENDING_WRITE_KEY));
+        }
+        if (config.hasPath(ConfigConstants.QUEUE_CONFIG_REFRESH_DELAY_MS_KEY)) {
+            builder.configRefreshDelay(Duration.ofMillis(config.getLong(ConfigConstants.QUEUE_CONFIG_REFRESH_DELAY_MS_KEY)));
+        }
+        if (config.hasPath(ConfigConstants.COMMIT_LANES_KEY)) {
+            builder.commitLanes(config.getInt(ConfigConstants.COMMIT_LANES_KEY));
+        }
+        if (config.hasPath(ConfigConstants.IN_MEMORY_BATCH_MAX_BYTES_KEY)) {
+            builder.inMemoryBatchMaxBytes(config.getLong(ConfigConstants.IN_MEMORY_BATCH_MAX_BYTES_KEY));
+        }
+        if (config.hasPath(ConfigConstants.IN_MEMORY_BUFFER_BYTES_KEY)) {
+            builder.inMemoryBufferBytes(config.getLong(ConfigConstants.IN_MEMORY_BUFFER_BYTES_KEY));
+        }
+        if (config.hasPath(ConfigConstants.ADAPTIVE_TARGET_FILE_SIZE_KEY)) {
+            builder.adaptiveTargetFileSize(config.getLong(ConfigConstants.ADAPTIVE_TARGET_FILE_SIZE_KEY));
+        }
+        if (config.hasPath(ConfigConstants.ADAPTIVE_LATENCY_SLO_MS_KEY)) {
+            builder.adaptiveLatencySlo(Duration.ofMillis(config.getLong(ConfigConstants.ADAPTIVE_LATENCY_SLO_MS_KEY)));
+        }
+        if (config.hasPath(ConfigConstants.ADAPTIVE_MIN_DELAY_MS_KEY)) {
+            builder.adaptiveMinDelay(Duration.ofMillis(config.getLong(ConfigConstants.ADAPTIVE_MIN_DELAY_MS_KEY)));
+        }
+        if (config.hasPath(ConfigConstants.PARTITION_ROUTING_KEY)) {
+            builder.partitionRouting(config.getBoolean(ConfigConstants.PARTITION_ROUTING_KEY));
+        }
+        if (config.hasPath(ConfigConstants.DURABLE_JOURNAL_KEY)) {
+            builder.durableJournal(config.getBoolean(ConfigConstants.DURABLE_JOURNAL_KEY));
+        }
+        return builder.build();
+    }
+
+    /** True when small batches are staged in memory rather than as temp files. */
+    public boolean inMemoryBatchesEnabled() {
+        return inMemoryBatchMaxBytes > 0 && inMemoryBufferBytes > 0 && !durableJournal;
+    }
+
+    /**
+     * A new adaptive sizer for one queue, bounded by this configuration, or {@code null} when
+     * adaptive sizing is disabled.
+     */
+    public AdaptiveBucketSizer newAdaptiveSizer() {
+        if (adaptiveTargetFileSize <= 0) {
+            return null;
+        }
+        return new AdaptiveBucketSizer(adaptiveTargetFileSize, adaptiveLatencySlo,
+                minBucketSize, maxBucketSize, adaptiveMinDelay, maxDelay);
+    }
+
+    public static final class Builder {
+        private final long minBucketSize;
+        private final Duration maxDelay;
+        private long maxBucketSize = DEFAULT_MAX_BUCKET_SIZE;
+        private int maxBatches = DEFAULT_MAX_BATCHES;
+        private long maxPendingWrite = DEFAULT_MAX_PENDING_WRITE;
+        private Duration configRefreshDelay = DEFAULT_CONFIG_REFRESH;
+        private int commitLanes = DEFAULT_COMMIT_LANES;
+        private long inMemoryBatchMaxBytes = DEFAULT_IN_MEMORY_BATCH_MAX_BYTES;
+        private long inMemoryBufferBytes = DEFAULT_IN_MEMORY_BUFFER_BYTES;
+        private long adaptiveTargetFileSize = DEFAULT_ADAPTIVE_TARGET_FILE_SIZE;
+        private Duration adaptiveLatencySlo = DEFAULT_ADAPTIVE_LATENCY_SLO;
+        private Duration adaptiveMinDelay = DEFAULT_ADAPTIVE_MIN_DELAY;
+        private boolean partitionRouting = DEFAULT_PARTITION_ROUTING;
+        private boolean durableJournal = DEFAULT_DURABLE_JOURNAL;
+
+        private Builder(long minBucketSize, Duration maxDelay) {
+            this.minBucketSize = minBucketSize;
+            this.maxDelay = maxDelay;
+        }
+
+        public Builder maxBucketSize(long maxBucketSize) {
+            this.maxBucketSize = maxBucketSize;
+            return this;
+        }
+
+        public Builder maxBatches(int maxBatches) {
+            this.maxBatches = maxBatches;
+            return this;
+        }
+
+        public Builder maxPendingWrite(long maxPendingWrite) {
+            this.maxPendingWrite = maxPendingWrite;
+            return this;
+        }
+
+        public Builder configRefreshDelay(Duration configRefreshDelay) {
+            this.configRefreshDelay = configRefreshDelay;
+            return this;
+        }
+
+        public Builder commitLanes(int commitLanes) {
+            this.commitLanes = commitLanes;
+            return this;
+        }
+
+        public Builder inMemoryBatchMaxBytes(long inMemoryBatchMaxBytes) {
+            this.inMemoryBatchMaxBytes = inMemoryBatchMaxBytes;
+            return this;
+        }
+
+        public Builder inMemoryBufferBytes(long inMemoryBufferBytes) {
+            this.inMemoryBufferBytes = inMemoryBufferBytes;
+            return this;
+        }
+
+        public Builder adaptiveTargetFileSize(long adaptiveTargetFileSize) {
+            this.adaptiveTargetFileSize = adaptiveTargetFileSize;
+            return this;
+        }
+
+        public Builder adaptiveLatencySlo(Duration adaptiveLatencySlo) {
+            this.adaptiveLatencySlo = adaptiveLatencySlo;
+            return this;
+        }
+
+        public Builder adaptiveMinDelay(Duration adaptiveMinDelay) {
+            this.adaptiveMinDelay = adaptiveMinDelay;
+            return this;
+        }
+
+        public Builder partitionRouting(boolean partitionRouting) {
+            this.partitionRouting = partitionRouting;
+            return this;
+        }
+
+        public Builder durableJournal(boolean durableJournal) {
+            this.durableJournal = durableJournal;
+            return this;
+        }
+
+        public IngestionConfig build() {
+            return new IngestionConfig(this);
+        }
     }
 }
@@ -24,6 +24,12 @@ public interface IngestionHandler {
      */
     default WatermarkSpec getWatermarkSpec(String queueId) { return null; }
 
+    /**
+     * Parquet writer settings for the queue's output (sort keys, row group size, codec). Applied
+     * by {@link ParquetIngestionQueue} to every flush and carried on the {@link IngestionResult}.
+     */
+    default ParquetOutputOptions getOutputOptions(String queueId) { return ParquetOutputOptions.DEFAULT; }
+
     default boolean supportPartitionByHeader() { return true; }
 
     // -----------------------------------------------------------------------
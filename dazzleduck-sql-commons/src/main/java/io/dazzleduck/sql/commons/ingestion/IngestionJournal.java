@@ -0,0 +1,337 @@
+package io.dazzleduck.sql.commons.ingestion;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Append-only, fsynced log of the batches a {@link ParquetIngestionQueue} has accepted but not yet
+ * finished, kept next to the queue's spooled temp files so they survive a crash or kill.
+ *
+ * <p>Each accepted batch is logged (producer id, batch id, temp file and write options) before the
+ * queue takes it; once the bucket holding it commits or fails, the batch is logged as finished.
+ * {@link #open} reads the log back: batches accepted but never finished, whose temp file still
+ * exists, are {@link #pending()} and replayed into the queue by
+ * {@link ParquetIngestionQueue#setJournal}. The log is compacted to the pending batches on open,
+ * and again whenever enough finished entries have accumulated.
+ *
+ * <p>Entries are appended under the journal's monitor but synced outside it, as a group: the
+ * thread that finds no sync running forces every entry appended so far, and the threads whose
+ * entries that sync covered return without one of their own. Producers of a queue therefore
+ * share fsyncs instead of queueing behind one per batch, though each still waits for one.
+ *
+ * <p>Only file-backed batches can be journaled; in-memory batches ({@link InMemoryBatchStore}) are
+ * ignored. Delivery after a replay is at-least-once: a crash between a bucket's commit and its
+ * finish record replays that bucket again.
+ *
+ * <p>Line format, one entry per line, fields tab-separated and URL-encoded:
+ * <pre>
+ *   A  record  producerId  producerBatchId  totalSize  format  receivedTimeMillis  sortOrder  partitionBy
+ *   F  record
+ * </pre>
+ */
+public class IngestionJournal implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestionJournal.class);
+
+    public static final String FILE_NAME = "ingestion.journal";
+
+    /** Finished entries tolerated in the log before it is rewritten with the live ones only. */
+    private static final int COMPACT_AFTER_FINISHED = 10_000;
+
+    private static final String NULL = "~";
+
+    private final Path file;
+    /** Live (accepted, not finished) entries in acceptance order, keyed by record. */
+    private final LinkedHashMap<String, String> live = new LinkedHashMap<>();
+    private final List<Batch<String>> pending;
+    private FileChannel channel;
+    private int finishedSinceCompaction;
+    /** Sequence number of the last entry written to {@link #channel}. */
+    private long appendedSeq;
+    /** Sequence number up to which entries are on disk. */
+    private final AtomicLong syncedSeq = new AtomicLong();
+    /** Held by the thread syncing the log, so one sync covers the entries appended meanwhile. */
+    private final Object syncLock = new Object();
+    private final LongAdder syncs = new LongAdder();
+
+    private IngestionJournal(Path file, List<Batch<String>> pending) {
+        this.file = file;
+        this.pending = pending;
+    }
+
+    /**
+     * Opens (or creates) the journal in {@code dir}, collects its pending batches and compacts the
+     * log down to them.
+     */
+    public static IngestionJournal open(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        Path file = dir.resolve(FILE_NAME);
+        var entries = new LinkedHashMap<String, String>();
+        if (Files.exists(file)) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length == 2 && fields[0].equals("F")) {
+                    entries.remove(decode(fields[1]));
+                } else if (fields.length == 9 && fields[0].equals("A")) {
+                    entries.put(decode(fields[1]), line);
+                } else if (!line.isEmpty()) {
+                    // Typically the torn tail of a write interrupted by the crash.
+                    logger.warn("Skipping unreadable entry in ingestion journal {}: {}", file, line);
+                }
+            }
+        }
+        var pending = new ArrayList<Batch<String>>();
+        var journal = new IngestionJournal(file, pending);
+        for (var entry : entries.entrySet()) {
+            if (Files.exists(Path.of(entry.getKey()))) {
+                pending.add(parse(entry.getValue()));
+                journal.live.put(entry.getKey(), entry.getValue());
+            } else {
+                logger.warn("Dropping journaled batch {}: its temp file no longer exists", entry.getKey());
+            }
+        }
+        journal.rewrite();
+        return journal;
+    }
+
+    /** Batches that were accepted but not finished when the journal was opened, in acceptance order. */
+    public List<Batch<String>> pending() {
+        return List.copyOf(pending);
+    }
+
+    /** Number of batches currently accepted and not finished. */
+    public synchronized int liveCount() {
+        return live.size();
+    }
+
+    /** Number of fsyncs of the log since it was opened, each covering one or more entries. */
+    public long syncCount() {
+        return syncs.sum();
+    }
+
+    /** Durably logs {@code batch} as accepted; returns once the entry is on disk. */
+    public void accepted(Batch<String> batch) {
+        if (InMemoryBatchStore.isInMemory(batch.record())) {
+            return;
+        }
+        String line = format(batch);
+        long seq;
+        synchronized (this) {
+            if (channel == null) {
+                throw new IllegalStateException("Ingestion journal " + file + " is closed");
+            }
+            seq = append(line);
+            live.put(batch.record(), line);
+        }
+        sync(seq);
+    }
+
+    /**
+     * Durably logs the batches of {@code records} as finished; unknown records are ignored. After
+     * {@link #close()} this is a no-op, so the batches are replayed on the next open.
+     */
+    public void finished(Collection<String> records) {
+        long seq;
+        synchronized (this) {
+            if (channel == null) {
+                return;
+            }
+            var sb = new StringBuilder();
+            for (String record : records) {
+                if (live.remove(record) != null) {
+                    sb.append("F\t").append(encode(record)).append('\n');
+                    finishedSinceCompaction++;
+                }
+            }
+            if (sb.isEmpty()) {
+                return;
+            }
+            if (finishedSinceCompaction >= COMPACT_AFTER_FINISHED) {
+                try {
+                    rewrite();
+                    return;
+                } catch (IOException e) {
+                    logger.warn("Failed to compact ingestion journal {}; appending instead", file, e);
+                }
+            }
+            seq = write(sb.toString());
+        }
+        sync(seq);
+    }
+
+    /** Syncs the entries appended so far and closes the log. */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            try {
+                channel.force(false);
+                syncedSeq.accumulateAndGet(appendedSeq, Math::max);
+            } finally {
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+
+    private long append(String line) {
+        return write(line + "\n");
+    }
+
+    /** Writes {@code text} without syncing it; returns its sequence number. Caller holds {@code this}. */
+    private long write(String text) {
+        try {
+            var buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            return ++appendedSeq;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write ingestion journal " + file, e);
+        }
+    }
+
+    /**
+     * Returns once the entry numbered {@code seq} is on disk, syncing the log unless a sync that
+     * started after the entry was written already did. Caller does not hold {@code this}, so
+     * entries keep being appended while the log is forced.
+     */
+    private void sync(long seq) {
+        synchronized (syncLock) {
+            while (syncedSeq.get() < seq) {
+                FileChannel target;
+                long upTo;
+                synchronized (this) {
+                    if (channel == null) {
+                        // close() syncs the log first, so this is only reached if that sync failed.
+                        throw new IllegalStateException("Ingestion journal " + file + " closed before it was synced");
+                    }
+                    target = channel;
+                    upTo = appendedSeq;
+                }
+                try {
+                    target.force(false);
+                    syncs.increment();
+                    syncedSeq.accumulateAndGet(upTo, Math::max);
+                } catch (ClosedChannelException e) {
+                    // A compaction replaced the channel, and synced every entry, while this was forcing it.
+                    synchronized (this) {
+                        if (channel == target) {
+                            throw new UncheckedIOException("Failed to sync ingestion journal " + file, e);
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to sync ingestion journal " + file, e);
+                }
+            }
+        }
+    }
+
+    /** Atomically replaces the log with the live entries. Caller holds {@code this} (or is {@link #open}). */
+    private void rewrite() throws IOException {
+        Path tmp = file.resolveSibling(FILE_NAME + ".tmp");
+        try (var out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            var sb = new StringBuilder();
+            live.values().forEach(line -> sb.append(line).append('\n'));
+            var buffer = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+        // The old channel stays usable if the move fails.
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+        close();
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        finishedSinceCompaction = 0;
+        // The new log holds every live entry and is on disk.
+        syncedSeq.accumulateAndGet(appendedSeq, Math::max);
+    }
+
+    /** Forces the directory entry of the replaced log, so the rename survives a power failure. */
+    private void syncDirectory() throws IOException {
+        try (var dir = FileChannel.open(file.getParent(), StandardOpenOption.READ)) {
+            dir.force(true);
+        }
+    }
+
+    private static String format(Batch<String> batch) {
+        return String.join("\t",
+                "A",
+                encode(batch.record()),
+                encode(batch.producerId()),
+                Long.toString(batch.producerBatchId()),
+                Long.toString(batch.totalSize()),
+                encode(batch.format()),
+                Long.toString(batch.receivedTime().toEpochMilli()),
+                encodeArray(batch.sortOrder()),
+                encodeArray(batch.partitionBy()));
+    }
+
+    private static Batch<String> parse(String line) {
+        String[] f = line.split("\t", -1);
+        return new Batch<>(decodeArray(f[7]), decodeArray(f[8]), decode(f[1]), decode(f[2]),
+                Long.parseLong(f[3]), Long.parseLong(f[4]), decode(f[5]),
+                Instant.ofEpochMilli(Long.parseLong(f[6])));
+    }
+
+    private static String encode(String value) {
+        return value == null ? NULL : URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static String decode(String value) {
+        return NULL.equals(value) ? null : URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+
+    /** {@code ~} for null, otherwise the element count, a colon and the comma-joined elements. */
+    private static String encodeArray(String[] values) {
+        if (values == null) {
+            return NULL;
+        }
+        var joined = new StringBuilder().append(values.length).append(':');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                joined.append(',');
+            }
+            joined.append(encode(values[i]));
+        }
+        return joined.toString();
+    }
+
+    private static String[] decodeArray(String value) {
+        if (NULL.equals(value)) {
+            return null;
+        }
+        int colon = value.indexOf(':');
+        int count = Integer.parseInt(value.substring(0, colon));
+        if (count == 0) {
+            return new String[0];
+        }
+        return Arrays.stream(value.substring(colon + 1).split(",", -1))
+                .map(IngestionJournal::decode)
+                .toArray(String[]::new);
+    }
+}
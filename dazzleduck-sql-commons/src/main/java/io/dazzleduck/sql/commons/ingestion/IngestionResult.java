@@ -17,12 +17,18 @@ import java.util.Map;
  *                      relation (group values in {@link WatermarkSpec#groupColumns()} order,
  *                      timestamp last, as DuckDB-rendered strings); null when the queue has no
  *                      watermark configured
+ * @param outputOptions Parquet writer settings the files were written with (sort keys, row group
+ *                      size, codec), so readers can rely on them for pruning
  */
-public record IngestionResult(String queueName, long ingestionBatchId, String applicationId, Map<String, Long> maxProducerIds, long rowCount, List<String> filesCreated, String query, List<List<String>> watermarkRows) {
+public record IngestionResult(String queueName, long ingestionBatchId, String applicationId, Map<String, Long> maxProducerIds, long rowCount, List<String> filesCreated, String query, List<List<String>> watermarkRows, ParquetOutputOptions outputOptions) {
     IngestionResult(String queueName, long ingestionBatchId, String applicationId, Map<String, Long> maxProducerIds, long rowCount, List<String> filesCreated) {
         this(queueName, ingestionBatchId, applicationId, maxProducerIds, rowCount, filesCreated, null, null);
     }
 
+    public IngestionResult(String queueName, long ingestionBatchId, String applicationId, Map<String, Long> maxProducerIds, long rowCount, List<String> filesCreated, String query, List<List<String>> watermarkRows) {
+        this(queueName, ingestionBatchId, applicationId, maxProducerIds, rowCount, filesCreated, query, watermarkRows, ParquetOutputOptions.DEFAULT);
+    }
+
     public IngestionResult(String queueName, long ingestionBatchId, String applicationId, Map<String, Long> maxProducerIds, long rowCount, List<String> filesCreated, String query) {
         this(queueName, ingestionBatchId, applicationId, maxProducerIds, rowCount, filesCreated, query, null);
     }
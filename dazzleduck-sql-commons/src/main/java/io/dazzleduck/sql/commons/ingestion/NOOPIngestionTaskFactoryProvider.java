@@ -1,12 +1,14 @@
 package io.dazzleduck.sql.commons.ingestion;
 
 import com.typesafe.config.Config;
+import io.dazzleduck.sql.commons.hive.HivePartitionPruning;
 
 import java.nio.file.Path;
 
 /**
- * No-operation implementation of IngestionTaskFactoryProvider.
- * Returns a factory that creates NOOP tasks which do nothing.
+ * Implementation of IngestionTaskFactoryProvider for plain Hive partitioned Parquet output.
+ * Registers nothing in a catalog: its post-ingestion task only drops the cached partition listing
+ * of the written path, since object stores cannot be validated against directory times.
  */
 public class NOOPIngestionTaskFactoryProvider implements IngestionTaskFactoryProvider {
 
@@ -31,7 +33,8 @@ public class NOOPIngestionTaskFactoryProvider implements IngestionTaskFactoryPro
         return new IngestionHandler() {
             @Override
             public PostIngestionTask createPostIngestionTask(IngestionResult ingestionResult) {
-                return PostIngestionTask.NOOP;
+                var targetPath = getTargetPath(ingestionResult.queueName());
+                return () -> HivePartitionPruning.invalidateListing(targetPath);
             }
 
             @Override
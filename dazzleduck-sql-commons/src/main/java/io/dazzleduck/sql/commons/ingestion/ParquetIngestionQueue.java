@@ -1,17 +1,27 @@
 package io.dazzleduck.sql.commons.ingestion;
 
 import io.dazzleduck.sql.commons.ConnectionPool;
+import org.apache.arrow.c.ArrowArrayStream;
+import org.apache.arrow.c.Data;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.util.AutoCloseables;
+import org.apache.arrow.vector.ipc.ArrowReader;
+import org.duckdb.DuckDBConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Clock;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 public class ParquetIngestionQueue extends BulkIngestQueue<String, IngestionResult> {
@@ -30,6 +40,8 @@ public class ParquetIngestionQueue extends BulkIngestQueue<String, IngestionResu
     private final IngestionHandler postIngestionHandler;
     private final String applicationId;
     private final String inputFormat;
+    /** Arena holding small batches in memory instead of temp files; {@code null} when disabled. */
+    private final InMemoryBatchStore batchStore;
 
     /**
      * Per-phase commit timings. The write is two phases with different parallelism potential:
@@ -44,6 +56,53 @@ public class ParquetIngestionQueue extends BulkIngestQueue<String, IngestionResu
     private final java.util.concurrent.atomic.LongAccumulator postIngestPhaseNanos =
             new java.util.concurrent.atomic.LongAccumulator(Long::sum, 0L);
 
+    /**
+     * Time spent materializing the source relation for watermarks that cannot be read from the
+     * COPY's file statistics (a group column that is not a partition column): the extra cost such
+     * a watermark spec adds to every flush.
+     */
+    private final java.util.concurrent.atomic.LongAccumulator watermarkMaterializeNanos =
+            new java.util.concurrent.atomic.LongAccumulator(Long::sum, 0L);
+
+    /** Time spent aggregating watermarks over the materialized relation, a scan separate from the COPY. */
+    private final java.util.concurrent.atomic.LongAccumulator watermarkAggregateNanos =
+            new java.util.concurrent.atomic.LongAccumulator(Long::sum, 0L);
+
+    /**
+     * Duration of the COPYs whose file statistics also yielded the watermarks, so that the input
+     * was read in a single pass with no aggregation scan. It includes the write itself.
+     */
+    private final java.util.concurrent.atomic.LongAccumulator watermarkSinglePassNanos =
+            new java.util.concurrent.atomic.LongAccumulator(Long::sum, 0L);
+
+    /** Rows written by those single-pass COPYs. */
+    private final java.util.concurrent.atomic.LongAccumulator watermarkSinglePassRows =
+            new java.util.concurrent.atomic.LongAccumulator(Long::sum, 0L);
+
+    /** Whether batches are routed into per-partition sub-buckets; see {@link #setPartitionRouting}. */
+    private volatile boolean partitionRouting;
+
+    /** Durable log of accepted batches for crash recovery; {@code null} when disabled. */
+    private volatile IngestionJournal journal;
+
+    /** Attempts at writing an acknowledged batch before it is left to the journal's next replay. */
+    private static final int ACKNOWLEDGED_WRITE_ATTEMPTS = 5;
+    /** Delay before the first retry of an acknowledged batch; doubles with every further attempt. */
+    private static final Duration ACKNOWLEDGED_RETRY_DELAY = Duration.ofSeconds(1);
+
+    /**
+     * Records of journaled batches whose client has already been acknowledged (see
+     * {@link #addAcknowledged}) or that were replayed from the journal: nobody resends them, so a failed write keeps them for a retry
+     * instead of releasing them.
+     */
+    private final Set<String> acknowledged = ConcurrentHashMap.newKeySet();
+
+    /** Set by {@link #close()}: failed acknowledged batches are left to the journal instead of retried. */
+    private volatile boolean closed;
+
+    /** Sub-bucket key of a batch whose rows all fall into one output partition. */
+    private record PartitionKey(List<String> partitionBy, List<String> values) {}
+
     /**
      * @param applicationId    producer identifier
      * @param inputFormat      source file format (e.g. {@code "parquet"}, {@code "arrow"})
@@ -71,48 +130,317 @@ public class ParquetIngestionQueue extends BulkIngestQueue<String, IngestionResu
                                  IngestionHandler postIngestionHandler,
                                  ScheduledExecutorService executorService,
                                  Clock clock) {
-        super(ingestionQueue, minBucketSize, maxBucketSize, maxBatches, maxPendingWrite, maxDelay, executorService, clock);
+        this(applicationId, inputFormat, outputPath, ingestionQueue, minBucketSize, maxBucketSize, maxBatches,
+                maxPendingWrite, maxDelay, 1, postIngestionHandler, executorService, clock);
+    }
+
+    /**
+     * @param commitLanes number of buckets whose COPY may run concurrently; the post-ingestion
+     *                    commit stays serialized and in bucket order
+     * @see #ParquetIngestionQueue(String, String, String, String, long, long, int, long, Duration, IngestionHandler, ScheduledExecutorService, Clock)
+     */
+    public ParquetIngestionQueue(String applicationId,
+                                 String inputFormat,
+                                 String outputPath,
+                                 String ingestionQueue,
+                                 long minBucketSize,
+                                 long maxBucketSize,
+                                 int maxBatches,
+                                 long maxPendingWrite,
+                                 Duration maxDelay,
+                                 int commitLanes,
+                                 IngestionHandler postIngestionHandler,
+                                 ScheduledExecutorService executorService,
+                                 Clock clock) {
+        this(applicationId, inputFormat, outputPath, ingestionQueue, minBucketSize, maxBucketSize, maxBatches,
+                maxPendingWrite, maxDelay, commitLanes, null, postIngestionHandler, executorService, clock);
+    }
+
+    /**
+     * @param batchStore in-memory arena for small batches (see {@link InMemoryBatchStore}), or
+     *                   {@code null} to stage every batch as a temp file; the queue closes it
+     * @see #ParquetIngestionQueue(String, String, String, String, long, long, int, long, Duration, int, IngestionHandler, ScheduledExecutorService, Clock)
+     */
+    public ParquetIngestionQueue(String applicationId,
+                                 String inputFormat,
+                                 String outputPath,
+                                 String ingestionQueue,
+                                 long minBucketSize,
+                                 long maxBucketSize,
+                                 int maxBatches,
+                                 long maxPendingWrite,
+                                 Duration maxDelay,
+                                 int commitLanes,
+                                 InMemoryBatchStore batchStore,
+                                 IngestionHandler postIngestionHandler,
+                                 ScheduledExecutorService executorService,
+                                 Clock clock) {
+        super(ingestionQueue, minBucketSize, maxBucketSize, maxBatches, maxPendingWrite, maxDelay, commitLanes, executorService, clock);
         this.outputPath = outputPath;
         this.queueId = ingestionQueue;
         this.postIngestionHandler = postIngestionHandler;
         this.applicationId = applicationId;
         this.inputFormat = inputFormat;
+        this.batchStore = batchStore;
         // The output path (local or object store) is expected to already exist — provisioning it is
         // the operator's responsibility, outside the scope of this project. We never create it here.
     }
 
+    /**
+     * Routes each batch whose producer declares that all its rows belong to a single output
+     * partition ({@link Batch#partitionValues()}, one value per column of the header
+     * {@code partitionBy} or the handler's partition columns) into a sub-bucket for that
+     * partition, so each flush writes fewer, larger files per partition directory instead of a
+     * few rows into every partition it touches. Batches without declared values, and queues
+     * without partitioning, keep using the main bucket. The batch itself is never read to route it.
+     */
+    public void setPartitionRouting(boolean partitionRouting) {
+        this.partitionRouting = partitionRouting;
+    }
+
+    /**
+     * Makes accepted batches survive a crash: every file-backed batch is logged to
+     * {@code journal} before it is accepted and marked finished once its bucket commits or fails,
+     * and its temp file is kept until then. The batches the journal still holds from a previous
+     * run are replayed into this queue first, through {@link #add}, so producer sequence tracking
+     * is restored and a client retrying an already replayed batch is rejected as a duplicate.
+     * Their clients may have been acknowledged already, so replayed batches are written like
+     * {@link #addAcknowledged} ones: kept and retried on failure, never dropped. Batches abandoned
+     * by {@link #close()} stay in the journal for the next run.
+     *
+     * <p>Call once, right after construction and before the queue receives batches.
+     *
+     * @throws IllegalStateException if the queue already has a journal
+     */
+    public synchronized void setJournal(IngestionJournal journal) {
+        if (this.journal != null) {
+            throw new IllegalStateException("Queue '%s' already has a journal".formatted(queueId));
+        }
+        // Assigned before the replay: replayed buckets may be written before it returns, and
+        // must keep their entries and inputs until they commit.
+        this.journal = journal;
+        var pending = journal.pending();
+        for (var batch : pending) {
+            acknowledged.add(batch.record());
+            CompletableFuture<IngestionResult> result;
+            try {
+                result = super.add(batch);
+            } catch (RuntimeException e) {
+                result = CompletableFuture.failedFuture(e);
+            }
+            retryAcknowledged(batch, result, 1);
+        }
+        if (!pending.isEmpty()) {
+            logger.info("Queue '{}' replayed {} journaled batches", queueId, pending.size());
+        }
+    }
+
+    /** Whether accepted batches are journaled; such batches must be staged as fsynced temp files. */
+    public boolean isJournaled() {
+        return journal != null;
+    }
+
+    @Override
+    public CompletableFuture<IngestionResult> add(Batch<String> batch) {
+        var journal = this.journal;
+        if (journal == null || InMemoryBatchStore.isInMemory(batch.record())) {
+            return super.add(batch);
+        }
+        journal.accepted(batch);
+        CompletableFuture<IngestionResult> result;
+        try {
+            result = super.add(batch);
+        } catch (RuntimeException e) {
+            journal.finished(List.of(batch.record()));
+            throw e;
+        }
+        if (result.isCompletedExceptionally()) {
+            // Rejected (backpressure, duplicate): the caller keeps the temp file and the retry.
+            journal.finished(List.of(batch.record()));
+        }
+        return result;
+    }
+
+    /**
+     * Accepts a batch whose client is acknowledged before the batch is written, so a failed write
+     * must not lose it: the batch keeps its temp file and journal entry until it commits, and is
+     * re-queued up to {@value #ACKNOWLEDGED_WRITE_ATTEMPTS} times with a growing delay. A batch
+     * that still fails stays journaled and is replayed on the next start. The returned future
+     * completes once the batch commits, or with the last failure once the retries run out; it
+     * fails immediately if the queue rejects the batch.
+     *
+     * @throws IllegalStateException if the queue is not journaled
+     */
+    public CompletableFuture<IngestionResult> addAcknowledged(Batch<String> batch) {
+        if (journal == null) {
+            throw new IllegalStateException("Queue '%s' can only take acknowledged batches with the durable journal enabled"
+                    .formatted(queueId));
+        }
+        // Marked before the add: the bucket may be written, and fail, before add() returns.
+        acknowledged.add(batch.record());
+        var result = add(batch);
+        if (result.isCompletedExceptionally()) {
+            acknowledged.remove(batch.record());
+            return result;
+        }
+        return retryAcknowledged(batch, result, 1);
+    }
+
+    private CompletableFuture<IngestionResult> retryAcknowledged(Batch<String> batch,
+                                                                 CompletableFuture<IngestionResult> attempt,
+                                                                 int attempts) {
+        return attempt.exceptionallyCompose(t -> {
+            if (closed || attempts >= ACKNOWLEDGED_WRITE_ATTEMPTS) {
+                acknowledged.remove(batch.record());
+                logger.atError().setCause(t).log("Queue '{}' stopped writing acknowledged batch {} of producer {} after {} attempts; it stays journaled for the next start",
+                        queueId, batch.producerBatchId(), batch.producerId(), attempts);
+                return CompletableFuture.failedFuture(t);
+            }
+            var delay = ACKNOWLEDGED_RETRY_DELAY.multipliedBy(1L << (attempts - 1));
+            logger.atWarn().setCause(t).log("Queue '{}' retries acknowledged batch {} of producer {} in {}",
+                    queueId, batch.producerBatchId(), batch.producerId(), delay);
+            var delayed = CompletableFuture.delayedExecutor(delay.toMillis(), TimeUnit.MILLISECONDS);
+            return CompletableFuture.supplyAsync(() -> requeue(batch), delayed)
+                    .thenCompose(retry -> retryAcknowledged(batch, retry, attempts + 1));
+        });
+    }
+
+    /**
+     * Adds a failed acknowledged batch again. Its journal entry is still live, so it is not
+     * journaled twice; and its producer has moved on to later batch ids, so it goes in without
+     * sequence tracking, which would reject it as out of sequence.
+     */
+    private CompletableFuture<IngestionResult> requeue(Batch<String> batch) {
+        try {
+            return super.add(new Batch<>(batch.sortOrder(), batch.partitionBy(), batch.record(), null, 0,
+                    batch.totalSize(), batch.format(), batch.receivedTime(), batch.partitionValues()));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    protected Object routingKey(Batch<String> batch) {
+        if (!partitionRouting) {
+            return null;
+        }
+        String[] values = batch.partitionValues();
+        if (values == null || values.length == 0) {
+            return null;
+        }
+        String[] partitionBy = effectivePartitionBy(batch);
+        if (partitionBy == null || partitionBy.length != values.length) {
+            logger.debug("Queue '{}' got {} partition values for partition columns {}, using the main bucket",
+                    queueId, values.length, partitionBy == null ? List.of() : Arrays.asList(partitionBy));
+            return null;
+        }
+        return new PartitionKey(List.of(partitionBy), List.of(values));
+    }
+
     @Override
     public void write(WriteTask<String, IngestionResult> writeTask) {
+        writeData(writeTask).run();
+    }
+
+    /**
+     * Runs the COPY and returns the post-ingestion commit, which completes the bucket's futures.
+     * Input files are released as soon as the COPY has read them, so they never wait behind the
+     * serialized commits of other lanes. If the queue closes before the commit runs, the written
+     * files are deleted again.
+     */
+    @Override
+    protected Commit writeData(WriteTask<String, IngestionResult> writeTask) {
         logger.debug("Ingestion queue '{}' received batch with {} files, outputPath={}",
                 queueId, writeTask.bucket().batches().size(), outputPath);
+        long start = System.nanoTime();
+        IngestionResult ingestionResult;
+        // A journaled bucket keeps its inputs until it commits, so a crash before then replays it.
+        boolean journaled = journal != null;
+        try {
+            ingestionResult = tryWrite(writeTask);
+        } catch (Exception e) {
+            if (journaled) {
+                finishFailedInputs(writeTask);
+            }
+            throw writeFailure(writeTask, e);
+        } finally {
+            if (!journaled) {
+                cleanupInputFiles(writeTask);
+            }
+        }
+        long dataNanos = System.nanoTime() - start;
+        dataPhaseNanos.accumulate(dataNanos);
+        return new Commit() {
+            @Override
+            public void run() {
+                commit(writeTask, ingestionResult, dataNanos, journaled);
+            }
+
+            @Override
+            public void abandon() {
+                deleteOutputFiles(ingestionResult.filesCreated());
+            }
+        };
+    }
+
+    private void commit(WriteTask<String, IngestionResult> writeTask, IngestionResult ingestionResult,
+                        long dataNanos, boolean journaled) {
         try {
-            long start = System.nanoTime();
-            IngestionResult ingestionResult = tryWrite(writeTask);
             long copyDone = System.nanoTime();
             var postIngestionTask = postIngestionHandler.createPostIngestionTask(ingestionResult);
             postIngestionTask.execute();
             long postIngestDone = System.nanoTime();
-            dataPhaseNanos.accumulate(copyDone - start);
             postIngestPhaseNanos.accumulate(postIngestDone - copyDone);
             logger.debug("Queue '{}' commit phases: data(COPY)={}ms, postIngest(catalog)={}ms",
-                    queueId, (copyDone - start) / 1_000_000, (postIngestDone - copyDone) / 1_000_000);
+                    queueId, dataNanos / 1_000_000, (postIngestDone - copyDone) / 1_000_000);
+            if (journaled) {
+                finishInputs(writeTask);
+            }
             writeTask.bucket().futures().forEach(action -> action.complete(ingestionResult));
         } catch (Exception e) {
-            var sql = constructWriteQuery(writeTask);
-            logger.atError().setCause(e).log("Failed to write to queue {} sql {}", queueId, sql);
-            // Propagate instead of completing the futures here: BulkIngestQueue.processWriteQueue
-            // must account this bucket as failed (pendingWrite stays truthful, failed-write
-            // metrics accumulate) and roll back producer sequences BEFORE the futures complete,
-            // so a client observing the failure can immediately retry the same batch. Swallowing
-            // the exception would make the failed bytes count as written and leave retries
-            // rejected as OutOfSequenceBatch.
-            if (e instanceof RuntimeException re) {
-                throw re;
+            // The files were written but not registered: a retry of the batches writes them again.
+            deleteOutputFiles(ingestionResult.filesCreated());
+            if (journaled) {
+                finishFailedInputs(writeTask);
             }
-            throw new RuntimeException(e);
-        } finally {
-            cleanupInputFiles(writeTask);
+            throw writeFailure(writeTask, e);
+        }
+    }
+
+    /**
+     * Deletes the output of a bucket that was written but never committed. This queue has no
+     * client for object stores, so files on one are logged for the operator to remove instead.
+     */
+    private void deleteOutputFiles(List<String> files) {
+        for (var file : files) {
+            try {
+                if (file.startsWith("file:")) {
+                    Files.deleteIfExists(Path.of(URI.create(file)));
+                } else if (file.contains("://")) {
+                    logger.error("Queue '{}' left uncommitted output file {} behind; delete it before its batches are retried",
+                            queueId, file);
+                } else {
+                    Files.deleteIfExists(Path.of(file));
+                }
+            } catch (Exception e) {
+                logger.error("Queue '{}' failed to delete uncommitted output file {}", queueId, file, e);
+            }
+        }
+    }
+
+    private RuntimeException writeFailure(WriteTask<String, IngestionResult> writeTask, Exception e) {
+        var sql = constructWriteQuery(writeTask);
+        logger.atError().setCause(e).log("Failed to write to queue {} sql {}", queueId, sql);
+        // Propagate instead of completing the futures here: BulkIngestQueue.processWriteQueue
+        // must account this bucket as failed (pendingWrite stays truthful, failed-write
+        // metrics accumulate) and roll back producer sequences BEFORE the futures complete,
+        // so a client observing the failure can immediately retry the same batch. Swallowing
+        // the exception would make the failed bytes count as written and leave retries
+        // rejected as OutOfSequenceBatch.
+        if (e instanceof RuntimeException re) {
+            return re;
         }
+        return new RuntimeException(e);
     }
 
     /** Cumulative nanoseconds spent in the data phase (DuckDB COPY to Parquet). */
@@ -125,25 +453,110 @@ public class ParquetIngestionQueue extends BulkIngestQueue<String, IngestionResu
         return postIngestPhaseNanos.get();
     }
 
+    /** Cumulative nanoseconds spent materializing source relations for watermark aggregations. */
+    public long getWatermarkMaterializeNanos() {
+        return watermarkMaterializeNanos.get();
+    }
+
+    /** Cumulative nanoseconds spent aggregating watermarks over materialized relations. */
+    public long getWatermarkAggregateNanos() {
+        return watermarkAggregateNanos.get();
+    }
+
+    /** Cumulative nanoseconds of COPYs that also produced the watermarks from their file statistics. */
+    public long getWatermarkSinglePassNanos() {
+        return watermarkSinglePassNanos.get();
+    }
+
+    /** Cumulative rows written by COPYs that also produced the watermarks from their file statistics. */
+    public long getWatermarkSinglePassRows() {
+        return watermarkSinglePassRows.get();
+    }
+
+    /** The in-memory batch arena, or {@code null} when every batch is staged as a temp file. */
+    public InMemoryBatchStore batchStore() {
+        return batchStore;
+    }
+
+    /**
+     * Releases a staged batch that will not be added to (or was rejected by) this queue: frees an
+     * in-memory batch, or deletes the temp file.
+     */
+    public void releaseInput(String record) {
+        if (InMemoryBatchStore.isInMemory(record)) {
+            if (batchStore != null) {
+                batchStore.release(record);
+            }
+            return;
+        }
+        CLEANUP_EXECUTOR.execute(() -> {
+            try {
+                Files.deleteIfExists(Path.of(record));
+            } catch (Exception e) {
+                logger.warn("Failed to delete temporary input file: {}", record, e);
+            }
+        });
+    }
+
+    @Override
+    public synchronized void close() throws Exception {
+        closed = true;
+        super.close();
+        if (journal != null) {
+            journal.close();
+        }
+        if (batchStore != null) {
+            // A write thread abandoned by close() may still be reading in-memory batches.
+            if (writersTerminated()) {
+                batchStore.close();
+            } else {
+                logger.warn("Queue '{}' closed with a write still running; leaving its in-memory batches allocated", queueId);
+            }
+        }
+    }
+
     /**
      * Asynchronously cleans up input files using virtual threads.
      * This is fire-and-forget - we don't wait for deletion to complete
      * since it doesn't affect the write result.
      */
     private void cleanupInputFiles(WriteTask<String, IngestionResult> writeTask) {
-        writeTask.bucket().batches().forEach(this::onBatchAbandoned);
+        writeTask.bucket().batches().forEach(batch -> releaseInput(batch.record()));
+    }
+
+    /** Logs a committed journaled bucket as finished, then releases its inputs. Never throws. */
+    private void finishInputs(WriteTask<String, IngestionResult> writeTask) {
+        var batches = writeTask.bucket().batches();
+        batches.forEach(batch -> acknowledged.remove(batch.record()));
+        finish(writeTask, batches);
+    }
+
+    /**
+     * Logs the batches of a failed journaled bucket as finished and releases them, except the
+     * acknowledged ones, which keep their journal entry and temp file for a retry.
+     */
+    private void finishFailedInputs(WriteTask<String, IngestionResult> writeTask) {
+        finish(writeTask, writeTask.bucket().batches().stream()
+                .filter(batch -> !acknowledged.contains(batch.record()))
+                .toList());
+    }
+
+    private void finish(WriteTask<String, IngestionResult> writeTask, List<Batch<String>> batches) {
+        try {
+            journal.finished(batches.stream().map(Batch::record).toList());
+        } catch (RuntimeException e) {
+            // The entries stay live: a restart replays this bucket (at-least-once).
+            logger.warn("Queue '{}' failed to journal write task {} as finished", queueId, writeTask.taskId(), e);
+        }
+        batches.forEach(batch -> releaseInput(batch.record()));
     }
 
     @Override
     protected void onBatchAbandoned(Batch<String> batch) {
-        final String filePath = batch.record();
-        CLEANUP_EXECUTOR.execute(() -> {
-            try {
-                Files.deleteIfExists(Path.of(filePath));
-            } catch (Exception e) {
-                logger.warn("Failed to delete temporary input file: {}", filePath, e);
-            }
-        });
+        if (journal != null && !InMemoryBatchStore.isInMemory(batch.record())) {
+            return; // kept, with its journal entry, for replay on the next start
+        }
+        releaseInput(batch.record());
     }
 
     private String getClause(String[] values, String clause){
@@ -162,15 +575,35 @@ public class ParquetIngestionQueue extends BulkIngestQueue<String, IngestionResu
      * while the input files are still local.
      */
     private String constructSourceRelation(WriteTask<String, IngestionResult> writeTask) {
-        var batches = writeTask.bucket().batches();
+        return constructSourceRelation(writeTask.bucket().batches(), String.valueOf(writeTask.taskId()));
+    }
+
+    /**
+     * @param tag distinguishes the in-memory relation names of concurrent reads on one connection
+     *            (see {@link #inMemoryRelationNames})
+     */
+    private String constructSourceRelation(List<Batch<String>> batches, String tag) {
         // All Arrow files
-        var arrowFiles = batches.stream().map(Batch::record).map("'%s'"::formatted).collect(Collectors.joining(","));
+        var arrowFiles = batches.stream().map(Batch::record).filter(r -> !InMemoryBatchStore.isInMemory(r))
+                .map("'%s'"::formatted).collect(Collectors.joining(","));
         String[] batchPartitionBy = batches.get(0).partitionBy();
         boolean hasBatchPartitionBy = batchPartitionBy != null && batchPartitionBy.length > 0;
         String sortOrderClause = getClause(batches.get(0).sortOrder(), "ORDER BY %s ");
 
-        // Inner SQL reads from the temp Arrow files
-        var innerSql = "SELECT * FROM read_%s([%s]) %s".formatted(this.inputFormat, arrowFiles, sortOrderClause);
+        // Inner SQL reads from the temp Arrow files, plus the in-memory batches registered as
+        // Arrow streams by registerInMemoryBatches
+        List<String> inMemory = inMemoryRelationNames(batches, tag);
+        String innerSql;
+        if (inMemory.isEmpty()) {
+            innerSql = "SELECT * FROM read_%s([%s]) %s".formatted(this.inputFormat, arrowFiles, sortOrderClause);
+        } else {
+            List<String> sources = new ArrayList<>();
+            if (!arrowFiles.isEmpty()) {
+                sources.add("SELECT * FROM read_%s([%s])".formatted(this.inputFormat, arrowFiles));
+            }
+            inMemory.forEach(name -> sources.add("SELECT * FROM " + name));
+            innerSql = "SELECT * FROM (%s) %s".formatted(String.join(" UNION ALL BY NAME ", sources), sortOrderClause);
+        }
 
         // Fetch transformation fresh from the handler on every write so view-based
         // and handler-refreshed transformations are always current without caching.
@@ -192,14 +625,82 @@ public class ParquetIngestionQueue extends BulkIngestQueue<String, IngestionResu
         return querySql;
     }
 
+    /** Names the in-memory batches are registered under, in batch order. */
+    private static List<String> inMemoryRelationNames(List<Batch<String>> batches, String tag) {
+        List<String> names = new ArrayList<>();
+        for (var batch : batches) {
+            if (InMemoryBatchStore.isInMemory(batch.record())) {
+                names.add("__dd_mem_%s_%d".formatted(tag, names.size()));
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Registers the in-memory batches on {@code conn} under {@link #inMemoryRelationNames}.
+     * Each registration can be scanned once, which is all the write needs: either the COPY or the
+     * watermark materialization reads the relation. The decoded vectors come from a reader
+     * allocator of the store, so they count against its memory bound. The returned handle closes
+     * the exported streams and frees that allocator; the names stay registered on {@code conn}
+     * until it is closed, and the batches themselves stay in the store until the input cleanup.
+     */
+    private AutoCloseable registerInMemoryBatches(DuckDBConnection conn, List<Batch<String>> batches, String tag) {
+        List<String> names = inMemoryRelationNames(batches, tag);
+        if (names.isEmpty()) {
+            return () -> {};
+        }
+        BufferAllocator allocator = batchStore.newReaderAllocator("flush-" + tag);
+        List<AutoCloseable> resources = new ArrayList<>();
+        try {
+            int i = 0;
+            for (var batch : batches) {
+                if (!InMemoryBatchStore.isInMemory(batch.record())) {
+                    continue;
+                }
+                ArrowReader reader = batchStore.open(batch.record(), allocator);
+                resources.add(reader);
+                ArrowArrayStream stream = ArrowArrayStream.allocateNew(allocator);
+                resources.add(stream);
+                Data.exportArrayStream(allocator, reader, stream);
+                conn.registerArrowStream(names.get(i++), stream);
+            }
+        } catch (RuntimeException e) {
+            closeQuietly(resources, allocator);
+            throw e;
+        }
+        return () -> closeQuietly(resources, allocator);
+    }
+
+    private void closeQuietly(List<AutoCloseable> resources, BufferAllocator allocator) {
+        try {
+            AutoCloseables.close(resources);
+            allocator.close();
+        } catch (Exception e) {
+            logger.warn("Failed to release in-memory batch streams for queue '{}'", queueId, e);
+        }
+    }
+
     private String constructWriteQuery(WriteTask<String, IngestionResult> writeTask) {
-        var batches = writeTask.bucket().batches();
-        String[] batchPartitionBy = batches.get(0).partitionBy();
-        boolean hasBatchPartitionBy = batchPartitionBy != null && batchPartitionBy.length > 0;
-        String[] effectivePartitionBy = hasBatchPartitionBy
+        return constructWriteQuery(writeTask, constructSourceRelation(writeTask),
+                postIngestionHandler.getOutputOptions(queueId), false);
+    }
+
+    /** Header {@code partitionBy} of the batch if present, otherwise the handler's partition columns. */
+    private String[] effectivePartitionBy(Batch<String> batch) {
+        String[] batchPartitionBy = batch.partitionBy();
+        return batchPartitionBy != null && batchPartitionBy.length > 0
                 ? batchPartitionBy
                 : postIngestionHandler.getPartitionBy(queueId);
-        String partitionByClause = getClause(effectivePartitionBy, ", PARTITION_BY(%s)");
+    }
+
+    /**
+     * @param returnStats return one row per written file with its column statistics
+     *                    ({@code RETURN_STATS}, parquet only) instead of the file list
+     */
+    private String constructWriteQuery(WriteTask<String, IngestionResult> writeTask, String querySql,
+                                       ParquetOutputOptions outputOptions, boolean returnStats) {
+        var batches = writeTask.bucket().batches();
+        String partitionByClause = getClause(effectivePartitionBy(batches.get(0)), ", PARTITION_BY(%s)");
         // Last format
         var outputFormat = batches.isEmpty() ? "" : batches.get(batches.size() - 1).format();
         String fullFilePath;
@@ -210,7 +711,15 @@ public class ParquetIngestionQueue extends BulkIngestQueue<String, IngestionResu
             fullFilePath = this.outputPath;
         }
 
-        var querySql = constructSourceRelation(writeTask);
+        // Writer options only apply to parquet output. Sorting each flush clusters the sort keys
+        // into few row groups per value range, so min/max statistics prune well on read.
+        String writerOptions = "";
+        if ("parquet".equalsIgnoreCase(outputFormat)) {
+            if (!outputOptions.sortBy().isEmpty()) {
+                querySql = "SELECT * FROM (%s) ORDER BY %s".formatted(querySql, outputOptions.orderByClause());
+            }
+            writerOptions = outputOptions.copyOptions();
+        }
 
         // Build SQL
         // https://duckdb.org/docs/stable/sql/statements/copy
@@ -218,29 +727,36 @@ public class ParquetIngestionQueue extends BulkIngestQueue<String, IngestionResu
                 COPY
                     (%s)
                     TO '%s'
-                    (FORMAT %s %s, RETURN_FILES, APPEND);
-                """.formatted(querySql, fullFilePath, outputFormat, partitionByClause);
+                    (FORMAT %s %s%s, %s, APPEND);
+                """.formatted(querySql, fullFilePath, outputFormat, partitionByClause, writerOptions,
+                returnStats ? "RETURN_STATS" : "RETURN_FILES");
         return sql;
     }
 
     private IngestionResult tryWrite(WriteTask<String, IngestionResult> writeTask) throws Exception {
-        var sql = constructWriteQuery(writeTask);
-        logger.debug("Executing COPY SQL: {}", sql);
         List<String> files = new ArrayList<>();
         long count = 0;
-        // Watermark rows are computed BEFORE the COPY, over the same source relation the output
-        // is written from: the data is still local, the transformation is already applied (so
-        // partition columns are real typed columns, not hive path fragments), and a misconfigured
-        // spec fails fast without leaving an unregistered output file behind.
+        // Watermark rows are computed over the same source relation the output is written from:
+        // the data is still local, the transformation is already applied (so partition columns
+        // are real typed columns, not hive path fragments), and a misconfigured spec fails fast
+        // without leaving an unregistered output file behind. When every group is a partition
+        // column the rows come from the statistics the COPY returns per written file, so the
+        // input is read once. Otherwise the relation is materialized once into a connection-local
+        // temp table that both the aggregation and the COPY read from.
         WatermarkSpec watermarkSpec = postIngestionHandler.getWatermarkSpec(queueId);
+        ParquetOutputOptions outputOptions = postIngestionHandler.getOutputOptions(queueId);
+        var batches = writeTask.bucket().batches();
+        boolean watermarkFromStats = watermarkSpec != null
+                && "parquet".equalsIgnoreCase(batches.get(batches.size() - 1).format())
+                && watermarkSpec.computableFromFileStats(effectivePartitionBy(batches.get(0)));
+        List<WatermarkSpec.FileStats> fileStats = new ArrayList<>();
         List<List<String>> watermarkRows = null;
+        String sql;
         try (var conn = ConnectionPool.getConnection();
+             var inMemoryBatches = registerInMemoryBatches(conn, writeTask.bucket().batches(),
+                     String.valueOf(writeTask.taskId()));
              var stmt = conn.createStatement()) {
 
-            if (watermarkSpec != null) {
-                watermarkRows = watermarkSpec.computeRows(conn, constructSourceRelation(writeTask));
-            }
-
             // Set up cancellation hook
             var cancelHookSet = writeTask.setCancelHook(() -> {
                 try {
@@ -255,16 +771,59 @@ public class ParquetIngestionQueue extends BulkIngestQueue<String, IngestionResu
                 throw new IllegalStateException("Write task was cancelled");
             }
 
-            // Execute the query using our statement so the cancel hook works
-            stmt.execute(sql);
-            try (var rs = stmt.getResultSet()) {
-                while (rs.next()) {
-                    var rowCount = rs.getLong("count");
-                    var rowFilesArray = rs.getArray("files");
-                    count += rowCount;
-                    if (rowFilesArray != null) {
-                        var rowFiles = (Object[]) rowFilesArray.getArray();
-                        files.addAll(Arrays.stream(rowFiles).map(Object::toString).toList());
+            String materialized = null;
+            try {
+                if (watermarkSpec != null && !watermarkFromStats) {
+                    materialized = "__dd_ingest_%d".formatted(writeTask.taskId());
+                    long materializeStart = System.nanoTime();
+                    stmt.execute("CREATE OR REPLACE TEMP TABLE %s AS %s"
+                            .formatted(materialized, constructSourceRelation(writeTask)));
+                    watermarkMaterializeNanos.accumulate(System.nanoTime() - materializeStart);
+                    long aggregateStart = System.nanoTime();
+                    watermarkRows = watermarkSpec.computeRows(conn, "SELECT * FROM " + materialized);
+                    watermarkAggregateNanos.accumulate(System.nanoTime() - aggregateStart);
+                    sql = constructWriteQuery(writeTask, "SELECT * FROM " + materialized, outputOptions, false);
+                } else {
+                    sql = constructWriteQuery(writeTask, constructSourceRelation(writeTask), outputOptions,
+                            watermarkFromStats);
+                }
+                logger.debug("Executing COPY SQL: {}", sql);
+
+                // Execute the query using our statement so the cancel hook works
+                long copyStart = System.nanoTime();
+                stmt.execute(sql);
+                long copyNanos = System.nanoTime() - copyStart;
+                try (var rs = stmt.getResultSet()) {
+                    while (rs.next()) {
+                        if (watermarkFromStats) {
+                            // RETURN_STATS: one row per written file
+                            var stats = WatermarkSpec.FileStats.read(rs);
+                            fileStats.add(stats);
+                            count += stats.count();
+                            files.add(stats.file());
+                            continue;
+                        }
+                        var rowCount = rs.getLong("count");
+                        var rowFilesArray = rs.getArray("files");
+                        count += rowCount;
+                        if (rowFilesArray != null) {
+                            var rowFiles = (Object[]) rowFilesArray.getArray();
+                            files.addAll(Arrays.stream(rowFiles).map(Object::toString).toList());
+                        }
+                    }
+                }
+                if (watermarkFromStats) {
+                    watermarkRows = watermarkSpec.rowsFromFileStats(conn, fileStats);
+                    watermarkSinglePassNanos.accumulate(copyNanos);
+                    watermarkSinglePassRows.accumulate(count);
+                }
+            } finally {
+                if (materialized != null) {
+                    // Pooled connections outlive the write, so the temp table must not.
+                    try (var drop = conn.createStatement()) {
+                        drop.execute("DROP TABLE IF EXISTS " + materialized);
+                    } catch (Exception e) {
+                        logger.warn("Failed to drop materialized relation {} for queue '{}'", materialized, queueId, e);
                     }
                 }
             }
@@ -274,6 +833,6 @@ public class ParquetIngestionQueue extends BulkIngestQueue<String, IngestionResu
         return new IngestionResult(this.queueId, writeTask.taskId(), this.applicationId,
                 writeTask.bucket().getProducerMaxBatchId(),
                 count,
-                files, sql, watermarkRows);
+                files, sql, watermarkRows, outputOptions);
     }
 }
@@ -0,0 +1,161 @@
+package io.dazzleduck.sql.commons.ingestion;
+
+import io.dazzleduck.sql.commons.util.HeaderUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Per-queue tuning of the Parquet files written by {@link ParquetIngestionQueue}, parsed from a
+ * queue mapping's {@code additional_parameters}:
+ * <ul>
+ *   <li>{@code parquet_sort_by} — comma-separated sort keys, each a column optionally followed by
+ *       {@code ASC} or {@code DESC}. The output of every flush is sorted by them (after the
+ *       transformation), so min/max statistics of consecutive row groups barely overlap and
+ *       queries filtering on the keys skip most row groups.</li>
+ *   <li>{@code parquet_row_group_size} — rows per row group; smaller groups prune more finely.</li>
+ *   <li>{@code parquet_compression} — codec: {@code uncompressed}, {@code snappy}, {@code gzip},
+ *       {@code zstd}, {@code brotli}, {@code lz4} or {@code lz4_raw}.</li>
+ *   <li>{@code parquet_compression_level} — codec level (zstd).</li>
+ *   <li>{@code parquet_dictionary_size_limit} — largest dictionary a column chunk may build before
+ *       falling back to plain encoding.</li>
+ *   <li>{@code parquet_bloom_filter_false_positive_ratio} — target false positive ratio of the
+ *       bloom filters written for dictionary-encoded columns.</li>
+ * </ul>
+ * DuckDB's writer decides dictionary encoding and bloom filters per column chunk by itself; the
+ * last two keys tune that choice for all columns, there is no per-column switch.
+ *
+ * <p>As with {@link WatermarkSpec}, validation runs at config-load time via
+ * {@link QueueIdToTableMapping}, and unknown {@code parquet_}-prefixed keys are rejected. The
+ * options a file was written with are carried on {@link IngestionResult#outputOptions()}.
+ */
+public record ParquetOutputOptions(List<String> sortBy,
+                                   Long rowGroupSize,
+                                   String compression,
+                                   Integer compressionLevel,
+                                   Long dictionarySizeLimit,
+                                   Double bloomFilterFalsePositiveRatio) {
+
+    public static final String SORT_BY_KEY = "parquet_sort_by";
+    public static final String ROW_GROUP_SIZE_KEY = "parquet_row_group_size";
+    public static final String COMPRESSION_KEY = "parquet_compression";
+    public static final String COMPRESSION_LEVEL_KEY = "parquet_compression_level";
+    public static final String DICTIONARY_SIZE_LIMIT_KEY = "parquet_dictionary_size_limit";
+    public static final String BLOOM_FILTER_FPR_KEY = "parquet_bloom_filter_false_positive_ratio";
+
+    private static final List<String> KNOWN_KEYS = List.of(SORT_BY_KEY, ROW_GROUP_SIZE_KEY, COMPRESSION_KEY,
+            COMPRESSION_LEVEL_KEY, DICTIONARY_SIZE_LIMIT_KEY, BLOOM_FILTER_FPR_KEY);
+
+    private static final Set<String> CODECS = Set.of("uncompressed", "snappy", "gzip", "zstd", "brotli", "lz4", "lz4_raw");
+
+    /** DuckDB defaults: no sort, default row groups and codec. */
+    public static final ParquetOutputOptions DEFAULT = new ParquetOutputOptions(List.of(), null, null, null, null, null);
+
+    public ParquetOutputOptions {
+        sortBy = sortBy == null ? List.of() : List.copyOf(sortBy);
+        if (rowGroupSize != null && rowGroupSize <= 0) {
+            throw new IllegalArgumentException("'%s' must be positive but was %d".formatted(ROW_GROUP_SIZE_KEY, rowGroupSize));
+        }
+        if (compression != null && !CODECS.contains(compression)) {
+            throw new IllegalArgumentException("unknown '%s' value '%s' (known: %s)"
+                    .formatted(COMPRESSION_KEY, compression, CODECS));
+        }
+        if (dictionarySizeLimit != null && dictionarySizeLimit < 0) {
+            throw new IllegalArgumentException("'%s' must not be negative".formatted(DICTIONARY_SIZE_LIMIT_KEY));
+        }
+        if (bloomFilterFalsePositiveRatio != null
+                && !(bloomFilterFalsePositiveRatio > 0 && bloomFilterFalsePositiveRatio < 1)) {
+            throw new IllegalArgumentException("'%s' must be between 0 and 1 but was %s"
+                    .formatted(BLOOM_FILTER_FPR_KEY, bloomFilterFalsePositiveRatio));
+        }
+    }
+
+    /**
+     * Parses the options out of a queue mapping's {@code additional_parameters}. Returns
+     * {@link #DEFAULT} when no {@code parquet_} key is present.
+     *
+     * @throws IllegalArgumentException on malformed values or an unknown {@code parquet_}-prefixed
+     *         key (typo guard)
+     */
+    public static ParquetOutputOptions fromParameters(String queueName, Map<String, String> parameters) {
+        if (parameters == null || parameters.keySet().stream().noneMatch(k -> k.startsWith("parquet_"))) {
+            return DEFAULT;
+        }
+        for (String key : parameters.keySet()) {
+            if (key.startsWith("parquet_") && !KNOWN_KEYS.contains(key)) {
+                throw new IllegalArgumentException(
+                        "Queue '%s': unknown parquet parameter '%s' (known: %s)".formatted(queueName, key, KNOWN_KEYS));
+            }
+        }
+        try {
+            String compression = parameters.get(COMPRESSION_KEY);
+            return new ParquetOutputOptions(
+                    parseSortBy(parameters.get(SORT_BY_KEY)),
+                    parseLong(parameters, ROW_GROUP_SIZE_KEY),
+                    compression == null ? null : compression.trim().toLowerCase(Locale.ROOT),
+                    parameters.containsKey(COMPRESSION_LEVEL_KEY)
+                            ? Integer.valueOf(parameters.get(COMPRESSION_LEVEL_KEY).trim()) : null,
+                    parseLong(parameters, DICTIONARY_SIZE_LIMIT_KEY),
+                    parameters.containsKey(BLOOM_FILTER_FPR_KEY)
+                            ? Double.valueOf(parameters.get(BLOOM_FILTER_FPR_KEY).trim()) : null);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Queue '%s': %s".formatted(queueName, e.getMessage()), e);
+        }
+    }
+
+    /** {@code ORDER BY} keys for the output, quoted; empty when no sort is configured. */
+    public String orderByClause() {
+        List<String> keys = new ArrayList<>();
+        for (String key : sortBy) {
+            String[] parts = key.split("\\s+");
+            String column = HeaderUtils.quoteIdentifier(parts[0]);
+            keys.add(parts.length == 2 ? column + " " + parts[1].toUpperCase(Locale.ROOT) : column);
+        }
+        return String.join(", ", keys);
+    }
+
+    /**
+     * COPY options for the Parquet writer, each prefixed with {@code ", "} so they can follow
+     * {@code FORMAT parquet}; empty when nothing is configured.
+     */
+    public String copyOptions() {
+        var sb = new StringBuilder();
+        if (rowGroupSize != null) sb.append(", ROW_GROUP_SIZE ").append(rowGroupSize);
+        if (compression != null) sb.append(", COMPRESSION ").append(compression);
+        if (compressionLevel != null) sb.append(", COMPRESSION_LEVEL ").append(compressionLevel);
+        if (dictionarySizeLimit != null) sb.append(", DICTIONARY_SIZE_LIMIT ").append(dictionarySizeLimit);
+        if (bloomFilterFalsePositiveRatio != null) {
+            sb.append(", BLOOM_FILTER_FALSE_POSITIVE_RATIO ").append(bloomFilterFalsePositiveRatio);
+        }
+        return sb.toString();
+    }
+
+    /** Same parsing rules as {@code watermark_group_columns}: comma-separated, HOCON list tolerated. */
+    private static List<String> parseSortBy(String value) {
+        if (value == null) return List.of();
+        String trimmed = value.trim();
+        if (trimmed.startsWith("[") && trimmed.endsWith("]")) {
+            trimmed = trimmed.substring(1, trimmed.length() - 1);
+        }
+        if (trimmed.isBlank()) return List.of();
+        List<String> keys = Arrays.stream(trimmed.split(",")).map(String::trim).toList();
+        for (String key : keys) {
+            String[] parts = key.split("\\s+");
+            boolean valid = !key.isBlank() && parts.length <= 2
+                    && (parts.length == 1 || parts[1].equalsIgnoreCase("asc") || parts[1].equalsIgnoreCase("desc"));
+            if (!valid) {
+                throw new IllegalArgumentException("malformed '%s' entry: '%s'".formatted(SORT_BY_KEY, key));
+            }
+        }
+        return keys;
+    }
+
+    private static Long parseLong(Map<String, String> parameters, String key) {
+        String value = parameters.get(key);
+        return value == null ? null : Long.valueOf(value.trim());
+    }
+}
@@ -0,0 +1,97 @@
+package io.dazzleduck.sql.commons.ingestion;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Last accepted batch id per producer, bounded to {@code maxProducers} entries with
+ * least-recently-used eviction. Used by {@link BulkIngestQueue} for duplicate and ordering
+ * protection.
+ *
+ * <p>Replaces an access-ordered {@code LinkedHashMap} under the queue monitor. Entries live in a
+ * {@link ConcurrentHashMap}, and recency in a skip list keyed by a global access stamp, so
+ * lookups, updates and evictions never take a shared lock. Callers serialize work for ONE producer
+ * (check, accept, update) on {@link #lockFor}, a lock striped by producer id: producers on
+ * different stripes never contend.
+ *
+ * <p>Not thread safe for a single producer without its stripe lock.
+ */
+final class ProducerSequences {
+
+    /** Called with the evicted producer id and its last batch id. */
+    interface EvictionListener {
+        void evicted(String producerId, long lastBatchId);
+    }
+
+    private record Entry(long batchId, long stamp) {}
+
+    private static final int STRIPES = 64;
+
+    private final int maxProducers;
+    private final EvictionListener evictionListener;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, String> accessOrder = new ConcurrentSkipListMap<>();
+    private final AtomicLong accessClock = new AtomicLong();
+    private final AtomicInteger size = new AtomicInteger();
+    private final Object[] stripes = new Object[STRIPES];
+
+    ProducerSequences(int maxProducers, EvictionListener evictionListener) {
+        this.maxProducers = maxProducers;
+        this.evictionListener = evictionListener;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    /** Lock that serializes all updates for {@code producerId}. */
+    Object lockFor(String producerId) {
+        return stripes[(producerId.hashCode() & 0x7fffffff) % STRIPES];
+    }
+
+    /** Last accepted batch id of {@code producerId}, or {@code null} if unknown or evicted. */
+    Long get(String producerId) {
+        var entry = entries.get(producerId);
+        return entry == null ? null : entry.batchId();
+    }
+
+    /** Records {@code batchId} as the last accepted batch and marks the producer most recently used. */
+    void put(String producerId, long batchId) {
+        long stamp = accessClock.incrementAndGet();
+        var previous = entries.put(producerId, new Entry(batchId, stamp));
+        accessOrder.put(stamp, producerId);
+        if (previous != null) {
+            accessOrder.remove(previous.stamp());
+        } else if (size.incrementAndGet() > maxProducers) {
+            evictEldest();
+        }
+    }
+
+    /**
+     * Lowers the producer's last batch id to {@code batchId} if it is currently higher, without
+     * changing its recency. A producer evicted meanwhile stays evicted.
+     */
+    void rollBackTo(String producerId, long batchId) {
+        var current = entries.get(producerId);
+        if (current != null && current.batchId() > batchId) {
+            entries.replace(producerId, current, new Entry(batchId, current.stamp()));
+        }
+    }
+
+    private void evictEldest() {
+        while (size.get() > maxProducers) {
+            var eldest = accessOrder.pollFirstEntry();
+            if (eldest == null) {
+                return;
+            }
+            var producerId = eldest.getValue();
+            var entry = entries.get(producerId);
+            // A stale stamp means the producer was touched again after this stamp was taken.
+            if (entry != null && entry.stamp() == eldest.getKey() && entries.remove(producerId, entry)) {
+                size.decrementAndGet();
+                evictionListener.evicted(producerId, entry.batchId());
+            }
+        }
+    }
+}
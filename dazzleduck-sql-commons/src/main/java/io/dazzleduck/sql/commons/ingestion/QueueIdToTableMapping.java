@@ -50,6 +50,7 @@ public record QueueIdToTableMapping(
         // Fail at config load, not per batch: a malformed watermark spec (partial/blank/typo'd
         // keys) would otherwise write each batch's output and then orphan it at post-ingestion.
         WatermarkSpec.fromParameters(ingestionQueue, additionalParameters);
+        ParquetOutputOptions.fromParameters(ingestionQueue, additionalParameters);
     }
 
     /** Backward-compatible constructor without outputPath/inputSchema (DuckLake-managed entries). */
@@ -3,9 +3,11 @@ package io.dazzleduck.sql.commons.ingestion;
 import io.dazzleduck.sql.commons.util.HeaderUtils;
 
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -32,9 +34,11 @@ import java.util.stream.Collectors;
  * <p>A group whose timestamps are all NULL still produces a row: NULL min and max, with the real
  * row count. Only a genuinely empty batch is skipped.
  *
- * <p>Watermark rows are computed at WRITE time by {@link ParquetIngestionQueue} — an aggregation
- * over the same pre-COPY relation the output Parquet is written from (local data, transformation
- * already applied) — and carried through {@link IngestionResult#watermarkRows()} to
+ * <p>Watermark rows are computed at WRITE time by {@link ParquetIngestionQueue} — from the
+ * per-file statistics the COPY returns when every group column is a partition column, otherwise
+ * by an aggregation over the same pre-COPY relation the output Parquet is written from (local
+ * data, transformation already applied, materialized once so the aggregation and the COPY share
+ * a single read of the input files) — and carried through {@link IngestionResult#watermarkRows()} to
  * {@link DuckLakePostIngestionTask}, which appends them via a plain {@code INSERT ... VALUES} in
  * the SAME transaction as the {@code ducklake_add_data_files} registration. The post-ingestion
  * step therefore never re-reads the written files: no second download, no dependence on the
@@ -174,6 +178,126 @@ public record WatermarkSpec(String table, String timestampColumn, List<String> g
         return rows;
     }
 
+    /**
+     * Per-file row of a {@code COPY ... (RETURN_STATS)}: the written file, its row count, its hive
+     * partition values ({@code null} when unpartitioned) and its column statistics, keyed by
+     * quoted column name.
+     */
+    public record FileStats(String file, long count, Map<String, String> partitionValues,
+                            Map<String, Map<String, String>> columnStatistics) {
+
+        /** Reads the current row of a {@code RETURN_STATS} result. */
+        @SuppressWarnings("unchecked")
+        public static FileStats read(ResultSet resultSet) throws SQLException {
+            return new FileStats(resultSet.getString("filename"), resultSet.getLong("count"),
+                    (Map<String, String>) resultSet.getObject("partition_keys"),
+                    (Map<String, Map<String, String>>) resultSet.getObject("column_statistics"));
+        }
+    }
+
+    /**
+     * Whether the watermark rows can be taken from the statistics the COPY returns instead of a
+     * separate aggregation: every group column must be a partition column, so each written file
+     * belongs to exactly one group, and the timestamp column must not be one, so the files carry
+     * its min/max statistics.
+     */
+    public boolean computableFromFileStats(String[] partitionBy) {
+        List<String> partitions = partitionBy == null ? List.of() : Arrays.asList(partitionBy);
+        return groupColumns.stream().allMatch(c -> containsIgnoreCase(partitions, c))
+                && !containsIgnoreCase(partitions, timestampColumn);
+    }
+
+    /**
+     * Aggregates the per-file statistics of the COPY into the rows {@link #computeRows} would
+     * return for the same relation, so the input is scanned once, by the COPY. A group written to
+     * a single file takes that file's min/max as is; a group split across files compares them as
+     * values of the column's type, read from one file's footer. Empty files are skipped.
+     *
+     * @throws IllegalArgumentException if the files have no statistics for the timestamp column
+     */
+    public List<List<String>> rowsFromFileStats(Connection connection, List<FileStats> files) throws SQLException {
+        Map<List<String>, List<FileStats>> groups = new LinkedHashMap<>();
+        for (var file : files) {
+            if (file.count() > 0) {
+                groups.computeIfAbsent(groupValues(file), k -> new ArrayList<>()).add(file);
+            }
+        }
+        List<List<String>> rows = new ArrayList<>();
+        String columnType = null;
+        for (var group : groups.entrySet()) {
+            var groupFiles = group.getValue();
+            List<String> mins = groupFiles.stream().map(f -> statistic(f, "min")).toList();
+            List<String> maxs = groupFiles.stream().map(f -> statistic(f, "max")).toList();
+            String min = mins.get(0);
+            String max = maxs.get(0);
+            if (groupFiles.size() > 1) {
+                if (columnType == null) {
+                    columnType = columnType(connection, groupFiles.get(0).file());
+                }
+                min = extreme(connection, "MIN", columnType, mins);
+                max = extreme(connection, "MAX", columnType, maxs);
+            }
+            List<String> row = new ArrayList<>(group.getKey());
+            row.add(min);
+            row.add(max);
+            row.add(Long.toString(groupFiles.stream().mapToLong(FileStats::count).sum()));
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private List<String> groupValues(FileStats file) {
+        List<String> values = new ArrayList<>(groupColumns.size());
+        for (String column : groupColumns) {
+            values.add(file.partitionValues() == null ? null : getIgnoreCase(file.partitionValues(), column));
+        }
+        return values;
+    }
+
+    /** A min or max of the timestamp column in one file; {@code null} when all its values are NULL. */
+    private String statistic(FileStats file, String name) {
+        var statistics = getIgnoreCase(file.columnStatistics(), HeaderUtils.quoteIdentifier(timestampColumn));
+        if (statistics == null) {
+            throw new IllegalArgumentException("watermark timestamp column '%s' is not in the written file %s"
+                    .formatted(timestampColumn, file.file()));
+        }
+        return statistics.get(name);
+    }
+
+    private String columnType(Connection connection, String file) throws SQLException {
+        try (var statement = connection.createStatement();
+             var resultSet = statement.executeQuery("DESCRIBE SELECT %s FROM read_parquet(%s)"
+                     .formatted(HeaderUtils.quoteIdentifier(timestampColumn), literal(file)))) {
+            resultSet.next();
+            return resultSet.getString("column_type");
+        }
+    }
+
+    private static String extreme(Connection connection, String function, String columnType, List<String> values)
+            throws SQLException {
+        String rows = values.stream().map(v -> "(" + literal(v) + ")").collect(Collectors.joining(", "));
+        try (var statement = connection.createStatement();
+             var resultSet = statement.executeQuery("SELECT %s(CAST(v AS %s))::VARCHAR FROM (VALUES %s) t(v)"
+                     .formatted(function, columnType, rows))) {
+            resultSet.next();
+            return resultSet.getString(1);
+        }
+    }
+
+    private static boolean containsIgnoreCase(List<String> values, String value) {
+        return values.stream().anyMatch(value::equalsIgnoreCase);
+    }
+
+    /** DuckDB identifiers are case-insensitive, so the statistics are looked up the same way. */
+    private static <V> V getIgnoreCase(Map<String, V> map, String key) {
+        var value = map.get(key);
+        if (value != null) {
+            return value;
+        }
+        return map.entrySet().stream().filter(e -> e.getKey().equalsIgnoreCase(key))
+                .map(Map.Entry::getValue).findFirst().orElse(null);
+    }
+
     /**
      * Renders the INSERT appending precomputed watermark rows — explicit quoted column list
      * (group columns then timestamp column), values as escaped string literals relying on
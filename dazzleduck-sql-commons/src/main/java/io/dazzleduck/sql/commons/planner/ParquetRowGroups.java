@@ -0,0 +1,199 @@
+package io.dazzleduck.sql.commons.planner;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.dazzleduck.sql.commons.ConnectionPool;
+import io.dazzleduck.sql.commons.FileStatus;
+import io.dazzleduck.sql.commons.Transformations;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Divides Parquet files larger than a split into ranges of row groups, so a single large file
+ * can be read by several splits.
+ *
+ * <p>Row groups are read from the file footers. A range holds contiguous row groups up to the
+ * split size; a row group larger than the split size makes a range of its own. Row groups whose
+ * min/max statistics rule out the query's filter are left out, and a file left without row groups
+ * is dropped. Files no larger than a split are kept whole and their footers are not read.
+ */
+final class ParquetRowGroups {
+
+    private static final String STATS_TABLE_ALIAS = "R";
+    private static final String ROW_GROUP_QUERY =
+            "WITH R AS (SELECT file_name, row_group_id, any_value(row_group_num_rows) AS num_rows, " +
+                    "cast(sum(total_compressed_size) AS BIGINT) AS bytes%s " +
+                    "FROM parquet_metadata(%s) GROUP BY file_name, row_group_id)\n" +
+                    "SELECT file_name, row_group_id, num_rows, bytes, %s FROM R ORDER BY file_name, row_group_id";
+    private static final String STATS_COLUMNS =
+            ", any_value(stats_min_value) FILTER (WHERE path_in_schema = %1$s) AS min_%2$s" +
+                    ", any_value(stats_max_value) FILTER (WHERE path_in_schema = %1$s) AS max_%2$s";
+    private static final String TYPE_QUERY = "SELECT column_name, column_type FROM (DESCRIBE SELECT * FROM read_parquet(%s, union_by_name = true))";
+
+    private record RowGroup(String fileName, long rowGroupId, long rowCount, long size, boolean matches) { }
+
+    private ParquetRowGroups() {
+    }
+
+    /**
+     * @param where the filter applied to the files, {@code null} when there is none
+     * @return the files, with the large ones replaced by their row ranges
+     */
+    static List<FileStatus> divide(List<FileStatus> fileStatuses,
+                                   long maxSplitSize,
+                                   JsonNode where) throws SQLException {
+        var large = new LinkedHashMap<String, FileStatus>();
+        for (var fileStatus : fileStatuses) {
+            if (isLarge(fileStatus, maxSplitSize)) {
+                large.put(fileStatus.fileName(), fileStatus);
+            }
+        }
+        if (large.isEmpty()) {
+            return fileStatuses;
+        }
+        var rowGroups = readRowGroups(large.keySet(), where).stream()
+                .collect(Collectors.groupingBy(RowGroup::fileName, LinkedHashMap::new, Collectors.toList()));
+        var result = new ArrayList<FileStatus>();
+        for (var fileStatus : fileStatuses) {
+            if (large.containsKey(fileStatus.fileName())) {
+                result.addAll(ranges(fileStatus, rowGroups.getOrDefault(fileStatus.fileName(), List.of()), maxSplitSize));
+            } else {
+                result.add(fileStatus);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isLarge(FileStatus fileStatus, long maxSplitSize) {
+        return !fileStatus.isRowRange()
+                && fileStatus.size() != null && fileStatus.size() > maxSplitSize
+                && fileStatus.fileName().toLowerCase(Locale.ROOT).endsWith(".parquet");
+    }
+
+    /** Groups the row groups of a file, in file order, into ranges of about {@code maxSplitSize}. */
+    private static List<FileStatus> ranges(FileStatus file, List<RowGroup> rowGroups, long maxSplitSize) {
+        var result = new ArrayList<FileStatus>();
+        long totalRows = 0;
+        long firstRow = 0;
+        long rows = 0;
+        long size = 0;
+        boolean pruned = false;
+        for (var rowGroup : rowGroups) {
+            boolean full = size > 0 && size + rowGroup.size() > maxSplitSize;
+            if (rows > 0 && (!rowGroup.matches() || full)) {
+                result.add(new FileStatus(file.fileName(), size, file.lastModified(), rows, firstRow));
+                rows = 0;
+                size = 0;
+            }
+            if (rowGroup.matches()) {
+                if (rows == 0) {
+                    firstRow = totalRows;
+                }
+                rows += rowGroup.rowCount();
+                size += rowGroup.size();
+            } else {
+                pruned = true;
+            }
+            totalRows += rowGroup.rowCount();
+        }
+        if (rows > 0) {
+            result.add(new FileStatus(file.fileName(), size, file.lastModified(), rows, firstRow));
+        }
+        if (result.size() == 1 && !pruned) {
+            return List.of(new FileStatus(file.fileName(), file.size(), file.lastModified(), totalRows));
+        }
+        return result;
+    }
+
+    private static List<RowGroup> readRowGroups(Collection<String> files, JsonNode where) throws SQLException {
+        var fileList = files.stream().map(ParquetRowGroups::quote).collect(Collectors.joining(", ", "[", "]"));
+        try (var connection = ConnectionPool.getConnection()) {
+            var stats = new StringBuilder();
+            var filter = "";
+            var references = where == null || where instanceof NullNode
+                    ? List.<JsonNode>of() : Transformations.collectReferences(where);
+            if (!references.isEmpty()) {
+                var columns = new LinkedHashSet<String>();
+                for (var reference : references) {
+                    var name = Transformations.getReferenceName(reference);
+                    if (name.length == 1) {
+                        columns.add(name[0]);
+                    }
+                }
+                var types = new HashMap<String, String>();
+                for (var row : ConnectionPool.collectAll(connection, TYPE_QUERY.formatted(fileList),
+                        rs -> new String[]{rs.getString(1), rs.getString(2)})) {
+                    types.put(row[0], row[1]);
+                }
+                var minMap = new HashMap<String, String>();
+                var maxMap = new HashMap<String, String>();
+                int i = 0;
+                for (var column : columns) {
+                    if (types.containsKey(column)) {
+                        stats.append(STATS_COLUMNS.formatted(quote(column), i));
+                        minMap.put(column, "min_" + i);
+                        maxMap.put(column, "max_" + i);
+                        i++;
+                    }
+                }
+                filter = getFilterSql(where, minMap, maxMap, types);
+            }
+            // Missing statistics leave the rewritten filter NULL: such row groups have to be read.
+            var query = ROW_GROUP_QUERY.formatted(stats, fileList,
+                    filter.isEmpty() ? "true" : "coalesce(%s, true)".formatted(filter));
+            try {
+                return collect(connection, query);
+            } catch (RuntimeException e) {
+                if (filter.isEmpty()) {
+                    throw e;
+                }
+                // Statistics that do not cast to the column type: read every row group.
+                return collect(connection, ROW_GROUP_QUERY.formatted("", fileList, "true"));
+            }
+        }
+    }
+
+    private static List<RowGroup> collect(Connection connection, String query) {
+        var result = new ArrayList<RowGroup>();
+        ConnectionPool.collectAll(connection, query,
+                rs -> new RowGroup(rs.getString(1), rs.getLong(2), rs.getLong(3), rs.getLong(4), rs.getBoolean(5)))
+                .forEach(result::add);
+        return result;
+    }
+
+    /** The filter rewritten over the min/max statistics of a row group, empty when it cannot be. */
+    private static String getFilterSql(JsonNode where,
+                                       Map<String, String> minMap,
+                                       Map<String, String> maxMap,
+                                       Map<String, String> types) throws SQLException {
+        JsonNode filter;
+        if (Transformations.IS_CONJUNCTION_AND.apply(where)) {
+            filter = Transformations.transform(where, Transformations.IS_CONJUNCTION_AND,
+                    Transformations.replaceEqualMinMaxFromAndConjunction(minMap, maxMap, types));
+        } else if (Transformations.IS_COMPARISON.apply(where)) {
+            filter = Transformations.transform(where, Transformations.IS_COMPARISON,
+                    Transformations.replaceEqualMinMaxFromComparison(minMap, maxMap, types));
+        } else {
+            return "";
+        }
+        try {
+            var t = Transformations.parseToTree("select * from " + STATS_TABLE_ALIAS);
+            var firstStatement = (ObjectNode) Transformations.getFirstStatementNode(t);
+            firstStatement.set("where_clause", filter);
+            var newSql = Transformations.parseToSql(t);
+            var index = newSql.indexOf("WHERE");
+            return index < 0 ? "" : newSql.substring(index + "WHERE".length());
+        } catch (JsonProcessingException e) {
+            throw new SQLException("Failed to rewrite the filter over row group statistics", e);
+        }
+    }
+
+    private static String quote(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+}
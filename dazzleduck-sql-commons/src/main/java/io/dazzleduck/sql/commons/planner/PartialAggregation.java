@@ -0,0 +1,382 @@
+package io.dazzleduck.sql.commons.planner;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.dazzleduck.sql.commons.Transformations;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static io.dazzleduck.sql.commons.ExpressionConstants.*;
+import static io.dazzleduck.sql.commons.ExpressionFactory.cast;
+import static io.dazzleduck.sql.commons.ExpressionFactory.constant;
+import static io.dazzleduck.sql.commons.ExpressionFactory.createFunction;
+import static io.dazzleduck.sql.commons.ExpressionFactory.reference;
+
+/**
+ * An aggregating query split into a partial phase, which runs on every split of the query, and a
+ * final phase, which merges the partial results of all splits into the result of the query.
+ *
+ * <p>The partial phase keeps the FROM and WHERE clauses and the GROUP BY of the query and selects
+ * the group keys and one partial aggregate per aggregate of the query. The final phase reads the
+ * partial results from {@link #PARTIALS_TABLE}, groups them by the same keys and evaluates the
+ * SELECT list, HAVING, ORDER BY and LIMIT of the query over the merged aggregates:
+ * <ul>
+ *   <li>{@code count} becomes a sum of the partial counts</li>
+ *   <li>{@code sum}, {@code min} and {@code max} merge with themselves</li>
+ *   <li>{@code avg} becomes a partial sum and count, divided after merging</li>
+ * </ul>
+ * Queries with any other aggregate, DISTINCT aggregates (except {@code min} and {@code max}),
+ * ordered aggregates, grouping sets, window functions or subqueries are not decomposed.
+ * {@code approx_count_distinct} is among them: DuckDB cannot hand its sketch to another query.
+ */
+public record PartialAggregation(JsonNode partialTree, JsonNode finalTree) {
+
+    /** Table the final phase reads the partial results of all splits from. */
+    public static final String PARTIALS_TABLE = "__dd_partials";
+
+    private static final String GROUP_PREFIX = "__dd_g";
+    private static final String PARTIAL_PREFIX = "__dd_p";
+
+    /**
+     * Plans the two phases of a query.
+     *
+     * @param connection         used to derive the names of unnamed result columns, which the final
+     *                           phase keeps
+     * @param aggregateFunctions names of DuckDB's aggregate functions, see
+     *                           {@link SplitPlanner#aggregateFunctionNames}
+     * @return empty if the query does not aggregate or its aggregation cannot be decomposed
+     */
+    public static Optional<PartialAggregation> plan(Connection connection, JsonNode tree,
+                                                    Set<String> aggregateFunctions) throws SQLException {
+        var statements = tree.get(FIELD_STATEMENTS);
+        if (statements == null || statements.size() != 1) {
+            return Optional.empty();
+        }
+        var select = Transformations.getFirstStatementNode(tree);
+        if (!SELECT_NODE_TYPE.equals(select.path(FIELD_TYPE).asText())
+                || !select.path(FIELD_CTE_MAP).path(FIELD_MAP).isEmpty()
+                || !AGGREGATE_HANDLING_STANDARD.equals(select.path(FIELD_AGGREGATE_HANDLING).asText())
+                || !isNull(select.get(FIELD_QUALIFY))
+                || !isNull(select.get(FIELD_SAMPLE))
+                || SplitPlanner.containsRowCombining(select.get(FIELD_WHERE_CLAUSE), aggregateFunctions)) {
+            return Optional.empty();
+        }
+        for (JsonNode modifier : select.path(FIELD_MODIFIERS)) {
+            var type = modifier.path(FIELD_TYPE).asText();
+            if (!type.equals(TYPE_ORDER_MODIFIER) && !type.equals(LIMIT_MODIFIER_TYPE)) {
+                return Optional.empty();
+            }
+        }
+        var selectList = select.path(FIELD_SELECT_LIST);
+        var groups = resolveGroups(select, aggregateFunctions);
+        if (groups == null || !isSingleGroupingSet(select.path(FIELD_GROUP_SETS), groups.size())) {
+            return Optional.empty();
+        }
+
+        var rewriter = new Rewriter(groups, selectList, aggregateFunctions);
+        var finalSelectList = new ArrayNode(JsonNodeFactory.instance);
+        var finalModifiers = new ArrayNode(JsonNodeFactory.instance);
+        JsonNode finalHaving = null;
+        try {
+            for (JsonNode item : selectList) {
+                var rewritten = (ObjectNode) rewriter.rewrite(item);
+                rewritten.put(FIELD_ALIAS, columnName(connection, tree, item));
+                finalSelectList.add(rewritten);
+            }
+            if (!isNull(select.get(FIELD_HAVING))) {
+                finalHaving = rewriter.rewrite(select.get(FIELD_HAVING));
+            }
+            for (JsonNode modifier : select.path(FIELD_MODIFIERS)) {
+                var copy = (ObjectNode) modifier.deepCopy();
+                if (copy.path(FIELD_TYPE).asText().equals(TYPE_ORDER_MODIFIER)) {
+                    for (JsonNode order : copy.path(FIELD_ORDERS)) {
+                        ((ObjectNode) order).set(FIELD_EXPRESSION, rewriter.rewrite(order.get(FIELD_EXPRESSION)));
+                    }
+                }
+                finalModifiers.add(copy);
+            }
+        } catch (NotDecomposableException e) {
+            return Optional.empty();
+        }
+        if (groups.isEmpty() && rewriter.partials.isEmpty()) {
+            return Optional.empty();
+        }
+
+        var partialTree = tree.deepCopy();
+        var partialSelect = (ObjectNode) Transformations.getFirstStatementNode(partialTree);
+        var partialSelectList = new ArrayNode(JsonNodeFactory.instance);
+        var groupExpressions = new ArrayNode(JsonNodeFactory.instance);
+        for (int i = 0; i < groups.size(); i++) {
+            partialSelectList.add(withAlias(groups.get(i), GROUP_PREFIX + i));
+            groupExpressions.add(groups.get(i).deepCopy());
+        }
+        for (int i = 0; i < rewriter.partials.size(); i++) {
+            partialSelectList.add(withAlias(rewriter.partials.get(i), PARTIAL_PREFIX + i));
+        }
+        partialSelect.set(FIELD_SELECT_LIST, partialSelectList);
+        partialSelect.set(FIELD_GROUP_EXPRESSIONS, groupExpressions);
+        partialSelect.set(FIELD_MODIFIERS, new ArrayNode(JsonNodeFactory.instance));
+        partialSelect.putNull(FIELD_HAVING);
+
+        var finalTree = tree.deepCopy();
+        var finalSelect = (ObjectNode) Transformations.getFirstStatementNode(finalTree);
+        var finalGroups = new ArrayNode(JsonNodeFactory.instance);
+        for (int i = 0; i < groups.size(); i++) {
+            finalGroups.add(reference(new String[]{GROUP_PREFIX + i}));
+        }
+        finalSelect.set(FIELD_SELECT_LIST, finalSelectList);
+        finalSelect.set(FIELD_FROM_TABLE, partialsTable());
+        finalSelect.putNull(FIELD_WHERE_CLAUSE);
+        finalSelect.set(FIELD_GROUP_EXPRESSIONS, finalGroups);
+        finalSelect.set(FIELD_HAVING, finalHaving);
+        finalSelect.set(FIELD_MODIFIERS, finalModifiers);
+        return Optional.of(new PartialAggregation(partialTree, finalTree));
+    }
+
+    /**
+     * The GROUP BY expressions with positional references replaced by the SELECT list entries they
+     * point to, or {@code null} when a group cannot be moved into the partial phase as is.
+     */
+    private static List<JsonNode> resolveGroups(JsonNode select, Set<String> aggregateFunctions) {
+        var selectList = select.path(FIELD_SELECT_LIST);
+        var aliases = new HashSet<String>();
+        selectList.forEach(item -> aliases.add(item.path(FIELD_ALIAS).asText()));
+        var groups = new ArrayList<JsonNode>();
+        for (JsonNode group : select.path(FIELD_GROUP_EXPRESSIONS)) {
+            var clazz = group.path(FIELD_CLASS).asText();
+            if (clazz.equals(CONSTANT_CLASS)) {
+                int position = group.path(FIELD_VALUE).path(FIELD_VALUE).asInt(0);
+                if (position < 1 || position > selectList.size()) {
+                    return null;
+                }
+                group = withAlias(selectList.get(position - 1), "");
+            } else if (clazz.equals(COLUMN_REF_CLASS) && group.path(FIELD_COLUMN_NAMES).size() == 1
+                    && aliases.contains(group.path(FIELD_COLUMN_NAMES).get(0).asText())) {
+                // Could name a column or a SELECT list entry; only DuckDB's binder can tell.
+                return null;
+            }
+            if (SplitPlanner.containsRowCombining(group, aggregateFunctions)) {
+                return null;
+            }
+            groups.add(group);
+        }
+        return groups;
+    }
+
+    private static boolean isSingleGroupingSet(JsonNode groupSets, int groupCount) {
+        if (groupCount == 0) {
+            return groupSets.isEmpty();
+        }
+        if (groupSets.size() != 1 || groupSets.get(0).size() != groupCount) {
+            return false;
+        }
+        var seen = new HashSet<Integer>();
+        for (JsonNode index : groupSets.get(0)) {
+            seen.add(index.asInt());
+        }
+        return seen.size() == groupCount;
+    }
+
+    /** The name DuckDB gives the result column of a SELECT list entry. */
+    private static String columnName(Connection connection, JsonNode tree, JsonNode item) throws SQLException {
+        var alias = item.path(FIELD_ALIAS).asText();
+        if (!alias.isEmpty()) {
+            return alias;
+        }
+        if (item.path(FIELD_CLASS).asText().equals(COLUMN_REF_CLASS)) {
+            var names = item.path(FIELD_COLUMN_NAMES);
+            return names.get(names.size() - 1).asText();
+        }
+        // Unnamed expressions are named after their SQL text.
+        var single = tree.deepCopy();
+        var node = (ObjectNode) Transformations.getFirstStatementNode(single);
+        var list = new ArrayNode(JsonNodeFactory.instance);
+        list.add(item);
+        var empty = new ObjectNode(JsonNodeFactory.instance);
+        empty.put(FIELD_TYPE, NODE_TYPE_EMPTY);
+        empty.put(FIELD_ALIAS, "");
+        empty.putNull(FIELD_SAMPLE);
+        node.set(FIELD_SELECT_LIST, list);
+        node.set(FIELD_FROM_TABLE, empty);
+        node.putNull(FIELD_WHERE_CLAUSE);
+        node.set(FIELD_GROUP_EXPRESSIONS, new ArrayNode(JsonNodeFactory.instance));
+        node.set(FIELD_GROUP_SETS, new ArrayNode(JsonNodeFactory.instance));
+        node.putNull(FIELD_HAVING);
+        node.set(FIELD_MODIFIERS, new ArrayNode(JsonNodeFactory.instance));
+        return Transformations.parseToSql(connection, single).substring("SELECT ".length());
+    }
+
+    private static ObjectNode partialsTable() {
+        var table = new ObjectNode(JsonNodeFactory.instance);
+        table.put(FIELD_TYPE, BASE_TABLE_TYPE);
+        table.put(FIELD_ALIAS, "");
+        table.putNull(FIELD_SAMPLE);
+        table.put(FIELD_SCHEMA_NAME, "");
+        table.put(FIELD_TABLE_NAME, PARTIALS_TABLE);
+        table.set(FIELD_COLUMN_NAME_ALIAS, new ArrayNode(JsonNodeFactory.instance));
+        table.put(FIELD_CATALOG_NAME, "");
+        return table;
+    }
+
+    private static JsonNode withAlias(JsonNode expression, String alias) {
+        var copy = (ObjectNode) expression.deepCopy();
+        copy.put(FIELD_ALIAS, alias);
+        return copy;
+    }
+
+    private static boolean isNull(JsonNode node) {
+        return node == null || node.isNull();
+    }
+
+    /** An expression with its alias and source position removed, for structural comparison. */
+    private static String normalized(JsonNode expression) {
+        var copy = expression.deepCopy();
+        strip(copy);
+        return copy.toString();
+    }
+
+    private static void strip(JsonNode node) {
+        if (node instanceof ObjectNode object) {
+            object.remove(FIELD_ALIAS);
+            object.remove(FIELD_QUERY_LOCATION);
+        }
+        node.forEach(PartialAggregation::strip);
+    }
+
+    private static final class NotDecomposableException extends Exception {
+        NotDecomposableException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /** Rewrites final-phase expressions over the partial results and collects the partial aggregates. */
+    private static final class Rewriter {
+        private final List<String> groupKeys = new ArrayList<>();
+        private final Set<String> selectAliases = new HashSet<>();
+        private final Set<String> aggregateFunctions;
+        private final List<JsonNode> partials = new ArrayList<>();
+        private final List<String> partialKeys = new ArrayList<>();
+
+        Rewriter(List<JsonNode> groups, JsonNode selectList, Set<String> aggregateFunctions) {
+            groups.forEach(group -> groupKeys.add(normalized(group)));
+            selectList.forEach(item -> {
+                var alias = item.path(FIELD_ALIAS).asText();
+                if (!alias.isEmpty()) {
+                    selectAliases.add(alias);
+                }
+            });
+            this.aggregateFunctions = aggregateFunctions;
+        }
+
+        JsonNode rewrite(JsonNode expression) throws NotDecomposableException {
+            int group = groupKeys.indexOf(normalized(expression));
+            if (group >= 0) {
+                return reference(new String[]{GROUP_PREFIX + group});
+            }
+            var clazz = expression.path(FIELD_CLASS).asText();
+            if (clazz.equals(FUNCTION_CLASS)
+                    && aggregateFunctions.contains(expression.path(FIELD_FUNCTION_NAME).asText())) {
+                return rewriteAggregate(expression);
+            }
+            if (clazz.equals(WINDOW_CLASS) || clazz.equals(SUBQUERY_CLASS) || clazz.equals(STAR_CLASS)) {
+                throw new NotDecomposableException();
+            }
+            if (clazz.equals(COLUMN_REF_CLASS)) {
+                // A column outside the GROUP BY is only valid as a reference to a SELECT list entry.
+                var names = expression.path(FIELD_COLUMN_NAMES);
+                if (names.size() == 1 && selectAliases.contains(names.get(0).asText())) {
+                    return expression.deepCopy();
+                }
+                throw new NotDecomposableException();
+            }
+            var copy = expression.deepCopy();
+            rewriteChildren(copy);
+            return copy;
+        }
+
+        private void rewriteChildren(JsonNode node) throws NotDecomposableException {
+            if (node instanceof ObjectNode object) {
+                var names = new ArrayList<String>();
+                object.fieldNames().forEachRemaining(names::add);
+                for (String name : names) {
+                    var child = object.get(name);
+                    if (child.has(FIELD_CLASS)) {
+                        object.set(name, rewrite(child));
+                    } else {
+                        rewriteChildren(child);
+                    }
+                }
+            } else if (node instanceof ArrayNode array) {
+                for (int i = 0; i < array.size(); i++) {
+                    var child = array.get(i);
+                    if (child.has(FIELD_CLASS)) {
+                        array.set(i, rewrite(child));
+                    } else {
+                        rewriteChildren(child);
+                    }
+                }
+            }
+        }
+
+        private JsonNode rewriteAggregate(JsonNode aggregate) throws NotDecomposableException {
+            var name = aggregate.path(FIELD_FUNCTION_NAME).asText();
+            if (!aggregate.path(FIELD_ORDER_BYS).path(FIELD_ORDERS).isEmpty()
+                    || SplitPlanner.containsRowCombining(aggregate.get(FIELD_CHILDREN), aggregateFunctions)) {
+                throw new NotDecomposableException();
+            }
+            var distinct = aggregate.path(FIELD_DISTINCT).asBoolean();
+            switch (name) {
+                case "min", "max" -> {
+                    return function(name, partial(aggregate, name));
+                }
+                case "count", "count_star", "sum", "avg" -> {
+                    if (distinct) {
+                        throw new NotDecomposableException();
+                    }
+                }
+                default -> throw new NotDecomposableException();
+            }
+            return switch (name) {
+                case "sum" -> function("sum", partial(aggregate, "sum"));
+                case "avg" -> {
+                    var total = cast(function("sum", partial(aggregate, "sum")), TYPE_DOUBLE);
+                    var count = function("nullif", function("sum", partial(aggregate, "count")), constant(0));
+                    var divide = (ObjectNode) function("/", total, count);
+                    divide.put(FIELD_IS_OPERATOR, true);
+                    yield divide;
+                }
+                default -> cast(function("sum", partial(aggregate, name)), TYPE_BIGINT);
+            };
+        }
+
+        /** Adds the aggregate, renamed, to the partial phase unless present, and references its result. */
+        private JsonNode partial(JsonNode aggregate, String name) {
+            var partial = (ObjectNode) withAlias(aggregate, "");
+            partial.put(FIELD_FUNCTION_NAME, name);
+            var key = normalized(partial);
+            int index = partialKeys.indexOf(key);
+            if (index < 0) {
+                index = partials.size();
+                partials.add(partial);
+                partialKeys.add(key);
+            }
+            return reference(new String[]{PARTIAL_PREFIX + index});
+        }
+
+        private static JsonNode function(String name, JsonNode... arguments) {
+            var children = new ArrayNode(JsonNodeFactory.instance);
+            for (JsonNode argument : arguments) {
+                children.add(argument);
+            }
+            return createFunction(name, "", "", children);
+        }
+    }
+}
@@ -12,7 +12,6 @@ import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 public interface PartitionPrunerV2 {
 
@@ -27,6 +26,7 @@ public interface PartitionPrunerV2 {
             "read_parquet", new HiveSplitPlanner(),
             "read_delta", new DeltaLakeSplitPlanner()
     );
+    PartitionPrunerV2 ducklakePlanner = new DucklakeSplitPlanner();
 
     static PartitionPrunerV2 getPlannerForTableFunction(String functionName) {
         return tableFunctionPlanners.get(functionName);
@@ -42,7 +42,7 @@ public interface PartitionPrunerV2 {
             }
         }
         if (ducklakeDatabases.contains(table.catalog())) {
-            return new DucklakeSplitPlanner();
+            return ducklakePlanner;
         } else {
             throw new IllegalStateException("Database Not supported" + table.catalog());
         }
@@ -95,7 +95,6 @@ class DeltaLakeSplitPlanner implements PartitionPrunerV2 {
 
 class DucklakeSplitPlanner implements PartitionPrunerV2 {
 
-    private Map<String, DucklakePartitionPruning> cache = new ConcurrentHashMap<>();
     @Override
     public List<FileStatus> pruneFiles( JsonNode tree, long maxSplitSize, Map<String, String> properties) throws SQLException, IOException {
         var catalogSchemaAndTables =
@@ -103,14 +102,8 @@ class DucklakeSplitPlanner implements PartitionPrunerV2 {
         var first = catalogSchemaAndTables.get(0);
         var catalog = first.catalog();
         var metadata = "__ducklake_metadata_" + catalog;
-        var pruner = cache.compute(metadata, (key, oldValue) -> {
-            if (oldValue == null){
-                return new DucklakePartitionPruning(metadata);
-            } else {
-                return oldValue;
-            }
-        });
-       return pruner.pruneFiles(first.schema(), first.tableOrPath(), tree);
+        var pruner = DucklakePartitionPruning.forMetadataDatabase(metadata);
+        return pruner.pruneFiles(first.schema(), first.tableOrPath(), tree);
 
     }
 }
\ No newline at end of file
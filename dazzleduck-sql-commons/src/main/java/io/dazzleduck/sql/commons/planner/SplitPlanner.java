@@ -7,17 +7,35 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.dazzleduck.sql.commons.*;
 
 import java.io.IOException;
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.stream.Stream;
 
 import static io.dazzleduck.sql.commons.ExpressionConstants.TABLE_FUNCTION_TYPE;
 import static io.dazzleduck.sql.commons.ExpressionFactory.createFunction;
 
 public interface SplitPlanner {
 
+    /** DuckDB's virtual column with the position of a row in its Parquet file. */
+    String FILE_ROW_NUMBER = "file_row_number";
+
 
     static List<List<FileStatus>> getSplitStatus(JsonNode tree,
                                                  long maxSplitSize) throws SQLException, IOException {
+        return getSplitStatus(tree, maxSplitSize, 1);
+    }
+
+    /**
+     * Lists the files the query reads and groups them into splits of balanced cost, see
+     * {@link #balance}. Parquet files larger than a split are divided into ranges of row groups,
+     * see {@link ParquetRowGroups}.
+     *
+     * @param workers number of workers the splits are spread over
+     */
+    static List<List<FileStatus>> getSplitStatus(JsonNode tree,
+                                                 long maxSplitSize,
+                                                 int workers) throws SQLException, IOException {
         var catalogSchemaAndTables =
                 Transformations.getAllTablesOrPathsFromSelect(Transformations.getFirstStatementNode(tree), null, null);
 
@@ -36,29 +54,193 @@ public interface SplitPlanner {
             throw new SQLException("unsupported type : " + tableFunction);
         }
         var fileStatuses = splitPlanner.pruneFiles(tree, maxSplitSize, Map.of());
-        //fileStatuses.sort(Comparator.comparing(FileStatus::lastModified));
-        return getSplitStatus(maxSplitSize, fileStatuses);
+        var statement = Transformations.getFirstStatementNode(tree);
+        var where = tableFunction == null
+                ? Transformations.getWhereClauseForBaseTable(statement)
+                : Transformations.getWhereClauseForTableFunction(statement);
+        return balance(ParquetRowGroups.divide(fileStatuses, maxSplitSize, where), maxSplitSize, workers);
+    }
+
+    /**
+     * Groups files into splits of about equal cost, so no split straggles behind the others.
+     *
+     * <p>A file costs its size, or more when it holds more rows than its size suggests: with row
+     * counts known, a file costs at least its rows times the average bytes per row, so highly
+     * compressed files are not underestimated. There are as many splits as {@code maxSplitSize}
+     * requires, rounded up to a multiple of {@code workers} so every worker gets the same share,
+     * and at most one split per file. Files are assigned most expensive first to the cheapest
+     * split; each split keeps the listing order of its files.
+     */
+    static List<List<FileStatus>> balance(List<FileStatus> fileStatuses, long maxSplitSize, int workers) {
+        if (fileStatuses.isEmpty()) {
+            return List.of();
+        }
+        var costs = costs(fileStatuses);
+        long totalCost = Arrays.stream(costs).sum();
+        long splitCount = Math.max(1, Math.ceilDiv(totalCost, Math.max(1, maxSplitSize)));
+        if (splitCount > 1 && workers > 1) {
+            splitCount = Math.ceilDiv(splitCount, workers) * (long) workers;
+        }
+        int splits = (int) Math.min(fileStatuses.size(), splitCount);
+
+        var byCost = new ArrayList<Integer>(fileStatuses.size());
+        for (int i = 0; i < fileStatuses.size(); i++) {
+            byCost.add(i);
+        }
+        byCost.sort(Comparator.comparingLong((Integer i) -> costs[i]).reversed());
+        var binCosts = new long[splits];
+        var members = new ArrayList<List<Integer>>(splits);
+        var bins = new PriorityQueue<Integer>(Comparator.comparingLong((Integer b) -> binCosts[b])
+                .thenComparingInt(b -> members.get(b).size())
+                .thenComparingInt(b -> b));
+        for (int b = 0; b < splits; b++) {
+            members.add(new ArrayList<>());
+            bins.add(b);
+        }
+        for (int file : byCost) {
+            int bin = bins.poll();
+            members.get(bin).add(file);
+            binCosts[bin] += costs[file];
+            bins.add(bin);
+        }
+        members.forEach(bin -> bin.sort(Comparator.naturalOrder()));
+        members.sort(Comparator.comparingInt(bin -> bin.get(0)));
+        var result = new ArrayList<List<FileStatus>>(splits);
+        for (var bin : members) {
+            result.add(bin.stream().map(fileStatuses::get).toList());
+        }
+        return result;
     }
 
-    private static ArrayList<List<FileStatus>> getSplitStatus(long maxSplitSize, List<FileStatus> fileStatuses) {
-        var result = new ArrayList<List<FileStatus>>();
-        var current = new ArrayList<FileStatus>();
-        long currentSize = 0;
+    private static long[] costs(List<FileStatus> fileStatuses) {
+        long bytesWithRows = 0;
+        long rows = 0;
         for (FileStatus fileStatus : fileStatuses) {
-            current.add(fileStatus);
-            currentSize += fileStatus.size();
-            if(currentSize > maxSplitSize) {
-                result.add(current);
-                current = new ArrayList<>();
-                currentSize = 0;
+            if (fileStatus.rowCount() != null && fileStatus.size() != null) {
+                bytesWithRows += fileStatus.size();
+                rows += fileStatus.rowCount();
             }
         }
-        if(!current.isEmpty()) {
-            result.add(current);
+        double bytesPerRow = rows == 0 ? 0 : (double) bytesWithRows / rows;
+        var costs = new long[fileStatuses.size()];
+        for (int i = 0; i < costs.length; i++) {
+            var fileStatus = fileStatuses.get(i);
+            long size = fileStatus.size() == null ? 0 : fileStatus.size();
+            long rowCost = fileStatus.rowCount() == null ? 0 : Math.round(fileStatus.rowCount() * bytesPerRow);
+            costs[i] = Math.max(size, rowCost);
+        }
+        return costs;
+    }
+
+    /**
+     * Rewrites the query to read the files of a split. Row ranges are read one per scan of their
+     * file, filtered on {@code file_row_number} so only their row groups are read, and combined
+     * with the scan of the whole files by name.
+     */
+    private static void replacePathInFromClause(JsonNode tree, List<FileStatus> split) {
+        var paths = split.stream().filter(f -> !f.isRowRange()).map(FileStatus::fileName).toArray(String[]::new);
+        var ranges = mergeRanges(split.stream().filter(FileStatus::isRowRange).toList());
+        if (ranges.isEmpty()) {
+            replacePathInFromClause(tree, paths);
+            return;
+        }
+        replacePathInFromClause(tree, paths.length > 0 ? paths : new String[]{ranges.get(0).fileName()});
+        var scan = (ObjectNode) Transformations.getTableFunctionParent(Transformations.getFirstStatementNode(tree));
+        JsonNode union = paths.length > 0 ? selectAll(scanOf(scan, null), null) : null;
+        for (var range : ranges) {
+            var rowNumber = ExpressionFactory.reference(new String[]{FILE_ROW_NUMBER});
+            var where = ExpressionFactory.andFilters(
+                    ExpressionFactory.greaterThanOrEqualExpr(rowNumber, ExpressionFactory.constant(range.firstRow())),
+                    ExpressionFactory.lessThanOrEqualExpr(rowNumber.deepCopy(),
+                            ExpressionFactory.constant(range.firstRow() + range.rowCount() - 1)));
+            var select = selectAll(scanOf(scan, range.fileName()), where);
+            union = union == null ? select : unionAllByName(union, select);
+        }
+        var alias = scan.get("alias");
+        var columnNameAlias = scan.get("column_name_alias");
+        var subquery = JsonNodeFactory.instance.objectNode();
+        subquery.set("node", union);
+        subquery.set("named_param_map", JsonNodeFactory.instance.arrayNode());
+        scan.removeAll();
+        scan.put("type", ExpressionConstants.NODE_TYPE_SUBQUERY);
+        scan.set("alias", alias);
+        scan.putNull("sample");
+        scan.set("subquery", subquery);
+        scan.set("column_name_alias", columnNameAlias == null ? JsonNodeFactory.instance.arrayNode() : columnNameAlias);
+    }
+
+    /** Joins adjacent ranges of the same file. */
+    private static List<FileStatus> mergeRanges(List<FileStatus> ranges) {
+        var result = new ArrayList<FileStatus>();
+        for (var range : ranges) {
+            var last = result.isEmpty() ? null : result.get(result.size() - 1);
+            if (last != null && last.fileName().equals(range.fileName())
+                    && last.firstRow() + last.rowCount() == range.firstRow()) {
+                result.set(result.size() - 1, new FileStatus(last.fileName(), last.size() + range.size(),
+                        last.lastModified(), last.rowCount() + range.rowCount(), last.firstRow()));
+            } else {
+                result.add(range);
+            }
         }
         return result;
     }
 
+    /** A copy of a table function scan without its alias, reading one file when given. */
+    private static ObjectNode scanOf(ObjectNode scan, String path) {
+        var copy = scan.deepCopy();
+        copy.put("alias", "");
+        copy.set("column_name_alias", JsonNodeFactory.instance.arrayNode());
+        if (path != null) {
+            var listChildren = new ArrayNode(JsonNodeFactory.instance);
+            listChildren.add(ExpressionFactory.constant(path));
+            ((ArrayNode) copy.get("function").get("children"))
+                    .set(0, createFunction("list_value", "main", "", listChildren));
+        }
+        return copy;
+    }
+
+    private static ObjectNode selectAll(JsonNode from, JsonNode where) {
+        var star = JsonNodeFactory.instance.objectNode();
+        star.put("class", ExpressionConstants.STAR_CLASS);
+        star.put("type", ExpressionConstants.STAR_CLASS);
+        star.put("alias", "");
+        star.put("relation_name", "");
+        star.set("exclude_list", JsonNodeFactory.instance.arrayNode());
+        star.set("replace_list", JsonNodeFactory.instance.arrayNode());
+        star.put("columns", false);
+        star.putNull("expr");
+        star.set("qualified_exclude_list", JsonNodeFactory.instance.arrayNode());
+        star.set("rename_list", JsonNodeFactory.instance.arrayNode());
+        var select = queryNode(ExpressionConstants.SELECT_NODE_TYPE);
+        select.set("select_list", JsonNodeFactory.instance.arrayNode().add(star));
+        select.set("from_table", from);
+        select.set("where_clause", where);
+        select.set("group_expressions", JsonNodeFactory.instance.arrayNode());
+        select.set("group_sets", JsonNodeFactory.instance.arrayNode());
+        select.put("aggregate_handling", "STANDARD_HANDLING");
+        select.putNull("having");
+        select.putNull("sample");
+        select.putNull("qualify");
+        return select;
+    }
+
+    private static ObjectNode unionAllByName(JsonNode left, JsonNode right) {
+        var union = queryNode(ExpressionConstants.NODE_TYPE_SET_OPERATION_NODE);
+        union.put("setop_type", "UNION_BY_NAME");
+        union.set("left", left);
+        union.set("right", right);
+        union.put("setop_all", true);
+        return union;
+    }
+
+    private static ObjectNode queryNode(String type) {
+        var node = JsonNodeFactory.instance.objectNode();
+        node.put("type", type);
+        node.set("modifiers", JsonNodeFactory.instance.arrayNode());
+        node.set("cte_map", JsonNodeFactory.instance.objectNode().set("map", JsonNodeFactory.instance.arrayNode()));
+        return node;
+    }
+
     private static void replacePathInFromClause(JsonNode tree, String[] paths) {
         var formatToFunction = Map.of("read_delta", "read_parquet");
         var firstStatement = Transformations.getFirstStatementNode(tree);
@@ -131,13 +313,89 @@ public interface SplitPlanner {
         from.set("function", readParquetFunction);
     }
 
+    /**
+     * Whether the results of a query's splits can simply be concatenated into the query's result:
+     * a single SELECT that filters and projects rows. Aggregates, window functions, DISTINCT,
+     * ORDER BY, LIMIT and subqueries all need the rows of every split in one place.
+     *
+     * @param aggregateFunctions names of DuckDB's aggregate functions, see
+     *                           {@link #aggregateFunctionNames}; the parser does not tell aggregate
+     *                           from scalar function calls
+     */
+    static boolean isConcatenable(JsonNode tree, Set<String> aggregateFunctions) {
+        var statements = tree.get(ExpressionConstants.FIELD_STATEMENTS);
+        if (statements == null || statements.size() != 1) {
+            return false;
+        }
+        var select = Transformations.getFirstStatementNode(tree);
+        if (!ExpressionConstants.SELECT_NODE_TYPE.equals(select.path("type").asText())
+                || !select.path("modifiers").isEmpty()
+                || !select.path("group_expressions").isEmpty()
+                || !select.path("cte_map").path("map").isEmpty()
+                || !"STANDARD_HANDLING".equals(select.path("aggregate_handling").asText())) {
+            return false;
+        }
+        for (String clause : List.of("having", "qualify", "sample")) {
+            var node = select.get(clause);
+            if (node != null && !node.isNull()) {
+                return false;
+            }
+        }
+        for (String clause : List.of("select_list", "where_clause")) {
+            if (containsRowCombining(select.get(clause), aggregateFunctions)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Looks for aggregates, window functions and subqueries anywhere in an expression. */
+    static boolean containsRowCombining(JsonNode node, Set<String> aggregateFunctions) {
+        if (node == null) {
+            return false;
+        }
+        var clazz = node.path(ExpressionConstants.FIELD_CLASS).asText();
+        if (clazz.equals(ExpressionConstants.WINDOW_CLASS) || clazz.equals(ExpressionConstants.SUBQUERY_CLASS)
+                || (clazz.equals(ExpressionConstants.FUNCTION_CLASS)
+                        && aggregateFunctions.contains(node.path("function_name").asText()))) {
+            return true;
+        }
+        for (JsonNode child : node) {
+            if (containsRowCombining(child, aggregateFunctions)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Names of the aggregate functions known to the DuckDB instance behind the connection. */
+    static Set<String> aggregateFunctionNames(Connection connection) {
+        var names = new HashSet<String>();
+        ConnectionPool.collectFirstColumn(connection,
+                "SELECT DISTINCT function_name FROM duckdb_functions() WHERE function_type = 'aggregate'",
+                String.class).forEach(names::add);
+        return names;
+    }
+
     static List<TreeAndSize> getSplitTreeAndSize(JsonNode tree,
                                                  long maxSplitSize) throws SQLException, IOException {
-        var splits = getSplitStatus(tree, maxSplitSize);
-        return splits.stream().map(split -> {
-            var copy = tree.deepCopy();
-            SplitPlanner.replacePathInFromClause(copy, split.stream().map(FileStatus::fileName).toArray(String[]::new));
-            return new TreeAndSize(copy, split.stream().mapToLong(FileStatus::size).sum());
-        }).toList();
+        return getSplitTrees(tree, maxSplitSize, 1).toList();
+    }
+
+    /**
+     * The splits of a query for the given number of workers. Files are listed and grouped up
+     * front; the query of each split is only rewritten once the stream reaches it.
+     */
+    static Stream<TreeAndSize> getSplitTrees(JsonNode tree,
+                                             long maxSplitSize,
+                                             int workers) throws SQLException, IOException {
+        return getSplitStatus(tree, maxSplitSize, workers).stream().map(split -> getSplitTree(tree, split));
+    }
+
+    /** The query rewritten to read only the files of one split. */
+    static TreeAndSize getSplitTree(JsonNode tree, List<FileStatus> split) {
+        var copy = tree.deepCopy();
+        SplitPlanner.replacePathInFromClause(copy, split);
+        return new TreeAndSize(copy, split.stream().mapToLong(FileStatus::size).sum());
     }
 }
@@ -0,0 +1,72 @@
+package io.dazzleduck.sql.commons;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SqlDeparserTest {
+
+    private static final String[] SUPPORTED = {
+            "select a, b as c, * from db.s.t as x where a = 1 and b <> 'it''s' or c is null limit 10 offset 5",
+            "select \"year\", \"Name\", \"a b\", \"1a\", t.*, a as \"select\", \"é\" from \"MyTable\" as t",
+            "select count(*), sum(a + b), -a, not a, a in (1, 2), a not in (1), a between 1 and 2, coalesce(a, b) from t",
+            "select cast(a as varchar), try_cast(b as bigint), a::date, 1.5, .5, -0.25, 10000000000, null from t",
+            "select distinct a, count(distinct b) from t where a like 'x%' group by a having count(*) > 1 order by a desc nulls last, 2",
+            "select a from t group by all order by a asc",
+            "select * from read_parquet('example/data/*.parquet', hive_partitioning = true) where dt >= '2024-01-01'",
+            "select x from (select 1 as x) sub where x is not null",
+            "select date_trunc('day', ts), a is distinct from b, a ilike 'x' from main.t",
+    };
+
+    private static final String[] UNSUPPORTED = {
+            "with c as (select 1) select * from c",
+            "select * from t1 join t2 on t1.a = t2.b",
+            "select 1 union all select 2",
+            "select a from t where a = 1.5e3",
+            "select row_number() over () from t",
+            "select a from t where a = any (select 1)",
+            "select sum(a) filter (where a > 1) from t",
+    };
+
+    @Test
+    public void testFormatsLikeDuckDB() throws SQLException, JsonProcessingException {
+        for (var sql : SUPPORTED) {
+            var tree = Transformations.parseToTree(sql);
+            var deparsed = SqlDeparser.deparse(tree);
+            assertNotNull(deparsed, sql);
+            assertEquals(deparseInDuckDB(tree), deparsed, sql);
+        }
+    }
+
+    @Test
+    public void testUnsupportedTreesFallBack() throws SQLException, JsonProcessingException {
+        for (var sql : UNSUPPORTED) {
+            var tree = Transformations.parseToTree(sql);
+            assertNull(SqlDeparser.deparse(tree), sql);
+            assertEquals(deparseInDuckDB(tree), Transformations.parseToSql(tree), sql);
+        }
+    }
+
+    @Test
+    public void testRewrittenTrees() throws SQLException, JsonProcessingException {
+        var limited = Transformations.addLimit(Transformations.parseToTree("select a from t where b = 'x'"), 100, 10);
+        assertEquals(deparseInDuckDB(limited), SqlDeparser.deparse(limited));
+
+        var filtered = Transformations.parseToTree("select a from t where b = 1");
+        var select = (ObjectNode) Transformations.getFirstStatementNode(filtered);
+        select.set(ExpressionConstants.FIELD_WHERE_CLAUSE, ExpressionFactory.andFilters(
+                select.get(ExpressionConstants.FIELD_WHERE_CLAUSE),
+                ExpressionFactory.equalExpr(ExpressionFactory.reference(new String[]{"tenant"}), ExpressionFactory.constant("abc"))));
+        assertEquals(deparseInDuckDB(filtered), SqlDeparser.deparse(filtered));
+    }
+
+    private static String deparseInDuckDB(JsonNode tree) throws SQLException {
+        return ConnectionPool.collectFirst(String.format(Transformations.JSON_DESERIALIZE_SQL,
+                tree.toString().replace("'", "''")), String.class);
+    }
+}
@@ -0,0 +1,56 @@
+package io.dazzleduck.sql.commons;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Compares the planning latency of a query, from its SQL to a statement prepared by DuckDB, with
+ * a tenant filter and a limit added to its tree, when the tree is deparsed by
+ * {@code json_deserialize_sql} and when it is deparsed by {@link SqlDeparser}. Every iteration
+ * uses different literals, so the parse cache does not hide the parse.
+ */
+public class SqlPlanningBenchmark {
+
+    private static final String SQL = "select id, amount from bench_orders where amount > %s and status = 'open' order by id";
+
+    @FunctionalInterface
+    interface Deparser {
+        String deparse(Connection connection, JsonNode tree) throws SQLException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int warmup = 2000;
+        final int iteration = 20000;
+        try (Connection connection = ConnectionPool.getConnection()) {
+            ConnectionPool.execute(connection, "create or replace table bench_orders(id bigint, tenant varchar, status varchar, amount int)");
+            Deparser duckdb = (c, tree) -> ConnectionPool.collectFirst(c,
+                    String.format(Transformations.JSON_DESERIALIZE_SQL, tree.toString()), String.class);
+            Deparser java = (c, tree) -> SqlDeparser.deparse(tree);
+
+            run(connection, duckdb, 0, warmup);
+            run(connection, java, 0, warmup);
+            System.out.println("json_deserialize_sql : " + run(connection, duckdb, warmup, iteration) + " us/query");
+            System.out.println("SqlDeparser          : " + run(connection, java, warmup + iteration, iteration) + " us/query");
+        }
+    }
+
+    /** Average time in microseconds to parse, rewrite, deparse and prepare a query. */
+    private static double run(Connection connection, Deparser deparser, int from, int iteration) throws Exception {
+        long start = System.nanoTime();
+        for (int i = from; i < from + iteration; i++) {
+            var tree = Transformations.parseToTree(SQL.formatted(i));
+            var select = (ObjectNode) Transformations.getFirstStatementNode(tree);
+            select.set(ExpressionConstants.FIELD_WHERE_CLAUSE, ExpressionFactory.andFilters(
+                    select.get(ExpressionConstants.FIELD_WHERE_CLAUSE),
+                    ExpressionFactory.equalExpr(ExpressionFactory.reference(new String[]{"tenant"}), ExpressionFactory.constant("abc"))));
+            var limited = Transformations.addLimit(tree, 1000, -1);
+            try (var statement = connection.prepareStatement(deparser.deparse(connection, limited))) {
+                statement.getMetaData();
+            }
+        }
+        return (System.nanoTime() - start) / 1000.0 / iteration;
+    }
+}
@@ -0,0 +1,77 @@
+package io.dazzleduck.sql.commons;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SqlTextCacheTest {
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        var cache = new SqlTextCache<String, String>(10, (k, v) -> v.length());
+        cache.put("a", "aaaa", 100);
+        cache.put("b", "bbbb", 100);
+        assertEquals("aaaa", cache.getIfPresent("a"));
+        cache.put("c", "cccc", 100);
+        assertNull(cache.getIfPresent("b"));
+        assertEquals("aaaa", cache.getIfPresent("a"));
+        assertEquals("cccc", cache.getIfPresent("c"));
+        assertEquals(8, cache.weight());
+        assertEquals(3, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(300, cache.savedNanos());
+
+        cache.put("d", "too large for the cache", 100);
+        assertNull(cache.getIfPresent("d"));
+        assertEquals(8, cache.weight());
+
+        cache.setMaxWeight(4);
+        assertEquals(4, cache.weight());
+        assertNull(cache.getIfPresent("a"));
+        assertEquals("cccc", cache.getIfPresent("c"));
+    }
+
+    @Test
+    public void testParsedTreesAreWeighedByHeapSize() throws SQLException, JsonProcessingException {
+        var sql = "select a, b, c from heap_weight_test where a = 'x' and b > 10";
+        var tree = Transformations.parseToTree(sql);
+        var json = new ObjectMapper().writeValueAsString(tree);
+        // a tree of small nodes takes several times the heap of its JSON text
+        assertTrue(Transformations.estimatedHeapBytes(tree) > 2L * json.length());
+        assertEquals(0, Transformations.estimatedHeapBytes(NullNode.getInstance()));
+    }
+
+    @Test
+    public void testNormalizeSql() {
+        assertEquals("select * from t where a = 'x  y'", Transformations.normalizeSql("  select *\n\tfrom t   where a = 'x  y'  "));
+        assertEquals("select \"a  b\" from t", Transformations.normalizeSql("select   \"a  b\" from t"));
+        assertEquals("select 1 -- c\n from t", Transformations.normalizeSql(" select 1 -- c\n from t "));
+        assertEquals("select 'it''s  ok'", Transformations.normalizeSql("select   'it''s  ok'"));
+    }
+
+    @Test
+    public void testParseReturnsIndependentTrees() throws SQLException, JsonProcessingException {
+        var parseHits = Transformations.parseCache().hits();
+        var sql = "select a from parse_cache_test where b = 1";
+        var first = Transformations.parseToTree(sql);
+        var second = Transformations.parseToTree("select a\n  from parse_cache_test where b = 1");
+        assertEquals(first, second);
+        assertEquals(parseHits + 1, Transformations.parseCache().hits());
+
+        ((ObjectNode) Transformations.getFirstStatementNode(second)).putNull("where_clause");
+        assertEquals(first, Transformations.parseToTree(sql));
+
+        // joins are deparsed by DuckDB, through the cache
+        var joinSql = "select a from parse_cache_test t join parse_cache_other o on t.id = o.id";
+        var deparseHits = Transformations.deparseCache().hits();
+        var deparsed = Transformations.parseToSql(Transformations.parseToTree(joinSql));
+        assertEquals(deparsed, Transformations.parseToSql(Transformations.parseToTree(joinSql)));
+        assertEquals(deparseHits + 1, Transformations.deparseCache().hits());
+    }
+}
@@ -0,0 +1,68 @@
+package io.dazzleduck.sql.commons.authorization;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.dazzleduck.sql.common.Headers;
+import io.dazzleduck.sql.commons.Fingerprint;
+import io.dazzleduck.sql.commons.Transformations;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AuthorizationPlanCacheTest {
+
+    private static final String DB = "memory";
+    private static final String SCHEMA = "main";
+
+    @Test
+    public void testParameterizeAndBind() throws SQLException, JsonProcessingException {
+        var tree = Transformations.parseToTree("select a, 'x' from read_parquet('data/t1/*.parquet') where b = 10 and c = 'y' limit 5");
+        var parameterized = Fingerprint.parameterize(tree);
+        assertEquals(4, parameterized.constants().size());
+        var other = Fingerprint.parameterize(Transformations.parseToTree(
+                "select a, 'zzz' from read_parquet('data/t1/*.parquet') where b = 2000 and c = 'y' limit 7"));
+        assertEquals(parameterized.fingerprint(), other.fingerprint());
+        var otherPath = Fingerprint.parameterize(Transformations.parseToTree(
+                "select a, 'x' from read_parquet('data/t2/*.parquet') where b = 10 and c = 'y' limit 5"));
+        assertNotEquals(parameterized.fingerprint(), otherPath.fingerprint());
+
+        assertEquals(Transformations.parseToSql(tree),
+                Transformations.parseToSql(Fingerprint.bind(parameterized.template(), parameterized.constants())));
+    }
+
+    @Test
+    public void testReusesPlanForDifferentLiterals() throws SQLException, JsonProcessingException, UnauthorizedException {
+        var authorizer = SqlAuthorizer.RESTRICTED_DATASOURCE_AUTHORIZER;
+        var claims = Map.of(Headers.HEADER_TABLE, "plan_cache_orders", Headers.HEADER_FILTER, "tenant_id = 'abc'");
+        var hits = AuthorizationPlanCache.cache().hits();
+
+        var first = authorizer.authorize("user", DB, SCHEMA,
+                Transformations.parseToTree("select id from plan_cache_orders where amount > 100"), claims);
+        var second = authorizer.authorize("user", DB, SCHEMA,
+                Transformations.parseToTree("select id from plan_cache_orders where amount > 250"), claims);
+        assertEquals(hits + 1, AuthorizationPlanCache.cache().hits());
+
+        var firstSql = Transformations.parseToSql(first);
+        var secondSql = Transformations.parseToSql(second);
+        assertTrue(firstSql.contains("100") && firstSql.contains("'abc'"), firstSql);
+        assertTrue(secondSql.contains("250") && secondSql.contains("'abc'"), secondSql);
+        assertEquals(firstSql.replace("100", "250"), secondSql);
+
+        var otherTenant = Map.of(Headers.HEADER_TABLE, "plan_cache_orders", Headers.HEADER_FILTER, "tenant_id = 'xyz'");
+        var third = Transformations.parseToSql(authorizer.authorize("user", DB, SCHEMA,
+                Transformations.parseToTree("select id from plan_cache_orders where amount > 250"), otherTenant));
+        assertTrue(third.contains("'xyz'") && !third.contains("'abc'"), third);
+    }
+
+    @Test
+    public void testTableFunctionPathsAreNotReused() throws SQLException, JsonProcessingException, UnauthorizedException {
+        var authorizer = SqlAuthorizer.RESTRICTED_DATASOURCE_AUTHORIZER;
+        var claims = Map.of(Headers.HEADER_PATH, "example/data/plan_cache");
+        authorizer.authorize("user", DB, SCHEMA,
+                Transformations.parseToTree("select * from read_parquet('example/data/plan_cache/a.parquet') where x = 1"), claims);
+        assertThrows(UnauthorizedException.class, () -> authorizer.authorize("user", DB, SCHEMA,
+                Transformations.parseToTree("select * from read_parquet('example/data/secret/a.parquet') where x = 1"), claims));
+    }
+}
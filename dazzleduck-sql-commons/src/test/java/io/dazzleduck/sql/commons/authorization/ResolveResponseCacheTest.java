@@ -0,0 +1,126 @@
+package io.dazzleduck.sql.commons.authorization;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResolveResponseCacheTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final List<Runnable> refreshes = new ArrayList<>();
+    private final ResolveResponseCache cache = new ResolveResponseCache(2, Duration.ofMinutes(4),
+            Duration.ofMinutes(5), Duration.ofMinutes(10), refreshes::add, clock::get);
+
+    private static ResolveResponse response(String version) {
+        return new ResolveResponse(List.of(), List.of(), version);
+    }
+
+    private void advance(Duration duration) {
+        clock.addAndGet(duration.toNanos());
+    }
+
+    @Test
+    public void testRefreshesAheadOfExpiry() throws UnauthorizedException {
+        assertEquals("1", cache.get("k", () -> response("1")).version());
+        advance(Duration.ofMinutes(1));
+        assertEquals("1", cache.get("k", () -> fail("fresh responses are not resolved")).version());
+
+        advance(Duration.ofMinutes(3));
+        assertEquals("1", cache.get("k", () -> response("2")).version());
+        assertEquals("1", cache.get("k", () -> response("3")).version());
+        assertEquals(1, refreshes.size());
+        refreshes.remove(0).run();
+        assertEquals("2", cache.get("k", () -> response("4")).version());
+        assertEquals(1, cache.misses());
+        assertEquals(4, cache.hits());
+        assertEquals(1, cache.refreshes());
+    }
+
+    @Test
+    public void testServesStaleResponseWhileResolvingFails() throws UnauthorizedException {
+        cache.get("k", () -> response("1"));
+        advance(Duration.ofMinutes(6));
+        assertEquals("1", cache.get("k", () -> { throw new IOException("Resolve endpoint returned status 503"); }).version());
+        assertEquals(1, cache.staleHits());
+
+        advance(Duration.ofMinutes(10));
+        var e = assertThrows(UnauthorizedException.class,
+                () -> cache.get("k", () -> { throw new IOException("Resolve endpoint returned status 503"); }));
+        assertTrue(e.getMessage().contains("503"), e.getMessage());
+    }
+
+    @Test
+    public void testRefusedTokenIsNotServedStale() throws UnauthorizedException {
+        cache.get("k", () -> response("1"));
+        advance(Duration.ofMinutes(4));
+        cache.get("k", () -> { throw new UnauthorizedException("Resolve endpoint returned status 401"); });
+        refreshes.remove(0).run();
+        assertThrows(UnauthorizedException.class,
+                () -> cache.get("k", () -> { throw new UnauthorizedException("Resolve endpoint returned status 401"); }));
+        assertEquals(0, cache.staleHits());
+    }
+
+    @Test
+    public void testKeyDoesNotHoldTheToken() {
+        var key = ResolveResponseCache.key("alice", "http://login/resolve", "secret-token");
+        assertEquals(key, ResolveResponseCache.key("alice", "http://login/resolve", "secret-token"));
+        assertFalse(key.contains("secret-token"));
+        assertNotEquals(key, ResolveResponseCache.key("alice", "http://login/resolve", "other-token"));
+        assertNotEquals(key, ResolveResponseCache.key("alice", "http://other/resolve", "secret-token"));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws UnauthorizedException {
+        cache.get("a", () -> response("a"));
+        cache.get("b", () -> response("b"));
+        cache.get("a", () -> response("a2"));
+        cache.get("c", () -> response("c"));
+        assertEquals(2, cache.size());
+        assertEquals("a", cache.get("a", () -> response("a2")).version());
+        assertEquals("b2", cache.get("b", () -> response("b2")).version());
+    }
+
+    @Test
+    public void testConcurrentMissesShareOneResolve() throws Exception {
+        var calls = new AtomicInteger();
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var executor = Executors.newFixedThreadPool(8);
+        try {
+            var results = new ArrayList<Future<ResolveResponse>>();
+            results.add(executor.submit(() -> cache.get("k", () -> {
+                calls.incrementAndGet();
+                started.countDown();
+                release.await();
+                return response("1");
+            })));
+            started.await();
+            for (int i = 0; i < 7; i++) {
+                results.add(executor.submit(() -> cache.get("k", () -> {
+                    calls.incrementAndGet();
+                    return response("other");
+                })));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (var result : results) {
+                assertEquals("1", result.get(10, TimeUnit.SECONDS).version());
+            }
+            assertEquals(1, calls.get());
+            assertEquals(1, cache.resolves());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
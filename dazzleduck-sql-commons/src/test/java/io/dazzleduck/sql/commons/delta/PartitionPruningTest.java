@@ -1,15 +1,20 @@
 package io.dazzleduck.sql.commons.delta;
 
 
+import io.delta.kernel.defaults.engine.DefaultEngine;
+import org.apache.hadoop.conf.Configuration;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.stream.Collectors;
 
 import static io.dazzleduck.sql.commons.delta.PartitionPruning.*;
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 
 public class PartitionPruningTest {
@@ -71,4 +76,78 @@ public class PartitionPruningTest {
        // and may not always achieve full optimization.
        // assertSize(3, queueId, "value='v123'"); // expect to return 0
     }
-}
\ No newline at end of file
+
+    @Test
+    public void snapshotCacheTest(@TempDir Path dir) throws SQLException, IOException {
+        var log = dir.resolve("_delta_log");
+        Files.createDirectories(log);
+        try (var files = Files.list(Path.of(basePath, "_delta_log"))) {
+            for (var file : files.toList()) {
+                Files.copy(file, log.resolve(file.getFileName()));
+            }
+        }
+        var table = dir.toString();
+        long misses = snapshotCacheMisses();
+        assertSize(2, table, "p='b'");
+        assertEquals(misses + 1, snapshotCacheMisses());
+
+        long hits = snapshotCacheHits();
+        assertSize(2, table, "p='b'");
+        assertSize(8, table, null);
+        assertSize(8, table, null);
+        assertEquals(hits + 3, snapshotCacheHits());
+        assertEquals(misses + 1, snapshotCacheMisses());
+
+        // A new commit removing a file is picked up
+        Files.writeString(log.resolve("00000000000000000003.json"), """
+                {"remove":{"path":"dt=2024-01-01/p=b/part-00003-92c171de-4689-497a-b48a-97b5c6173f1b.c000.snappy.parquet","deletionTimestamp":1742792903999,"dataChange":true}}
+                """);
+        assertSize(1, table, "p='b'");
+        assertSize(7, table, null);
+        assertEquals(misses + 2, snapshotCacheMisses());
+        assertEquals(hits + 4, snapshotCacheHits());
+    }
+
+    @Test
+    public void snapshotCacheIsBounded(@TempDir Path dir) throws IOException {
+        var first = copyLog(dir.resolve("first"));
+        var second = copyLog(dir.resolve("second"));
+        var cache = new DeltaSnapshotCache(DefaultEngine.create(new Configuration()), 1, 1_000_000);
+        cache.get(first);
+        long rows = cache.cachedLogRows();
+        assertTrue(rows > 0);
+        // Caching the second table drops the first, with the log batches it kept
+        cache.get(second);
+        assertEquals(rows, cache.cachedLogRows());
+        cache.invalidate(second);
+        assertEquals(0, cache.cachedLogRows());
+
+        var unbuffered = new DeltaSnapshotCache(DefaultEngine.create(new Configuration()), 1, 0);
+        unbuffered.get(first);
+        assertEquals(0, unbuffered.cachedLogRows());
+    }
+
+    @Test
+    public void missingLogFailsThePruning(@TempDir Path dir) throws IOException, SQLException {
+        var table = copyLog(dir);
+        assertSize(8, table, null);
+        try (var files = Files.list(dir.resolve("_delta_log"))) {
+            for (var file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir.resolve("_delta_log"));
+        assertThrows(IOException.class, () -> pruneFiles(table, null, partition));
+    }
+
+    private static String copyLog(Path dir) throws IOException {
+        var log = dir.resolve("_delta_log");
+        Files.createDirectories(log);
+        try (var files = Files.list(Path.of(basePath, "_delta_log"))) {
+            for (var file : files.toList()) {
+                Files.copy(file, log.resolve(file.getFileName()));
+            }
+        }
+        return dir.toString();
+    }
+}
@@ -2,12 +2,16 @@ package io.dazzleduck.sql.commons.ducklake;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import io.dazzleduck.sql.commons.ConnectionPool;
+import io.dazzleduck.sql.commons.Transformations;
+import io.dazzleduck.sql.commons.planner.SplitPlanner;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
 import java.nio.file.Path;
 import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Set;
 
 
 public class DuckLakePartitionPruningTest {
@@ -77,6 +81,61 @@ public class DuckLakePartitionPruningTest {
         Assertions.assertEquals(EXPECTED_FILES_WITH_FILTER, files.size(), "Expected 2 files for complex filter with key = 'k52'");
     }
 
+    @Test
+    public void testFileStatsRefreshedAfterInsert() throws SQLException, JsonProcessingException {
+        var table = "tt_stats";
+        var qualifiedTable = "%s.%s".formatted(DATABASE, table);
+        ConnectionPool.execute("CREATE TABLE %s(key string, value string)".formatted(qualifiedTable));
+        ConnectionPool.execute("INSERT INTO %s VALUES ('k1', 'v1')".formatted(qualifiedTable));
+        ConnectionPool.execute("CALL ducklake_flush_inlined_data('" + DATABASE + "')");
+        var pruning = new DucklakePartitionPruning(METADATA_DATABASE);
+        var sql = "select * from %s where key = 'k2'".formatted(table);
+        Assertions.assertEquals(0, pruning.pruneFiles("main", table, sql).size());
+
+        ConnectionPool.execute("INSERT INTO %s VALUES ('k2', 'v2')".formatted(qualifiedTable));
+        ConnectionPool.execute("CALL ducklake_flush_inlined_data('" + DATABASE + "')");
+        Assertions.assertEquals(1, pruning.pruneFiles("main", table, sql).size(), "Expected the file added after the first pruning");
+        var all = "select * from %s where key >= 'k1'".formatted(table);
+        Assertions.assertEquals(2, pruning.pruneFiles("main", table, all).size());
+    }
+
+    @Test
+    public void testSplitPlannerSharesThePruning() throws SQLException, IOException {
+        var table = "tt_shared";
+        var qualifiedTable = "%s.%s".formatted(DATABASE, table);
+        ConnectionPool.execute("CREATE TABLE %s(key string, value string, partition int)".formatted(qualifiedTable));
+        ConnectionPool.execute("INSERT INTO %s VALUES ('k1', 'v1', 1), ('k2', 'v2', 2)".formatted(qualifiedTable));
+        ConnectionPool.execute("CALL ducklake_flush_inlined_data('" + DATABASE + "')");
+        var tree = Transformations.parseToTree("select * from %s.main.%s where key = 'k1'".formatted(DATABASE, table));
+
+        var before = localStatsTables();
+        SplitPlanner.getSplitTreeAndSize(tree, 1024 * 1024 * 1024);
+        var afterFirst = localStatsTables();
+        afterFirst.removeAll(before);
+        Assertions.assertEquals(1, afterFirst.size(), "Expected one local table for the DuckLake table");
+        SplitPlanner.getSplitTreeAndSize(tree, 1024 * 1024 * 1024);
+        var afterSecond = localStatsTables();
+        afterSecond.removeAll(before);
+        Assertions.assertEquals(afterFirst, afterSecond, "Expected the second query to reuse the local table");
+
+        Assertions.assertSame(DucklakePartitionPruning.forMetadataDatabase(METADATA_DATABASE),
+                DucklakePartitionPruning.forMetadataDatabase(METADATA_DATABASE));
+        var statsColumns = ConnectionPool.collectFirst(
+                "SELECT count(*) FROM duckdb_columns() WHERE database_name = '__dazzleduck_ducklake_stats' AND table_name = '%s' AND column_name LIKE 'min_%%'"
+                        .formatted(afterFirst.iterator().next()), Long.class);
+        Assertions.assertEquals(1, statsColumns, "Expected only the filtered column to be indexed");
+    }
+
+    private static Set<String> localStatsTables() throws SQLException {
+        var tables = new HashSet<String>();
+        try (var connection = ConnectionPool.getConnection()) {
+            ConnectionPool.collectFirstColumn(connection,
+                    "SELECT table_name FROM duckdb_tables() WHERE database_name = '__dazzleduck_ducklake_stats'",
+                    String.class).forEach(tables::add);
+        }
+        return tables;
+    }
+
     @Test
     public void testNonExistentTable() {
         var sql = "select * from non_existent_table where key = 'k52'";
@@ -0,0 +1,124 @@
+package io.dazzleduck.sql.commons.hive;
+
+import io.dazzleduck.sql.commons.ConnectionPool;
+import io.dazzleduck.sql.commons.FileStatus;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HivePartitionCatalogTest {
+
+    @Test
+    public void testListsPartitionsOnce(@TempDir Path dir) throws SQLException, IOException {
+        write(dir, "dt=2024-01-01/p=a%20b/0.parquet");
+        write(dir, "dt=2024-01-01/p=x/0.parquet");
+        write(dir, "dt=2024-01-01/p=x/1.parquet");
+        var catalog = new HivePartitionCatalog(Duration.ofHours(1));
+        var listing = catalog.get(dir.toString(), 2);
+        assertEquals(2, listing.partitionCount());
+        assertEquals("2024-01-01", listing.value(0, 0));
+        assertEquals("a b", listing.value(1, 0));
+        assertEquals(List.of(dir + "/dt=2024-01-01/p=x/0.parquet", dir + "/dt=2024-01-01/p=x/1.parquet"),
+                listing.files(1).stream().map(FileStatus::fileName).toList());
+        assertSame(listing, catalog.get(dir.toString(), 2));
+    }
+
+    @Test
+    public void testRefreshesChangedPartitionDirectories(@TempDir Path dir) throws SQLException, IOException {
+        write(dir, "dt=2024-01-01/p=x/0.parquet");
+        write(dir, "dt=2024-01-02/p=x/0.parquet");
+        var catalog = new HivePartitionCatalog(Duration.ofHours(1));
+        assertEquals(2, catalog.get(dir.toString(), 2).files().size());
+
+        write(dir, "dt=2024-01-01/p=x/1.parquet");
+        write(dir, "dt=2024-01-03/p=y/0.parquet");
+        var refreshed = catalog.get(dir.toString(), 2);
+        assertEquals(3, refreshed.partitionCount());
+        assertEquals(4, refreshed.files().size());
+
+        Files.delete(dir.resolve("dt=2024-01-02/p=x/0.parquet"));
+        Files.delete(dir.resolve("dt=2024-01-02/p=x"));
+        assertEquals(2, catalog.get(dir.toString(), 2).partitionCount());
+    }
+
+    @Test
+    public void testRegistersEachPartitionOnceInLocalTable(@TempDir Path dir) throws SQLException, IOException {
+        write(dir, "dt=2024-01-01/p=it's/0.parquet");
+        var catalog = new HivePartitionCatalog(Duration.ofHours(1));
+        var table = catalog.get(dir.toString(), 2).table();
+        write(dir, "dt=2024-01-02/p=x/0.parquet");
+        var listing = catalog.get(dir.toString(), 2);
+        assertEquals(table, listing.table());
+        assertEquals(2L, ConnectionPool.collectFirst("SELECT count(*) FROM " + table, Long.class));
+        assertEquals("dt=2024-01-01/p=it's", ConnectionPool.collectFirst(
+                "SELECT partition_directory FROM %s WHERE unescaped_partitions[2] = 'it''s'".formatted(table), String.class));
+        assertNull(catalog.get(dir.toString(), 0).table());
+    }
+
+    @Test
+    public void testDeletesRowsOfPartitionsThatAreGone(@TempDir Path dir) throws SQLException, IOException {
+        write(dir, "dt=2024-01-01/p=x/0.parquet");
+        write(dir, "dt=2024-01-02/p=x/0.parquet");
+        var catalog = new HivePartitionCatalog(Duration.ofHours(1));
+        var table = catalog.get(dir.toString(), 2).table();
+        assertEquals(2L, ConnectionPool.collectFirst("SELECT count(*) FROM " + table, Long.class));
+
+        Files.delete(dir.resolve("dt=2024-01-02/p=x/0.parquet"));
+        Files.delete(dir.resolve("dt=2024-01-02/p=x"));
+        assertEquals(1, catalog.get(dir.toString(), 2).partitionCount());
+        assertEquals("dt=2024-01-01/p=x", ConnectionPool.collectFirst(
+                "SELECT string_agg(partition_directory, ',') FROM " + table, String.class));
+    }
+
+    @Test
+    public void testInvalidateDropsLocalTable(@TempDir Path dir) throws SQLException, IOException {
+        write(dir, "dt=2024-01-01/p=x/0.parquet");
+        var catalog = new HivePartitionCatalog(Duration.ofHours(1));
+        var listing = catalog.get(dir.toString(), 2);
+        catalog.invalidate(dir.toString());
+        assertTrue(listing.tableDropped());
+        assertThrows(Exception.class, () -> ConnectionPool.collectFirst("SELECT count(*) FROM " + listing.table(), Long.class));
+
+        var relisted = catalog.get(dir.toString(), 2);
+        assertNotEquals(listing.table(), relisted.table());
+        assertFalse(relisted.tableDropped());
+        assertEquals(1L, ConnectionPool.collectFirst("SELECT count(*) FROM " + relisted.table(), Long.class));
+    }
+
+    @Test
+    public void testExpiresAfterTtl(@TempDir Path dir) throws SQLException, IOException {
+        write(dir, "0.parquet");
+        var catalog = new HivePartitionCatalog(Duration.ZERO);
+        var listing = catalog.get(dir.toString(), 0);
+        assertEquals(List.of(dir + "/0.parquet"), listing.files().stream().map(FileStatus::fileName).toList());
+        assertNotSame(listing, catalog.get(dir.toString(), 0));
+
+        var cached = new HivePartitionCatalog(Duration.ofHours(1));
+        listing = cached.get(dir.toString(), 0);
+        cached.invalidate(dir.toString());
+        assertNotSame(listing, cached.get(dir.toString(), 0));
+
+        listing = cached.get(dir.toString(), 0);
+        assertSame(listing, cached.get(dir.toString(), 0));
+        cached.setTtl(Duration.ZERO);
+        assertNotSame(listing, cached.get(dir.toString(), 0));
+    }
+
+    /** Writes a file and moves its directory's modification time forward, as a later write would. */
+    private static void write(Path base, String relative) throws IOException {
+        var file = base.resolve(relative);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, relative);
+        var parent = file.getParent();
+        Files.setLastModifiedTime(parent, FileTime.from(Files.getLastModifiedTime(parent).toInstant().plusSeconds(1)));
+    }
+}
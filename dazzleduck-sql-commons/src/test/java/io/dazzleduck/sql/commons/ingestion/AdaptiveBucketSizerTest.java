@@ -0,0 +1,82 @@
+package io.dazzleduck.sql.commons.ingestion;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdaptiveBucketSizerTest {
+
+    private static final long MB = 1024L * 1024;
+    private static final Duration SLO = Duration.ofSeconds(10);
+
+    private static AdaptiveBucketSizer sizer() {
+        return new AdaptiveBucketSizer(64 * MB, SLO, MB, 256 * MB, Duration.ofMillis(100), Duration.ofSeconds(30));
+    }
+
+    @Test
+    void startsAtTargetSizeAndSloDelay() {
+        var sizer = sizer();
+        assertEquals(64 * MB, sizer.bucketSize());
+        assertEquals(SLO, sizer.delay());
+    }
+
+    @Test
+    void slowWritesShrinkTheBucketToFitTheSlo() {
+        var sizer = sizer();
+        // 10 MB in 10 s: writing 64 MB would take ~64 s, far beyond half of the 10 s SLO
+        sizer.update(10 * MB, 10_000, 1, 0, Duration.ofSeconds(1));
+        long expected = 10 * MB / 10_000 * 5_000;
+        assertTrue(Math.abs(sizer.bucketSize() - expected) < MB / 100, "got " + sizer.bucketSize());
+        // half the SLO goes to the write, the rest is left for accumulating
+        assertTrue(sizer.delay().toMillis() <= 5_100, "got " + sizer.delay());
+    }
+
+    @Test
+    void backlogShortensTheDelay() {
+        var idle = sizer();
+        var busy = sizer();
+        // 1 GB/s
+        idle.update(1024 * MB, 1_000, 1, 0, Duration.ofSeconds(1));
+        busy.update(1024 * MB, 1_000, 1, 4096 * MB, Duration.ofSeconds(1));
+        assertEquals(idle.bucketSize(), busy.bucketSize());
+        assertTrue(busy.delay().compareTo(idle.delay()) < 0,
+                "busy %s should flush sooner than idle %s".formatted(busy.delay(), idle.delay()));
+    }
+
+    @Test
+    void missedSloShrinksDelayAndRecovers() {
+        var sizer = sizer();
+        for (int i = 0; i < 5; i++) {
+            sizer.update(0, 0, 1, 0, SLO.multipliedBy(3));
+        }
+        var shrunk = sizer.delay();
+        assertTrue(shrunk.compareTo(SLO.dividedBy(2)) < 0, "got " + shrunk);
+
+        for (int i = 0; i < 50; i++) {
+            sizer.update(0, 0, 1, 0, Duration.ofMillis(100));
+        }
+        assertEquals(SLO, sizer.delay());
+    }
+
+    @Test
+    void staysWithinBounds() {
+        var sizer = new AdaptiveBucketSizer(64 * MB, SLO, 8 * MB, 16 * MB, Duration.ofSeconds(2), Duration.ofSeconds(5));
+        assertEquals(16 * MB, sizer.bucketSize());
+        assertEquals(Duration.ofSeconds(5), sizer.delay());
+
+        // extremely slow writes and a huge backlog: both outputs bottom out at the lower bounds
+        sizer.update(MB, 100_000, 1, 1024 * MB, SLO.multipliedBy(10));
+        assertEquals(8 * MB, sizer.bucketSize());
+        assertEquals(Duration.ofSeconds(2), sizer.delay());
+    }
+
+    @Test
+    void rejectsInvertedBounds() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new AdaptiveBucketSizer(MB, SLO, 2 * MB, MB, Duration.ZERO, Duration.ofSeconds(1)));
+        assertThrows(IllegalArgumentException.class,
+                () -> new AdaptiveBucketSizer(MB, SLO, MB, 2 * MB, Duration.ofSeconds(2), Duration.ofSeconds(1)));
+    }
+}
@@ -476,6 +476,85 @@ public class BulkIngestQueueLoadTest {
                         + result.throughputMBPerSec() + " MB/s, ceiling=" + ceilingMBPerSec);
     }
 
+    /**
+     * Contention stress for the accept path: many threads, one producer id each, calling add() as
+     * fast as they can against a queue whose writes cost nothing. Measures accepted batches per
+     * second (add() calls only, not write completion) for an increasing thread count. add() takes
+     * no queue-wide lock — producers only serialize on their own sequence stripe and, once per
+     * bucket, on the handoff — so the rate should hold up rather than collapse as threads are
+     * added; run {@link #main} on a multi-core machine to compare the curve across changes.
+     */
+    @Test
+    public void testAcceptScalingWithProducerThreads() throws Exception {
+        int batchesPerThread = 20_000;
+        var threadCounts = List.of(1, 2, 4, 8, 16, 32);
+        var rates = new ArrayList<Double>();
+        for (int threads : threadCounts) {
+            rates.add(measureAcceptRate(threads, batchesPerThread));
+        }
+
+        System.out.println("\n" + "=".repeat(60));
+        System.out.println("Accept path scaling (" + Runtime.getRuntime().availableProcessors() + " cores)");
+        System.out.println("=".repeat(60));
+        System.out.printf("%-10s %18s %12s%n", "Threads", "Accepts/sec", "vs 1 thread");
+        for (int i = 0; i < threadCounts.size(); i++) {
+            System.out.printf("%-10d %,18.0f %11.2fx%n", threadCounts.get(i), rates.get(i), rates.get(i) / rates.get(0));
+        }
+        System.out.println("=".repeat(60));
+
+        // Loose bound so this stays stable on small CI machines: adding threads must not collapse
+        // the accept rate the way a single contended monitor does.
+        double best = rates.stream().mapToDouble(Double::doubleValue).max().orElseThrow();
+        assertTrue(rates.get(rates.size() - 1) > best * 0.25,
+                "accept rate collapsed under contention: " + rates);
+    }
+
+    /**
+     * Accepts per second with {@code threads} producers starting together, each adding
+     * {@code batchesPerThread} batches in sequence. Asserts every batch is accepted and written.
+     */
+    private double measureAcceptRate(int threads, int batchesPerThread) throws Exception {
+        var executor = Executors.newScheduledThreadPool(2);
+        var queue = new LoadTestBulkIngestQueue("accept-" + threads, 64 * 1024, 1024 * 1024, 1000,
+                Long.MAX_VALUE, Duration.ofMillis(50), Duration.ZERO, executor, Clock.systemUTC());
+        var pool = Executors.newFixedThreadPool(threads);
+        var start = new CountDownLatch(1);
+        var rejected = new LongAdder();
+        var last = new ArrayList<Future<CompletableFuture<MockWriteResult>>>();
+        for (int t = 0; t < threads; t++) {
+            var producerId = "producer-" + t;
+            last.add(pool.submit(() -> {
+                start.await();
+                CompletableFuture<MockWriteResult> future = null;
+                for (int b = 0; b < batchesPerThread; b++) {
+                    future = queue.add(createBatch(producerId, b, 128));
+                    if (future.isCompletedExceptionally()) {
+                        rejected.increment();
+                    }
+                }
+                return future;
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (var f : last) {
+            f.get(60, TimeUnit.SECONDS);
+        }
+        long elapsed = System.nanoTime() - begin;
+
+        queue.drain();
+        for (var f : last) {
+            f.get().get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(0, rejected.sum(), "no batch may be rejected");
+        assertEquals((long) threads * batchesPerThread, queue.getTotalWriteBatches());
+        assertEquals(0, queue.pendingWrite());
+        queue.close();
+        pool.shutdown();
+        executor.shutdown();
+        return (double) threads * batchesPerThread / (elapsed / 1e9);
+    }
+
     /**
      * Two-phase commit queue for the DuckLake profile: a parallelizable data phase followed by a
      * globally serialized catalog phase. The catalog lock is passed in so a future lane
@@ -582,6 +661,8 @@ public class BulkIngestQueueLoadTest {
                     r.backPressureEvents());
         }
         System.out.println("=".repeat(80));
+
+        loadTest.testAcceptScalingWithProducerThreads();
     }
 
     private static String truncate(String s, int maxLen) {
@@ -13,6 +13,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -382,6 +383,219 @@ public class BulkIngestQueueTest {
         });
     }
 
+    @Test
+    public void testCommitLanesOverlapDataPhaseAndCommitInOrder() throws Exception {
+        var service = new DeterministicScheduler();
+        var clock = new MutableClock(Instant.now(), ZoneId.systemDefault());
+        var queue = new TwoPhaseMockQueue(service, clock);
+        long batchSize = DEFAULT_MIN_BATCH_SIZE + 1; // fills a bucket on its own, too big to combine
+
+        var first = queue.add(mockBatch("123", 0, batchSize));
+        var second = queue.add(mockBatch("123", 1, batchSize));
+        assertTrue(queue.bothInFlight.await(5, TimeUnit.SECONDS),
+                "two lanes must run the data phase of two buckets at once");
+
+        // The second bucket's data phase finishes first, but its commit must wait for the first.
+        queue.release(1).countDown();
+        assertTrue(queue.dataDone(1).await(5, TimeUnit.SECONDS));
+        assertFalse(second.isDone());
+        queue.release(0).countDown();
+
+        assertEquals(new MockWriteResult(0, batchSize), first.get(5, TimeUnit.SECONDS));
+        assertEquals(new MockWriteResult(1, batchSize), second.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of(0L, 1L), queue.commitOrder);
+        queue.drain();
+        assertEquals(2, queue.getCommitLanes());
+        assertTrue(queue.getLaneBusyNanos(0) > 0);
+        assertTrue(queue.getLaneBusyNanos(1) > 0);
+        assertEquals(0, queue.pendingWrite());
+        queue.close();
+    }
+
+    @Test
+    public void testCloseUndoesDataPhaseOfUncommittedBucket() throws Exception {
+        var service = new DeterministicScheduler();
+        var clock = new MutableClock(Instant.now(), ZoneId.systemDefault());
+        var queue = new TwoPhaseMockQueue(service, clock);
+        long batchSize = DEFAULT_MIN_BATCH_SIZE + 1;
+
+        var first = queue.add(mockBatch("123", 0, batchSize));
+        var second = queue.add(mockBatch("123", 1, batchSize));
+        assertTrue(queue.bothInFlight.await(5, TimeUnit.SECONDS));
+        // The second bucket is written but waits for the first, which is still in its data phase.
+        queue.release(1).countDown();
+        assertTrue(queue.dataDone(1).await(5, TimeUnit.SECONDS));
+
+        queue.close();
+        var e = assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        assertEquals(List.of(1L), queue.abandoned, "the written but uncommitted bucket is undone");
+        assertTrue(queue.commitOrder.isEmpty());
+        assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAdaptiveSizerDrivesEffectiveThresholds() throws Exception {
+        withServiceAndQueue((service, queue, clock) -> {
+            assertEquals(DEFAULT_MIN_BATCH_SIZE, queue.getEffectiveBucketSize());
+            assertEquals(DEFAULT_MAX_DELAY, queue.getEffectiveMaxDelay());
+
+            var slo = Duration.ofSeconds(1);
+            queue.setAdaptiveSizer(new AdaptiveBucketSizer(2 * DEFAULT_SMALL_BATCH_SIZE, slo,
+                    DEFAULT_SMALL_BATCH_SIZE, Long.MAX_VALUE, Duration.ofMillis(10), DEFAULT_MAX_DELAY));
+            assertEquals(2 * DEFAULT_SMALL_BATCH_SIZE, queue.getEffectiveBucketSize());
+            assertEquals(slo, queue.getEffectiveMaxDelay());
+
+            // The adaptive size (not the fixed 10 KB minimum) fills the bucket. The clock moves past
+            // the SLO before the write commits, so the observed latency misses it.
+            clock.advanceBy(Duration.ofSeconds(10));
+            var res = queue.add(mockBatch("123", 0, 2 * DEFAULT_SMALL_BATCH_SIZE));
+            res.get(5, TimeUnit.SECONDS);
+            // the sizer is updated right after the bucket's futures complete
+            for (int i = 0; i < 100 && queue.getEffectiveMaxDelay().equals(slo); i++) {
+                Thread.sleep(10);
+            }
+            assertTrue(queue.getEffectiveMaxDelay().compareTo(slo) < 0,
+                    "a missed SLO should shorten the delay, got " + queue.getEffectiveMaxDelay());
+
+            queue.setAdaptiveSizer(null);
+            assertEquals(DEFAULT_MIN_BATCH_SIZE, queue.getEffectiveBucketSize());
+            assertEquals(DEFAULT_MAX_DELAY, queue.getEffectiveMaxDelay());
+        });
+    }
+
+    @Test
+    public void testRoutedBatchesFlushInIndependentSubBuckets() throws Exception {
+        var service = new DeterministicScheduler();
+        var clock = new MutableClock(Instant.now(), ZoneId.systemDefault());
+        var queue = new RoutingMockQueue(service, clock);
+        long half = DEFAULT_MIN_BATCH_SIZE / 2;
+
+        var a1 = queue.add(mockBatch("p-a", 0, half));
+        var b1 = queue.add(mockBatch("p-b", 0, half));
+        var main = queue.add(mockBatch("123", 0, half));
+        assertEquals(2, queue.getRoutedBucketCount());
+
+        // Filling one sub-bucket flushes it alone.
+        var a2 = queue.add(mockBatch("p-a", 1, half));
+        assertEquals(2 * half, a1.get(5, TimeUnit.SECONDS).totalSize());
+        assertEquals(a1.get(), a2.get(5, TimeUnit.SECONDS));
+        assertFalse(b1.isDone());
+        assertFalse(main.isDone());
+        assertEquals(1, queue.getRoutedBucketCount());
+
+        // On the delay, the other sub-bucket and the main bucket flush as separate writes even
+        // though both fit in one bucket.
+        clock.advanceBy(DEFAULT_MAX_DELAY.plusMillis(10));
+        service.tick(DEFAULT_MAX_DELAY.toMillis() + 10, TimeUnit.MILLISECONDS);
+        assertEquals(half, b1.get(5, TimeUnit.SECONDS).totalSize());
+        assertEquals(half, main.get(5, TimeUnit.SECONDS).totalSize());
+        assertNotEquals(b1.get().taskId(), main.get().taskId());
+        assertEquals(0, queue.getRoutedBucketCount());
+        queue.close();
+    }
+
+    @Test
+    public void testTriggerSkipsRoutedBucketBeforeItsFirstBatch() throws Exception {
+        var service = new DeterministicScheduler();
+        var clock = new MutableClock(Instant.now(), ZoneId.systemDefault());
+        var queue = new RoutingMockQueue(service, clock);
+
+        // The trigger fires in the window between a sub-bucket being installed and its first batch.
+        queue.openRoutedBucket("p-a");
+        clock.advanceBy(DEFAULT_MAX_DELAY.plusMillis(10));
+        service.tick(DEFAULT_MAX_DELAY.toMillis() + 10, TimeUnit.MILLISECONDS);
+        assertEquals(1, queue.getRoutedBucketCount());
+
+        // Time-based flushes keep running: the batch that lands in the sub-bucket flushes on its delay.
+        var a1 = queue.add(mockBatch("p-a", 0, DEFAULT_MIN_BATCH_SIZE / 2));
+        clock.advanceBy(DEFAULT_MAX_DELAY.plusMillis(10));
+        service.tick(DEFAULT_MAX_DELAY.toMillis() + 10, TimeUnit.MILLISECONDS);
+        assertEquals(DEFAULT_MIN_BATCH_SIZE / 2, a1.get(5, TimeUnit.SECONDS).totalSize());
+        assertEquals(0, queue.getRoutedBucketCount());
+        queue.close();
+    }
+
+    /** Routes producers named {@code p-*} into a sub-bucket per producer. */
+    private static final class RoutingMockQueue extends BulkIngestQueue<String, MockWriteResult> {
+        RoutingMockQueue(ScheduledExecutorService executorService, Clock clock) {
+            super("", DEFAULT_MIN_BATCH_SIZE, Long.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE,
+                    DEFAULT_MAX_DELAY, executorService, clock);
+        }
+
+        @Override
+        protected Object routingKey(Batch<String> batch) {
+            return batch.producerId().startsWith("p-") ? batch.producerId() : null;
+        }
+
+        @Override
+        public void write(WriteTask<String, MockWriteResult> writeTask) {
+            for (var future : writeTask.bucket().futures()) {
+                future.complete(new MockWriteResult(writeTask.taskId(), writeTask.size()));
+            }
+        }
+    }
+
+    /** Two-lane queue whose data phase blocks until released per task and whose commit records order. */
+    private static final class TwoPhaseMockQueue extends BulkIngestQueue<String, MockWriteResult> {
+        final java.util.concurrent.CountDownLatch bothInFlight = new java.util.concurrent.CountDownLatch(2);
+        final List<Long> commitOrder = Collections.synchronizedList(new ArrayList<>());
+        private final java.util.concurrent.ConcurrentHashMap<Long, java.util.concurrent.CountDownLatch> releases =
+                new java.util.concurrent.ConcurrentHashMap<>();
+
+        TwoPhaseMockQueue(ScheduledExecutorService executorService, Clock clock) {
+            super("", DEFAULT_MIN_BATCH_SIZE, DEFAULT_MIN_BATCH_SIZE + 1, Integer.MAX_VALUE, Long.MAX_VALUE,
+                    DEFAULT_MAX_DELAY, 2, executorService, clock);
+        }
+
+        final List<Long> abandoned = Collections.synchronizedList(new ArrayList<>());
+        private final java.util.concurrent.ConcurrentHashMap<Long, java.util.concurrent.CountDownLatch> dataDone =
+                new java.util.concurrent.ConcurrentHashMap<>();
+
+        java.util.concurrent.CountDownLatch release(long taskId) {
+            return releases.computeIfAbsent(taskId, k -> new java.util.concurrent.CountDownLatch(1));
+        }
+
+        /** Counted down once the data phase of {@code taskId} has returned its commit. */
+        java.util.concurrent.CountDownLatch dataDone(long taskId) {
+            return dataDone.computeIfAbsent(taskId, k -> new java.util.concurrent.CountDownLatch(1));
+        }
+
+        @Override
+        protected Commit writeData(WriteTask<String, MockWriteResult> writeTask) {
+            bothInFlight.countDown();
+            try {
+                release(writeTask.taskId()).await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            try {
+                return new Commit() {
+                    @Override
+                    public void run() {
+                        commitOrder.add(writeTask.taskId());
+                        for (var future : writeTask.bucket().futures()) {
+                            future.complete(new MockWriteResult(writeTask.taskId(), writeTask.size()));
+                        }
+                    }
+
+                    @Override
+                    public void abandon() {
+                        abandoned.add(writeTask.taskId());
+                    }
+                };
+            } finally {
+                dataDone(writeTask.taskId()).countDown();
+            }
+        }
+
+        @Override
+        public void write(WriteTask<String, MockWriteResult> writeTask) {
+            writeData(writeTask).run();
+        }
+    }
+
     /** DeterministicScheduler that counts schedule() calls, to detect trigger-chain leaks. */
     private static final class CountingScheduler extends DeterministicScheduler {
         final java.util.concurrent.atomic.AtomicInteger scheduleCount =
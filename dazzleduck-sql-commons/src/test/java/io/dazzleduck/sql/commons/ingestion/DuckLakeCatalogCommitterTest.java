@@ -0,0 +1,96 @@
+package io.dazzleduck.sql.commons.ingestion;
+
+import io.dazzleduck.sql.commons.ConnectionPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DuckLakeCatalogCommitterTest {
+
+    private static final String TABLE = "catalog_committer_test";
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ConnectionPool.execute("CREATE OR REPLACE TABLE %s (queue VARCHAR, file VARCHAR)".formatted(TABLE));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        ConnectionPool.execute("DROP TABLE IF EXISTS " + TABLE);
+    }
+
+    @Test
+    void concurrentRegistrationsShareOneTransaction() throws Exception {
+        int queues = 8;
+        long totalRegistrations = DuckLakeCatalogCommitter.totalRegistrations();
+        try (var committer = new DuckLakeCatalogCommitter("lake", Duration.ofMillis(500));
+             var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<CompletableFuture<Void>> commits = new ArrayList<>();
+            for (int i = 0; i < queues; i++) {
+                String queue = "q" + i;
+                commits.add(CompletableFuture.runAsync(() -> commitUnchecked(committer, List.of(
+                        insert(queue, "a.parquet"), insert(queue, "b.parquet"))), executor));
+            }
+            CompletableFuture.allOf(commits.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+
+            assertEquals(queues * 2L, rowCount());
+            assertEquals(queues, committer.getRegistrations());
+            assertTrue(committer.getTransactions() < queues,
+                    "registrations should be grouped, got " + committer.getTransactions() + " transactions");
+            // The process-wide totals, which are exported as metrics, include this committer.
+            assertTrue(DuckLakeCatalogCommitter.totalRegistrations() - totalRegistrations >= queues);
+        }
+    }
+
+    @Test
+    void failingRegistrationDoesNotFailTheRestOfTheGroup() throws Exception {
+        try (var committer = new DuckLakeCatalogCommitter("lake", Duration.ofMillis(500));
+             var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var good = CompletableFuture.runAsync(() -> commitUnchecked(committer, List.of(insert("good", "a.parquet"))), executor);
+            var bad = CompletableFuture.runAsync(() -> commitUnchecked(committer, List.of(
+                    insert("bad", "a.parquet"), "INSERT INTO missing_table VALUES (1)")), executor);
+
+            good.get(10, TimeUnit.SECONDS);
+            var failure = assertThrows(Exception.class, () -> bad.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(SQLException.class, failure.getCause().getCause());
+            // The bad registration rolled back as a unit; the good one is committed.
+            assertEquals(1L, rowCount());
+            assertEquals(1L, ConnectionPool.collectFirst(
+                    "SELECT count(*) FROM %s WHERE queue = 'good'".formatted(TABLE), Long.class));
+        }
+    }
+
+    @Test
+    void commitAfterCloseRunsOnCallerThread() throws Exception {
+        var committer = new DuckLakeCatalogCommitter("lake", Duration.ZERO);
+        committer.close();
+        committer.commit(List.of(insert("late", "a.parquet")));
+        assertEquals(1L, rowCount());
+    }
+
+    private static void commitUnchecked(DuckLakeCatalogCommitter committer, List<String> statements) {
+        try {
+            committer.commit(statements);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String insert(String queue, String file) {
+        return "INSERT INTO %s VALUES ('%s', '%s')".formatted(TABLE, queue, file);
+    }
+
+    private static long rowCount() throws SQLException {
+        return ConnectionPool.collectFirst("SELECT count(*) FROM " + TABLE, Long.class);
+    }
+}
@@ -100,6 +100,16 @@ class DuckLakeIngestionHandlerTest {
         assertInstanceOf(DuckLakePostIngestionTask.class, task);
     }
 
+    @Test
+    void shouldRejectTaskAfterQueuesAreClosed() {
+        var factory = new DuckLakeIngestionHandler(Map.of(QUEUE_ID, mapping(QUEUE_ID, null)));
+        var result = new IngestionResult(QUEUE_ID, 1L, "app", Map.of(), 0L, List.of());
+        assertInstanceOf(DuckLakePostIngestionTask.class, factory.createPostIngestionTask(result));
+        factory.closeQueues();
+        // A late commit must not start a catalog committer thread that nothing closes any more.
+        assertThrows(IllegalStateException.class, () -> factory.createPostIngestionTask(result));
+    }
+
     // -----------------------------------------------------------------------
     // createPostIngestionTask — suffix fallback
     // -----------------------------------------------------------------------
@@ -0,0 +1,157 @@
+package io.dazzleduck.sql.commons.ingestion;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowReader;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InMemoryBatchStoreTest {
+
+    @TempDir
+    Path spillDir;
+
+    private BufferAllocator allocator;
+
+    @BeforeEach
+    void setUp() {
+        allocator = new RootAllocator();
+    }
+
+    @AfterEach
+    void tearDown() {
+        allocator.close();
+    }
+
+    @Test
+    void smallBatchStaysInMemoryAndReadsBack() throws Exception {
+        try (var store = new InMemoryBatchStore("q", 1024 * 1024, 64 * 1024)) {
+            var staged = stage(store, 100);
+
+            assertTrue(staged.inMemory());
+            assertTrue(store.getUsedBytes() >= staged.size());
+            assertEquals(1, store.getInMemoryBatches());
+            try (var files = Files.list(spillDir)) {
+                assertEquals(0, files.count(), "nothing should be written to disk");
+            }
+            try (ArrowReader reader = store.open(staged.record(), allocator)) {
+                assertEquals(List.of(0, 1, 2), readValues(reader).subList(0, 3));
+            }
+
+            store.release(staged.record());
+            assertEquals(0, store.getUsedBytes());
+        }
+    }
+
+    @Test
+    void readersAllocateFromABoundedChildOfTheStore() throws Exception {
+        try (var store = new InMemoryBatchStore("q", 1024 * 1024, 64 * 1024)) {
+            var staged = stage(store, 100);
+            try (var readerAllocator = store.newReaderAllocator("flush")) {
+                assertEquals(1024 * 1024, readerAllocator.getLimit());
+                try (ArrowReader reader = store.open(staged.record(), readerAllocator)) {
+                    assertTrue(reader.loadNextBatch());
+                    assertTrue(readerAllocator.getAllocatedMemory() > 0, "decoded vectors should be tracked");
+                }
+                assertEquals(0, readerAllocator.getAllocatedMemory());
+            }
+            store.release(staged.record());
+        }
+    }
+
+    @Test
+    void bufferGrowsWithTheBatch() throws Exception {
+        try (var store = new InMemoryBatchStore("q", 1024 * 1024, 64 * 1024)) {
+            var staged = stage(store, 5000);
+
+            assertTrue(staged.inMemory());
+            assertTrue(staged.size() > 16 * 1024, "batch should outgrow the first buffer several times");
+            assertTrue(store.getUsedBytes() < 2 * staged.size(), "outgrown buffers should be freed");
+            try (ArrowReader reader = store.open(staged.record(), allocator)) {
+                assertEquals(5000, readValues(reader).size());
+            }
+            store.release(staged.record());
+            assertEquals(0, store.getUsedBytes());
+        }
+    }
+
+    @Test
+    void batchAboveThresholdSpillsToFile() throws Exception {
+        try (var store = new InMemoryBatchStore("q", 1024 * 1024, 256)) {
+            var staged = stage(store, 1000);
+
+            assertFalse(staged.inMemory());
+            assertEquals(staged.size(), Files.size(Path.of(staged.record())));
+            assertEquals(1, store.getSpilledBatches());
+            assertEquals(0, store.getUsedBytes());
+            try (var reader = new ArrowStreamReader(Files.newInputStream(Path.of(staged.record())), allocator)) {
+                assertEquals(1000, readValues(reader).size());
+            }
+        }
+    }
+
+    @Test
+    void batchSpillsWhenArenaIsFull() throws Exception {
+        // Arrow rounds allocations up to a power of two: one small batch takes 1 KB of the 1.5 KB arena
+        try (var store = new InMemoryBatchStore("q", 1536, 4096)) {
+            var first = stage(store, 100);
+            assertTrue(first.inMemory());
+
+            var second = stage(store, 100);
+            assertFalse(second.inMemory(), "arena has no room left for a second batch");
+
+            store.release(first.record());
+            assertTrue(stage(store, 100).inMemory(), "released memory is reusable");
+        }
+    }
+
+    private InMemoryBatchStore.StagedBatch stage(InMemoryBatchStore store, int rows) throws Exception {
+        try (var reader = reader(rows)) {
+            return store.stage(spillDir, reader);
+        }
+    }
+
+    /** An Arrow stream with one int column holding 0..rows-1. */
+    private ArrowReader reader(int rows) throws Exception {
+        var out = new ByteArrayOutputStream();
+        try (var vector = new IntVector("id", allocator)) {
+            vector.allocateNew(rows);
+            for (int i = 0; i < rows; i++) {
+                vector.set(i, i);
+            }
+            vector.setValueCount(rows);
+            try (var root = VectorSchemaRoot.of(vector);
+                 var writer = new ArrowStreamWriter(root, null, out)) {
+                writer.start();
+                writer.writeBatch();
+                writer.end();
+            }
+        }
+        return new ArrowStreamReader(new ByteArrayInputStream(out.toByteArray()), allocator);
+    }
+
+    private static List<Integer> readValues(ArrowReader reader) throws Exception {
+        var values = new java.util.ArrayList<Integer>();
+        while (reader.loadNextBatch()) {
+            var vector = (IntVector) reader.getVectorSchemaRoot().getVector("id");
+            for (int i = 0; i < vector.getValueCount(); i++) {
+                values.add(vector.get(i));
+            }
+        }
+        return values;
+    }
+}
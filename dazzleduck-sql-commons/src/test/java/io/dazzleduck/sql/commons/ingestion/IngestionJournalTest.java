@@ -0,0 +1,130 @@
+package io.dazzleduck.sql.commons.ingestion;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IngestionJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void acceptedButUnfinishedBatchesArePendingAfterReopen() throws Exception {
+        var first = batch("a.arrow", "p1", 0);
+        var second = batch("b.arrow", "p1", 1);
+        try (var journal = IngestionJournal.open(dir)) {
+            assertTrue(journal.pending().isEmpty());
+            journal.accepted(first);
+            journal.accepted(second);
+            journal.finished(List.of(first.record()));
+            assertEquals(1, journal.liveCount());
+        }
+
+        try (var journal = IngestionJournal.open(dir)) {
+            var pending = journal.pending();
+            assertEquals(1, pending.size());
+            var replayed = pending.get(0);
+            assertEquals(second.record(), replayed.record());
+            assertEquals("p1", replayed.producerId());
+            assertEquals(1, replayed.producerBatchId());
+            assertEquals(second.totalSize(), replayed.totalSize());
+            assertEquals(second.receivedTime().toEpochMilli(), replayed.receivedTime().toEpochMilli());
+            assertArrayEquals(second.sortOrder(), replayed.sortOrder());
+            assertArrayEquals(second.partitionBy(), replayed.partitionBy());
+        }
+        // Reopening compacted the log to the one live entry.
+        assertEquals(1, Files.readAllLines(dir.resolve(IngestionJournal.FILE_NAME)).size());
+    }
+
+    @Test
+    void batchWhoseFileIsGoneIsDropped() throws Exception {
+        var batch = batch("gone.arrow", null, 0);
+        try (var journal = IngestionJournal.open(dir)) {
+            journal.accepted(batch);
+        }
+        Files.delete(Path.of(batch.record()));
+
+        try (var journal = IngestionJournal.open(dir)) {
+            assertTrue(journal.pending().isEmpty());
+            assertEquals(0, journal.liveCount());
+        }
+    }
+
+    @Test
+    void tornTrailingEntryIsIgnored() throws Exception {
+        var batch = batch("a.arrow", "p1", 7);
+        try (var journal = IngestionJournal.open(dir)) {
+            journal.accepted(batch);
+        }
+        Files.writeString(dir.resolve(IngestionJournal.FILE_NAME), "A\tpartial",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        try (var journal = IngestionJournal.open(dir)) {
+            assertEquals(List.of(batch.record()), journal.pending().stream().map(Batch::record).toList());
+        }
+    }
+
+    @Test
+    void inMemoryBatchesAreNotJournaled() throws Exception {
+        try (var journal = IngestionJournal.open(dir)) {
+            journal.accepted(new Batch<>(null, null, InMemoryBatchStore.RECORD_PREFIX + "x", "p1", 0, 10,
+                    "parquet", Instant.now()));
+            assertEquals(0, journal.liveCount());
+        }
+    }
+
+    @Test
+    void concurrentProducersShareSyncs() throws Exception {
+        int producers = 8;
+        int batchesPerProducer = 50;
+        var batches = new ArrayList<Batch<String>>();
+        for (int i = 0; i < producers * batchesPerProducer; i++) {
+            batches.add(batch("b" + i + ".arrow", "p" + i % producers, i / producers));
+        }
+        try (var journal = IngestionJournal.open(dir)) {
+            var executor = Executors.newFixedThreadPool(producers);
+            try {
+                var futures = new ArrayList<Future<?>>();
+                for (int p = 0; p < producers; p++) {
+                    int producer = p;
+                    futures.add(executor.submit(() -> {
+                        for (int i = producer; i < batches.size(); i += producers) {
+                            journal.accepted(batches.get(i));
+                        }
+                    }));
+                }
+                for (var future : futures) {
+                    future.get(1, TimeUnit.MINUTES);
+                }
+            } finally {
+                executor.shutdown();
+            }
+            assertEquals(batches.size(), journal.liveCount());
+            assertTrue(journal.syncCount() <= batches.size());
+        }
+
+        try (var journal = IngestionJournal.open(dir)) {
+            assertEquals(batches.size(), journal.pending().size());
+        }
+    }
+
+    /** A journaled batch over a real file, with names that need escaping. */
+    private Batch<String> batch(String fileName, String producerId, long batchId) throws Exception {
+        var file = Files.writeString(dir.resolve(fileName), "data");
+        return new Batch<>(new String[]{"ts desc", "a,b"}, new String[0], file.toString(), producerId, batchId,
+                4, "parquet", Instant.now());
+    }
+}
@@ -3,6 +3,7 @@ package io.dazzleduck.sql.commons.ingestion;
 import io.dazzleduck.sql.commons.ConnectionPool;
 import io.dazzleduck.sql.commons.util.MutableClock;
 import io.dazzleduck.sql.commons.util.TestUtils;
+import org.apache.arrow.memory.RootAllocator;
 import org.jmock.lib.concurrent.DeterministicScheduler;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -14,6 +15,9 @@ import java.nio.file.Path;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -595,8 +599,335 @@ public class ParquetIngestionQueueTest {
         }
     }
 
+    @Test
+    public void testWatermarkComputedInSamePassAsCopy() throws Exception {
+        var service = new DeterministicScheduler();
+        var clock = new MutableClock(Instant.now(), ZoneId.systemDefault());
+        var spec = new WatermarkSpec("wm", "id", List.of("category"), "min_id", "max_id", "row_count");
+        var postTaskFactory = createPostTaskFactory(new AtomicBoolean(), false, "SELECT * FROM __this WHERE id < 90", spec);
+
+        try (var queue = new ParquetIngestionQueue(
+                TEST_APP_ID, INPUT_FORMAT, targetPath.toString(), "test-queue",
+                DEFAULT_MIN_BATCH_SIZE, Long.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE,
+                DEFAULT_MAX_DELAY, postTaskFactory, service, clock)) {
+
+            var future = queue.add(createBatch(sourceFile1.toString(), "producer1", 0, DEFAULT_MIN_BATCH_SIZE + 1));
+            service.tick(1, TimeUnit.MILLISECONDS);
+            var result = future.get(2, SECONDS);
+
+            // Watermarks reflect the transformed relation, exactly as written by the COPY
+            var rows = result.watermarkRows().stream()
+                    .sorted(Comparator.comparing(row -> row.get(0)))
+                    .toList();
+            assertEquals(List.of(
+                    List.of("category0", "0", "87", "30"),
+                    List.of("category1", "1", "88", "30"),
+                    List.of("category2", "2", "89", "30")), rows);
+            assertEquals(90, result.rowCount());
+            // 'category' is not a partition column, so the relation is materialized once
+            assertTrue(queue.getWatermarkMaterializeNanos() > 0, "materialization should be timed");
+            assertTrue(queue.getWatermarkAggregateNanos() > 0, "the aggregation scan should be timed");
+            assertEquals(0, queue.getWatermarkSinglePassRows(), "the input is read twice");
+            TestUtils.isEqual(
+                    "SELECT * FROM (%s) WHERE id < 90".formatted(sourceData(100)),
+                    "SELECT * FROM read_parquet('%s')".formatted(result.filesCreated().get(0)));
+        }
+    }
+
+    @Test
+    public void testWatermarkGroupedByPartitionComesFromCopyStatistics() throws Exception {
+        var service = new DeterministicScheduler();
+        var clock = new MutableClock(Instant.now(), ZoneId.systemDefault());
+        var spec = new WatermarkSpec("wm", "id", List.of("category"), "min_id", "max_id", "row_count");
+        var postTaskFactory = createPostTaskFactory(new AtomicBoolean(), false, "SELECT * FROM __this WHERE id < 90", spec);
+
+        try (var queue = new ParquetIngestionQueue(
+                TEST_APP_ID, INPUT_FORMAT, targetPath.toString(), "test-queue",
+                DEFAULT_MIN_BATCH_SIZE, Long.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE,
+                DEFAULT_MAX_DELAY, postTaskFactory, service, clock)) {
+
+            var future = queue.add(new Batch<>(null, new String[]{"category"}, sourceFile1.toString(),
+                    "producer1", 0, DEFAULT_MIN_BATCH_SIZE + 1, "parquet", Instant.now()));
+            service.tick(1, TimeUnit.MILLISECONDS);
+            var result = future.get(2, SECONDS);
+
+            var rows = result.watermarkRows().stream()
+                    .sorted(Comparator.comparing(row -> row.get(0)))
+                    .toList();
+            assertEquals(List.of(
+                    List.of("category0", "0", "87", "30"),
+                    List.of("category1", "1", "88", "30"),
+                    List.of("category2", "2", "89", "30")), rows);
+            assertEquals(90, result.rowCount());
+            assertEquals(3, result.filesCreated().size());
+            assertEquals(0, queue.getWatermarkMaterializeNanos(), "the COPY is the only read of the input");
+            assertEquals(0, queue.getWatermarkAggregateNanos(), "no separate aggregation scan");
+            assertTrue(queue.getWatermarkSinglePassNanos() > 0, "the single-pass COPY should be timed");
+            assertEquals(90, queue.getWatermarkSinglePassRows());
+        }
+    }
+
+    @Test
+    public void testPartitionRoutingUsesDeclaredPartitionValues() throws Exception {
+        var service = new DeterministicScheduler();
+        var clock = new MutableClock(Instant.now(), ZoneId.systemDefault());
+        var partitionBy = new String[]{"category"};
+
+        try (var queue = newQueue(createPostTaskFactory(new AtomicBoolean(), false), service, clock)) {
+            queue.setPartitionRouting(true);
+            // No declared values: the batch is not read to find its partition, it stays in the main bucket.
+            queue.add(new Batch<>(null, partitionBy, sourceFile1.toString(), "producer1", 0, 10, "parquet", Instant.now()));
+            assertEquals(0, queue.getRoutedBucketCount());
+
+            queue.add(new Batch<>(null, partitionBy, sourceFile1.toString(), "producer1", 1, 10, "parquet", Instant.now(),
+                    new String[]{"category0"}));
+            queue.add(new Batch<>(null, partitionBy, sourceFile2.toString(), "producer1", 2, 10, "parquet", Instant.now(),
+                    new String[]{"category0"}));
+            assertEquals(1, queue.getRoutedBucketCount(), "batches of one partition share a sub-bucket");
+
+            // Values that do not match the partition columns cannot be routed.
+            queue.add(new Batch<>(null, partitionBy, sourceFile2.toString(), "producer1", 3, 10, "parquet", Instant.now(),
+                    new String[]{"category1", "extra"}));
+            assertEquals(1, queue.getRoutedBucketCount());
+        }
+    }
+
+    @Test
+    public void testOutputIsSortedAndTunedPerQueue() throws Exception {
+        var service = new DeterministicScheduler();
+        var clock = new MutableClock(Instant.now(), ZoneId.systemDefault());
+        var options = new ParquetOutputOptions(List.of("category", "id desc"), 16L, "zstd", 3, null, null);
+        var postTaskFactory = createPostTaskFactory(new AtomicBoolean(), false, null, null, options);
+
+        try (var queue = newQueue(postTaskFactory, service, clock)) {
+            var future = queue.add(createBatch(sourceFile1.toString(), "producer1", 0, DEFAULT_MIN_BATCH_SIZE + 1));
+            service.tick(1, TimeUnit.MILLISECONDS);
+            var result = future.get(2, SECONDS);
+
+            assertEquals(options, result.outputOptions());
+            assertTrue(result.query().contains("ROW_GROUP_SIZE 16, COMPRESSION zstd, COMPRESSION_LEVEL 3"), result.query());
+            var outputFile = result.filesCreated().get(0);
+            try (var conn = ConnectionPool.getConnection();
+                 var stmt = conn.createStatement()) {
+                // Rows come back in sort order, and no two row groups overlap on the leading key.
+                var ids = new ArrayList<Long>();
+                try (var rs = stmt.executeQuery("SELECT category, id FROM read_parquet('%s')".formatted(outputFile))) {
+                    while (rs.next()) {
+                        ids.add(rs.getLong(2));
+                    }
+                }
+                assertEquals(100, ids.size());
+                assertEquals(99, ids.get(0));
+                try (var rs = stmt.executeQuery("""
+                        SELECT count(*) FROM parquet_metadata('%s') a JOIN parquet_metadata('%s') b
+                          ON a.path_in_schema = 'category' AND b.path_in_schema = 'category'
+                         AND a.row_group_id < b.row_group_id AND a.stats_max_value > b.stats_min_value
+                        """.formatted(outputFile, outputFile))) {
+                    rs.next();
+                    assertEquals(0, rs.getLong(1));
+                }
+                try (var rs = stmt.executeQuery("SELECT DISTINCT compression FROM parquet_metadata('%s')".formatted(outputFile))) {
+                    rs.next();
+                    assertEquals("ZSTD", rs.getString(1));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testInMemoryBatchIsWrittenWithoutTempFile() throws Exception {
+        var service = new DeterministicScheduler();
+        var clock = new MutableClock(Instant.now(), ZoneId.systemDefault());
+        var postTaskFactory = createPostTaskFactory(new AtomicBoolean(), false);
+        var store = new InMemoryBatchStore("test-queue", 16 * 1024 * 1024, 1024 * 1024);
+        var spillDir = Files.createDirectories(tempDir.resolve("spill"));
+
+        InMemoryBatchStore.StagedBatch staged;
+        try (var allocator = new RootAllocator();
+             var connection = ConnectionPool.getConnection();
+             var reader = ConnectionPool.getReader(connection, allocator, sourceData(100), 1000)) {
+            staged = store.stage(spillDir, reader);
+        }
+        assertTrue(staged.inMemory());
+
+        try (var queue = new ParquetIngestionQueue(
+                TEST_APP_ID, "arrow", targetPath.toString(), "test-queue",
+                DEFAULT_MIN_BATCH_SIZE, Long.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE,
+                DEFAULT_MAX_DELAY, 1, store, postTaskFactory, service, clock)) {
+
+            var future = queue.add(new Batch<>(null, null, staged.record(), "producer1", 0,
+                    DEFAULT_MIN_BATCH_SIZE + 1, "parquet", Instant.now()));
+            service.tick(1, TimeUnit.MILLISECONDS);
+            var result = future.get(2, SECONDS);
+
+            assertEquals(100, result.rowCount());
+            assertEquals(0, store.getUsedBytes(), "in-memory batch should be released after the COPY");
+            try (var files = Files.list(spillDir)) {
+                assertEquals(0, files.count());
+            }
+            TestUtils.isEqual(
+                    sourceData(100),
+                    "SELECT * FROM read_parquet('%s')".formatted(result.filesCreated().get(0)));
+        }
+    }
+
     // Helper methods
 
+    @Test
+    public void testJournaledBatchIsReplayedAfterRestart() throws Exception {
+        var service = new DeterministicScheduler();
+        var clock = new MutableClock(Instant.now(), ZoneId.systemDefault());
+        var spoolDir = Files.createDirectories(tempDir.resolve("spool"));
+        var input = Files.copy(sourceFile1, spoolDir.resolve("input.parquet"));
+        var postTaskExecuted = new AtomicBoolean(false);
+
+        // First run: the batch is accepted, then the queue shuts down before it is written.
+        var queue = newQueue(createPostTaskFactory(postTaskExecuted, false), service, clock);
+        queue.setJournal(IngestionJournal.open(spoolDir));
+        var abandoned = queue.add(createBatch(input.toString(), "producer1", 0, 150));
+        queue.close();
+        assertThrows(Exception.class, () -> abandoned.get(2, SECONDS));
+        assertTrue(Files.exists(input), "an abandoned journaled batch keeps its input");
+        assertFalse(postTaskExecuted.get());
+
+        // Second run: the journal replays the batch, and sequence tracking covers it.
+        try (var restarted = newQueue(createPostTaskFactory(postTaskExecuted, false), service, clock);
+             var journal = IngestionJournal.open(spoolDir)) {
+            restarted.setJournal(journal);
+            assertEquals(1, journal.liveCount());
+            var retry = restarted.add(createBatch(sourceFile2.toString(), "producer1", 0, 150));
+            assertThrows(Exception.class, () -> retry.get(2, SECONDS), "a retry of the replayed batch is a duplicate");
+
+            clock.advanceBy(DEFAULT_MAX_DELAY.plusMillis(10));
+            service.tick(DEFAULT_MAX_DELAY.toMillis() + 10, TimeUnit.MILLISECONDS);
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (journal.liveCount() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(postTaskExecuted.get());
+            assertEquals(0, journal.liveCount());
+            assertEquals(100, countRows(targetPath));
+        }
+    }
+
+    @Test
+    public void testAcknowledgedBatchIsKeptAndRetriedAfterFailedCommit() throws Exception {
+        var service = new DeterministicScheduler();
+        var clock = new MutableClock(Instant.now(), ZoneId.systemDefault());
+        var spoolDir = Files.createDirectories(tempDir.resolve("spool"));
+        var input = Files.copy(sourceFile1, spoolDir.resolve("input.parquet"));
+
+        var failures = new AtomicInteger();
+
+        try (var queue = newQueue(failingOnceHandler(failures), service, clock);
+             var journal = IngestionJournal.open(spoolDir)) {
+            assertThrows(IllegalStateException.class,
+                    () -> queue.addAcknowledged(createBatch(input.toString(), "producer1", 0, DEFAULT_MIN_BATCH_SIZE + 1)),
+                    "an acknowledged batch needs the journal to survive a failure");
+            queue.setJournal(journal);
+
+            var result = queue.addAcknowledged(createBatch(input.toString(), "producer1", 0, DEFAULT_MIN_BATCH_SIZE + 1));
+            service.tick(1, TimeUnit.MILLISECONDS);
+            long failDeadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (failures.get() == 0 && System.nanoTime() < failDeadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, failures.get());
+            assertFalse(result.isDone(), "the failed write is retried instead of failing the batch");
+            assertTrue(Files.exists(input), "the failed acknowledged batch keeps its input");
+            assertEquals(1, journal.liveCount(), "the failed acknowledged batch stays journaled");
+
+            // The retry is re-queued after a delay and bypasses the producer's sequence.
+            long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+            while (!result.isDone() && System.nanoTime() < deadline) {
+                service.tick(1, TimeUnit.MILLISECONDS);
+                Thread.sleep(10);
+            }
+            assertNotNull(result.get(1, SECONDS));
+            assertEquals(0, journal.liveCount());
+            assertFalse(Files.exists(input));
+            assertEquals(100, countRows(targetPath), "the failed attempt's files must not be left behind");
+        }
+    }
+
+    @Test
+    public void testReplayedBatchIsKeptAndRetriedAfterFailedCommit() throws Exception {
+        var service = new DeterministicScheduler();
+        var clock = new MutableClock(Instant.now(), ZoneId.systemDefault());
+        var spoolDir = Files.createDirectories(tempDir.resolve("spool"));
+        var input = Files.copy(sourceFile1, spoolDir.resolve("input.parquet"));
+
+        var queue = newQueue(createPostTaskFactory(new AtomicBoolean(), false), service, clock);
+        queue.setJournal(IngestionJournal.open(spoolDir));
+        var abandoned = queue.add(createBatch(input.toString(), "producer1", 0, 150));
+        queue.close();
+        assertThrows(Exception.class, () -> abandoned.get(2, SECONDS));
+
+        // The replayed batch's first commit fails: it must stay journaled and be written again.
+        var failures = new AtomicInteger();
+        try (var restarted = newQueue(failingOnceHandler(failures), service, clock);
+             var journal = IngestionJournal.open(spoolDir)) {
+            restarted.setJournal(journal);
+            assertThrows(IllegalStateException.class, () -> restarted.setJournal(journal));
+
+            clock.advanceBy(DEFAULT_MAX_DELAY.plusMillis(10));
+            service.tick(DEFAULT_MAX_DELAY.toMillis() + 10, TimeUnit.MILLISECONDS);
+            long failDeadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (failures.get() == 0 && System.nanoTime() < failDeadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, failures.get());
+            assertTrue(Files.exists(input), "the failed replayed batch keeps its input");
+            assertEquals(1, journal.liveCount(), "the failed replayed batch stays journaled");
+
+            long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+            while (journal.liveCount() > 0 && System.nanoTime() < deadline) {
+                clock.advanceBy(DEFAULT_MAX_DELAY.plusMillis(10));
+                service.tick(DEFAULT_MAX_DELAY.toMillis() + 10, TimeUnit.MILLISECONDS);
+                Thread.sleep(10);
+            }
+            assertEquals(0, journal.liveCount());
+            assertEquals(100, countRows(targetPath));
+        }
+    }
+
+    /** A handler whose post-ingestion task (e.g. a DuckLake catalog commit) fails on the first write only. */
+    private static IngestionHandler failingOnceHandler(AtomicInteger failures) {
+        var failNext = new AtomicBoolean(true);
+        return new IngestionHandler() {
+            @Override
+            public PostIngestionTask createPostIngestionTask(IngestionResult ingestionResult) {
+                return () -> {
+                    if (failNext.getAndSet(false)) {
+                        failures.incrementAndGet();
+                        throw new RuntimeException("catalog commit failed");
+                    }
+                };
+            }
+
+            @Override
+            public String getTargetPath(String queueId) { return null; }
+
+            @Override
+            public String[] getPartitionBy(String queueId) { return new String[0]; }
+        };
+    }
+
+    private ParquetIngestionQueue newQueue(IngestionHandler handler, DeterministicScheduler service, MutableClock clock) {
+        return new ParquetIngestionQueue(TEST_APP_ID, INPUT_FORMAT, targetPath.toString(), "test-queue",
+                DEFAULT_MIN_BATCH_SIZE, Long.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE, DEFAULT_MAX_DELAY,
+                handler, service, clock);
+    }
+
+    private static long countRows(Path dir) throws Exception {
+        try (var conn = ConnectionPool.getConnection();
+             var stmt = conn.createStatement();
+             var rs = stmt.executeQuery("SELECT count(*) FROM read_parquet('%s/*.parquet')".formatted(dir))) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
     private Path createTestParquetFile(String filename, int rowCount) throws Exception {
         Path file = tempDir.resolve(filename);
 
@@ -630,6 +961,17 @@ public class ParquetIngestionQueueTest {
 
     private IngestionHandler createPostTaskFactory(AtomicBoolean executed, boolean shouldFail,
                                                    String transformation) {
+        return createPostTaskFactory(executed, shouldFail, transformation, null);
+    }
+
+    private IngestionHandler createPostTaskFactory(AtomicBoolean executed, boolean shouldFail,
+                                                   String transformation, WatermarkSpec watermarkSpec) {
+        return createPostTaskFactory(executed, shouldFail, transformation, watermarkSpec, ParquetOutputOptions.DEFAULT);
+    }
+
+    private IngestionHandler createPostTaskFactory(AtomicBoolean executed, boolean shouldFail,
+                                                   String transformation, WatermarkSpec watermarkSpec,
+                                                   ParquetOutputOptions outputOptions) {
         return new IngestionHandler() {
             @Override
             public PostIngestionTask createPostIngestionTask(IngestionResult ingestionResult) {
@@ -652,6 +994,12 @@ public class ParquetIngestionQueueTest {
 
             @Override
             public String getTransformation(String queueId) { return transformation; }
+
+            @Override
+            public WatermarkSpec getWatermarkSpec(String queueId) { return watermarkSpec; }
+
+            @Override
+            public ParquetOutputOptions getOutputOptions(String queueId) { return outputOptions; }
         };
     }
 }
@@ -0,0 +1,50 @@
+package io.dazzleduck.sql.commons.ingestion;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ParquetOutputOptionsTest {
+
+    @Test
+    void absentKeysParseToDefault() {
+        assertSame(ParquetOutputOptions.DEFAULT, ParquetOutputOptions.fromParameters("q", null));
+        assertSame(ParquetOutputOptions.DEFAULT, ParquetOutputOptions.fromParameters("q", Map.of("unrelated_key", "x")));
+        assertEquals("", ParquetOutputOptions.DEFAULT.copyOptions());
+        assertEquals("", ParquetOutputOptions.DEFAULT.orderByClause());
+    }
+
+    @Test
+    void parsesAllKeys() {
+        var options = ParquetOutputOptions.fromParameters("q", Map.of(
+                ParquetOutputOptions.SORT_BY_KEY, "[tenant, ts DESC]",
+                ParquetOutputOptions.ROW_GROUP_SIZE_KEY, "65536",
+                ParquetOutputOptions.COMPRESSION_KEY, "ZSTD",
+                ParquetOutputOptions.COMPRESSION_LEVEL_KEY, "9",
+                ParquetOutputOptions.DICTIONARY_SIZE_LIMIT_KEY, "1048576",
+                ParquetOutputOptions.BLOOM_FILTER_FPR_KEY, "0.01"));
+        assertEquals(List.of("tenant", "ts DESC"), options.sortBy());
+        assertEquals("\"tenant\", \"ts\" DESC", options.orderByClause());
+        assertEquals(", ROW_GROUP_SIZE 65536, COMPRESSION zstd, COMPRESSION_LEVEL 9, DICTIONARY_SIZE_LIMIT 1048576,"
+                + " BLOOM_FILTER_FALSE_POSITIVE_RATIO 0.01", options.copyOptions());
+    }
+
+    @Test
+    void rejectsMalformedValuesAndTypos() {
+        assertThrows(IllegalArgumentException.class, () -> ParquetOutputOptions.fromParameters("q",
+                Map.of(ParquetOutputOptions.SORT_BY_KEY, "ts sideways")));
+        assertThrows(IllegalArgumentException.class, () -> ParquetOutputOptions.fromParameters("q",
+                Map.of(ParquetOutputOptions.ROW_GROUP_SIZE_KEY, "0")));
+        assertThrows(IllegalArgumentException.class, () -> ParquetOutputOptions.fromParameters("q",
+                Map.of(ParquetOutputOptions.COMPRESSION_KEY, "lzo")));
+        assertThrows(IllegalArgumentException.class, () -> ParquetOutputOptions.fromParameters("q",
+                Map.of(ParquetOutputOptions.BLOOM_FILTER_FPR_KEY, "1.5")));
+        assertThrows(IllegalArgumentException.class, () -> ParquetOutputOptions.fromParameters("q",
+                Map.of("parquet_row_groupsize", "1000")));
+    }
+}
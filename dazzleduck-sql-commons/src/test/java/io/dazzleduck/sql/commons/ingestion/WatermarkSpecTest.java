@@ -133,6 +133,43 @@ class WatermarkSpecTest {
         }
     }
 
+    @Test
+    void fileStatsOfPartitionedCopyGiveTheSameRows() throws Exception {
+        WatermarkSpec spec = new WatermarkSpec("wm", "ts", List.of("STATE"), "min_ts", "max_ts", "row_count");
+        assertTrue(spec.computableFromFileStats(new String[]{"state"}));
+        assertFalse(spec.computableFromFileStats(new String[]{"county"}));
+        assertFalse(spec.computableFromFileStats(new String[]{"state", "ts"}));
+        try (Connection conn = ConnectionPool.getConnection()) {
+            // Two COPYs append to 'wa', so its group spans two files.
+            List<WatermarkSpec.FileStats> files = new java.util.ArrayList<>();
+            files.addAll(copyWithStats(conn, "('king','wa',TIMESTAMP '2026-08-01 03:00'),"
+                    + "('cook','il',TIMESTAMP '2026-08-02 05:00'),"
+                    + "('clark','nv',NULL::TIMESTAMP)"));
+            files.addAll(copyWithStats(conn, "('king','wa',TIMESTAMP '2026-08-01 01:00'),"
+                    + "('pierce','wa',TIMESTAMP '2026-08-01 02:00')"));
+            List<List<String>> rows = spec.rowsFromFileStats(conn, files);
+            rows.sort(java.util.Comparator.comparing(r -> r.get(0)));
+            assertEquals(List.of(
+                    List.of("il", "2026-08-02 05:00:00", "2026-08-02 05:00:00", "1"),
+                    Arrays.asList("nv", null, null, "1"),
+                    List.of("wa", "2026-08-01 01:00:00", "2026-08-01 03:00:00", "3")), rows);
+        }
+    }
+
+    private List<WatermarkSpec.FileStats> copyWithStats(Connection conn, String values) throws Exception {
+        List<WatermarkSpec.FileStats> files = new java.util.ArrayList<>();
+        try (var statement = conn.createStatement()) {
+            statement.execute("COPY (SELECT * FROM (VALUES %s) AS t(county, state, ts)) TO '%s' (FORMAT parquet, PARTITION_BY(state), RETURN_STATS, APPEND)"
+                    .formatted(values, tempDir.resolve("stats")));
+            try (var resultSet = statement.getResultSet()) {
+                while (resultSet.next()) {
+                    files.add(WatermarkSpec.FileStats.read(resultSet));
+                }
+            }
+        }
+        return files;
+    }
+
     // ------------------------------------------------------------------ rendering
 
     @Test
@@ -0,0 +1,112 @@
+package io.dazzleduck.sql.commons.planner;
+
+import io.dazzleduck.sql.commons.ConnectionPool;
+import io.dazzleduck.sql.commons.Transformations;
+import org.duckdb.DuckDBConnection;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+public class PartialAggregationTest {
+
+    private static DuckDBConnection connection;
+    private static Set<String> aggregates;
+
+    @BeforeAll
+    static void setup() throws SQLException {
+        connection = ConnectionPool.getConnection();
+        aggregates = SplitPlanner.aggregateFunctionNames(connection);
+        ConnectionPool.executeBatch(connection, new String[]{
+                "CREATE TEMP TABLE part_a AS SELECT range AS id, range % 7 AS k, range * 1.5 AS x, " +
+                        "CASE WHEN range % 5 = 0 THEN NULL ELSE range END AS y FROM range(0, 1000)",
+                "CREATE TEMP TABLE part_b AS SELECT range AS id, range % 11 AS k, range * 0.5 AS x, " +
+                        "NULL::BIGINT AS y FROM range(1000, 1500)"});
+    }
+
+    @AfterAll
+    static void cleanup() throws SQLException {
+        connection.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "SELECT count(*) FROM t",
+            "SELECT k, count(*) AS c, sum(x), min(id), max(y), avg(x) FROM t GROUP BY k",
+            "SELECT k, count(y), avg(y) FROM t WHERE id > 100 GROUP BY k HAVING count(*) > 10",
+            "SELECT k + 1, count(*) FROM t GROUP BY 1",
+            "SELECT k, sum(x) AS s FROM t GROUP BY k ORDER BY s DESC LIMIT 3",
+            "SELECT k % 2, avg(x) * 2 FROM t GROUP BY k % 2 ORDER BY 1",
+            "SELECT count(*) FILTER (WHERE y IS NULL), max(DISTINCT k) FROM t",
+            "SELECT k FROM t GROUP BY k ORDER BY k"})
+    public void finalPhaseOverPartialsMatchesTheQuery(String sql) throws Exception {
+        var plan = PartialAggregation.plan(connection, Transformations.parseToTree(connection, sql), aggregates);
+        Assertions.assertTrue(plan.isPresent(), sql);
+        var partialSql = Transformations.parseToSql(connection, plan.get().partialTree());
+        ConnectionPool.executeBatch(connection, new String[]{
+                "CREATE OR REPLACE TEMP VIEW t AS FROM part_a",
+                "CREATE OR REPLACE TEMP TABLE " + PartialAggregation.PARTIALS_TABLE + " AS " + partialSql,
+                "CREATE OR REPLACE TEMP VIEW t AS FROM part_b",
+                "INSERT INTO " + PartialAggregation.PARTIALS_TABLE + " " + partialSql,
+                "CREATE OR REPLACE TEMP VIEW t AS FROM part_a UNION ALL FROM part_b"});
+        var merged = rows(Transformations.parseToSql(connection, plan.get().finalTree()));
+        var expected = rows(sql);
+        Assertions.assertEquals(expected.get(0), merged.get(0), "column names of " + sql);
+        if (sql.contains("ORDER BY")) {
+            Assertions.assertEquals(expected, merged, sql);
+        } else {
+            Assertions.assertEquals(expected.stream().sorted().toList(), merged.stream().sorted().toList(), sql);
+        }
+    }
+
+    @Test
+    public void queriesThatCannotBeDecomposed() throws Exception {
+        for (String sql : new String[]{
+                "SELECT a FROM t",
+                "SELECT count(DISTINCT a) FROM t",
+                "SELECT approx_count_distinct(a) FROM t",
+                "SELECT median(a) FROM t",
+                "SELECT string_agg(a ORDER BY b) FROM t",
+                "SELECT DISTINCT a, count(*) FROM t GROUP BY a",
+                "SELECT a, b, count(*) FROM t GROUP BY ROLLUP (a, b)",
+                "SELECT a, count(*) FROM t GROUP BY ALL",
+                "SELECT a, b, count(*) FROM t GROUP BY a",
+                "SELECT a, sum(count(*)) OVER () FROM t GROUP BY a",
+                "SELECT a AS b, count(*) FROM t GROUP BY b",
+                "SELECT count(*) FROM t WHERE a IN (SELECT a FROM u)"}) {
+            Assertions.assertTrue(PartialAggregation.plan(connection,
+                    Transformations.parseToTree(connection, sql), aggregates).isEmpty(), sql);
+        }
+    }
+
+    /** The column names followed by one string per row. */
+    private static List<String> rows(String sql) throws SQLException {
+        var result = new ArrayList<String>();
+        try (var statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            var metadata = resultSet.getMetaData();
+            var names = new StringBuilder();
+            for (int i = 1; i <= metadata.getColumnCount(); i++) {
+                names.append(metadata.getColumnName(i)).append('|');
+            }
+            result.add(names.toString());
+            while (resultSet.next()) {
+                var row = new StringBuilder();
+                for (int i = 1; i <= metadata.getColumnCount(); i++) {
+                    var value = resultSet.getObject(i);
+                    row.append(value instanceof Double d ? String.format("%.6f", d) : value).append('|');
+                }
+                result.add(row.toString());
+            }
+        }
+        return result;
+    }
+}
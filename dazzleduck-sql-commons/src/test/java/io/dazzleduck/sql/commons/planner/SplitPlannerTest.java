@@ -1,11 +1,19 @@
 package io.dazzleduck.sql.commons.planner;
 
+import io.dazzleduck.sql.commons.ConnectionPool;
+import io.dazzleduck.sql.commons.FileStatus;
 import io.dazzleduck.sql.commons.Transformations;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 
 import static io.dazzleduck.sql.commons.util.TestConstants.SUPPORTED_DELTA_PATH_QUERY;
 import static io.dazzleduck.sql.commons.util.TestConstants.SUPPORTED_HIVE_PATH_QUERY;
@@ -25,4 +33,120 @@ public class SplitPlannerTest {
         Assertions.assertEquals(1, splits.size());
         Assertions.assertEquals(5378, splits.get(0).size());
     }
+
+    @Test
+    public void testConcatenableShapes() throws SQLException, IOException {
+        Set<String> aggregates;
+        try (var connection = ConnectionPool.getConnection()) {
+            aggregates = SplitPlanner.aggregateFunctionNames(connection);
+        }
+        Assertions.assertTrue(aggregates.containsAll(Set.of("sum", "count_star", "min")));
+
+        Assertions.assertTrue(SplitPlanner.isConcatenable(
+                Transformations.parseToTree("SELECT a, upper(b) FROM t WHERE x > 1"), aggregates));
+        for (String sql : new String[]{
+                "SELECT count(*) FROM t",
+                "SELECT a, sum(x) FROM t GROUP BY a",
+                "SELECT DISTINCT a FROM t",
+                "SELECT a FROM t ORDER BY a",
+                "SELECT a FROM t LIMIT 10",
+                "SELECT a, sum(x) OVER () FROM t",
+                "SELECT a FROM t WHERE a IN (SELECT a FROM u)",
+                "SELECT a FROM t QUALIFY row_number() OVER () = 1",
+                "SELECT a FROM t; SELECT b FROM t"}) {
+            Assertions.assertFalse(SplitPlanner.isConcatenable(Transformations.parseToTree(sql), aggregates), sql);
+        }
+    }
+
+    @Test
+    public void testBalanceEvensOutSplits() {
+        var files = new ArrayList<FileStatus>();
+        files.add(new FileStatus("big", 900L, 0L));
+        for (int i = 0; i < 9; i++) {
+            files.add(new FileStatus("small-" + i, 100L, 0L));
+        }
+        // 1800 bytes in splits of at most 1000: two splits of 900, not 1000 and 800.
+        var splits = SplitPlanner.balance(files, 1000, 1);
+        Assertions.assertEquals(2, splits.size());
+        for (var split : splits) {
+            Assertions.assertEquals(900, split.stream().mapToLong(FileStatus::size).sum());
+        }
+        Assertions.assertEquals(List.of(files.get(0)), splits.get(0));
+
+        // Rounded up to a multiple of the workers, at most one split per file.
+        Assertions.assertEquals(4, SplitPlanner.balance(files, 1000, 4).size());
+        Assertions.assertEquals(10, SplitPlanner.balance(files, 1, 4).size());
+        Assertions.assertEquals(1, SplitPlanner.balance(files, 10_000, 4).size());
+        Assertions.assertTrue(SplitPlanner.balance(List.of(), 1000, 4).isEmpty());
+    }
+
+    @Test
+    public void testBalanceWeighsRowCounts() {
+        // Same size, but the second file holds as many rows as the other three together, so it
+        // costs twice as much: by size alone this would be two splits of two files.
+        var files = List.of(
+                new FileStatus("a", 100L, 0L, 10L),
+                new FileStatus("dense", 100L, 0L, 30L),
+                new FileStatus("b", 100L, 0L, 10L),
+                new FileStatus("c", 100L, 0L, 10L));
+        var splits = SplitPlanner.balance(files, 200, 1);
+        Assertions.assertEquals(3, splits.size());
+        Assertions.assertTrue(splits.contains(List.of(files.get(1))), splits.toString());
+    }
+
+    @Test
+    public void testSplitLargeParquetByRowGroups(@TempDir Path dir) throws SQLException, IOException {
+        var big = dir.resolve("big.parquet");
+        var small = dir.resolve("small.parquet");
+        try (var connection = ConnectionPool.getConnection()) {
+            ConnectionPool.executeBatch(connection, new String[]{
+                    "COPY (SELECT range AS id, range %% 7 AS k FROM range(0, 100000)) TO '%s' (ROW_GROUP_SIZE 10240)".formatted(big),
+                    "COPY (SELECT range AS id, range %% 7 AS k FROM range(100000, 100100)) TO '%s'".formatted(small)});
+        }
+        var files = List.of(new FileStatus(big.toString(), Files.size(big), 0L),
+                new FileStatus(small.toString(), Files.size(small), 0L));
+        var splitSize = Files.size(big) / 4;
+        var from = "FROM (FROM (VALUES(NULL::BIGINT, NULL::BIGINT)) t(id, k) WHERE false " +
+                "UNION ALL BY NAME FROM read_parquet('%s/*.parquet'))".formatted(dir);
+        var sql = "SELECT count(*), sum(id) " + from;
+        var splits = splits(sql, files, splitSize);
+        Assertions.assertTrue(splits.size() > 2, splits.toString());
+        var ranges = splits.stream().flatMap(List::stream).filter(FileStatus::isRowRange).toList();
+        Assertions.assertEquals(100000, ranges.stream().mapToLong(FileStatus::rowCount).sum());
+        Assertions.assertEquals(List.of(100100L, 5009954950L), sumOfSplits(sql, splits));
+
+        // Only the last row group of the large file holds ids from 92160 on.
+        var filtered = sql + " WHERE id >= 92160";
+        var prunedSplits = splits(filtered, files, splitSize);
+        var prunedRanges = prunedSplits.stream().flatMap(List::stream).filter(FileStatus::isRowRange).toList();
+        Assertions.assertEquals(1, prunedRanges.size(), prunedRanges.toString());
+        Assertions.assertEquals(92160L, prunedRanges.get(0).firstRow());
+        Assertions.assertEquals(7840L, prunedRanges.get(0).rowCount());
+        Assertions.assertEquals(List.of(7940L, 763268230L), sumOfSplits(filtered, prunedSplits));
+    }
+
+    private static List<List<FileStatus>> splits(String sql, List<FileStatus> files, long splitSize)
+            throws SQLException, IOException {
+        var where = Transformations.getWhereClauseForTableFunction(
+                Transformations.getFirstStatementNode(Transformations.parseToTree(sql)));
+        return SplitPlanner.balance(ParquetRowGroups.divide(files, splitSize, where), splitSize, 1);
+    }
+
+    /** Runs the query over every split and adds up their {@code count, sum} results. */
+    private static List<Long> sumOfSplits(String sql, List<List<FileStatus>> splits) throws SQLException, IOException {
+        var tree = Transformations.parseToTree(sql);
+        long count = 0;
+        long sum = 0;
+        try (var connection = ConnectionPool.getConnection()) {
+            for (var split : splits) {
+                try (var statement = connection.createStatement();
+                     var resultSet = statement.executeQuery(Transformations.parseToSql(SplitPlanner.getSplitTree(tree, split).tree()))) {
+                    resultSet.next();
+                    count += resultSet.getLong(1);
+                    sum += resultSet.getLong(2);
+                }
+            }
+        }
+        return List.of(count, sum);
+    }
 }
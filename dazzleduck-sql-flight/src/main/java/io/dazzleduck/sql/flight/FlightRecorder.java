@@ -72,6 +72,23 @@ public interface FlightRecorder {
 
     void recordGetStreamStatement(long size);
 
+    /**
+     * Records the time a result stream spent waiting for its client to accept more data. Called
+     * once per stream; streams that never waited report zero.
+     */
+    default void recordStreamBlocked(boolean preparedStatement, long blockedNanos) {}
+
+    /**
+     * Records how long a query waited between submission and the start of its execution (thread
+     * hand-off plus waiting for an execution permit). Called once per query.
+     */
+    default void recordQueueDelay(boolean preparedStatement, long queueDelayNanos) {}
+
+    /** Total time result streams have spent waiting for slow clients, in milliseconds. */
+    default long getStreamBlockedMillis() {
+        return 0;
+    }
+
 
     /**
      * Pairs of count and total-time suppliers for registering a FunctionTimer.
@@ -1,5 +1,12 @@
 package io.dazzleduck.sql.flight;
 
+import io.dazzleduck.sql.common.auth.VerifiedTokenCache;
+import io.dazzleduck.sql.commons.SqlTextCache;
+import io.dazzleduck.sql.commons.Transformations;
+import io.dazzleduck.sql.commons.authorization.AuthorizationPlanCache;
+import io.dazzleduck.sql.commons.authorization.RedirectAuthorizer;
+import io.dazzleduck.sql.commons.authorization.ResolveResponseCache;
+import io.dazzleduck.sql.commons.ingestion.DuckLakeCatalogCommitter;
 import io.dazzleduck.sql.flight.model.StatementAudit;
 import io.dazzleduck.sql.flight.server.DuckDBFlightSqlProducer.CacheKey;
 import io.dazzleduck.sql.flight.server.StatementContext;
@@ -54,6 +61,10 @@ public class MicroMeterFlightRecorder implements FlightRecorder {
     // Byte transfer metrics
     private final LongAdder statementBytesOut = new LongAdder();
     private final LongAdder preparedStatementBytesOut = new LongAdder();
+    private final LongAdder blockedStreamCount = new LongAdder();
+    private final LongAdder streamBlockedNanos = new LongAdder();
+    private final Timer statementQueueDelay;
+    private final Timer preparedStatementQueueDelay;
     private final LongAdder ingestBytesIn = new LongAdder();
 
     // Ingest counters
@@ -117,12 +128,30 @@ public class MicroMeterFlightRecorder implements FlightRecorder {
 
         registerAdder("stream_statement_bytes_out", statementBytesOut);
         registerAdder("stream_prepared_statement_bytes_out", preparedStatementBytesOut);
+        FunctionTimer.builder("dazzleduck.flight.stream_blocked", this,
+                        r -> r.blockedStreamCount.sum(),
+                        r -> r.streamBlockedNanos.sum(),
+                        TimeUnit.NANOSECONDS)
+                .description("Time result streams spent waiting for slow clients to accept data")
+                .register(registry);
+        statementQueueDelay = Timer.builder("dazzleduck.flight.stream_statement_queue_delay")
+                .description("Time statements waited before DuckDB started executing them")
+                .register(registry);
+        preparedStatementQueueDelay = Timer.builder("dazzleduck.flight.stream_prepared_statement_queue_delay")
+                .description("Time prepared statements waited before DuckDB started executing them")
+                .register(registry);
         registerAdder("ingest_bytes_in", ingestBytesIn);
         registerAdder("ingest_requests", ingestRequestCount);
         registerAdder("ingest_errors", ingestErrorCount);
         registerAdder("queue_created", queueCreatedCount);
         registerAdder("queue_refreshed", queueRefreshedCount);
         registerAdder("queue_deleted", queueDeletedCount);
+        registerSqlTextCache("sql_parse_cache", Transformations.parseCache());
+        registerSqlTextCache("sql_deparse_cache", Transformations.deparseCache());
+        registerSqlTextCache("authorization_plan_cache", AuthorizationPlanCache.cache());
+        registerResolveResponseCache(RedirectAuthorizer.INSTANCE.resolveResponseCache());
+        registerVerifiedTokenCache();
+        registerCatalogCommitters();
 
         logger.info("MicroMeterFlightRecorder initialized for producer '{}'", producerId);
     }
@@ -172,6 +201,77 @@ public class MicroMeterFlightRecorder implements FlightRecorder {
                 .register(registry);
     }
 
+    /**
+     * Registers the hits and misses of a SQL text cache, and the time its hits saved by not
+     * loading their value again.
+     */
+    private void registerSqlTextCache(String name, SqlTextCache<?, ?> cache) {
+        FunctionCounter.builder("dazzleduck.flight." + name + ".hits", cache, SqlTextCache::hits)
+                .description("Lookups served by " + name)
+                .register(registry);
+        FunctionCounter.builder("dazzleduck.flight." + name + ".misses", cache, SqlTextCache::misses)
+                .description("Lookups that went through DuckDB for " + name)
+                .register(registry);
+        FunctionCounter.builder("dazzleduck.flight." + name + ".time_saved", cache,
+                        c -> c.savedNanos() / (double) TimeUnit.SECONDS.toNanos(1))
+                .baseUnit("seconds")
+                .description("Time the hits of " + name + " would have spent in DuckDB")
+                .register(registry);
+    }
+
+    /**
+     * Registers the lookups of the resolve response cache of redirect authorization and the
+     * latency of the calls it makes to the resolve endpoint.
+     */
+    private void registerResolveResponseCache(ResolveResponseCache cache) {
+        String name = "dazzleduck.flight.resolve_cache";
+        FunctionCounter.builder(name + ".hits", cache, ResolveResponseCache::hits)
+                .description("Resolve lookups served from the cache")
+                .register(registry);
+        FunctionCounter.builder(name + ".misses", cache, ResolveResponseCache::misses)
+                .description("Resolve lookups that waited for the resolve endpoint")
+                .register(registry);
+        FunctionCounter.builder(name + ".stale_hits", cache, ResolveResponseCache::staleHits)
+                .description("Resolve lookups served an expired response because resolving failed")
+                .register(registry);
+        FunctionCounter.builder(name + ".refreshes", cache, ResolveResponseCache::refreshes)
+                .description("Resolve responses refreshed in the background before expiring")
+                .register(registry);
+        FunctionCounter.builder(name + ".failures", cache, ResolveResponseCache::failures)
+                .description("Calls to the resolve endpoint that failed or were refused")
+                .register(registry);
+        FunctionTimer.builder(name + ".resolve", cache,
+                        ResolveResponseCache::resolves,
+                        ResolveResponseCache::resolveNanos,
+                        TimeUnit.NANOSECONDS)
+                .description("Latency of calls to the resolve endpoint")
+                .register(registry);
+    }
+
+    /** Registers the group commits of the DuckLake catalog committers of the process. */
+    private void registerCatalogCommitters() {
+        String name = "dazzleduck.flight.catalog_commit";
+        FunctionCounter.builder(name + ".transactions", this, r -> DuckLakeCatalogCommitter.totalTransactions())
+                .description("DuckLake catalog transactions committed by the group committers")
+                .register(registry);
+        FunctionCounter.builder(name + ".registrations", this, r -> DuckLakeCatalogCommitter.totalRegistrations())
+                .description("Bucket registrations committed by the group committers; divided by transactions, the group size")
+                .register(registry);
+    }
+
+    private void registerVerifiedTokenCache() {
+        String name = "dazzleduck.flight.jwt_cache";
+        FunctionCounter.builder(name + ".hits", this, r -> VerifiedTokenCache.totalHits())
+                .description("Bearer tokens served from the verified token cache")
+                .register(registry);
+        FunctionCounter.builder(name + ".misses", this, r -> VerifiedTokenCache.totalMisses())
+                .description("Bearer tokens parsed and verified because they were not cached")
+                .register(registry);
+        Gauge.builder(name + ".hit_ratio", this, r -> VerifiedTokenCache.totalHitRatio())
+                .description("Share of bearer tokens served from the verified token cache")
+                .register(registry);
+    }
+
     // ---------------------------------------------------------------------------
     // Recording Methods - Statement Lifecycle with Audit Trail
     // ---------------------------------------------------------------------------
@@ -276,6 +376,25 @@ public class MicroMeterFlightRecorder implements FlightRecorder {
         }
     }
 
+    @Override
+    public void recordStreamBlocked(boolean preparedStatement, long blockedNanos) {
+        if (blockedNanos > 0) {
+            blockedStreamCount.increment();
+            streamBlockedNanos.add(blockedNanos);
+        }
+    }
+
+    @Override
+    public void recordQueueDelay(boolean preparedStatement, long queueDelayNanos) {
+        (preparedStatement ? preparedStatementQueueDelay : statementQueueDelay)
+                .record(queueDelayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public long getStreamBlockedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(streamBlockedNanos.sum());
+    }
+
     // ---------------------------------------------------------------------------
     // Write Queue Registration
     // ---------------------------------------------------------------------------
@@ -494,6 +613,7 @@ public class MicroMeterFlightRecorder implements FlightRecorder {
                 ctx.startTime(),
                 ctx.endTime(),
                 ctx.bytesOut(),
+                TimeUnit.NANOSECONDS.toMillis(ctx.queueDelayNanos()),
                 error
         );
     }
@@ -4,6 +4,7 @@ import io.dazzleduck.sql.flight.server.DuckDBFlightSqlProducer.CacheKey;
 import io.dazzleduck.sql.flight.server.StatementContext;
 
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.function.LongSupplier;
 
@@ -36,6 +37,7 @@ public class SimpleFlightRecorder implements FlightRecorder {
 
     // Byte counters
     private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder streamBlockedNanos = new LongAdder();
     private final LongAdder bytesIn = new LongAdder();
     private final LongAdder ingestRequests = new LongAdder();
     private final LongAdder ingestErrors = new LongAdder();
@@ -131,6 +133,18 @@ public class SimpleFlightRecorder implements FlightRecorder {
         }
     }
 
+    @Override
+    public void recordStreamBlocked(boolean preparedStatement, long blockedNanos) {
+        if (blockedNanos > 0) {
+            streamBlockedNanos.add(blockedNanos);
+        }
+    }
+
+    @Override
+    public long getStreamBlockedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(streamBlockedNanos.sum());
+    }
+
     @Override
     public void registerWriteQueue(String identifier, Map<String, LongSupplier> counters,
                                    Map<String, LongSupplier> gauges, Map<String, WriteTimerSuppliers> timers) {
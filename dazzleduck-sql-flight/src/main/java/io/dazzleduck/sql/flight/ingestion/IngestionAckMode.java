@@ -0,0 +1,33 @@
+package io.dazzleduck.sql.flight.ingestion;
+
+import java.util.Locale;
+
+/**
+ * When a bulk-ingest request is acknowledged to the client.
+ *
+ * <ul>
+ *   <li>{@link #COMMIT} — after the bucket holding the batch is written and committed (default).
+ *       A successful ack means the data is queryable.</li>
+ *   <li>{@link #SPOOL} — as soon as the batch is validated, fsynced to the queue's spool
+ *       directory and accepted by the queue. The request no longer waits for the commit, so
+ *       the handler is released immediately. Requires the durable journal: a failed write keeps
+ *       the spooled batch and is retried, and a batch that still fails is replayed on the next
+ *       start, so an acknowledged batch is written at least once.</li>
+ * </ul>
+ */
+public enum IngestionAckMode {
+    COMMIT,
+    SPOOL;
+
+    /** Parses a header/option value; {@code null} or blank means {@link #COMMIT}. */
+    public static IngestionAckMode parse(String value) {
+        if (value == null || value.isBlank()) {
+            return COMMIT;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid ack mode '" + value + "': expected commit or spool");
+        }
+    }
+}
@@ -6,6 +6,8 @@ import io.dazzleduck.sql.commons.util.HeaderUtils;
 import org.apache.arrow.flight.sql.impl.FlightSql;
 
 import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public record IngestionParameters(String ingestionQueue,
@@ -21,10 +23,25 @@ public record IngestionParameters(String ingestionQueue,
                 producerBatchId,
                 size,
                 format,
-                Instant.now()
+                Instant.now(),
+                partitionValues()
         );
     }
 
+    /**
+     * Partition values declared via {@link Headers#HEADER_DATA_PARTITION_VALUES}, one per
+     * {@link #partitionBy()} column; {@code null} when absent.
+     */
+    public String[] partitionValues() {
+        String values = parameters == null ? null : parameters.get(Headers.HEADER_DATA_PARTITION_VALUES);
+        return values == null ? null : HeaderUtils.parseCsv(values);
+    }
+
+
+    /** Acknowledgement mode requested via {@link Headers#HEADER_ACK_MODE}; {@link IngestionAckMode#COMMIT} when absent. */
+    public IngestionAckMode ackMode() {
+        return IngestionAckMode.parse(parameters == null ? null : parameters.get(Headers.HEADER_ACK_MODE));
+    }
 
     public static IngestionParameters getIngestionParameters(FlightSql.CommandStatementIngest command) {
 
@@ -44,7 +61,14 @@ public record IngestionParameters(String ingestionQueue,
         // Optional comma-separated lists
         String[] partitionBy = HeaderUtils.parseCsv(optionMap.get(Headers.HEADER_DATA_PARTITION));
         String[] sortOrder = HeaderUtils.parseCsv(optionMap.get(Headers.HEADER_SORT_ORDER));
-        return new IngestionParameters(ingestionQueue, format, partitionBy, sortOrder, producerId, 0L, Map.of());
+        Map<String, String> parameters = new HashMap<>();
+        for (String key : List.of(Headers.HEADER_ACK_MODE, Headers.HEADER_DATA_PARTITION_VALUES)) {
+            String value = optionMap.get(key);
+            if (value != null) {
+                parameters.put(key, value);
+            }
+        }
+        return new IngestionParameters(ingestionQueue, format, partitionBy, sortOrder, producerId, 0L, parameters);
     }
 
     public FlightSql.CommandStatementIngest createCommand() {
@@ -13,5 +13,6 @@ public record StatementAudit(
         Instant startTime,
         Instant endTime,
         long bytesOut,
+        long queueDelayMs,            // Time waiting for an execution permit
         String error
 ) {}
@@ -0,0 +1,15 @@
+package io.dazzleduck.sql.flight.model;
+
+/**
+ * Admission statistics of one workload class, as exposed through the producer MBean.
+ *
+ * @param maxConcurrency queries the class may run at once; {@code 0} when unlimited
+ * @param running        queries of the class currently admitted
+ * @param queued         queries waiting for a slot
+ * @param admitted       queries admitted since start
+ * @param rejected       queries rejected after waiting longer than the queue timeout
+ * @param totalWaitMs    time all queries of the class spent waiting for admission
+ */
+public record WorkloadClassStats(String name, int maxConcurrency, int running, int queued,
+                                 long admitted, long rejected, long totalWaitMs) {
+}
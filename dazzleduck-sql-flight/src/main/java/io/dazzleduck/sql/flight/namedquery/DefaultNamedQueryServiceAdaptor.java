@@ -63,7 +63,7 @@ public class DefaultNamedQueryServiceAdaptor implements NamedQueryServiceAdaptor
             var ticket = FlightSql.TicketStatementQuery.newBuilder()
                     .setStatementHandle(ByteString.copyFrom(MAPPER.writeValueAsBytes(statementHandle)))
                     .build();
-            httpFlightAdaptor.getStreamStatement(ticket, context, listener);
+            httpFlightAdaptor.getStreamStatement(ticket, context, listener, queryTemplate.queryGroup());
         } catch (NamedQueryServiceAdaptor.TemplateNotFoundException e) {
             listener.error(org.apache.arrow.flight.CallStatus.NOT_FOUND
                     .withDescription(e.getMessage()).toRuntimeException());
@@ -9,20 +9,56 @@ import io.dazzleduck.sql.common.ConfigConstants;
  * A cursor is created each time a client opens a streaming query and lives
  * until the stream is fully consumed or evicted. Without limits, a client can
  * open arbitrarily many cursors to exhaust server connections and memory.
+ *
+ * The stream limits bound what one cursor may hold while its client is slow:
+ * {@code streamBufferBudgetBytes} caps the Arrow memory of the stream and
+ * {@code streamReadyTimeoutMs} how long it waits for the client to accept the
+ * next batch (see {@link StreamFlowControl}). {@code maxConcurrentExecutions}
+ * bounds how many cursors run inside DuckDB at once (see {@link ExecutionPermits});
+ * {@code 0} picks a default for the thread type. {@code virtualStreamThreads} runs
+ * each cursor on a virtual thread instead of a platform thread.
  */
 public record CursorConfig(
         long cursorTtlMs,
         int maxCursorsPerIdentity,
-        int maxCursorsTotal
+        int maxCursorsTotal,
+        long streamBufferBudgetBytes,
+        long streamReadyTimeoutMs,
+        int maxConcurrentExecutions,
+        boolean virtualStreamThreads
 ) {
 
+    public static final long DEFAULT_STREAM_BUFFER_BUDGET_BYTES = 256L * 1024 * 1024;
+    public static final long DEFAULT_STREAM_READY_TIMEOUT_MS = 600_000;
+
     public static final CursorConfig DEFAULT = new CursorConfig(60_000, 50, 2_000);
 
+    public CursorConfig(long cursorTtlMs, int maxCursorsPerIdentity, int maxCursorsTotal) {
+        this(cursorTtlMs, maxCursorsPerIdentity, maxCursorsTotal,
+                DEFAULT_STREAM_BUFFER_BUDGET_BYTES, DEFAULT_STREAM_READY_TIMEOUT_MS);
+    }
+
+    public CursorConfig(long cursorTtlMs, int maxCursorsPerIdentity, int maxCursorsTotal,
+                        long streamBufferBudgetBytes, long streamReadyTimeoutMs) {
+        this(cursorTtlMs, maxCursorsPerIdentity, maxCursorsTotal, streamBufferBudgetBytes, streamReadyTimeoutMs, 0, true);
+    }
+
     public static CursorConfig fromConfig(Config config) {
         return new CursorConfig(
                 config.getLong(ConfigConstants.CURSOR_TTL_MS_KEY),
                 config.getInt(ConfigConstants.MAX_CURSORS_PER_IDENTITY_KEY),
-                config.getInt(ConfigConstants.MAX_CURSORS_TOTAL_KEY)
+                config.getInt(ConfigConstants.MAX_CURSORS_TOTAL_KEY),
+                config.hasPath(ConfigConstants.STREAM_BUFFER_BUDGET_BYTES_KEY)
+                        ? config.getLong(ConfigConstants.STREAM_BUFFER_BUDGET_BYTES_KEY)
+                        : DEFAULT_STREAM_BUFFER_BUDGET_BYTES,
+                config.hasPath(ConfigConstants.STREAM_READY_TIMEOUT_MS_KEY)
+                        ? config.getLong(ConfigConstants.STREAM_READY_TIMEOUT_MS_KEY)
+                        : DEFAULT_STREAM_READY_TIMEOUT_MS,
+                config.hasPath(ConfigConstants.MAX_CONCURRENT_EXECUTIONS_KEY)
+                        ? config.getInt(ConfigConstants.MAX_CONCURRENT_EXECUTIONS_KEY)
+                        : 0,
+                !config.hasPath(ConfigConstants.VIRTUAL_STREAM_THREADS_KEY)
+                        || config.getBoolean(ConfigConstants.VIRTUAL_STREAM_THREADS_KEY)
         );
     }
 }
@@ -86,7 +86,8 @@ public class DirectOutputStreamListener implements FlightProducer.ServerStreamLi
 
     @Override
     public synchronized boolean isReady() {
-        return writer != null;
+        // Writes block on the response stream, which is its own backpressure.
+        return true;
     }
 
     @Override
@@ -17,8 +17,10 @@ import io.dazzleduck.sql.commons.ingestion.*;
 import io.dazzleduck.sql.flight.FlightRecorder;
 import io.dazzleduck.sql.flight.MicroMeterFlightRecorder;
 import io.dazzleduck.sql.flight.SimpleFlightRecorder;
+import io.dazzleduck.sql.flight.ingestion.IngestionAckMode;
 import io.dazzleduck.sql.flight.ingestion.IngestionParameters;
 import io.dazzleduck.sql.flight.model.RunningStatementInfo;
+import io.dazzleduck.sql.flight.model.WorkloadClassStats;
 import io.dazzleduck.sql.flight.server.auth2.AdvanceServerCallHeaderAuthMiddleware;
 import io.dazzleduck.sql.flight.stream.FlightStreamReader;
 import io.micrometer.core.instrument.logging.LoggingMeterRegistry;
@@ -45,6 +47,7 @@ import org.slf4j.LoggerFactory;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.file.Files;
@@ -56,6 +59,9 @@ import java.time.Instant;
 import java.time.temporal.TemporalAmount;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
 import static com.google.protobuf.Any.pack;
 import static com.google.protobuf.ByteString.copyFrom;
@@ -113,6 +119,21 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
     public double getBytesOut() {
         return recorder.getBytesOut();
     }
+    @Override
+    public long getStreamBlockedMillis() {
+        return recorder.getStreamBlockedMillis();
+    }
+
+    @Override
+    public long getWaitingExecutions() {
+        return executionPermits.waiting();
+    }
+
+    @Override
+    public List<WorkloadClassStats> getWorkloadClassStats() {
+        return workloadManager.stats();
+    }
+
     @Override
     public long getCompletedStatements() {
         return recorder.getCompletedStatements();
@@ -234,7 +255,12 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
     private final Instant startTime;
     private final AccessMode accessMode;
     private final Set<Integer> supportedSqlInfo;
-    protected final ExecutorService executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    // One thread per stream, virtual unless configured otherwise, so streams parked on slow clients
+    // cost no platform thread; how many of them execute in DuckDB at once (and so hold a carrier in
+    // native code) is bounded by executionPermits.
+    protected final ExecutorService executorService;
+    // Package-private so split workers of a stream take their permits from the same pool.
+    final ExecutionPermits executionPermits;
     private final static Logger logger = LoggerFactory.getLogger(DuckDBFlightSqlProducer.class);
     private Set<Location> dataProcessorLocations = new LinkedHashSet<>();
     private final Location serverLocation;
@@ -251,6 +277,7 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
 
     private final IngestionConfig bulkIngestionConfig;
     private final CursorConfig cursorConfig;
+    private final WorkloadManager workloadManager;
 
     /**
      * Wrapper for ingestion queue with lifecycle tracking metadata.
@@ -356,6 +383,28 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
                                    IngestionConfig bulkIngestionConfig,
                                    List<Location> dataProcessorLocations,
                                    CursorConfig cursorConfig) {
+        this(serverLocation, producerId, secretKey, allocator, warehousePath, accessMode, tempDir, ingestionHandler,
+                scheduledExecutorService, defaultQueryTimeout, maxQueryTimeout, clock, recorder,
+                bulkIngestionConfig, dataProcessorLocations, cursorConfig, WorkloadManager.none());
+    }
+
+    public DuckDBFlightSqlProducer(Location serverLocation,
+                                   String producerId,
+                                   String secretKey,
+                                   BufferAllocator allocator,
+                                   String warehousePath,
+                                   AccessMode accessMode,
+                                   Path tempDir,
+                                   IngestionHandler ingestionHandler,
+                                   ScheduledExecutorService scheduledExecutorService,
+                                   Duration defaultQueryTimeout,
+                                   Duration maxQueryTimeout,
+                                   Clock clock,
+                                   FlightRecorder recorder,
+                                   IngestionConfig bulkIngestionConfig,
+                                   List<Location> dataProcessorLocations,
+                                   CursorConfig cursorConfig,
+                                   WorkloadManager workloadManager) {
         this.startTime = clock.instant();
         this.serverLocation = serverLocation;
         this.dataProcessorLocations.addAll(dataProcessorLocations);
@@ -381,6 +430,18 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
         this.ingestionHandler = ingestionHandler;
         this.bulkIngestionConfig = bulkIngestionConfig;
         this.cursorConfig = cursorConfig;
+        this.executorService = cursorConfig.virtualStreamThreads()
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newCachedThreadPool();
+        this.executionPermits = ExecutionPermits.of(cursorConfig.maxConcurrentExecutions(), cursorConfig.virtualStreamThreads());
+        if (cursorConfig.virtualStreamThreads()
+                && cursorConfig.maxConcurrentExecutions() >= ExecutionPermits.carrierParallelism()) {
+            logger.atWarn().log("{} = {} lets DuckDB pin all {} virtual thread carriers; lower it, raise "
+                            + "jdk.virtualThreadScheduler.parallelism or set {} = false",
+                    ConfigConstants.MAX_CONCURRENT_EXECUTIONS_KEY, cursorConfig.maxConcurrentExecutions(),
+                    ExecutionPermits.carrierParallelism(), ConfigConstants.VIRTUAL_STREAM_THREADS_KEY);
+        }
+        this.workloadManager = workloadManager;
         preparedStatementLoadingCache =
                 CacheBuilder.newBuilder()
                         .maximumSize(4000)
@@ -397,6 +458,7 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
         this.clock = clock;
         sqlInfoBuilder = new SqlInfoBuilder();
         try (final Connection connection = ConnectionPool.getConnection()) {
+            workloadManager.validateSessionSettings(connection);
             final DatabaseMetaData metaData = connection.getMetaData();
 
             sqlInfoBuilder
@@ -460,6 +522,33 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
+        if (bulkIngestionConfig.durableJournal()) {
+            recoverJournaledQueues();
+        }
+    }
+
+    /**
+     * Creates, and thereby replays, every queue that left an ingestion journal in {@code tempDir},
+     * so batches accepted before a crash or restart are written without waiting for the next
+     * request to that queue.
+     */
+    private void recoverJournaledQueues() {
+        // A queue spools into tempDir.resolve(queueId), so a nested queue id is a nested directory.
+        try (var journals = Files.walk(tempDir)) {
+            for (var journal : journals.filter(f -> f.getFileName().toString().equals(IngestionJournal.FILE_NAME)
+                    && !f.getParent().equals(tempDir)).toList()) {
+                var dir = journal.getParent();
+                var queueId = StreamSupport.stream(tempDir.relativize(dir).spliterator(), false)
+                        .map(Path::toString)
+                        .collect(Collectors.joining("/"));
+                if (getOrCreateIngestionQueue(queueId) == null) {
+                    logger.atWarn().log("Ingestion queue '{}' has a journal but no target path; its batches are kept in {}",
+                            queueId, dir);
+                }
+            }
+        } catch (IOException e) {
+            logger.atError().setCause(e).log("Failed to scan {} for ingestion journals", tempDir);
+        }
     }
 
     @Override
@@ -643,15 +732,17 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
             ErrorHandling.handleContextNotFound();
             return; // Never reached if handleContextNotFound throws, but prevents NPE if it doesn't
         }
+        var workloadClass = workloadManager.classify(getVerifiedClaims(context), null);
         try {
             statementContext.getStatement().setQueryTimeout(getEffectiveQueryTimeoutSeconds(context));
+            workloadClass.applySessionSettings(statementContext.getStatement().getConnection());
         } catch (SQLException e) {
             ErrorHandling.handleThrowable(listener, e);
             return;
         }
         ResultSetStreamUtil.streamResultSet(executorService, statementContext, key, OptionalResultSetSupplier.of(statementContext.getStatement()),
             allocator, getBatchSize(context),
-            listener, () -> {}, recorder);
+            listener, () -> {}, recorder, cursorConfig, executionPermits, workloadClass);
     }
 
 
@@ -661,7 +752,16 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
             final CallContext context,
             final ServerStreamListener listener) {
         StatementHandle statementHandle = StatementHandle.deserialize(ticketStatementQuery.getStatementHandle());
-        getStreamStatement(statementHandle, context, listener);
+        getStreamStatement(statementHandle, context, listener, null);
+    }
+
+    @Override
+    public void getStreamStatement(FlightSql.TicketStatementQuery ticketStatementQuery,
+                                   CallContext context,
+                                   ServerStreamListener listener,
+                                   String queryGroup) {
+        StatementHandle statementHandle = StatementHandle.deserialize(ticketStatementQuery.getStatementHandle());
+        getStreamStatement(statementHandle, context, listener, queryGroup);
     }
 
     /**
@@ -676,6 +776,20 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
             StatementHandle statementHandle,
             final CallContext context,
             final ServerStreamListener listener) {
+        getStreamStatement(statementHandle, context, listener, null);
+    }
+
+    /**
+     * Streams statement results, admitting the query into the workload class picked from the
+     * caller's verified claims and the named-query group.
+     *
+     * @param queryGroup named-query group of the query, {@code null} for ad-hoc SQL
+     */
+    protected void getStreamStatement(
+            StatementHandle statementHandle,
+            final CallContext context,
+            final ServerStreamListener listener,
+            String queryGroup) {
         DuckDBConnection connection = null;
         try {
             connection = getConnection(context, getAccessMode());
@@ -689,6 +803,8 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
                 query = transformQuery(context, connection, query);
             }
             enforceCursorLimits(context.peerIdentity());
+            var workloadClass = workloadManager.classify(getVerifiedClaims(context), queryGroup);
+            workloadClass.applySessionSettings(connection);
             Statement statement = connection.createStatement();
             statement.setQueryTimeout(getEffectiveQueryTimeoutSeconds(context));
             var statementContext = new StatementContext<>(connection, statement, query);
@@ -698,11 +814,14 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
             ResultSetStreamUtil.streamResultSet(executorService,
                     statementContext,
                     key,
-                    createResultSetSupplier(statement, query),
+                    statementHandle.splitSize() < 0
+                            ? createResultSetSupplier(context, statement, query, workloadClass)
+                            : createResultSetSupplier(statement, query),
                     allocator,
                     getBatchSize(context),
                     listener,
-                    () -> statementLoadingCache.invalidate(key), recorder);
+                    () -> statementLoadingCache.invalidate(key), recorder, cursorConfig, executionPermits,
+                    workloadClass);
         } catch (Throwable e) {
             ErrorHandling.handleThrowable(listener, e);
         } finally {
@@ -752,6 +871,18 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
         return OptionalResultSetSupplier.of(statement, query);
     }
 
+    /**
+     * Extension point for statements that are not one split of a planned query, i.e. whose handle
+     * carries no split size, so the supplier may depend on the call. The supplier only runs once
+     * the stream was admitted into {@code workloadClass}; any connection it opens besides the
+     * statement's own should get the class's session settings. Defaults to
+     * {@link #createResultSetSupplier(Statement, String)}.
+     */
+    protected OptionalResultSetSupplier createResultSetSupplier(CallContext context, Statement statement, String query,
+                                                                WorkloadClass workloadClass) {
+        return createResultSetSupplier(statement, query);
+    }
+
     protected static long getLimit(CallContext callContext) {
         return ContextUtils.getValue(callContext, Headers.HEADER_DATA_LIMIT, -1L, Long.class);
     }
@@ -900,7 +1031,7 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
     protected ParquetIngestionQueue getOrCreateIngestionQueue(String queueId) {
         return ingestionHandler.getOrCreateQueue(
                 queueId,
-                (id, path) -> createQueue(producerId, id, path, ingestionHandler, bulkIngestionConfig, recorder),
+                (id, path) -> withJournal(createQueue(producerId, id, path, ingestionHandler, bulkIngestionConfig, recorder)),
                 new IngestionHandler.QueueEventListener() {
                     @Override public void onCreated(String id)   { recorder.recordQueueCreated(id);   }
                     @Override public void onRefreshed(String id) { recorder.recordQueueRefreshed(id); }
@@ -911,6 +1042,22 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
                 });
     }
 
+    /**
+     * Attaches the queue's journal in its spool directory when the durable journal is enabled,
+     * replaying whatever a previous run left in it. Each accepted batch then waits for an fsync of
+     * the journal, which it shares with the batches accepted concurrently by the queue.
+     */
+    private ParquetIngestionQueue withJournal(ParquetIngestionQueue queue) {
+        if (bulkIngestionConfig.durableJournal()) {
+            try {
+                queue.setJournal(IngestionJournal.open(tempDir.resolve(queue.identifier())));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to open ingestion journal for queue " + queue.identifier(), e);
+            }
+        }
+        return queue;
+    }
+
     public static ParquetIngestionQueue createQueue(String producerId, String localQueueId, String path, IngestionHandler ingestionHandler,
                                                     IngestionConfig bulkIngestionConfig, FlightRecorder flightRecorder) {
         var queue = new ParquetIngestionQueue(producerId, TEMP_WRITE_FORMAT, path, localQueueId,
@@ -919,21 +1066,51 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
                 bulkIngestionConfig.maxBatches(),
                 bulkIngestionConfig.maxPendingWrite(),
                 bulkIngestionConfig.maxDelay(),
+                bulkIngestionConfig.commitLanes(),
+                bulkIngestionConfig.inMemoryBatchesEnabled()
+                        ? new InMemoryBatchStore(localQueueId, bulkIngestionConfig.inMemoryBufferBytes(),
+                                bulkIngestionConfig.inMemoryBatchMaxBytes())
+                        : null,
                 ingestionHandler,
                 Executors.newSingleThreadScheduledExecutor(),
                 Clock.systemDefaultZone());
+        queue.setAdaptiveSizer(bulkIngestionConfig.newAdaptiveSizer());
+        queue.setPartitionRouting(bulkIngestionConfig.partitionRouting());
+        var counters = new HashMap<String, LongSupplier>(Map.of(
+                "write_batches", queue::getTotalWriteBatches,
+                "write_buckets", queue::getTotalWriteBuckets,
+                "bytes_written", queue::getTotalWriteBytes,
+                "failed_batches", queue::getFailedWriteBatches,
+                "failed_buckets", queue::getFailedWriteBuckets,
+                "bytes_failed", queue::getFailedWriteBytes,
+                "producer_id_evictions", queue::getProducerIdEvictions,
+                "data_phase_ms", () -> queue.getDataPhaseNanos() / 1_000_000,
+                "post_ingest_phase_ms", () -> queue.getPostIngestPhaseNanos() / 1_000_000));
+        counters.put("watermark_single_pass_ms", () -> queue.getWatermarkSinglePassNanos() / 1_000_000);
+        counters.put("watermark_single_pass_rows", queue::getWatermarkSinglePassRows);
+        counters.put("watermark_materialize_ms", () -> queue.getWatermarkMaterializeNanos() / 1_000_000);
+        counters.put("watermark_aggregate_ms", () -> queue.getWatermarkAggregateNanos() / 1_000_000);
+        var gauges = new HashMap<String, LongSupplier>(Map.of(
+                "pending_batches", queue::getPendingBatches,
+                "pending_buckets", queue::getPendingBuckets,
+                "commit_lanes", queue::getCommitLanes));
+        gauges.put("effective_bucket_size", queue::getEffectiveBucketSize);
+        gauges.put("effective_max_delay_ms", () -> queue.getEffectiveMaxDelay().toMillis());
+        gauges.put("partition_buckets", queue::getRoutedBucketCount);
+        var batchStore = queue.batchStore();
+        if (batchStore != null) {
+            counters.put("in_memory_batches", batchStore::getInMemoryBatches);
+            counters.put("spilled_batches", batchStore::getSpilledBatches);
+            gauges.put("in_memory_bytes", batchStore::getUsedBytes);
+        }
+        for (int lane = 0; lane < queue.getCommitLanes(); lane++) {
+            final int l = lane;
+            counters.put("commit_lane_" + lane + "_busy_ms", () -> queue.getLaneBusyNanos(l) / 1_000_000);
+            gauges.put("commit_lane_" + lane + "_utilization_pct", () -> Math.round(queue.getLaneUtilization(l) * 100));
+        }
         flightRecorder.registerWriteQueue(localQueueId,
-                Map.of("write_batches", queue::getTotalWriteBatches,
-                        "write_buckets", queue::getTotalWriteBuckets,
-                        "bytes_written", queue::getTotalWriteBytes,
-                        "failed_batches", queue::getFailedWriteBatches,
-                        "failed_buckets", queue::getFailedWriteBuckets,
-                        "bytes_failed", queue::getFailedWriteBytes,
-                        "producer_id_evictions", queue::getProducerIdEvictions,
-                        "data_phase_ms", () -> queue.getDataPhaseNanos() / 1_000_000,
-                        "post_ingest_phase_ms", () -> queue.getPostIngestPhaseNanos() / 1_000_000),
-                Map.of("pending_batches", queue::getPendingBatches,
-                        "pending_buckets", queue::getPendingBuckets),
+                counters,
+                gauges,
                 Map.of("write_latency", new FlightRecorder.WriteTimerSuppliers(
                         queue::getTotalWriteBuckets,
                         queue::getTimeSpentWriting)));
@@ -969,26 +1146,80 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
         return ingestFromReader(new ArrowStreamReader(inputStream, allocator), ingestionQueue, ingestionParameters, ackStream);
     }
 
+    /**
+     * Spools the request into the queue's own directory under {@code tempDir}, hands it to the
+     * queue and acknowledges according to {@link IngestionParameters#ackMode()}: after the bucket
+     * commits ({@link IngestionAckMode#COMMIT}), or right after the fsynced spool is accepted
+     * ({@link IngestionAckMode#SPOOL}), in which case the handler does not wait for the write.
+     * Spool acknowledgement is only accepted on a journaled queue, which retries the batch until it
+     * commits and otherwise replays it on the next start.
+     *
+     * <p>A commit-acknowledged request keeps the handler until its bucket commits, and fails if
+     * that takes more than ten minutes. The ack cannot be sent from the commit's callback instead:
+     * Flight completes a DoPut's ack stream as soon as the handler returns, and the HTTP server
+     * needs the response sent before its handler returns. The wait is cheap on virtual threads,
+     * which HTTP handlers use and {@code flight_sql.virtual_threads} enables for Flight. Once the
+     * queue has accepted the batch it owns the input, so a request that stops waiting leaves the
+     * batch to be written.
+     *
+     * <p>With the in-memory batch mode enabled, a commit-acknowledged request small enough for the
+     * queue's {@link InMemoryBatchStore} skips the temp file; spool-acknowledged requests always go
+     * to disk because they must survive a crash. A journaled queue fsyncs every spool for the same
+     * reason.
+     */
     private Runnable ingestFromReader(
             ArrowReader reader,
-            BulkIngestQueue<String, IngestionResult> ingestionQueue,
+            ParquetIngestionQueue ingestionQueue,
             IngestionParameters ingestionParameters,
             StreamListener<PutResult> ackStream) {
         return () -> {
-            Path tempFile = null;
+            String tempFile = null;
             try (reader) {
-                tempFile = BulkIngestQueue.writeAndValidateTempArrowFile(tempDir, reader);
-                long fileSize = Files.size(tempFile);
+                var ackMode = ingestionParameters.ackMode();
+                if (ackMode == IngestionAckMode.SPOOL && !ingestionQueue.isJournaled()) {
+                    // Without the journal a failed write would lose a batch the client already considers delivered.
+                    throw new IllegalArgumentException("Ack mode spool requires the durable journal (durable_journal) on queue "
+                            + ingestionQueue.identifier());
+                }
+                var spoolDir = Files.createDirectories(tempDir.resolve(ingestionQueue.identifier()));
+                var batchStore = ingestionQueue.batchStore();
+                long fileSize;
+                if (batchStore != null && ackMode == IngestionAckMode.COMMIT) {
+                    var staged = batchStore.stage(spoolDir, reader);
+                    tempFile = staged.record();
+                    fileSize = staged.size();
+                } else {
+                    var spooled = BulkIngestQueue.writeAndValidateTempArrowFile(spoolDir, reader,
+                            ingestionQueue.isJournaled());
+                    tempFile = spooled.toAbsolutePath().toString();
+                    fileSize = Files.size(spooled);
+                }
                 recorder.recordIngestReceived(fileSize);
-                var batch = ingestionParameters.constructBatch(fileSize, tempFile.toAbsolutePath().toString());
-                var result = ingestionQueue.add(batch);
-                result.get(10L, TimeUnit.MINUTES);
-                tempFile = null; // queue owns cleanup from this point
+                var batch = ingestionParameters.constructBatch(fileSize, tempFile);
+                if (ackMode == IngestionAckMode.SPOOL) {
+                    var result = ingestionQueue.addAcknowledged(batch);
+                    if (result.isCompletedExceptionally()) {
+                        result.get(); // rejected: fail the request, which still owns the spooled file
+                    }
+                    tempFile = null; // accepted: the queue retries the batch and keeps it journaled until it commits
+                    result.whenComplete((r, t) -> {
+                        if (t != null) {
+                            recorder.recordIngestError();
+                        }
+                    });
+                } else {
+                    var result = ingestionQueue.add(batch);
+                    if (result.isCompletedExceptionally()) {
+                        result.get(); // rejected: fail the request, which still owns its input
+                    }
+                    tempFile = null; // accepted: the queue owns cleanup from this point
+                    result.get(10L, TimeUnit.MINUTES);
+                }
                 ackStream.onNext(PutResult.empty());
                 ackStream.onCompleted();
             } catch (Throwable throwable) {
                 if (tempFile != null) {
-                    try { Files.deleteIfExists(tempFile); } catch (IOException ignored) {}
+                    ingestionQueue.releaseInput(tempFile);
                 }
                 recorder.recordIngestError();
                 ErrorHandling.handleThrowable(ackStream, throwable);
@@ -1228,6 +1459,9 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
 
         allocator.close();
 
+        if (bulkIngestionConfig.durableJournal()) {
+            return; // the journals and the batches they still hold are replayed on the next start
+        }
         try (var stream = Files.walk(tempDir)) {
             stream.sorted(Comparator.reverseOrder())
                   .forEach(p -> { try { Files.deleteIfExists(p); } catch (IOException ignored) {} });
@@ -6,6 +6,7 @@ import com.google.protobuf.InvalidProtocolBufferException;
 import io.dazzleduck.sql.commons.authorization.UnauthorizedException;
 import io.dazzleduck.sql.commons.ingestion.PendingWriteExceededException;
 import org.apache.arrow.flight.*;
+import org.apache.arrow.memory.OutOfMemoryException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -113,6 +114,11 @@ public class ErrorHandling {
             handleIOException(listener, io);
         } else if (t instanceof FlightRuntimeException fre) {
             listener.error(fre);
+        } else if (t instanceof OutOfMemoryException e) {
+            // The stream outgrew its buffer budget (CursorConfig.streamBufferBudgetBytes).
+            listener.error(CallStatus.RESOURCE_EXHAUSTED
+                    .withDescription("Result stream exceeded its memory budget: " + e.getMessage())
+                    .toRuntimeException());
         } else if (t instanceof Exception e) {
             handleException(listener, e);
         } else {
@@ -0,0 +1,73 @@
+package io.dazzleduck.sql.flight.server;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Bounds how many result streams run inside DuckDB at the same time, independently of how many
+ * streams are open.
+ *
+ * <p>Each stream has its own thread, but holds a permit only while DuckDB executes the query or
+ * produces the next batch; it gives the permit back before handing a batch to the client and
+ * while waiting for a slow client (see {@link StreamFlowControl}). Long extracts to slow clients
+ * therefore park cheaply and do not keep short interactive queries from starting. Permits are
+ * handed out first come, first served, so a stream re-acquiring for its next batch queues behind
+ * queries already waiting.
+ *
+ * <p>On virtual threads the permits also protect the scheduler: a virtual thread inside a DuckDB
+ * JNI call pins its carrier, so permits matching the carrier count could pin every carrier and
+ * stall all other virtual threads of the process. The default therefore leaves one carrier free.
+ */
+final class ExecutionPermits {
+
+    /** No limit: streams never wait for a permit. */
+    static final ExecutionPermits UNLIMITED = new ExecutionPermits(null);
+
+    private final Semaphore semaphore;
+
+    private ExecutionPermits(Semaphore semaphore) {
+        this.semaphore = semaphore;
+    }
+
+    /**
+     * @param permits concurrent executions allowed; {@code <= 0} means one per available processor
+     */
+    static ExecutionPermits of(int permits) {
+        return of(permits, false);
+    }
+
+    /**
+     * @param permits        concurrent executions allowed; {@code <= 0} means one per available
+     *                       processor on platform threads, one less than the carrier count on
+     *                       virtual threads
+     * @param virtualThreads whether the streams holding the permits run on virtual threads
+     */
+    static ExecutionPermits of(int permits, boolean virtualThreads) {
+        return new ExecutionPermits(new Semaphore(permits > 0 ? permits : defaultPermits(virtualThreads), true));
+    }
+
+    static int defaultPermits(boolean virtualThreads) {
+        return virtualThreads ? Math.max(1, carrierParallelism() - 1) : Runtime.getRuntime().availableProcessors();
+    }
+
+    /** Carrier threads of the virtual thread scheduler. */
+    static int carrierParallelism() {
+        return Integer.getInteger("jdk.virtualThreadScheduler.parallelism", Runtime.getRuntime().availableProcessors());
+    }
+
+    void acquire() throws InterruptedException {
+        if (semaphore != null) {
+            semaphore.acquire();
+        }
+    }
+
+    void release() {
+        if (semaphore != null) {
+            semaphore.release();
+        }
+    }
+
+    /** Streams currently waiting for a permit. */
+    int waiting() {
+        return semaphore == null ? 0 : semaphore.getQueueLength();
+    }
+}
@@ -2,8 +2,11 @@ package io.dazzleduck.sql.flight.server;
 
 import com.typesafe.config.Config;
 import io.dazzleduck.sql.commons.config.ConfigBasedProvider;
+import io.dazzleduck.sql.commons.Transformations;
 import io.dazzleduck.sql.common.ConfigConstants;
 import io.dazzleduck.sql.commons.authorization.AccessMode;
+import io.dazzleduck.sql.commons.authorization.AuthorizationPlanCache;
+import io.dazzleduck.sql.commons.hive.HivePartitionPruning;
 import io.dazzleduck.sql.commons.ingestion.IngestionHandler;
 import io.dazzleduck.sql.commons.ingestion.IngestionTaskFactoryProvider;
 import io.dazzleduck.sql.flight.FlightRecorder;
@@ -115,6 +118,7 @@ public final class FlightSqlProducerFactory {
         private Clock clock;
         private IngestionConfig ingestionConfig;
         private CursorConfig cursorConfig;
+        private WorkloadManager workloadManager;
         private FlightRecorder flightRecorder;
 
         private ProducerBuilder(Config config) {
@@ -165,6 +169,22 @@ public final class FlightSqlProducerFactory {
             // Cursor protection config
             this.cursorConfig = CursorConfig.fromConfig(config);
 
+            // Workload classes / admission control
+            this.workloadManager = WorkloadManager.fromConfig(config);
+
+            // Parsed SQL, authorized plan and partition listing caches, shared by the process
+            if (config.hasPath(ConfigConstants.PARSE_CACHE_MAX_BYTES_KEY)) {
+                Transformations.parseCache().setMaxWeight(config.getLong(ConfigConstants.PARSE_CACHE_MAX_BYTES_KEY));
+            }
+            if (config.hasPath(ConfigConstants.AUTHORIZATION_PLAN_CACHE_MAX_BYTES_KEY)) {
+                AuthorizationPlanCache.cache().setMaxWeight(
+                        config.getLong(ConfigConstants.AUTHORIZATION_PLAN_CACHE_MAX_BYTES_KEY));
+            }
+            if (config.hasPath(ConfigConstants.HIVE_PARTITION_LISTING_TTL_MS_KEY)) {
+                HivePartitionPruning.setListingTtl(
+                        Duration.ofMillis(config.getLong(ConfigConstants.HIVE_PARTITION_LISTING_TTL_MS_KEY)));
+            }
+
             // Load providers (query optimizer, post-ingestion factory)
             try {
                 this.queryOptimizer = loadQueryOptimizer(config);
@@ -517,7 +537,8 @@ public final class FlightSqlProducerFactory {
                     finalRecorder,
                     ingestionConfig,
                     dataProcessorLocations,
-                    cursorConfig
+                    cursorConfig,
+                    workloadManager
                 );
             }
         }
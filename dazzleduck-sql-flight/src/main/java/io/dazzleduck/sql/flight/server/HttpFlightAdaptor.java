@@ -85,6 +85,19 @@ public interface HttpFlightAdaptor {
                             FlightProducer.CallContext context,
                             FlightProducer.ServerStreamListener listener);
 
+    /**
+     * Gets the stream for a statement query ticket issued for a named query. The named-query group
+     * is used to pick the query's workload class; the default implementation ignores it.
+     *
+     * @param queryGroup the named-query group of the query
+     */
+    default void getStreamStatement(FlightSql.TicketStatementQuery ticket,
+                                    FlightProducer.CallContext context,
+                                    FlightProducer.ServerStreamListener listener,
+                                    String queryGroup) {
+        getStreamStatement(ticket, context, listener);
+    }
+
     /**
      * Gets flight info for a statement query command.
      * This method provides a typed API for HTTP services to get query planning info.
@@ -22,17 +22,26 @@ public final class IngestionConfig {
                 minBucketSize, maxBucketSize, maxBatches, maxPendingWrite, maxDelay, configRefreshDelay);
     }
 
+    private IngestionConfig(io.dazzleduck.sql.commons.ingestion.IngestionConfig delegate) {
+        this.delegate = delegate;
+    }
+
     public long     minBucketSize()    { return delegate.minBucketSize(); }
     public long     maxBucketSize()    { return delegate.maxBucketSize(); }
     public int      maxBatches()       { return delegate.maxBatches(); }
     public long     maxPendingWrite()  { return delegate.maxPendingWrite(); }
     public Duration maxDelay()         { return delegate.maxDelay(); }
     public Duration configRefreshDelay(){ return delegate.configRefreshDelay(); }
+    public int      commitLanes()      { return delegate.commitLanes(); }
+    public long     inMemoryBatchMaxBytes() { return delegate.inMemoryBatchMaxBytes(); }
+    public long     inMemoryBufferBytes()   { return delegate.inMemoryBufferBytes(); }
+    public boolean  inMemoryBatchesEnabled() { return delegate.inMemoryBatchesEnabled(); }
+    public io.dazzleduck.sql.commons.ingestion.AdaptiveBucketSizer newAdaptiveSizer() { return delegate.newAdaptiveSizer(); }
+    public boolean  partitionRouting()      { return delegate.partitionRouting(); }
+    public boolean  durableJournal()        { return delegate.durableJournal(); }
 
     public static IngestionConfig fromConfig(Config config) {
-        var b = io.dazzleduck.sql.commons.ingestion.IngestionConfig.fromConfig(config);
-        return new IngestionConfig(b.minBucketSize(), b.maxBucketSize(), b.maxBatches(),
-                b.maxPendingWrite(), b.maxDelay(), b.configRefreshDelay());
+        return new IngestionConfig(io.dazzleduck.sql.commons.ingestion.IngestionConfig.fromConfig(config));
     }
 
     /** Converts to the canonical commons type. */
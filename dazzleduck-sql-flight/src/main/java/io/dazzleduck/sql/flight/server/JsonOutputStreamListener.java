@@ -91,8 +91,8 @@ public class JsonOutputStreamListener implements FlightProducer.ServerStreamList
 
     @Override
     public boolean isReady() {
-        // We are ready if the future is not complete
-        return !future.isDone();
+        // Writes block on the response stream, which is its own backpressure.
+        return true;
     }
 
     @Override
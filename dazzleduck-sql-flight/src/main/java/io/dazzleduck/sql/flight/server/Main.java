@@ -18,6 +18,7 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.Executors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -148,6 +149,14 @@ public class Main {
             if (useEncryption) {
                 builder.useTls(certStream, keyStream);
             }
+            if (config.hasPath(ConfigConstants.FLIGHT_SQL_VIRTUAL_THREADS_KEY)
+                    && config.getBoolean(ConfigConstants.FLIGHT_SQL_VIRTUAL_THREADS_KEY)) {
+                // Flight completes a DoPut's ack stream as soon as its handler returns, so a
+                // commit-acknowledged ingest must wait inside the handler. On virtual threads that
+                // wait parks instead of pinning a platform thread per in-flight producer. Flight
+                // does not own a supplied executor; this one holds no threads while idle.
+                builder.executor(Executors.newVirtualThreadPerTaskExecutor());
+            }
             return builder.build();
         }
     }
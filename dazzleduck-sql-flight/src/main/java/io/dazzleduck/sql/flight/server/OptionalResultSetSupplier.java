@@ -1,11 +1,14 @@
 package io.dazzleduck.sql.flight.server;
 
 import io.dazzleduck.sql.flight.optimizer.QueryOptimizer;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.ipc.ArrowReader;
 import org.duckdb.DuckDBResultSet;
 
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.concurrent.Callable;
 
 public interface OptionalResultSetSupplier {
     boolean hasResultSet();
@@ -14,6 +17,68 @@ public interface OptionalResultSetSupplier {
 
     void execute() throws SQLException;
 
+    /**
+     * Arrow stream over the result of {@link #get()}. Suppliers whose result is not a single DuckDB
+     * result set, such as {@link ParallelSplitSupplier}, return {@code null} from {@link #get()}
+     * and override this.
+     */
+    default ArrowReader reader(DuckDBResultSet resultSet, BufferAllocator allocator, int batchSize) throws SQLException {
+        return (ArrowReader) resultSet.arrowExportStream(allocator, batchSize);
+    }
+
+    /**
+     * Whether the stream must hold an {@link ExecutionPermits execution permit} while reading the
+     * result. Suppliers whose DuckDB work runs on other threads that take permits of their own,
+     * such as {@link ParallelSplitSupplier}, return {@code false}, so the stream waiting for them
+     * does not hold a permit they need.
+     */
+    default boolean usesExecutionPermit() {
+        return true;
+    }
+
+    /**
+     * A supplier that is only created by {@code planner} when the statement executes, i.e. once the
+     * stream has been admitted, so planning work such as listing files does not run on the calling
+     * thread.
+     */
+    static OptionalResultSetSupplier deferred(Callable<OptionalResultSetSupplier> planner) {
+        return new OptionalResultSetSupplier() {
+            OptionalResultSetSupplier delegate;
+
+            @Override
+            public boolean hasResultSet() {
+                return delegate.hasResultSet();
+            }
+
+            @Override
+            public DuckDBResultSet get() throws SQLException {
+                return delegate.get();
+            }
+
+            @Override
+            public void execute() throws SQLException {
+                try {
+                    delegate = planner.call();
+                } catch (SQLException | RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new SQLException("Failed to plan the query: " + e.getMessage(), e);
+                }
+                delegate.execute();
+            }
+
+            @Override
+            public ArrowReader reader(DuckDBResultSet resultSet, BufferAllocator allocator, int batchSize) throws SQLException {
+                return delegate.reader(resultSet, allocator, batchSize);
+            }
+
+            @Override
+            public boolean usesExecutionPermit() {
+                return delegate.usesExecutionPermit();
+            }
+        };
+    }
+
     static OptionalResultSetSupplier of(final Statement statement, String query) {
         return new OptionalResultSetSupplier() {
             boolean hasResultSet;
@@ -0,0 +1,309 @@
+package io.dazzleduck.sql.flight.server;
+
+import org.apache.arrow.flight.CallStatus;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.VectorLoader;
+import org.apache.arrow.vector.VectorUnloader;
+import org.apache.arrow.vector.ipc.ArrowReader;
+import org.apache.arrow.vector.ipc.message.ArrowRecordBatch;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.duckdb.DuckDBConnection;
+import org.duckdb.DuckDBResultSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs the splits of one query concurrently and merges their Arrow streams into a single result,
+ * for queries whose split results can simply be concatenated
+ * (see {@link io.dazzleduck.sql.commons.planner.SplitPlanner#isConcatenable}), and for the partial
+ * phase of aggregations (see {@link PartialAggregationSupplier}).
+ *
+ * <p>Up to {@code parallelism} workers each take the next split, run it on a connection of their
+ * own and hand its batches to the merged reader through a bounded queue, so a slow consumer stalls
+ * the workers instead of buffering the result in memory. Batches of different splits interleave;
+ * like the unsplit query, which has no ORDER BY, the result has no defined order.
+ *
+ * <p>Each worker holds an {@link ExecutionPermits execution permit} while DuckDB runs its split or
+ * produces the split's next batch, and gives it back before handing the batch over, just like a
+ * stream does. The stream merging them holds none (see {@link #usesExecutionPermit()}), so a query
+ * waiting for its splits never keeps them from starting.
+ *
+ * <p>The splits do not run on the owning statement, so cancelling it cannot interrupt them
+ * directly: the merged reader stops and cancels the splits once the owning statement is closed,
+ * which is what cancelling a query does.
+ */
+final class ParallelSplitSupplier implements OptionalResultSetSupplier {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelSplitSupplier.class);
+
+    /** How often a waiting reader re-checks whether the owning statement was closed. */
+    private static final long POLL_MS = 50;
+
+    private final List<Callable<String>> splitQueries;
+    private final Callable<DuckDBConnection> connections;
+    private final ExecutorService executorService;
+    private final ExecutionPermits permits;
+    private final Statement owner;
+    private final int parallelism;
+
+    /**
+     * @param connections opens the connection a split runs on, set up like the caller's
+     * @param permits     taken by each split while it executes in DuckDB
+     * @param owner       statement registered for the query; closing it stops the splits
+     */
+    ParallelSplitSupplier(List<String> splitQueries,
+                          Callable<DuckDBConnection> connections,
+                          ExecutorService executorService,
+                          ExecutionPermits permits,
+                          Statement owner) {
+        this(splitQueries.stream().<Callable<String>>map(sql -> () -> sql).toList(), executorService, connections,
+                permits, owner);
+    }
+
+    private ParallelSplitSupplier(List<Callable<String>> splitQueries,
+                                  ExecutorService executorService,
+                                  Callable<DuckDBConnection> connections,
+                                  ExecutionPermits permits,
+                                  Statement owner) {
+        this.splitQueries = List.copyOf(splitQueries);
+        this.connections = connections;
+        this.executorService = executorService;
+        this.permits = permits;
+        this.owner = owner;
+        this.parallelism = Math.min(splitQueries.size(), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Like the constructor, but each split's SQL is only produced by the worker about to run it,
+     * so the first splits start while later ones are still being rewritten.
+     */
+    static ParallelSplitSupplier deferred(List<Callable<String>> splitQueries,
+                                          Callable<DuckDBConnection> connections,
+                                          ExecutorService executorService,
+                                          ExecutionPermits permits,
+                                          Statement owner) {
+        return new ParallelSplitSupplier(splitQueries, executorService, connections, permits, owner);
+    }
+
+    @Override
+    public boolean hasResultSet() {
+        return true;
+    }
+
+    /** The result is not a single DuckDB result set; see {@link #reader}. */
+    @Override
+    public DuckDBResultSet get() {
+        return null;
+    }
+
+    @Override
+    public void execute() {
+        // Splits start when the result is read.
+    }
+
+    /** The workers take the permits; see the class comment. */
+    @Override
+    public boolean usesExecutionPermit() {
+        return false;
+    }
+
+    @Override
+    public ArrowReader reader(DuckDBResultSet resultSet, BufferAllocator allocator, int batchSize) throws SQLException {
+        return new MergingReader(allocator, batchSize, owner.getQueryTimeout());
+    }
+
+    private record Item(ArrowRecordBatch batch, Throwable error) {
+        static final Item END = new Item(null, null);
+    }
+
+    private final class MergingReader extends ArrowReader {
+        private final ConcurrentLinkedQueue<Callable<String>> pending = new ConcurrentLinkedQueue<>(splitQueries);
+        private final BlockingQueue<Item> queue = new ArrayBlockingQueue<>(parallelism * 2);
+        private final CompletableFuture<Schema> schema = new CompletableFuture<>();
+        private final Set<Statement> running = ConcurrentHashMap.newKeySet();
+        private final List<Future<?>> workers = new ArrayList<>();
+        private final BufferAllocator allocator;
+        private final int batchSize;
+        private final int queryTimeoutSeconds;
+        private volatile boolean closed;
+        private int activeWorkers;
+
+        MergingReader(BufferAllocator allocator, int batchSize, int queryTimeoutSeconds) {
+            super(allocator);
+            this.allocator = allocator;
+            this.batchSize = batchSize;
+            this.queryTimeoutSeconds = queryTimeoutSeconds;
+            this.activeWorkers = parallelism;
+            for (int i = 0; i < parallelism; i++) {
+                workers.add(executorService.submit(this::runSplits));
+            }
+        }
+
+        @Override
+        public boolean loadNextBatch() throws IOException {
+            while (activeWorkers > 0) {
+                Item item;
+                try {
+                    item = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for split results", e);
+                }
+                if (item == null) {
+                    checkNotCancelled();
+                } else if (item.error() != null) {
+                    throw new IOException("Split failed: " + item.error().getMessage(), item.error());
+                } else if (item == Item.END) {
+                    activeWorkers--;
+                } else {
+                    try (var batch = item.batch()) {
+                        new VectorLoader(getVectorSchemaRoot()).load(batch);
+                    }
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        protected Schema readSchema() throws IOException {
+            while (true) {
+                try {
+                    return schema.get(POLL_MS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    checkNotCancelled();
+                } catch (ExecutionException e) {
+                    throw new IOException("Split failed: " + e.getCause().getMessage(), e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for split results", e);
+                }
+            }
+        }
+
+        @Override
+        public long bytesRead() {
+            return 0;
+        }
+
+        @Override
+        protected void closeReadSource() {
+            closed = true;
+            for (Statement statement : running) {
+                try {
+                    statement.cancel();
+                } catch (SQLException e) {
+                    logger.atDebug().setCause(e).log("Failed to cancel split");
+                }
+            }
+            for (Future<?> worker : workers) {
+                try {
+                    worker.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException e) {
+                    // Already reported through the queue.
+                }
+            }
+            Item item;
+            while ((item = queue.poll()) != null) {
+                if (item.batch() != null) {
+                    item.batch().close();
+                }
+            }
+        }
+
+        private void checkNotCancelled() {
+            try {
+                if (owner.isClosed()) {
+                    throw CallStatus.CANCELLED.withDescription("Query was cancelled").toRuntimeException();
+                }
+            } catch (SQLException e) {
+                throw CallStatus.CANCELLED.withCause(e).toRuntimeException();
+            }
+        }
+
+        private void runSplits() {
+            try {
+                Callable<String> split;
+                while (!closed && (split = pending.poll()) != null) {
+                    runSplit(split.call());
+                }
+                offer(Item.END);
+            } catch (Throwable t) {
+                schema.completeExceptionally(t);
+                offer(new Item(null, t));
+            }
+        }
+
+        private void runSplit(String sql) throws Exception {
+            try (DuckDBConnection connection = connections.call();
+                 Statement statement = connection.createStatement()) {
+                statement.setQueryTimeout(queryTimeoutSeconds);
+                running.add(statement);
+                var holdingPermit = false;
+                try {
+                    permits.acquire();
+                    holdingPermit = true;
+                    try (var resultSet = (DuckDBResultSet) statement.executeQuery(sql);
+                         var reader = (ArrowReader) resultSet.arrowExportStream(allocator, batchSize)) {
+                        var splitSchema = reader.getVectorSchemaRoot().getSchema();
+                        schema.complete(splitSchema);
+                        if (!schema.join().equals(splitSchema)) {
+                            throw new SQLException("Splits of the query returned different schemas: %s and %s"
+                                    .formatted(schema.join(), splitSchema));
+                        }
+                        while (!closed && reader.loadNextBatch()) {
+                            var batch = new VectorUnloader(reader.getVectorSchemaRoot()).getRecordBatch();
+                            permits.release();
+                            holdingPermit = false;
+                            if (!offer(new Item(batch, null))) {
+                                batch.close();
+                            }
+                            permits.acquire();
+                            holdingPermit = true;
+                        }
+                    }
+                } finally {
+                    if (holdingPermit) {
+                        permits.release();
+                    }
+                    running.remove(statement);
+                }
+            }
+        }
+
+        /** Queues an item unless the reader is closed first; returns whether it was queued. */
+        private boolean offer(Item item) {
+            try {
+                while (!closed) {
+                    if (queue.offer(item, POLL_MS, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package io.dazzleduck.sql.flight.server;
+
+import io.dazzleduck.sql.commons.planner.PartialAggregation;
+import org.apache.arrow.c.ArrowArrayStream;
+import org.apache.arrow.c.Data;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.util.AutoCloseables;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowReader;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.duckdb.DuckDBConnection;
+import org.duckdb.DuckDBResultSet;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Coordinates an aggregating query planned by {@link PartialAggregation}: runs the partial phase
+ * on every split through a {@link ParallelSplitSupplier}, exposes the merged partial results to
+ * the owning statement as {@link PartialAggregation#PARTIALS_TABLE} and streams the result of the
+ * final phase, which the owning statement runs over them.
+ *
+ * <p>Cancelling the query closes the owning statement, which stops both the final phase and the
+ * splits feeding it.
+ */
+final class PartialAggregationSupplier implements OptionalResultSetSupplier {
+
+    private final ParallelSplitSupplier partials;
+    private final String finalQuery;
+    private final Statement owner;
+
+    /**
+     * @param partials   runs the partial phase of every split, owned by {@code owner}
+     * @param finalQuery the final phase, reading {@link PartialAggregation#PARTIALS_TABLE}
+     * @param owner      statement registered for the query; runs the final phase
+     */
+    PartialAggregationSupplier(ParallelSplitSupplier partials, String finalQuery, Statement owner) {
+        this.partials = partials;
+        this.finalQuery = finalQuery;
+        this.owner = owner;
+    }
+
+    @Override
+    public boolean hasResultSet() {
+        return true;
+    }
+
+    /** The final phase runs once the result is read; see {@link #reader}. */
+    @Override
+    public DuckDBResultSet get() {
+        return null;
+    }
+
+    @Override
+    public void execute() {
+        // Splits start when the result is read.
+    }
+
+    /**
+     * The splits take their own permits. The final phase, which only merges partial results, runs
+     * without one: it waits on the splits, and holding a permit while doing so could starve them.
+     */
+    @Override
+    public boolean usesExecutionPermit() {
+        return false;
+    }
+
+    @Override
+    public ArrowReader reader(DuckDBResultSet resultSet, BufferAllocator allocator, int batchSize) throws SQLException {
+        var partialReader = partials.reader(null, allocator, batchSize);
+        var stream = ArrowArrayStream.allocateNew(allocator);
+        DuckDBResultSet finalResult = null;
+        try {
+            Data.exportArrayStream(allocator, partialReader, stream);
+            owner.getConnection().unwrap(DuckDBConnection.class)
+                    .registerArrowStream(PartialAggregation.PARTIALS_TABLE, stream);
+            finalResult = (DuckDBResultSet) owner.executeQuery(finalQuery);
+            var finalReader = (ArrowReader) finalResult.arrowExportStream(allocator, batchSize);
+            return new FinalReader(allocator, finalReader, finalResult, stream, partialReader);
+        } catch (SQLException | RuntimeException e) {
+            try {
+                AutoCloseables.close(finalResult, stream, partialReader);
+            } catch (Exception closeException) {
+                e.addSuppressed(closeException);
+            }
+            throw e;
+        }
+    }
+
+    /** Streams the final phase and releases the partial results with it. */
+    private static final class FinalReader extends ArrowReader {
+        private final ArrowReader result;
+        private final AutoCloseable[] resources;
+
+        FinalReader(BufferAllocator allocator, ArrowReader result, AutoCloseable... resources) {
+            super(allocator);
+            this.result = result;
+            this.resources = resources;
+        }
+
+        @Override
+        public VectorSchemaRoot getVectorSchemaRoot() throws IOException {
+            return result.getVectorSchemaRoot();
+        }
+
+        @Override
+        public boolean loadNextBatch() throws IOException {
+            return result.loadNextBatch();
+        }
+
+        @Override
+        public long bytesRead() {
+            return result.bytesRead();
+        }
+
+        @Override
+        protected Schema readSchema() throws IOException {
+            return result.getVectorSchemaRoot().getSchema();
+        }
+
+        @Override
+        protected void closeReadSource() throws IOException {
+            try {
+                AutoCloseables.close(result);
+                AutoCloseables.close(resources);
+            } catch (Exception e) {
+                throw new IOException("Failed to release the partial results", e);
+            }
+        }
+    }
+}
@@ -9,22 +9,28 @@ import io.dazzleduck.sql.commons.authorization.AccessMode;
 import io.dazzleduck.sql.commons.authorization.UnauthorizedException;
 import io.dazzleduck.sql.commons.ingestion.IngestionHandler;
 import io.dazzleduck.sql.flight.ingestion.IngestionParameters;
+import io.dazzleduck.sql.commons.planner.PartialAggregation;
 import io.dazzleduck.sql.commons.planner.SplitPlanner;
 import io.dazzleduck.sql.flight.FlightRecorder;
 import io.dazzleduck.sql.flight.optimizer.QueryOptimizer;
 import org.apache.arrow.flight.*;
 import org.apache.arrow.flight.sql.impl.FlightSql;
 import org.apache.arrow.memory.BufferAllocator;
+import org.duckdb.DuckDBConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.Clock;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ScheduledExecutorService;
 
 import static com.google.protobuf.ByteString.copyFrom;
@@ -33,6 +39,7 @@ public class RestrictedFlightSqlProducer extends DuckDBFlightSqlProducer {
 
     private static final Logger logger = LoggerFactory.getLogger(RestrictedFlightSqlProducer.class);
     private final QueryOptimizer queryOptimizer;
+    private volatile Set<String> aggregateFunctionNames;
     public RestrictedFlightSqlProducer(Location serverLocation, String producerId, String secretKey, BufferAllocator allocator, String warehousePath, AccessMode accessMode, Path tempDir, IngestionHandler postIngestionHandler, ScheduledExecutorService scheduledExecutorService, Duration queryTimeout, Clock clock, FlightRecorder recorder, QueryOptimizer queryOptimizer, IngestionConfig ingestionConfig) {
         this(serverLocation, producerId, secretKey, allocator, warehousePath, accessMode, tempDir, postIngestionHandler, scheduledExecutorService, queryTimeout, Duration.ZERO, clock, recorder, queryOptimizer, ingestionConfig, List.of());
     }
@@ -534,9 +541,24 @@ public class RestrictedFlightSqlProducer extends DuckDBFlightSqlProducer {
                                                         final CallContext context,
                                                         final FlightDescriptor descriptor) {
         try {
+            if (mergeSplits(context)) {
+                try (var connection = getConnection(context, getAccessMode())) {
+                    var aggregateFunctions = getAggregateFunctionNames(connection);
+                    if (SplitPlanner.isConcatenable(tree, aggregateFunctions)
+                            || PartialAggregation.plan(connection, tree, aggregateFunctions).isPresent()) {
+                        // One endpoint: streaming it runs and merges the splits, see createResultSetSupplier.
+                        var sql = Transformations.parseToSql(connection, tree);
+                        var ticket = FlightSql.TicketStatementQuery.newBuilder()
+                                .setStatementHandle(copyFrom(newStatementHandle(sql).serialize()))
+                                .build();
+                        return getFlightInfoForSchema(List.of(ticket), descriptor, null, getDataProcessorLocations());
+                    }
+                }
+            }
             var splitSize = getSplitSize(context);
-            var splits = SplitPlanner.getSplitTreeAndSize(tree, splitSize);
-            var list = splits.stream().map(split -> {
+            var locations = getDataProcessorLocations();
+            var splits = SplitPlanner.getSplitTrees(tree, splitSize, Math.max(1, locations.size()));
+            var list = splits.map(split -> {
                 try {
                     var sql = Transformations.parseToSql(split.tree());
                     StatementHandle handle = newStatementHandle(sql, split.size());
@@ -547,7 +569,7 @@ public class RestrictedFlightSqlProducer extends DuckDBFlightSqlProducer {
                     throw new RuntimeException(e);
                 }
             }).toList();
-            return getFlightInfoForSchema(list, descriptor, null, getDataProcessorLocations());
+            return getFlightInfoForSchema(list, descriptor, null, locations);
         } catch (Throwable throwable) {
             ErrorHandling.handleThrowable(throwable);
             return null;
@@ -580,4 +602,94 @@ public class RestrictedFlightSqlProducer extends DuckDBFlightSqlProducer {
         return OptionalResultSetSupplier.of(statement, query, queryOptimizer);
     }
 
+    /**
+     * With a split size header, statements streamed as a whole (HTTP queries and the endpoint of
+     * the merge split mode) run their splits in parallel and merge them into the one stream. Split
+     * results are concatenated when possible; decomposable aggregations run their partial phase on
+     * the splits and their final phase over the merged partial results. Anything else runs as a
+     * single statement.
+     *
+     * <p>The splits are planned once the stream has been admitted, so listing their files neither
+     * runs on the calling thread nor bypasses the workload class. Each split runs on a connection
+     * with the class's session settings and takes an execution permit of its own.
+     */
+    @Override
+    protected OptionalResultSetSupplier createResultSetSupplier(CallContext context, Statement statement, String query,
+                                                                WorkloadClass workloadClass) {
+        if (!parallelize(context)) {
+            return createResultSetSupplier(statement, query);
+        }
+        return OptionalResultSetSupplier.deferred(() -> planSplits(context, statement, query, workloadClass));
+    }
+
+    private OptionalResultSetSupplier planSplits(CallContext context, Statement statement, String query,
+                                                 WorkloadClass workloadClass) {
+        try {
+            var connection = statement.getConnection();
+            var tree = Transformations.parseToTree(connection, query);
+            var aggregateFunctions = getAggregateFunctionNames(connection);
+            Callable<DuckDBConnection> splitConnections = () -> splitConnection(context, workloadClass);
+            if (SplitPlanner.isConcatenable(tree, aggregateFunctions)) {
+                var splitQueries = splitQueries(tree, getSplitSize(context));
+                if (splitQueries.size() > 1) {
+                    return ParallelSplitSupplier.deferred(splitQueries, splitConnections, executorService,
+                            executionPermits, statement);
+                }
+            } else {
+                var plan = PartialAggregation.plan(connection, tree, aggregateFunctions);
+                if (plan.isPresent()) {
+                    var splitQueries = splitQueries(plan.get().partialTree(), getSplitSize(context));
+                    if (splitQueries.size() > 1) {
+                        var partials = ParallelSplitSupplier.deferred(splitQueries, splitConnections, executorService,
+                                executionPermits, statement);
+                        var finalQuery = Transformations.parseToSql(connection, plan.get().finalTree());
+                        return new PartialAggregationSupplier(partials, finalQuery, statement);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            logger.atDebug().setCause(e).log("Query cannot be split, running it as a single statement");
+        }
+        return createResultSetSupplier(statement, query);
+    }
+
+    private DuckDBConnection splitConnection(CallContext context, WorkloadClass workloadClass) throws SQLException {
+        var connection = getConnection(context, getAccessMode());
+        try {
+            workloadClass.applySessionSettings(connection);
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    /**
+     * The SQL of each split, balanced over this server's cores. A split is only rewritten when a
+     * worker takes it, on a connection of its own.
+     */
+    private List<Callable<String>> splitQueries(JsonNode tree, long splitSize) throws SQLException, IOException {
+        var splits = SplitPlanner.getSplitStatus(tree, splitSize, Runtime.getRuntime().availableProcessors());
+        var splitQueries = new ArrayList<Callable<String>>(splits.size());
+        for (var split : splits) {
+            splitQueries.add(() -> queryOptimizer.optimize(
+                    Transformations.parseToSql(SplitPlanner.getSplitTree(tree, split).tree())));
+        }
+        return splitQueries;
+    }
+
+    private static boolean mergeSplits(CallContext context) {
+        return Headers.SPLIT_MODE_MERGE.equals(
+                ContextUtils.getValue(context, Headers.HEADER_SPLIT_MODE, Headers.SPLIT_MODE_ENDPOINTS, String.class));
+    }
+
+    private Set<String> getAggregateFunctionNames(Connection connection) {
+        var names = aggregateFunctionNames;
+        if (names == null) {
+            names = SplitPlanner.aggregateFunctionNames(connection);
+            aggregateFunctionNames = names;
+        }
+        return names;
+    }
+
 }
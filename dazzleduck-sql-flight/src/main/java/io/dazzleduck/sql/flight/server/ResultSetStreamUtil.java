@@ -30,18 +30,37 @@ public class ResultSetStreamUtil {
                                 final FlightProducer.ServerStreamListener listener,
                                 Runnable finalBlock,
                                 FlightRecorder recorder) {
+        streamResultSet(executorService, supplier, allocator, batchSize, listener, finalBlock, recorder,
+                CursorConfig.DEFAULT, ExecutionPermits.UNLIMITED);
+    }
+
+    static void streamResultSet(ExecutorService executorService,
+                                ResultSetSupplier supplier,
+                                BufferAllocator allocator,
+                                final int batchSize,
+                                final FlightProducer.ServerStreamListener listener,
+                                Runnable finalBlock,
+                                FlightRecorder recorder,
+                                CursorConfig cursorConfig,
+                                ExecutionPermits permits) {
+        long submitted = System.nanoTime();
         executorService.submit(() -> {
             BufferAllocator childAllocator = null;
+            var flowControl = new StreamFlowControl(listener, cursorConfig.streamReadyTimeoutMs(), permits);
             var error = false;
             try {
-                childAllocator = allocator.newChildAllocator("statement-allocator", 0, allocator.getLimit());
+                flowControl.acquireExecution();
+                recorder.recordQueueDelay(false, System.nanoTime() - submitted);
+                childAllocator = StreamFlowControl.newStreamAllocator(allocator, cursorConfig.streamBufferBudgetBytes());
                 recorder.startStream(false);
                 try (DuckDBResultSet resultSet = supplier.get();
                      ArrowReader reader = (ArrowReader) resultSet.arrowExportStream(childAllocator, batchSize)) {
+                    flowControl.releaseExecution();
                     listener.start(reader.getVectorSchemaRoot());
-                    while (reader.loadNextBatch()) {
+                    while (nextBatch(flowControl, listener, reader)) {
                         var size = childAllocator.getAllocatedMemory();
                         recorder.recordGetStream(false, size);
+                        flowControl.releaseExecution();
                         listener.putNext();
                     }
                 }
@@ -50,9 +69,11 @@ public class ResultSetStreamUtil {
                 recorder.errorStream(false);
                 ErrorHandling.handleThrowable(listener, throwable);
             } finally {
+                flowControl.releaseExecution();
                 if (!error) {
                     listener.completed();
                 }
+                recorder.recordStreamBlocked(false, flowControl.blockedNanos());
                 recorder.endStream(false);
                 finalBlock.run();
                 if (childAllocator != null) {
@@ -70,21 +91,55 @@ public class ResultSetStreamUtil {
                                                       final int batchSize,
                                                       final FlightProducer.ServerStreamListener listener,
                                                       Runnable finalBlock, FlightRecorder recorder) {
+        streamResultSet(executorService, statementContext, key, supplier, allocator, batchSize, listener,
+                finalBlock, recorder, CursorConfig.DEFAULT, ExecutionPermits.UNLIMITED,
+                WorkloadClass.unlimited(WorkloadManager.DEFAULT_CLASS));
+    }
 
+    /**
+     * Streams a statement's result. The stream is first admitted into its workload class and
+     * keeps that slot until it ends; within the class, it holds an execution permit only while
+     * DuckDB produces data, or none at all when its splits take their own. Time spent in both queues is recorded as the statement's queue delay.
+     */
+    static <T extends Statement> void streamResultSet(ExecutorService executorService,
+                                                      StatementContext<T> statementContext,
+                                                      DuckDBFlightSqlProducer.CacheKey key,
+                                                      OptionalResultSetSupplier supplier,
+                                                      BufferAllocator allocator,
+                                                      final int batchSize,
+                                                      final FlightProducer.ServerStreamListener listener,
+                                                      Runnable finalBlock, FlightRecorder recorder,
+                                                      CursorConfig cursorConfig,
+                                                      ExecutionPermits permits,
+                                                      WorkloadClass workloadClass) {
+        long submitted = System.nanoTime();
         executorService.submit(() -> {
             BufferAllocator childAllocator = null;
+            var flowControl = new StreamFlowControl(listener, cursorConfig.streamReadyTimeoutMs(), permits);
             var error = false;
+            var admitted = false;
             try {
-                childAllocator = allocator.newChildAllocator("statement-allocator", 0, allocator.getLimit());
+                workloadClass.admit();
+                admitted = true;
+                flowControl.acquireExecution();
+                long queueDelay = System.nanoTime() - submitted;
+                statementContext.queueDelay(queueDelay);
+                recorder.recordQueueDelay(statementContext.isPreparedStatementContext(), queueDelay);
+                childAllocator = StreamFlowControl.newStreamAllocator(allocator, cursorConfig.streamBufferBudgetBytes());
                 statementContext.start();
                 recorder.startStream(statementContext.isPreparedStatementContext());
                 recorder.recordStatementStreamStart(key, statementContext);
                 supplier.execute();
+                if (!supplier.usesExecutionPermit()) {
+                    flowControl.withoutExecutionPermits();
+                }
                 if (supplier.hasResultSet()) {
                     try (DuckDBResultSet resultSet = supplier.get();
-                         ArrowReader reader = (ArrowReader) resultSet.arrowExportStream(childAllocator, batchSize)) {
+                         ArrowReader reader = supplier.reader(resultSet, childAllocator, batchSize)) {
+                        flowControl.releaseExecution();
                         listener.start(reader.getVectorSchemaRoot());
-                        while (reader.loadNextBatch()) {
+                        while (nextBatch(flowControl, listener, reader)) {
+                            flowControl.releaseExecution();
                             listener.putNext();
                             var size = childAllocator.getAllocatedMemory();
                             statementContext.bytesOut(size);
@@ -93,6 +148,7 @@ public class ResultSetStreamUtil {
                         }
                     }
                 } else {
+                    flowControl.releaseExecution();
                     listener.start(new VectorSchemaRoot(List.of()));
                 }
             } catch (Throwable throwable) {
@@ -101,11 +157,16 @@ public class ResultSetStreamUtil {
                 recorder.recordStatementStreamError(key, statementContext, throwable);
                 ErrorHandling.handleThrowable(listener, throwable);
             } finally {
+                flowControl.releaseExecution();
+                if (admitted) {
+                    workloadClass.leave();
+                }
                 try {
                     if (!error) {
                         listener.completed();
                     }
                     statementContext.end();
+                    recorder.recordStreamBlocked(statementContext.isPreparedStatementContext(), flowControl.blockedNanos());
                     recorder.endStream(statementContext.isPreparedStatementContext());
                     recorder.recordStatementStreamEnd(key, statementContext);
                     finalBlock.run();
@@ -119,6 +180,22 @@ public class ResultSetStreamUtil {
         });
     }
 
+    /**
+     * Waits until the consumer can take another batch, then takes an execution permit and loads
+     * it. Returns {@code false} at the end of the result or once the call is cancelled, so a gone
+     * client stops the query. The caller releases the permit before handing the batch over.
+     */
+    private static boolean nextBatch(StreamFlowControl flowControl,
+                                     FlightProducer.ServerStreamListener listener,
+                                     ArrowReader reader) throws Exception {
+        flowControl.awaitReady();
+        if (listener.isCancelled()) {
+            return false;
+        }
+        flowControl.acquireExecution();
+        return reader.loadNextBatch();
+    }
+
     static void streamResultSet(ExecutorService executorService,
                                 ResultSetSupplierFromConnection supplier,
                                 FlightProducer.CallContext context, AccessMode accessMode,
@@ -2,6 +2,7 @@ package io.dazzleduck.sql.flight.server;
 
 import io.dazzleduck.sql.commons.ingestion.Stats;
 import io.dazzleduck.sql.flight.model.RunningStatementInfo;
+import io.dazzleduck.sql.flight.model.WorkloadClassStats;
 
 import java.time.Instant;
 import java.util.List;
@@ -12,6 +13,9 @@ public interface SqlProducerMBean {
     long getRunningPreparedStatements();
     double getBytesOut();
     double getBytesIn();
+    long getStreamBlockedMillis();
+    long getWaitingExecutions();
+    List<WorkloadClassStats> getWorkloadClassStats();
     long getIngestRequests();
     long getIngestErrors();
     Instant getStartTime();
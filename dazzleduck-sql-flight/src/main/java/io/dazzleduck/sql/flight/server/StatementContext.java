@@ -44,6 +44,8 @@ public final class StatementContext<T extends Statement> implements AutoCloseabl
 
     private long bytesOut;
 
+    private long queueDelayNanos;
+
     private final boolean isPreparedStatementContext;
 
     private final Connection connection;
@@ -144,6 +146,15 @@ public final class StatementContext<T extends Statement> implements AutoCloseabl
         return this.bytesOut;
     }
 
+    /** Time the last execution waited between submission and its execution permit. */
+    public synchronized void queueDelay(long nanos) {
+        this.queueDelayNanos = nanos;
+    }
+
+    public synchronized long queueDelayNanos() {
+        return queueDelayNanos;
+    }
+
     public synchronized long useCount() {
         return useCount;
     }
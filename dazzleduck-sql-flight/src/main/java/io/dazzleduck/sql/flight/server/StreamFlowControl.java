@@ -0,0 +1,136 @@
+package io.dazzleduck.sql.flight.server;
+
+import org.apache.arrow.flight.CallStatus;
+import org.apache.arrow.flight.FlightProducer;
+import org.apache.arrow.memory.BufferAllocator;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces one result stream to its consumer.
+ *
+ * <p>{@link ResultSetStreamUtil} calls {@link #awaitReady()} before reading each batch from
+ * DuckDB. Against a slow Flight client the gRPC transport reports not-ready as soon as its
+ * outbound buffer fills, so the stream stops pulling batches instead of queueing them in server
+ * memory; the query resumes when the transport signals it drained. Memory is additionally capped
+ * per stream by {@link #newStreamAllocator}, so a stream that still outgrows its budget fails on
+ * its own rather than starving other queries.
+ *
+ * <p>The HTTP listeners write synchronously to the response, so they are always ready and a slow
+ * HTTP client simply blocks the write.
+ *
+ * <p>The stream's {@link ExecutionPermits execution permit} is taken with
+ * {@link #acquireExecution()} while DuckDB works and given back with {@link #releaseExecution()}
+ * before any client I/O, so neither a blocking HTTP write nor a not-ready Flight transport holds
+ * one.
+ *
+ * <p>Not thread safe: one instance per stream, used by the stream's producing thread.
+ */
+final class StreamFlowControl {
+
+    /** Re-check interval while waiting, for transports whose ready callback cannot be registered. */
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final FlightProducer.ServerStreamListener listener;
+    private final long readyTimeoutMs;
+    private ExecutionPermits permits;
+    private final Object monitor = new Object();
+    private long blockedNanos;
+    private boolean holdingPermit;
+
+    StreamFlowControl(FlightProducer.ServerStreamListener listener, long readyTimeoutMs) {
+        this(listener, readyTimeoutMs, ExecutionPermits.UNLIMITED);
+    }
+
+    /**
+     * @param readyTimeoutMs how long the client may accept nothing before the stream is failed;
+     *                       {@code <= 0} waits as long as the call is not cancelled
+     */
+    StreamFlowControl(FlightProducer.ServerStreamListener listener, long readyTimeoutMs, ExecutionPermits permits) {
+        this.listener = listener;
+        this.readyTimeoutMs = readyTimeoutMs;
+        this.permits = permits;
+        try {
+            listener.setOnReadyHandler(this::signal);
+        } catch (UnsupportedOperationException | IllegalStateException e) {
+            // No callback available: awaitReady() falls back to polling isReady().
+        }
+    }
+
+    /**
+     * Child allocator for one stream. Its limit is the buffer budget, bounding the current batch
+     * plus the batches the transport still holds.
+     */
+    static BufferAllocator newStreamAllocator(BufferAllocator parent, long bufferBudgetBytes) {
+        long limit = bufferBudgetBytes > 0 ? Math.min(parent.getLimit(), bufferBudgetBytes) : parent.getLimit();
+        return parent.newChildAllocator("statement-allocator", 0, limit);
+    }
+
+    /**
+     * Blocks until the consumer is ready for another batch or the call is cancelled.
+     *
+     * @throws org.apache.arrow.flight.FlightRuntimeException {@code TIMED_OUT} if the consumer
+     *         stays not-ready for longer than the ready timeout
+     */
+    void awaitReady() throws InterruptedException {
+        if (listener.isReady() || listener.isCancelled()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            synchronized (monitor) {
+                while (!listener.isReady() && !listener.isCancelled()) {
+                    long waitNanos = POLL_NANOS;
+                    if (readyTimeoutMs > 0) {
+                        long remaining = TimeUnit.MILLISECONDS.toNanos(readyTimeoutMs) - (System.nanoTime() - start);
+                        if (remaining <= 0) {
+                            throw CallStatus.TIMED_OUT
+                                    .withDescription("Client did not accept result data for " + readyTimeoutMs + " ms")
+                                    .toRuntimeException();
+                        }
+                        waitNanos = Math.min(remaining, POLL_NANOS);
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(monitor, waitNanos);
+                }
+            }
+        } finally {
+            blockedNanos += System.nanoTime() - start;
+        }
+    }
+
+    /** Takes an execution permit unless the stream already holds one. */
+    void acquireExecution() throws InterruptedException {
+        if (!holdingPermit) {
+            permits.acquire();
+            holdingPermit = true;
+        }
+    }
+
+    /** Gives the execution permit back, if held. */
+    void releaseExecution() {
+        if (holdingPermit) {
+            holdingPermit = false;
+            permits.release();
+        }
+    }
+
+    /**
+     * Gives the permit back and takes none from now on, for streams whose DuckDB work runs on
+     * other threads that take their own permits (see {@link OptionalResultSetSupplier#usesExecutionPermit()}).
+     */
+    void withoutExecutionPermits() {
+        releaseExecution();
+        permits = ExecutionPermits.UNLIMITED;
+    }
+
+    /** Total time this stream spent in {@link #awaitReady()} waiting for the consumer. */
+    long blockedNanos() {
+        return blockedNanos;
+    }
+
+    private void signal() {
+        synchronized (monitor) {
+            monitor.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package io.dazzleduck.sql.flight.server;
+
+import io.dazzleduck.sql.flight.model.WorkloadClassStats;
+import org.apache.arrow.flight.CallStatus;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * One class of queries sharing a concurrency limit, see {@link WorkloadManager}.
+ *
+ * <p>A query is admitted with {@link #admit()} before it starts executing and holds its slot until
+ * its stream ends, when it calls {@link #leave()}. Queries over the limit wait in arrival order
+ * for at most the queue timeout and are then rejected with {@code RESOURCE_EXHAUSTED}, so a
+ * saturated class sheds load instead of piling up streams. Slots of one class never block
+ * queries of another.
+ */
+public final class WorkloadClass {
+
+    private static final Pattern SETTING_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private final String name;
+    private final int maxConcurrency;
+    private final long queueTimeoutMs;
+    private final List<String> queryGroups;
+    private final Map<String, String> sessionSettings;
+    private final Semaphore slots;
+    private final AtomicInteger running = new AtomicInteger();
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    /**
+     * @param maxConcurrency  queries allowed to run at once; {@code <= 0} means unlimited
+     * @param queueTimeoutMs  how long a query may wait for a slot; {@code <= 0} waits indefinitely
+     * @param queryGroups     named-query groups whose queries fall into this class
+     * @param sessionSettings DuckDB settings applied with {@code SET SESSION} to the connection of
+     *                        every query of the class
+     */
+    public WorkloadClass(String name, int maxConcurrency, long queueTimeoutMs,
+                         List<String> queryGroups, Map<String, String> sessionSettings) {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("Workload class name must not be blank");
+        }
+        for (String setting : sessionSettings.keySet()) {
+            if (!SETTING_NAME.matcher(setting).matches()) {
+                throw new IllegalArgumentException("Workload class '%s': invalid setting name '%s'".formatted(name, setting));
+            }
+        }
+        this.name = name;
+        this.maxConcurrency = Math.max(maxConcurrency, 0);
+        this.queueTimeoutMs = queueTimeoutMs;
+        this.queryGroups = List.copyOf(queryGroups);
+        this.sessionSettings = Map.copyOf(sessionSettings);
+        this.slots = maxConcurrency > 0 ? new Semaphore(maxConcurrency, true) : null;
+    }
+
+    /** A class without limits or settings, used when no workload classes are configured. */
+    static WorkloadClass unlimited(String name) {
+        return new WorkloadClass(name, 0, 0, List.of(), Map.of());
+    }
+
+    public String name() {
+        return name;
+    }
+
+    List<String> queryGroups() {
+        return queryGroups;
+    }
+
+    /**
+     * Waits for a slot of this class.
+     *
+     * @throws org.apache.arrow.flight.FlightRuntimeException {@code RESOURCE_EXHAUSTED} if no slot
+     *         frees up within the queue timeout
+     */
+    void admit() throws InterruptedException {
+        long start = System.nanoTime();
+        try {
+            if (slots != null) {
+                if (queueTimeoutMs <= 0) {
+                    slots.acquire();
+                } else if (!slots.tryAcquire(queueTimeoutMs, TimeUnit.MILLISECONDS)) {
+                    rejected.increment();
+                    throw CallStatus.RESOURCE_EXHAUSTED
+                            .withDescription("Workload class '%s' is running its limit of %d queries; gave up after waiting %d ms"
+                                    .formatted(name, maxConcurrency, queueTimeoutMs))
+                            .toRuntimeException();
+                }
+            }
+        } finally {
+            waitNanos.add(System.nanoTime() - start);
+        }
+        admitted.increment();
+        running.incrementAndGet();
+    }
+
+    /** Gives back the slot taken by {@link #admit()}. */
+    void leave() {
+        running.decrementAndGet();
+        if (slots != null) {
+            slots.release();
+        }
+    }
+
+    /** Applies the class's DuckDB settings to a query's connection. */
+    void applySessionSettings(Connection connection) throws SQLException {
+        if (sessionSettings.isEmpty()) {
+            return;
+        }
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : sessionSettingStatements()) {
+                statement.execute(sql);
+            }
+        }
+    }
+
+    /** {@code SET SESSION} statements for the class's settings; empty when it has none. */
+    List<String> sessionSettingStatements() {
+        var statements = new ArrayList<String>(sessionSettings.size());
+        sessionSettings.forEach((setting, value) ->
+                statements.add("SET SESSION %s = '%s'".formatted(setting, value.replace("'", "''"))));
+        return statements;
+    }
+
+    WorkloadClassStats stats() {
+        return new WorkloadClassStats(name, maxConcurrency, running.get(),
+                slots == null ? 0 : slots.getQueueLength(), admitted.sum(), rejected.sum(),
+                TimeUnit.NANOSECONDS.toMillis(waitNanos.sum()));
+    }
+}
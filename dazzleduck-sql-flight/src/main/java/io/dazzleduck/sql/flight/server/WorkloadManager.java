@@ -0,0 +1,136 @@
+package io.dazzleduck.sql.flight.server;
+
+import com.typesafe.config.Config;
+import io.dazzleduck.sql.common.ConfigConstants;
+import io.dazzleduck.sql.flight.model.WorkloadClassStats;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Classifies queries into {@link WorkloadClass workload classes} and admits them against each
+ * class's concurrency limit, so that e.g. dashboard queries keep running while a batch of heavy
+ * exports is queued behind its own, smaller limit.
+ *
+ * <p>A query's class is, in order:
+ * <ol>
+ *   <li>the class named by the caller's verified JWT claim (default claim {@code workload_class}),
+ *       if such a class is configured;</li>
+ *   <li>the class listing the query's named-query group in its {@code query_groups};</li>
+ *   <li>the {@code default} class — configured like any other, or unlimited if absent.</li>
+ * </ol>
+ * Configured under {@code workload}:
+ * <pre>{@code
+ * workload {
+ *   claim = "workload_class"
+ *   classes = [
+ *     { name = "dashboard", max_concurrency = 8, queue_timeout_ms = 5000, query_groups = ["dashboard"] }
+ *     { name = "export", max_concurrency = 2, queue_timeout_ms = 600000,
+ *       session_settings { preserve_insertion_order = "false" } }
+ *   ]
+ * }
+ * }</pre>
+ */
+public final class WorkloadManager {
+
+    public static final String DEFAULT_CLASS = "default";
+    public static final String DEFAULT_CLAIM = "workload_class";
+
+    /** No classes configured: every query is admitted into an unlimited default class. */
+    public static WorkloadManager none() {
+        return new WorkloadManager(DEFAULT_CLAIM, List.of());
+    }
+
+    private final String claim;
+    private final Map<String, WorkloadClass> classes = new LinkedHashMap<>();
+    private final Map<String, WorkloadClass> byQueryGroup = new HashMap<>();
+    private final WorkloadClass defaultClass;
+
+    public WorkloadManager(String claim, List<WorkloadClass> workloadClasses) {
+        this.claim = claim;
+        for (WorkloadClass workloadClass : workloadClasses) {
+            if (classes.putIfAbsent(workloadClass.name(), workloadClass) != null) {
+                throw new IllegalArgumentException("Duplicate workload class '%s'".formatted(workloadClass.name()));
+            }
+            for (String group : workloadClass.queryGroups()) {
+                var previous = byQueryGroup.putIfAbsent(group, workloadClass);
+                if (previous != null) {
+                    throw new IllegalArgumentException("Query group '%s' is assigned to both workload classes '%s' and '%s'"
+                            .formatted(group, previous.name(), workloadClass.name()));
+                }
+            }
+        }
+        this.defaultClass = classes.computeIfAbsent(DEFAULT_CLASS, WorkloadClass::unlimited);
+    }
+
+    public static WorkloadManager fromConfig(Config config) {
+        if (!config.hasPath(ConfigConstants.WORKLOAD_KEY)) {
+            return none();
+        }
+        var workload = config.getConfig(ConfigConstants.WORKLOAD_KEY);
+        var claim = workload.hasPath(ConfigConstants.WORKLOAD_CLAIM_KEY)
+                ? workload.getString(ConfigConstants.WORKLOAD_CLAIM_KEY) : DEFAULT_CLAIM;
+        var classes = new ArrayList<WorkloadClass>();
+        if (workload.hasPath(ConfigConstants.WORKLOAD_CLASSES_KEY)) {
+            for (Config c : workload.getConfigList(ConfigConstants.WORKLOAD_CLASSES_KEY)) {
+                var settings = new LinkedHashMap<String, String>();
+                if (c.hasPath(ConfigConstants.WORKLOAD_SESSION_SETTINGS_KEY)) {
+                    c.getConfig(ConfigConstants.WORKLOAD_SESSION_SETTINGS_KEY).root()
+                            .forEach((k, v) -> settings.put(k, String.valueOf(v.unwrapped())));
+                }
+                classes.add(new WorkloadClass(
+                        c.getString(ConfigConstants.WORKLOAD_NAME_KEY),
+                        c.hasPath(ConfigConstants.WORKLOAD_MAX_CONCURRENCY_KEY)
+                                ? c.getInt(ConfigConstants.WORKLOAD_MAX_CONCURRENCY_KEY) : 0,
+                        c.hasPath(ConfigConstants.WORKLOAD_QUEUE_TIMEOUT_MS_KEY)
+                                ? c.getLong(ConfigConstants.WORKLOAD_QUEUE_TIMEOUT_MS_KEY) : 0,
+                        c.hasPath(ConfigConstants.WORKLOAD_QUERY_GROUPS_KEY)
+                                ? c.getStringList(ConfigConstants.WORKLOAD_QUERY_GROUPS_KEY) : List.of(),
+                        settings));
+            }
+        }
+        return new WorkloadManager(claim, classes);
+    }
+
+    /**
+     * @param verifiedClaims the caller's verified JWT claims; empty for unauthenticated calls
+     * @param queryGroup     the named-query group of the query, or {@code null} for ad-hoc SQL
+     */
+    WorkloadClass classify(Map<String, String> verifiedClaims, String queryGroup) {
+        var claimed = verifiedClaims.get(claim);
+        if (claimed != null && classes.containsKey(claimed)) {
+            return classes.get(claimed);
+        }
+        if (queryGroup != null) {
+            var byGroup = byQueryGroup.get(queryGroup);
+            if (byGroup != null) {
+                return byGroup;
+            }
+        }
+        return defaultClass;
+    }
+
+    /**
+     * Applies every class's settings once to a scratch connection, so a misspelled or global-only
+     * DuckDB setting fails at startup rather than on the first query of the class.
+     */
+    void validateSessionSettings(Connection connection) {
+        for (WorkloadClass workloadClass : classes.values()) {
+            try {
+                workloadClass.applySessionSettings(connection);
+            } catch (SQLException e) {
+                throw new IllegalArgumentException("Workload class '%s': invalid session settings: %s"
+                        .formatted(workloadClass.name(), e.getMessage()), e);
+            }
+        }
+    }
+
+    public List<WorkloadClassStats> stats() {
+        return classes.values().stream().map(WorkloadClass::stats).toList();
+    }
+}
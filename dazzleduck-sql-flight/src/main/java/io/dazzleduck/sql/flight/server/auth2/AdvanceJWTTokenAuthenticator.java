@@ -5,6 +5,8 @@ import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 import io.dazzleduck.sql.common.ConfigConstants;
 import io.dazzleduck.sql.common.auth.JwtClaimsExtractor;
+import io.dazzleduck.sql.common.auth.VerifiedTokenCache;
+import io.dazzleduck.sql.common.auth.VerifiedTokenCache.VerifiedToken;
 import io.grpc.Metadata;
 import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
@@ -27,6 +29,7 @@ import static io.dazzleduck.sql.common.auth.JwtClaimsExtractor.parseJwtClaims;
 public class AdvanceJWTTokenAuthenticator implements CallHeaderAuthenticator {
 
     private static final Logger logger = LoggerFactory.getLogger(AdvanceBasicCallHeaderAuthenticator.class);
+    private static final int TOKEN_CACHE_MAX_ENTRIES = 10_000;
     private final SecretKey key;
     private final JwtParser jwtParser;
     private final Boolean verifySignature;
@@ -35,6 +38,7 @@ public class AdvanceJWTTokenAuthenticator implements CallHeaderAuthenticator {
     private final List<String> claimHeader;
     private final boolean generateToken;
     private final Set<String> validateHeaders;
+    private final VerifiedTokenCache tokenCache;
 
 
     public AdvanceJWTTokenAuthenticator(CallHeaderAuthenticator initialAuthenticator, SecretKey key) {
@@ -59,6 +63,15 @@ public class AdvanceJWTTokenAuthenticator implements CallHeaderAuthenticator {
         this.claimHeader = config.getStringList(ConfigConstants.JWT_TOKEN_CLAIMS_GENERATE_HEADERS_KEY);
         this.validateHeaders = new HashSet<>(config.getStringList(ConfigConstants.JWT_TOKEN_CLAIMS_VALIDATE_HEADERS_KEY));
         this.generateToken = config.getBoolean(ConfigConstants.JWT_TOKEN_GENERATION_KEY);
+        this.tokenCache = new VerifiedTokenCache(TOKEN_CACHE_MAX_ENTRIES, token -> {
+            var payload = parseJwtClaims(token, jwtParser, verifySignature);
+            return new VerifiedToken(payload, JwtClaimsExtractor.extractClaims(payload, claimHeader));
+        });
+    }
+
+    /** The cache of verified bearer tokens, for its hit ratio. */
+    public VerifiedTokenCache tokenCache() {
+        return tokenCache;
     }
 
     private static Config defaulConfig() {
@@ -129,7 +142,8 @@ public class AdvanceJWTTokenAuthenticator implements CallHeaderAuthenticator {
 
     protected AuthResultWithClaims validateBearer(String bearerToken, CallHeaders incomingHeader) {
         try {
-            var payload = parseJwtClaims(bearerToken, jwtParser, verifySignature);
+            var verified = tokenCache.get(bearerToken);
+            var payload = verified.payload();
             var subject = payload.getSubject();
             var expiration = payload.getExpiration();
             if (expiration.before(new Date())) {
@@ -145,8 +159,7 @@ public class AdvanceJWTTokenAuthenticator implements CallHeaderAuthenticator {
                 }
             }
 
-            var allClaimsFromJWT = JwtClaimsExtractor.extractClaims(payload, claimHeader, bearerToken);
-            return new AuthResultWithClaims(subject, bearerToken, allClaimsFromJWT);
+            return new AuthResultWithClaims(subject, bearerToken, JwtClaimsExtractor.withBearerToken(verified.claims(), bearerToken));
 
         } catch (Exception e) {
             logger.error("validateBearer failed: {}", e.getMessage(), e);
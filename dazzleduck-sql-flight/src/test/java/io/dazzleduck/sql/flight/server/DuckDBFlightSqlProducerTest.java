@@ -34,6 +34,7 @@ import java.sql.*;
 import java.time.Clock;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -434,6 +435,15 @@ public class DuckDBFlightSqlProducerTest {
                 "Ingested file should exist");
     }
 
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    public void putStreamWithSpoolAckRequiresJournal() throws Exception {
+        // The test server runs without durable_journal, so a spool ack could lose a failed batch.
+        var e = assertThrows(Exception.class,
+                () -> testPutStream("test_spool_ack.parquet", Map.of(Headers.HEADER_ACK_MODE, "spool")));
+        assertTrue(e.getMessage().contains("durable journal"), e.getMessage());
+    }
+
     @Test
     @Disabled("Duplicate write detection not implemented when producerId is null")
     @Timeout(value = 30, unit = TimeUnit.SECONDS)
@@ -653,6 +663,10 @@ public class DuckDBFlightSqlProducerTest {
     }
 
     private void testPutStream(String filename) throws SQLException, IOException {
+        testPutStream(filename, Map.of());
+    }
+
+    private void testPutStream(String filename, Map<String, String> options) throws SQLException, IOException {
         Files.createDirectories(Path.of(warehousePath, filename));
         String query = "select * from generate_series(10)";
         try(DuckDBConnection connection = ConnectionPool.getConnection();
@@ -660,11 +674,17 @@ public class DuckDBFlightSqlProducerTest {
             var streamReader = new ArrowStreamReaderWrapper(reader, clientAllocator);
             var executeIngestOption = new FlightSqlClient.ExecuteIngestOptions("",
                     FlightSql.CommandStatementIngest.TableDefinitionOptions.newBuilder().build(),
-                    false, "", "", Map.of(Headers.QUERY_PARAMETER_INGESTION_QUEUE, filename));
+                    false, "", "", withIngestionQueue(filename, options));
             sqlClient.executeIngest(streamReader, executeIngestOption);
         }
     }
 
+    private static Map<String, String> withIngestionQueue(String queue, Map<String, String> options) {
+        var result = new HashMap<>(options);
+        result.put(Headers.QUERY_PARAMETER_INGESTION_QUEUE, queue);
+        return result;
+    }
+
     private static Connection getConnection() throws SQLException {
         String url = String.format("jdbc:arrow-flight-sql://localhost:%s/?database=memory&useEncryption=0&user=%s&password=%s&retainAuth=true", flightServer.getPort(), USER, PASSWORD );
         return DriverManager.getConnection(url);
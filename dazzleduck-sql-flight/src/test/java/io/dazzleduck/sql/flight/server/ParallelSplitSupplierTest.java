@@ -0,0 +1,99 @@
+package io.dazzleduck.sql.flight.server;
+
+import io.dazzleduck.sql.commons.ConnectionPool;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.ipc.ArrowReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelSplitSupplierTest {
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void mergesEverySplitIntoOneStream() throws Exception {
+        var splits = List.of(
+                "SELECT range AS id FROM range(0, 10000)",
+                "SELECT range AS id FROM range(10000, 20000)",
+                "SELECT range AS id FROM range(20000, 30000) WHERE false");
+        var executor = Executors.newCachedThreadPool();
+        try (var allocator = new RootAllocator();
+             var owner = ConnectionPool.getConnection();
+             var statement = owner.createStatement()) {
+            var supplier = new ParallelSplitSupplier(splits, ConnectionPool::getConnection, executor, ExecutionPermits.UNLIMITED, statement);
+            supplier.execute();
+            assertTrue(supplier.hasResultSet());
+            var ids = new HashSet<Long>();
+            try (ArrowReader reader = supplier.reader(supplier.get(), allocator, 1024)) {
+                while (reader.loadNextBatch()) {
+                    var vector = (BigIntVector) reader.getVectorSchemaRoot().getVector("id");
+                    for (int i = 0; i < vector.getValueCount(); i++) {
+                        assertTrue(ids.add(vector.get(i)), "row returned twice");
+                    }
+                }
+            }
+            assertEquals(20000, ids.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void splitsShareTheExecutionPermits() throws Exception {
+        var splits = List.of(
+                "SELECT range AS id FROM range(0, 100000)",
+                "SELECT range AS id FROM range(100000, 200000)",
+                "SELECT range AS id FROM range(200000, 300000)");
+        var executor = Executors.newVirtualThreadPerTaskExecutor();
+        var permits = ExecutionPermits.of(1);
+        try (var allocator = new RootAllocator();
+             var owner = ConnectionPool.getConnection();
+             var statement = owner.createStatement()) {
+            var supplier = new ParallelSplitSupplier(splits, ConnectionPool::getConnection, executor, permits, statement);
+            assertFalse(supplier.usesExecutionPermit());
+            long rows = 0;
+            try (ArrowReader reader = supplier.reader(null, allocator, 1024)) {
+                while (reader.loadNextBatch()) {
+                    rows += reader.getVectorSchemaRoot().getRowCount();
+                }
+            }
+            assertEquals(300000, rows);
+            // Every permit taken by a split was given back.
+            permits.acquire();
+            assertEquals(0, permits.waiting());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void failingSplitFailsTheStream() throws Exception {
+        var splits = List.of("SELECT range AS id FROM range(0, 10)", "SELECT error('broken split')::BIGINT AS id");
+        var executor = Executors.newCachedThreadPool();
+        try (var allocator = new RootAllocator();
+             var owner = ConnectionPool.getConnection();
+             var statement = owner.createStatement()) {
+            var supplier = new ParallelSplitSupplier(splits, ConnectionPool::getConnection, executor, ExecutionPermits.UNLIMITED, statement);
+            var e = assertThrows(IOException.class, () -> {
+                try (ArrowReader reader = supplier.reader(null, allocator, 1024)) {
+                    while (reader.loadNextBatch()) {
+                        // drain
+                    }
+                }
+            });
+            assertTrue(e.getMessage().contains("broken split"), e.getMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package io.dazzleduck.sql.flight.server;
+
+import io.dazzleduck.sql.commons.ConnectionPool;
+import io.dazzleduck.sql.commons.Transformations;
+import io.dazzleduck.sql.commons.planner.PartialAggregation;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.ipc.ArrowReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartialAggregationSupplierTest {
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void finalPhaseMergesThePartialsOfEverySplit() throws Exception {
+        var executor = Executors.newCachedThreadPool();
+        try (var allocator = new RootAllocator();
+             var owner = ConnectionPool.getConnection();
+             var statement = owner.createStatement()) {
+            var sql = "SELECT range % 3 AS k, count(*) AS c, avg(range) AS a FROM range(0, 30000) GROUP BY 1";
+            var plan = PartialAggregation.plan(owner, Transformations.parseToTree(owner, sql),
+                    Set.of("count_star", "avg", "sum", "count")).orElseThrow();
+            var partialSql = Transformations.parseToSql(owner, plan.partialTree());
+            var splits = List.of(
+                    partialSql.replace("(0, 30000)", "(0, 10000)"),
+                    partialSql.replace("(0, 30000)", "(10000, 20000)"),
+                    partialSql.replace("(0, 30000)", "(20000, 30000)"));
+            var supplier = new PartialAggregationSupplier(
+                    new ParallelSplitSupplier(splits, ConnectionPool::getConnection, executor, ExecutionPermits.of(1), statement),
+                    Transformations.parseToSql(owner, plan.finalTree()), statement);
+            supplier.execute();
+            assertTrue(supplier.hasResultSet());
+            var counts = new HashMap<Long, Long>();
+            var averages = new HashMap<Long, Double>();
+            try (ArrowReader reader = supplier.reader(supplier.get(), allocator, 1024)) {
+                while (reader.loadNextBatch()) {
+                    var root = reader.getVectorSchemaRoot();
+                    var k = (BigIntVector) root.getVector("k");
+                    var c = (BigIntVector) root.getVector("c");
+                    var a = (Float8Vector) root.getVector("a");
+                    for (int i = 0; i < root.getRowCount(); i++) {
+                        counts.put(k.get(i), c.get(i));
+                        averages.put(k.get(i), a.get(i));
+                    }
+                }
+            }
+            assertEquals(3, counts.size());
+            counts.values().forEach(count -> assertEquals(10000, count));
+            assertEquals(14998.5, averages.get(0L), 1e-9);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
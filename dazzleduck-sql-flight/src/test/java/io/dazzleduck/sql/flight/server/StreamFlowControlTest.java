@@ -0,0 +1,122 @@
+package io.dazzleduck.sql.flight.server;
+
+import org.apache.arrow.flight.CallStatus;
+import org.apache.arrow.flight.FlightRuntimeException;
+import org.apache.arrow.memory.RootAllocator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamFlowControlTest {
+
+    /** Listener whose readiness the test flips, like a gRPC transport with a full buffer. */
+    private static class GatedListener extends DirectOutputStreamListener {
+        volatile boolean ready;
+        volatile Runnable onReady;
+
+        GatedListener() {
+            super(ByteArrayOutputStream::new, new CompletableFuture<>());
+        }
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public void setOnReadyHandler(Runnable handler) {
+            onReady = handler;
+        }
+
+        void becomeReady() {
+            ready = true;
+            onReady.run();
+        }
+    }
+
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    void waitsForTheConsumerAndAccountsTheBlockedTime() throws Exception {
+        var listener = new GatedListener();
+        var flowControl = new StreamFlowControl(listener, 0);
+        assertNotNull(listener.onReady, "the ready callback should be registered");
+
+        var scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            scheduler.schedule(listener::becomeReady, 200, TimeUnit.MILLISECONDS);
+            flowControl.awaitReady();
+        } finally {
+            scheduler.shutdownNow();
+        }
+        assertTrue(listener.isReady());
+        assertTrue(flowControl.blockedNanos() >= TimeUnit.MILLISECONDS.toNanos(150), "blocked time should be recorded");
+
+        long blocked = flowControl.blockedNanos();
+        flowControl.awaitReady();
+        assertEquals(blocked, flowControl.blockedNanos(), "a ready consumer costs no wait");
+    }
+
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    void stalledConsumerTimesOut() {
+        var flowControl = new StreamFlowControl(new GatedListener(), 100);
+        var e = assertThrows(FlightRuntimeException.class, flowControl::awaitReady);
+        assertEquals(CallStatus.TIMED_OUT.code(), e.status().code());
+    }
+
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    void executionPermitIsOnlyHeldWhileExecuting() throws Exception {
+        var permits = ExecutionPermits.of(1);
+        var extract = new StreamFlowControl(new GatedListener(), 0, permits);
+        var interactive = new StreamFlowControl(new GatedListener(), 0, permits);
+
+        extract.acquireExecution();
+        extract.acquireExecution(); // re-entrant for the holder
+        var started = new CompletableFuture<Void>();
+        var thread = new Thread(() -> {
+            try {
+                interactive.acquireExecution();
+                started.complete(null);
+            } catch (InterruptedException e) {
+                started.completeExceptionally(e);
+            }
+        });
+        thread.start();
+        while (permits.waiting() == 0) {
+            Thread.sleep(5);
+        }
+        assertFalse(started.isDone(), "the permit is held by the executing stream");
+
+        // The extract hands a batch to its client: the waiting query gets to run.
+        extract.releaseExecution();
+        started.get(5, TimeUnit.SECONDS);
+        interactive.releaseExecution();
+        extract.releaseExecution(); // no-op when not held
+        assertEquals(0, permits.waiting());
+        thread.join();
+    }
+
+    @Test
+    void defaultPermitsLeaveAVirtualThreadCarrierFree() {
+        int carriers = ExecutionPermits.carrierParallelism();
+        assertEquals(Math.max(1, carriers - 1), ExecutionPermits.defaultPermits(true));
+        assertEquals(Runtime.getRuntime().availableProcessors(), ExecutionPermits.defaultPermits(false));
+    }
+
+    @Test
+    void streamAllocatorIsCappedAtTheBudget() {
+        try (var root = new RootAllocator(Long.MAX_VALUE);
+             var capped = StreamFlowControl.newStreamAllocator(root, 1024 * 1024);
+             var uncapped = StreamFlowControl.newStreamAllocator(root, 0)) {
+            assertEquals(1024 * 1024, capped.getLimit());
+            assertEquals(root.getLimit(), uncapped.getLimit());
+        }
+    }
+}
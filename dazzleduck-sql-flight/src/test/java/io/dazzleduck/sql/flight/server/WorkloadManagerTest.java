@@ -0,0 +1,86 @@
+package io.dazzleduck.sql.flight.server;
+
+import com.typesafe.config.ConfigFactory;
+import org.apache.arrow.flight.CallStatus;
+import org.apache.arrow.flight.FlightRuntimeException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkloadManagerTest {
+
+    private static final String CONFIG = """
+            workload {
+              classes = [
+                { name = "dashboard", max_concurrency = 4, queue_timeout_ms = 100, query_groups = ["dashboard"] }
+                { name = "export", max_concurrency = 1, queue_timeout_ms = 100,
+                  session_settings { preserve_insertion_order = false } }
+              ]
+            }
+            """;
+
+    @Test
+    void claimWinsOverQueryGroupWhichWinsOverDefault() {
+        var manager = WorkloadManager.fromConfig(ConfigFactory.parseString(CONFIG));
+
+        assertEquals("export", manager.classify(Map.of("workload_class", "export"), "dashboard").name());
+        assertEquals("dashboard", manager.classify(Map.of(), "dashboard").name());
+        assertEquals("dashboard", manager.classify(Map.of("workload_class", "unknown"), "dashboard").name());
+        assertEquals(WorkloadManager.DEFAULT_CLASS, manager.classify(Map.of(), null).name());
+        assertEquals(List.of("dashboard", "export", WorkloadManager.DEFAULT_CLASS),
+                manager.stats().stream().map(s -> s.name()).toList());
+    }
+
+    @Test
+    void sessionSettingsAreRenderedAsSetSession() {
+        var manager = WorkloadManager.fromConfig(ConfigFactory.parseString(CONFIG));
+        assertEquals(List.of("SET SESSION preserve_insertion_order = 'false'"),
+                manager.classify(Map.of("workload_class", "export"), null).sessionSettingStatements());
+        assertThrows(IllegalArgumentException.class,
+                () -> new WorkloadClass("bad", 1, 0, List.of(), Map.of("threads; DROP TABLE t", "1")));
+    }
+
+    @Test
+    void queryGroupMayBelongToOneClassOnly() {
+        var a = new WorkloadClass("a", 1, 0, List.of("reports"), Map.of());
+        var b = new WorkloadClass("b", 1, 0, List.of("reports"), Map.of());
+        assertThrows(IllegalArgumentException.class, () -> new WorkloadManager("workload_class", List.of(a, b)));
+    }
+
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    void queryOverTheLimitIsRejectedAfterTheQueueTimeout() throws Exception {
+        var export = new WorkloadClass("export", 1, 100, List.of(), Map.of());
+        export.admit();
+
+        var e = assertThrows(FlightRuntimeException.class, export::admit);
+        assertEquals(CallStatus.RESOURCE_EXHAUSTED.code(), e.status().code());
+
+        var stats = export.stats();
+        assertEquals(1, stats.running());
+        assertEquals(1, stats.admitted());
+        assertEquals(1, stats.rejected());
+        assertTrue(stats.totalWaitMs() >= 90, "the rejected query's wait is accounted");
+
+        export.leave();
+        export.admit();
+        assertEquals(2, export.stats().admitted());
+        export.leave();
+        assertEquals(0, export.stats().running());
+    }
+
+    @Test
+    void defaultClassIsUnlimitedWhenNotConfigured() throws Exception {
+        var workloadClass = WorkloadManager.none().classify(Map.of(), null);
+        for (int i = 0; i < 100; i++) {
+            workloadClass.admit();
+        }
+        assertEquals(100, workloadClass.stats().running());
+        assertEquals(0, workloadClass.stats().maxConcurrency());
+    }
+}
@@ -19,6 +19,7 @@ import org.apache.arrow.flight.PutResult;
 import java.io.InputStream;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
 import java.util.Map;
 
 import static io.dazzleduck.sql.common.Headers.*;
@@ -68,8 +69,18 @@ public class IngestionService implements HttpService, ParameterUtils, Controller
         var producerBatchId = ParameterUtils.getParameterValue(HEADER_PRODUCER_BATCH_ID, serverRequest, -1L, Long.class);
         var sortOrderString = urlDecode(
                 ParameterUtils.getParameterValue(HEADER_SORT_ORDER, serverRequest, null, String.class));
+        Map<String, String> parameters = new HashMap<>();
+        var ackMode = ParameterUtils.getParameterValue(HEADER_ACK_MODE, serverRequest, null, String.class);
+        if (ackMode != null) {
+            parameters.put(HEADER_ACK_MODE, ackMode);
+        }
+        var partitionValues = urlDecode(
+                ParameterUtils.getParameterValue(HEADER_DATA_PARTITION_VALUES, serverRequest, null, String.class));
+        if (partitionValues != null) {
+            parameters.put(HEADER_DATA_PARTITION_VALUES, partitionValues);
+        }
         return new IngestionParameters(path, format, getArray(partitionString),
-                getArray(sortOrderString), producerId, producerBatchId, Map.of());
+                getArray(sortOrderString), producerId, producerBatchId, parameters);
     }
 
     private String[] getArray(String stringValue) {
@@ -4,6 +4,8 @@ import com.typesafe.config.Config;
 import io.dazzleduck.sql.common.Headers;
 import io.dazzleduck.sql.common.ConfigConstants;
 import io.dazzleduck.sql.common.auth.JwtClaimsExtractor;
+import io.dazzleduck.sql.common.auth.VerifiedTokenCache;
+import io.dazzleduck.sql.common.auth.VerifiedTokenCache.VerifiedToken;
 import io.dazzleduck.sql.commons.authorization.SqlAuthorizer;
 import io.dazzleduck.sql.commons.authorization.SubjectAndVerifiedClaims;
 import io.helidon.http.HeaderNames;
@@ -17,7 +19,6 @@ import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 
 import javax.crypto.SecretKey;
-import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -29,6 +30,7 @@ public class JwtAuthenticationFilter implements Filter {
     public static final String SUBJECT_KEY = "subject";
     public static final String INGESTION_PATH = "/v1/ingest";
     private static final int BEARER_LENGTH = "Bearer ".length();
+    private static final int TOKEN_CACHE_MAX_ENTRIES = 10_000;
     private final Config config;
     private final SecretKey secretKey;
     private final JwtParser jwtParser;
@@ -37,6 +39,7 @@ public class JwtAuthenticationFilter implements Filter {
     private final List<String> claimHeader;
     private final Set<String> validateHeaders;
     private final SqlAuthorizer sqlAuthorizer;
+    private final VerifiedTokenCache tokenCache;
 
     public JwtAuthenticationFilter(List<String> paths, Config config, SecretKey secretKey, SqlAuthorizer sqlAuthorizer) {
         this.config = config;
@@ -55,17 +58,24 @@ public class JwtAuthenticationFilter implements Filter {
         this.claimHeader = config.getStringList(ConfigConstants.JWT_TOKEN_CLAIMS_GENERATE_HEADERS_KEY);
         this.validateHeaders = new HashSet<>(config.getStringList(ConfigConstants.JWT_TOKEN_CLAIMS_VALIDATE_HEADERS_KEY));
         this.sqlAuthorizer = sqlAuthorizer;
+        this.tokenCache = new VerifiedTokenCache(TOKEN_CACHE_MAX_ENTRIES, token -> {
+            var payload = parseJwtClaims(token, jwtParser, verifySignature);
+            return new VerifiedToken(payload, JwtClaimsExtractor.extractClaims(payload, claimHeader));
+        });
+    }
+
+    /** The cache of verified bearer tokens, for its hit ratio. */
+    public VerifiedTokenCache tokenCache() {
+        return tokenCache;
     }
 
     public SubjectAndVerifiedClaims authenticate(String token) {
         try {
-            var payload = parseJwtClaims(token, jwtParser, verifySignature);
-            var subject = payload.getSubject();
-            var expiration = payload.getExpiration();
-
-            var allClaimsFromJWT = JwtClaimsExtractor.extractClaims(payload, claimHeader, token);
+            var verified = tokenCache.get(token);
+            var subject = verified.payload().getSubject();
+            var expiration = verified.payload().getExpiration();
             if (expiration.after(new Date())) {
-                return new SubjectAndVerifiedClaims(subject, Collections.unmodifiableMap(allClaimsFromJWT));
+                return new SubjectAndVerifiedClaims(subject, JwtClaimsExtractor.withBearerToken(verified.claims(), token));
             }
             throw new UnauthorizedException("jwt expired for subject :" + subject);
         } catch (Exception e) {
@@ -37,6 +37,8 @@ import java.util.concurrent.atomic.LongAdder;
  *   dazzleduck.otel.writer.batches_written {queue=&lt;id&gt;}  – batches flushed to Parquet
  *   dazzleduck.otel.writer.pending_batches {queue=&lt;id&gt;}  – queue depth (batches not yet written)
  *   dazzleduck.otel.writer.pending_buckets {queue=&lt;id&gt;}  – bucket queue depth
+ *   dazzleduck.otel.writer.effective_bucket_size  {queue=&lt;id&gt;}  – current flush size (adaptive or fixed)
+ *   dazzleduck.otel.writer.effective_max_delay_ms {queue=&lt;id&gt;}  – current flush delay (adaptive or fixed)
  * </pre>
  */
 public class OtelCollectorMetrics implements Closeable {
@@ -139,6 +141,26 @@ public class OtelCollectorMetrics implements Closeable {
                 .tag("queue", queueId)
                 .description("Cumulative ms in the post-ingestion phase (e.g. DuckLake catalog commit, serialized)")
                 .register(registry));
+        track(queueId, FunctionCounter.builder("dazzleduck.otel.writer.watermark_single_pass_ms", writer,
+                        w -> w.getWatermarkSinglePassNanos() / 1_000_000.0)
+                .tag("queue", queueId)
+                .description("Cumulative ms of COPYs whose file statistics also yielded the watermarks, write included")
+                .register(registry));
+        track(queueId, FunctionCounter.builder("dazzleduck.otel.writer.watermark_single_pass_rows", writer,
+                        w -> w.getWatermarkSinglePassRows())
+                .tag("queue", queueId)
+                .description("Cumulative rows written by COPYs whose file statistics also yielded the watermarks")
+                .register(registry));
+        track(queueId, FunctionCounter.builder("dazzleduck.otel.writer.watermark_materialize_ms", writer,
+                        w -> w.getWatermarkMaterializeNanos() / 1_000_000.0)
+                .tag("queue", queueId)
+                .description("Cumulative ms spent materializing batches for watermarks not grouped by partition columns")
+                .register(registry));
+        track(queueId, FunctionCounter.builder("dazzleduck.otel.writer.watermark_aggregate_ms", writer,
+                        w -> w.getWatermarkAggregateNanos() / 1_000_000.0)
+                .tag("queue", queueId)
+                .description("Cumulative ms spent aggregating watermarks over materialized batches")
+                .register(registry));
         track(queueId, Gauge.builder("dazzleduck.otel.writer.pending_batches", writer,
                         w -> w.getStats().pendingBatches())
                 .tag("queue", queueId)
@@ -149,6 +171,16 @@ public class OtelCollectorMetrics implements Closeable {
                 .tag("queue", queueId)
                 .description("Current number of buckets queued but not yet written")
                 .register(registry));
+        track(queueId, Gauge.builder("dazzleduck.otel.writer.effective_bucket_size", writer,
+                        ParquetIngestionQueue::getEffectiveBucketSize)
+                .tag("queue", queueId)
+                .description("Bucket size at which the queue currently flushes, in bytes")
+                .register(registry));
+        track(queueId, Gauge.builder("dazzleduck.otel.writer.effective_max_delay_ms", writer,
+                        w -> w.getEffectiveMaxDelay().toMillis())
+                .tag("queue", queueId)
+                .description("Delay after which the queue currently flushes a bucket, in milliseconds")
+                .register(registry));
     }
 
     /**
@@ -75,8 +75,10 @@ class OtelServiceBase implements Closeable {
                     ingestionConfig.maxBatches(),
                     ingestionConfig.maxPendingWrite(),
                     ingestionConfig.maxDelay(),
+                    ingestionConfig.commitLanes(),
                     handler,
                     flushScheduler, Clock.systemUTC());
+            queue.setAdaptiveSizer(ingestionConfig.newAdaptiveSizer());
             metrics.registerQueue(id, queue);
             return queue;
         };